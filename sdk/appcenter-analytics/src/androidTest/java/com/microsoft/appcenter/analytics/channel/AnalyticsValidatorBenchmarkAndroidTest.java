@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics.channel;
+
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertFalse;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare validating events having a few known shapes with events that are never remembered.
+ */
+public class AnalyticsValidatorBenchmarkAndroidTest {
+
+    private static final int EVENT_COUNT = 20000;
+
+    private static final int PROPERTY_COUNT = 10;
+
+    /**
+     * Enough names to always evict the shape before it is seen again.
+     */
+    private static final int UNCACHED_NAME_COUNT = 4 * AnalyticsValidator.MAX_VALIDATED_EVENT_SHAPES;
+
+    private static final int CACHED_NAME_COUNT = 50;
+
+    private static EventLog[] generateEvents(int nameCount) {
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = "event" + i;
+        }
+        EventLog[] events = new EventLog[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            EventLog eventLog = new EventLog();
+            eventLog.setName(names[i % nameCount]);
+            List<TypedProperty> properties = new ArrayList<>(PROPERTY_COUNT);
+            for (int j = 0; j < PROPERTY_COUNT; j++) {
+                if (j % 2 == 0) {
+                    StringTypedProperty property = new StringTypedProperty();
+                    property.setName("stringKey" + j);
+                    property.setValue("value" + i);
+                    properties.add(property);
+                } else {
+                    LongTypedProperty property = new LongTypedProperty();
+                    property.setName("longKey" + j);
+                    property.setValue(i);
+                    properties.add(property);
+                }
+            }
+            eventLog.setTypedProperties(properties);
+            events[i] = eventLog;
+        }
+        return events;
+    }
+
+    private static long validate(EventLog[] events) {
+        AnalyticsValidator validator = new AnalyticsValidator();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (EventLog event : events) {
+            assertFalse(validator.shouldFilter(event));
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / EVENT_COUNT;
+    }
+
+    @Test
+    public void benchmarkValidation() {
+
+        /* Warm up. */
+        validate(generateEvents(UNCACHED_NAME_COUNT));
+        validate(generateEvents(CACHED_NAME_COUNT));
+
+        /* Measure. */
+        long uncachedNanos = validate(generateEvents(UNCACHED_NAME_COUNT));
+        long cachedNanos = validate(generateEvents(CACHED_NAME_COUNT));
+        android.util.Log.i(TAG, "Validating " + EVENT_COUNT + " events with " + PROPERTY_COUNT + " properties: uncached="
+                + uncachedNanos + "ns/event cached=" + cachedNanos + "ns/event");
+    }
+}
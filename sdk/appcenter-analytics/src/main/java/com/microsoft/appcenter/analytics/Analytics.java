@@ -18,6 +18,7 @@ import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.channel.EventSampler;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
@@ -33,12 +34,14 @@ import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -94,6 +97,12 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS = 24 * 60 * 60;
 
+    /**
+     * Time in milliseconds between the first metric sample and sending the aggregated metrics.
+     */
+    @VisibleForTesting
+    static final long METRICS_FLUSH_INTERVAL = 60 * 1000;
+
     /**
      * Log factories managed by this service.
      */
@@ -161,6 +170,32 @@ public class Analytics extends AbstractAppCenterService {
      */
     private boolean isManualSessionTrackerEnabled = false;
 
+    /**
+     * Metrics aggregated since the last flush.
+     */
+    private final MetricAggregator mMetricAggregator = new MetricAggregator();
+
+    /**
+     * True when metrics can be sent: the service is enabled and started from the application.
+     */
+    private volatile boolean mMetricsEnabled;
+
+    /**
+     * Samples and rate limits events, configuration is kept when the service is disabled.
+     */
+    private final EventSampler mEventSampler = new EventSampler();
+
+    /**
+     * Sends the aggregated metrics, posted on the main thread after the first sample.
+     */
+    private final Runnable mFlushMetricsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            flushMetricsAsync();
+        }
+    };
+
     /**
      * Init.
      */
@@ -491,6 +526,106 @@ public class Analytics extends AbstractAppCenterService {
         getInstance().trackEventAsync(name, convertProperties(properties), transmissionTarget, flags);
     }
 
+    /**
+     * Track custom events together. This is faster than calling {@link #trackEvent} for each event:
+     * the events are validated, decorated and persisted at once.
+     * <p>
+     * Each event is validated with the same rules as {@link #trackEvent(String, EventProperties, int)}.
+     *
+     * @param events Events to track.
+     */
+    public static void trackEvents(Collection<AnalyticsEvent> events) {
+        trackEvents(events, null);
+    }
+
+    /**
+     * Internal method redirection for trackEvents.
+     */
+    static void trackEvents(Collection<AnalyticsEvent> events, AnalyticsTransmissionTarget transmissionTarget) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+
+        /* Make a copy to avoid concurrent modifications after trackEvents. */
+        getInstance().trackEventsAsync(new ArrayList<>(events), transmissionTarget);
+    }
+
+    /**
+     * Record a sample of a metric, for example a duration or a size.
+     * <p>
+     * Samples are aggregated in memory and sent periodically and when an activity is paused,
+     * as a single event named after the metric,
+     * with the <code>count</code>, <code>sum</code>, <code>min</code>, <code>max</code>,
+     * <code>p50</code>, <code>p90</code> and <code>p99</code> properties.
+     * Use this instead of {@link #trackEvent} for high-frequency signals.
+     * <p>
+     * The name follows the same validation rules as {@link #trackEvent(String)}.
+     * Samples are rejected while Analytics is disabled or not started from the application.
+     *
+     * @param name  A metric name.
+     * @param value A sample value, must be a finite positive number or zero.
+     */
+    public static void trackMetric(String name, double value) {
+        getInstance().trackMetricInstance(name, value);
+    }
+
+    /**
+     * Increment a counter by one, see {@link #incrementCounter(String, long)}.
+     *
+     * @param name A counter name.
+     */
+    public static void incrementCounter(String name) {
+        incrementCounter(name, 1);
+    }
+
+    /**
+     * Increment a counter, for example a number of cache hits.
+     * <p>
+     * Increments are aggregated in memory and the total is sent periodically as a single event named
+     * after the counter, with the <code>count</code> property.
+     * <p>
+     * The name follows the same validation rules as {@link #trackEvent(String)}
+     * and cannot be used by a metric tracked with {@link #trackMetric}.
+     *
+     * @param name  A counter name.
+     * @param delta Value to add to the counter.
+     */
+    public static void incrementCounter(String name, long delta) {
+        getInstance().incrementCounterInstance(name, delta);
+    }
+
+    /**
+     * Send an event from only a percentage of installations. The selection is stable: for a given
+     * event name, an installation always or never sends the event.
+     * <p>
+     * The rate is recorded in a <code>samplingRate</code> property of the sent events, or in the
+     * <code>popSample</code> field for events sent to transmission targets. The property replaces
+     * an event property of the same name and counts in the maximum number of properties.
+     * The rate set for an event name takes precedence over the rate set for all events.
+     * This applies to events sent to transmission targets unless configured with
+     * {@link AnalyticsTransmissionTarget#setEventSamplingRate(String, double)}.
+     *
+     * @param eventName    An event name, or null for all events.
+     * @param samplingRate Percentage of installations sending the event, between 0 and 100.
+     */
+    public static void setEventSamplingRate(String eventName, double samplingRate) {
+        getInstance().mEventSampler.setSamplingRate(null, eventName, samplingRate);
+    }
+
+    /**
+     * Limit the number of times an event is sent. Events exceeding the limit are discarded.
+     * The limit of an event name applies in addition to the limit shared by all events.
+     * This also applies to events sent to transmission targets, in addition to the limits configured with
+     * {@link AnalyticsTransmissionTarget#setEventRateLimit(String, int, long)}.
+     *
+     * @param eventName      An event name, or null to share the limit between all events.
+     * @param maxEventCount  Maximum number of events sent per interval, 0 to remove the limit.
+     * @param intervalMillis Interval in milliseconds.
+     */
+    public static void setEventRateLimit(String eventName, int maxEventCount, long intervalMillis) {
+        getInstance().mEventSampler.setRateLimit(null, eventName, maxEventCount, intervalMillis);
+    }
+
     /**
      * Internal conversion for properties.
      *
@@ -663,6 +798,7 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     public synchronized void onActivityPaused(Activity activity) {
+        final String userId = UserIdContext.getInstance().getUserId();
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -678,13 +814,16 @@ public class Analytics extends AbstractAppCenterService {
                 if (mSessionTracker != null) {
                     mSessionTracker.onActivityPaused();
                 }
+
+                /* The process can be killed in background before the flush timer expires. */
+                sendMetrics(userId);
             }
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.BatchListener() {
 
             @Override
             public void onBeforeSending(Log log) {
@@ -693,6 +832,21 @@ public class Analytics extends AbstractAppCenterService {
                 }
             }
 
+            @Override
+            public boolean requiresLogCallbacks() {
+
+                /* Avoid reading sent logs again when nobody listens to them. */
+                return mAnalyticsListener != null;
+            }
+
+            @Override
+            public void onBatchSuccess(int logCount, int missingLogCount) {
+            }
+
+            @Override
+            public void onBatchFailure(int logCount, int missingLogCount, Exception e) {
+            }
+
             @Override
             public void onSuccess(Log log) {
                 if (mAnalyticsListener != null) {
@@ -714,6 +868,17 @@ public class Analytics extends AbstractAppCenterService {
      *
      * @param enabled current state.
      */
+    @WorkerThread
+    @Override
+    public synchronized void setInstanceEnabled(boolean enabled) {
+
+        /* Send aggregated metrics before the group is cleared, like the events tracked before disabling. */
+        if (!enabled && isStarted() && isInstanceEnabled()) {
+            sendMetrics(UserIdContext.getInstance().getUserId());
+        }
+        super.setInstanceEnabled(enabled);
+    }
+
     @Override
     protected synchronized void applyEnabledState(boolean enabled) {
 
@@ -723,6 +888,9 @@ public class Analytics extends AbstractAppCenterService {
 
             /* Check if service started at application level and enable corresponding features. */
             startAppLevelFeatures();
+
+            /* Sampling applies to events that passed validation, so add it last. */
+            mChannel.addListener(mEventSampler);
         }
 
         /* On disabling service. */
@@ -730,6 +898,10 @@ public class Analytics extends AbstractAppCenterService {
             mChannel.removeGroup(ANALYTICS_CRITICAL_GROUP);
 
             /* Cleanup resources. */
+            mChannel.removeListener(mEventSampler);
+            mMetricsEnabled = false;
+            HandlerUtils.getMainHandler().removeCallbacks(mFlushMetricsRunnable);
+            mMetricAggregator.clear();
             if (mAnalyticsValidator != null) {
                 mChannel.removeListener(mAnalyticsValidator);
                 mAnalyticsValidator = null;
@@ -777,6 +949,9 @@ public class Analytics extends AbstractAppCenterService {
             /* Add new channel listener for transmission target. */
             mAnalyticsTransmissionTargetListener = AnalyticsTransmissionTarget.getChannelListener();
             mChannel.addListener(mAnalyticsTransmissionTargetListener);
+
+            /* Metrics are sent only with the default transmission target or the app secret. */
+            mMetricsEnabled = true;
         }
     }
 
@@ -852,34 +1027,203 @@ public class Analytics extends AbstractAppCenterService {
 
             @Override
             public void run() {
-                AnalyticsTransmissionTarget aTransmissionTarget = (transmissionTarget == null) ? mDefaultTransmissionTarget : transmissionTarget;
-                EventLog eventLog = new EventLog();
-                if (aTransmissionTarget != null) {
-                    if (aTransmissionTarget.isEnabled()) {
-                        eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
-                        eventLog.setTag(aTransmissionTarget);
-                        if (aTransmissionTarget == mDefaultTransmissionTarget) {
-                            eventLog.setUserId(userId);
-                        }
-                    } else {
-                        AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                EventLog eventLog = createEventLog(name, properties, transmissionTarget, userId);
+                if (eventLog != null) {
+
+                    /* Filter and validate flags. For now we support only persistence. */
+                    int filteredFlags = Flags.getPersistenceFlag(flags, true);
+                    mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send events in a single command.
+     *
+     * @param events             events.
+     * @param transmissionTarget optional target.
+     */
+    private synchronized void trackEventsAsync(final List<AnalyticsEvent> events, final AnalyticsTransmissionTarget transmissionTarget) {
+        final String userId = UserIdContext.getInstance().getUserId();
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                List<Log> normalLogs = new ArrayList<>();
+                List<Log> criticalLogs = new ArrayList<>();
+                for (AnalyticsEvent event : events) {
+                    if (event == null) {
+                        AppCenterLog.error(LOG_TAG, "Cannot track a null event.");
+                        continue;
+                    }
+
+                    /* Every event would fail for the same reason, stop at the first one. */
+                    EventLog eventLog = createEventLog(event.getName(), convertProperties(event.getProperties()), transmissionTarget, userId);
+                    if (eventLog == null) {
                         return;
                     }
-                } else if (!mStartedFromApp) {
-                    AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
-                    return;
-                }
-                eventLog.setId(UUID.randomUUID());
-                eventLog.setName(name);
-                eventLog.setTypedProperties(properties);
 
-                /* Filter and validate flags. For now we support only persistence. */
-                int filteredFlags = Flags.getPersistenceFlag(flags, true);
-                mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
+                    /* Filter and validate flags. For now we support only persistence. */
+                    if (Flags.getPersistenceFlag(event.getFlags(), true) == Flags.CRITICAL) {
+                        criticalLogs.add(eventLog);
+                    } else {
+                        normalLogs.add(eventLog);
+                    }
+                }
+                if (!normalLogs.isEmpty()) {
+                    mChannel.enqueue(normalLogs, ANALYTICS_GROUP, Flags.NORMAL);
+                }
+                if (!criticalLogs.isEmpty()) {
+                    mChannel.enqueue(criticalLogs, ANALYTICS_CRITICAL_GROUP, Flags.CRITICAL);
+                }
             }
         });
     }
 
+    /**
+     * Implements {@link #trackMetric(String, double)}.
+     */
+    private void trackMetricInstance(String name, double value) {
+        if (name == null) {
+            AppCenterLog.error(LOG_TAG, "Metric name cannot be null.");
+            return;
+        }
+        if (!mMetricsEnabled) {
+            AppCenterLog.error(LOG_TAG, "Cannot track metric '" + name + "', Analytics is disabled or not started from app.");
+            return;
+        }
+        if (mMetricAggregator.recordValue(name, value)) {
+            HandlerUtils.getMainHandler().postDelayed(mFlushMetricsRunnable, METRICS_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Implements {@link #incrementCounter(String, long)}.
+     */
+    private void incrementCounterInstance(String name, long delta) {
+        if (name == null) {
+            AppCenterLog.error(LOG_TAG, "Counter name cannot be null.");
+            return;
+        }
+        if (!mMetricsEnabled) {
+            AppCenterLog.error(LOG_TAG, "Cannot track counter '" + name + "', Analytics is disabled or not started from app.");
+            return;
+        }
+        if (mMetricAggregator.incrementCounter(name, delta)) {
+            HandlerUtils.getMainHandler().postDelayed(mFlushMetricsRunnable, METRICS_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Send aggregated metrics as one event per metric, discard them if the service is disabled or not started.
+     */
+    private synchronized void flushMetricsAsync() {
+        final String userId = UserIdContext.getInstance().getUserId();
+        Runnable clearMetricsRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                mMetricAggregator.clear();
+            }
+        };
+        boolean posted = post(new Runnable() {
+
+            @Override
+            public void run() {
+                sendMetrics(userId);
+            }
+        }, clearMetricsRunnable, clearMetricsRunnable);
+        if (!posted) {
+            clearMetricsRunnable.run();
+        }
+    }
+
+    /**
+     * Send aggregated metrics as one event per metric.
+     *
+     * @param userId user identifier when the metrics were flushed.
+     */
+    @WorkerThread
+    private void sendMetrics(String userId) {
+        if (!mMetricAggregator.isFlushPending()) {
+            return;
+        }
+
+        /* Every metric would fail for the same reason, check before resetting the aggregated values. */
+        if (!canTrackEvents(mDefaultTransmissionTarget)) {
+            mMetricAggregator.clear();
+            return;
+        }
+        List<Log> logs = new ArrayList<>();
+        for (Map.Entry<String, List<TypedProperty>> metric : mMetricAggregator.flush().entrySet()) {
+            EventLog eventLog = createEventLog(metric.getKey(), metric.getValue(), null, userId);
+            if (eventLog != null) {
+                logs.add(eventLog);
+            }
+        }
+        if (!logs.isEmpty()) {
+            mChannel.enqueue(logs, ANALYTICS_GROUP, Flags.NORMAL);
+        }
+    }
+
+    /**
+     * Create an event log.
+     *
+     * @param name               event name.
+     * @param properties         optional properties.
+     * @param transmissionTarget optional target.
+     * @param userId             user identifier when the event was tracked.
+     * @return event log or null if the event cannot be tracked.
+     */
+    @WorkerThread
+    private EventLog createEventLog(String name, List<TypedProperty> properties, AnalyticsTransmissionTarget transmissionTarget, String userId) {
+        AnalyticsTransmissionTarget aTransmissionTarget = (transmissionTarget == null) ? mDefaultTransmissionTarget : transmissionTarget;
+        if (!canTrackEvents(aTransmissionTarget)) {
+            return null;
+        }
+        EventLog eventLog = new EventLog();
+        if (aTransmissionTarget != null) {
+            eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
+            eventLog.setTag(aTransmissionTarget);
+            if (aTransmissionTarget == mDefaultTransmissionTarget) {
+                eventLog.setUserId(userId);
+            }
+        }
+        eventLog.setId(UUID.randomUUID());
+        eventLog.setName(name);
+        eventLog.setTypedProperties(properties);
+        return eventLog;
+    }
+
+    /**
+     * Check if events can be tracked, log the reason otherwise.
+     *
+     * @param transmissionTarget target of the events, null if tracked with the app secret.
+     * @return true if events can be tracked.
+     */
+    private boolean canTrackEvents(AnalyticsTransmissionTarget transmissionTarget) {
+        if (transmissionTarget != null) {
+            if (!transmissionTarget.isEnabled()) {
+                AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                return false;
+            }
+        } else if (!mStartedFromApp) {
+            AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the event sampler.
+     *
+     * @return event sampler.
+     */
+    EventSampler getEventSampler() {
+        return mEventSampler;
+    }
+
     /**
      * Implements {@link #isAutoPageTrackingEnabled()}.
      */
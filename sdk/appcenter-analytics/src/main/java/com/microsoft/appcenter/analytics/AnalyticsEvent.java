@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.Flags;
+
+import java.util.Map;
+
+/**
+ * Custom event to track with {@link Analytics#trackEvents} or {@link AnalyticsTransmissionTarget#trackEvents}.
+ * The same validation rules apply as with the corresponding <code>trackEvent</code> methods.
+ */
+public class AnalyticsEvent {
+
+    /**
+     * Event name.
+     */
+    private final String mName;
+
+    /**
+     * Event properties, may be null.
+     */
+    private final EventProperties mProperties;
+
+    /**
+     * Event flags.
+     */
+    private final int mFlags;
+
+    /**
+     * Create an event with name.
+     *
+     * @param name An event name.
+     */
+    public AnalyticsEvent(String name) {
+        this(name, (EventProperties) null, Flags.DEFAULTS);
+    }
+
+    /**
+     * Create an event with name and optional string properties.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     */
+    public AnalyticsEvent(String name, Map<String, String> properties) {
+        this(name, properties, Flags.DEFAULTS);
+    }
+
+    /**
+     * Create an event with name and optional string properties.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     * @param flags      Optional flags, see {@link Analytics#trackEvent(String, Map, int)}.
+     */
+    public AnalyticsEvent(String name, Map<String, String> properties, int flags) {
+        this(name, convertProperties(properties), flags);
+    }
+
+    /**
+     * Create an event with name and optional typed properties.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     */
+    public AnalyticsEvent(String name, EventProperties properties) {
+        this(name, properties, Flags.DEFAULTS);
+    }
+
+    /**
+     * Create an event with name and optional typed properties.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties. They are copied so that later modifications do not change the event.
+     * @param flags      Optional flags, see {@link Analytics#trackEvent(String, EventProperties, int)}.
+     */
+    public AnalyticsEvent(String name, EventProperties properties, int flags) {
+        mName = name;
+        if (properties != null) {
+            mProperties = new EventProperties();
+            mProperties.getProperties().putAll(properties.getProperties());
+        } else {
+            mProperties = null;
+        }
+        mFlags = flags;
+    }
+
+    private static EventProperties convertProperties(Map<String, String> properties) {
+        if (properties == null) {
+            return null;
+        }
+        EventProperties eventProperties = new EventProperties();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            eventProperties.set(entry.getKey(), entry.getValue());
+        }
+        return eventProperties;
+    }
+
+    /**
+     * Get the event name.
+     *
+     * @return event name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the event properties.
+     *
+     * @return event properties, may be null.
+     */
+    EventProperties getProperties() {
+        return mProperties;
+    }
+
+    /**
+     * Get the event flags.
+     *
+     * @return event flags.
+     */
+    public int getFlags() {
+        return mFlags;
+    }
+}
@@ -17,11 +17,14 @@ import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -251,27 +254,59 @@ public class AnalyticsTransmissionTarget {
      */
     public void trackEvent(String name, EventProperties properties, int flags) {
 
-        /* Merge common properties. More specific target wins conflicts. */
-        EventProperties mergedProperties = new EventProperties();
-        for (AnalyticsTransmissionTarget target = this; target != null; target = target.mParentTarget) {
-            target.getPropertyConfigurator().mergeEventProperties(mergedProperties);
-        }
+        /* Track event with merged properties. */
+        Analytics.trackEvent(name, mergeEventProperties(properties), this, flags);
+    }
 
-        /* Override with parameter. */
-        if (properties != null) {
-            mergedProperties.getProperties().putAll(properties.getProperties());
+    /**
+     * Track custom events together. This is faster than calling {@link #trackEvent} for each event:
+     * the events are validated, decorated and persisted at once.
+     * <p>
+     * Each event is validated with the same rules as {@link #trackEvent(String, EventProperties, int)}.
+     *
+     * @param events Events to track.
+     */
+    public void trackEvents(Collection<AnalyticsEvent> events) {
+        if (events == null) {
+            return;
         }
+        List<AnalyticsEvent> mergedEvents = new ArrayList<>(events.size());
+        for (AnalyticsEvent event : events) {
+            if (event != null) {
+                mergedEvents.add(new AnalyticsEvent(event.getName(), mergeEventProperties(event.getProperties()), event.getFlags()));
+            }
+        }
+        Analytics.trackEvents(mergedEvents, this);
+    }
+
+    /**
+     * Merge common properties of this target and its parents with event properties.
+     *
+     * @param properties event properties, may be null.
+     * @return merged properties, null if there are no properties at all.
+     */
+    private EventProperties mergeEventProperties(EventProperties properties) {
+
+        /* Common properties of this target and its parents are already merged. */
+        TypedProperty[] commonProperties = mPropertyConfigurator.getSnapshot().getEventProperties();
 
         /*
          * If we passed null as parameter and no common properties set,
          * keep null for consistency with Analytics class regarding null vs empty.
          */
-        else if (mergedProperties.getProperties().isEmpty()) {
-            mergedProperties = null;
+        if (properties == null && commonProperties.length == 0) {
+            return null;
+        }
+        EventProperties mergedProperties = new EventProperties();
+        for (TypedProperty property : commonProperties) {
+            mergedProperties.getProperties().put(property.getName(), property);
         }
 
-        /* Track event with merged properties. */
-        Analytics.trackEvent(name, mergedProperties, this, flags);
+        /* Override with parameter. */
+        if (properties != null) {
+            mergedProperties.getProperties().putAll(properties.getProperties());
+        }
+        return mergedProperties;
     }
 
     /**
@@ -361,6 +396,33 @@ public class AnalyticsTransmissionTarget {
         return future;
     }
 
+    /**
+     * Send an event to this target from only a percentage of installations.
+     * The selection is stable: for a given event name, an installation always or never sends the event.
+     * The rate is recorded in the <code>popSample</code> field of the sent events.
+     * This does not apply to child targets.
+     *
+     * @param eventName    An event name, or null for all events of this target.
+     * @param samplingRate Percentage of installations sending the event, between 0 and 100.
+     */
+    public void setEventSamplingRate(String eventName, double samplingRate) {
+        Analytics.getInstance().getEventSampler().setSamplingRate(mTransmissionTargetToken, eventName, samplingRate);
+    }
+
+    /**
+     * Limit the number of times an event is sent to this target. Events exceeding the limit are discarded.
+     * The limit of an event name applies in addition to the limit shared by all events of this target
+     * and to the limits set with {@link Analytics#setEventRateLimit(String, int, long)}.
+     * This does not apply to child targets.
+     *
+     * @param eventName      An event name, or null to share the limit between all events of this target.
+     * @param maxEventCount  Maximum number of events sent per interval, 0 to remove the limit.
+     * @param intervalMillis Interval in milliseconds.
+     */
+    public void setEventRateLimit(String eventName, int maxEventCount, long intervalMillis) {
+        Analytics.getInstance().getEventSampler().setRateLimit(mTransmissionTargetToken, eventName, maxEventCount, intervalMillis);
+    }
+
     /**
      * Pauses log transmission for this target.
      * This does not pause child targets.
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Aggregates metric samples in memory between two flushes.
+ * Recording a sample of an already known metric does not allocate memory.
+ * Metrics without samples since the previous flush are removed when flushed.
+ */
+class MetricAggregator {
+
+    /**
+     * Property name for the number of samples or the counter total.
+     */
+    @VisibleForTesting
+    static final String COUNT_PROPERTY = "count";
+
+    /**
+     * Property name for the sum of samples.
+     */
+    @VisibleForTesting
+    static final String SUM_PROPERTY = "sum";
+
+    /**
+     * Property name for the minimum sample.
+     */
+    @VisibleForTesting
+    static final String MIN_PROPERTY = "min";
+
+    /**
+     * Property name for the maximum sample.
+     */
+    @VisibleForTesting
+    static final String MAX_PROPERTY = "max";
+
+    /**
+     * Reported quantiles.
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * Property names for the reported quantiles.
+     */
+    @VisibleForTesting
+    static final String[] QUANTILE_PROPERTIES = {"p50", "p90", "p99"};
+
+    /**
+     * Maximum number of metrics aggregated between two flushes.
+     */
+    @VisibleForTesting
+    static final int MAX_METRICS = 100;
+
+    /**
+     * Metrics by name.
+     */
+    private final ConcurrentMap<String, Metric> mMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Whether samples were recorded since the last flush.
+     */
+    private final AtomicBoolean mFlushPending = new AtomicBoolean();
+
+    /**
+     * Record a sample of a histogram metric.
+     *
+     * @param name  metric name.
+     * @param value sample value.
+     * @return true if this is the first sample since the last flush, so a flush needs to be scheduled.
+     */
+    boolean recordValue(@NonNull String name, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || value < 0) {
+            AppCenterLog.error(LOG_TAG, "Metric '" + name + "' value must be a finite positive number or zero.");
+            return false;
+        }
+        Metric metric;
+        do {
+            metric = getMetric(name, true);
+            if (metric == null) {
+                return false;
+            }
+        } while (!((Histogram) metric).record(value));
+        return mFlushPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Increment a counter metric.
+     *
+     * @param name  metric name.
+     * @param delta value to add.
+     * @return true if this is the first sample since the last flush, so a flush needs to be scheduled.
+     */
+    boolean incrementCounter(@NonNull String name, long delta) {
+        Metric metric;
+        do {
+            metric = getMetric(name, false);
+            if (metric == null) {
+                return false;
+            }
+        } while (!((Counter) metric).add(delta));
+        return mFlushPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Summarize and reset all metrics having samples since the last flush, remove the others
+     * so that {@link #MAX_METRICS} only limits the metrics used between two flushes.
+     *
+     * @return properties by metric name, in no particular order.
+     */
+    @NonNull
+    Map<String, List<TypedProperty>> flush() {
+        mFlushPending.set(false);
+        Map<String, List<TypedProperty>> summaries = new LinkedHashMap<>();
+        for (Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            List<TypedProperty> properties = entry.getValue().flush();
+            if (properties != null) {
+                summaries.put(entry.getKey(), properties);
+            } else if (entry.getValue().isRemoved()) {
+                mMetrics.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Check if samples were recorded since the last flush.
+     *
+     * @return true if there is something to flush.
+     */
+    boolean isFlushPending() {
+        return mFlushPending.get();
+    }
+
+    /**
+     * Discard all metrics.
+     */
+    void clear() {
+        mMetrics.clear();
+        mFlushPending.set(false);
+    }
+
+    /**
+     * Get or create a metric.
+     *
+     * @param name      metric name.
+     * @param histogram true for a histogram, false for a counter.
+     * @return metric or null if the metric cannot be used.
+     */
+    private Metric getMetric(String name, boolean histogram) {
+        Metric metric = mMetrics.get(name);
+
+        /* Make sure a metric removed by a concurrent flush is replaced. */
+        if (metric != null && metric.isRemoved()) {
+            mMetrics.remove(name, metric);
+            metric = null;
+        }
+        if (metric == null) {
+            if (mMetrics.size() >= MAX_METRICS) {
+                AppCenterLog.error(LOG_TAG, "Cannot track more than " + MAX_METRICS + " metrics, '" + name + "' is ignored.");
+                return null;
+            }
+            Metric newMetric = histogram ? new Histogram() : new Counter();
+            metric = mMetrics.putIfAbsent(name, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+        if (histogram != metric instanceof Histogram) {
+            AppCenterLog.error(LOG_TAG, "Metric '" + name + "' is already used as a " + (histogram ? "counter." : "histogram."));
+            return null;
+        }
+        return metric;
+    }
+
+    private static DoubleTypedProperty doubleProperty(String name, double value) {
+        DoubleTypedProperty property = new DoubleTypedProperty();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
+
+    private static LongTypedProperty longProperty(String name, long value) {
+        LongTypedProperty property = new LongTypedProperty();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
+
+    /**
+     * Aggregated metric.
+     */
+    private interface Metric {
+
+        /**
+         * Summarize and reset the metric. A metric without samples since the last flush is marked
+         * as removed and no longer accepts samples.
+         *
+         * @return properties or null if there was no sample since the last flush.
+         */
+        List<TypedProperty> flush();
+
+        /**
+         * Check if the metric was removed by a flush.
+         *
+         * @return true if removed.
+         */
+        boolean isRemoved();
+    }
+
+    /**
+     * Counter metric, reported as its total since the last flush.
+     */
+    private static class Counter implements Metric {
+
+        private long mValue;
+
+        private boolean mUpdated;
+
+        private boolean mRemoved;
+
+        /**
+         * Add a value to the counter.
+         *
+         * @param delta value to add.
+         * @return false if the counter was removed and the value not added.
+         */
+        synchronized boolean add(long delta) {
+            if (mRemoved) {
+                return false;
+            }
+            mValue += delta;
+            mUpdated = true;
+            return true;
+        }
+
+        @Override
+        public synchronized List<TypedProperty> flush() {
+            if (!mUpdated) {
+                mRemoved = true;
+                return null;
+            }
+            long value = mValue;
+            mValue = 0;
+            mUpdated = false;
+            if (value == 0) {
+                return null;
+            }
+            List<TypedProperty> properties = new ArrayList<>(1);
+            properties.add(longProperty(COUNT_PROPERTY, value));
+            return properties;
+        }
+
+        @Override
+        public synchronized boolean isRemoved() {
+            return mRemoved;
+        }
+    }
+
+    /**
+     * Histogram metric. Quantiles are estimated from logarithmic buckets that keep the relative
+     * error under {@link #RELATIVE_ACCURACY} for values between {@link #MIN_INDEXED_VALUE}
+     * and {@link #MAX_INDEXED_VALUE}, estimates are always within the minimum and maximum samples.
+     */
+    @VisibleForTesting
+    static class Histogram implements Metric {
+
+        /**
+         * Relative accuracy of quantile estimates.
+         */
+        @VisibleForTesting
+        static final double RELATIVE_ACCURACY = 0.02;
+
+        /**
+         * Values lower or equal to this one share the first bucket, negative values are not supported.
+         */
+        private static final double MIN_INDEXED_VALUE = 1e-3;
+
+        /**
+         * Values greater than this one share the last bucket.
+         */
+        private static final double MAX_INDEXED_VALUE = 1e9;
+
+        /**
+         * Ratio between two consecutive bucket bounds.
+         */
+        private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+        private static final double LOG_GAMMA = Math.log(GAMMA);
+
+        private static final int BUCKET_COUNT = (int) Math.ceil(Math.log(MAX_INDEXED_VALUE / MIN_INDEXED_VALUE) / LOG_GAMMA) + 2;
+
+        /**
+         * Sample count per bucket.
+         */
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+
+        private long mCount;
+
+        private double mSum;
+
+        private double mMin;
+
+        private double mMax;
+
+        private boolean mRemoved;
+
+        /**
+         * Record a sample.
+         *
+         * @param value sample value.
+         * @return false if the histogram was removed and the sample not recorded.
+         */
+        synchronized boolean record(double value) {
+            if (mRemoved) {
+                return false;
+            }
+            mBuckets[getBucketIndex(value)]++;
+            if (mCount == 0) {
+                mMin = value;
+                mMax = value;
+            } else {
+                mMin = Math.min(mMin, value);
+                mMax = Math.max(mMax, value);
+            }
+            mCount++;
+            mSum += value;
+            return true;
+        }
+
+        @Override
+        public synchronized List<TypedProperty> flush() {
+            if (mCount == 0) {
+                mRemoved = true;
+                return null;
+            }
+            List<TypedProperty> properties = new ArrayList<>(4 + QUANTILES.length);
+            properties.add(longProperty(COUNT_PROPERTY, mCount));
+            properties.add(doubleProperty(SUM_PROPERTY, mSum));
+            properties.add(doubleProperty(MIN_PROPERTY, mMin));
+            properties.add(doubleProperty(MAX_PROPERTY, mMax));
+            for (int i = 0; i < QUANTILES.length; i++) {
+                properties.add(doubleProperty(QUANTILE_PROPERTIES[i], getQuantile(QUANTILES[i])));
+            }
+            Arrays.fill(mBuckets, 0);
+            mCount = 0;
+            mSum = 0;
+            return properties;
+        }
+
+        @Override
+        public synchronized boolean isRemoved() {
+            return mRemoved;
+        }
+
+        @VisibleForTesting
+        synchronized double getQuantile(double quantile) {
+            long rank = (long) (quantile * (mCount - 1));
+            long cumulatedCount = 0;
+            int index = 0;
+            for (; index < BUCKET_COUNT - 1; index++) {
+                cumulatedCount += mBuckets[index];
+                if (cumulatedCount > rank) {
+                    break;
+                }
+            }
+            return Math.max(mMin, Math.min(mMax, getBucketValue(index)));
+        }
+
+        private static int getBucketIndex(double value) {
+            if (value <= MIN_INDEXED_VALUE) {
+                return 0;
+            }
+            int index = (int) Math.ceil(Math.log(value / MIN_INDEXED_VALUE) / LOG_GAMMA);
+            return Math.min(index, BUCKET_COUNT - 1);
+        }
+
+        /**
+         * Get the value that minimizes the relative error for all the values of a bucket.
+         */
+        private static double getBucketValue(int index) {
+            if (index == 0) {
+                return MIN_INDEXED_VALUE;
+            }
+            return MIN_INDEXED_VALUE * Math.pow(GAMMA, index) * 2 / (GAMMA + 1);
+        }
+    }
+}
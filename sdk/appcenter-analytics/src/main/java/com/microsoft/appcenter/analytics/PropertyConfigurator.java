@@ -19,7 +19,9 @@ import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
 
@@ -33,25 +35,30 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private static final String ANDROID_DEVICE_ID_PREFIX = "a" + COMMON_SCHEMA_PREFIX_SEPARATOR;
 
+    /**
+     * Incremented whenever a property of any configurator changes, invalidating all snapshots.
+     */
+    private static final AtomicLong sVersion = new AtomicLong();
+
     /**
      * App name to override common schema part A 'app.name'.
      */
-    private String mAppName;
+    private volatile String mAppName;
 
     /**
      * App version to override common schema part A 'app.ver'.
      */
-    private String mAppVersion;
+    private volatile String mAppVersion;
 
     /**
      * App locale to override common schema part A 'app.locale'.
      */
-    private String mAppLocale;
+    private volatile String mAppLocale;
 
     /**
      * User identifier to override common schema part A 'user.localId'.
      */
-    private String mUserId;
+    private volatile String mUserId;
 
     /**
      * Flag to enable populating common schema 'device.localId'.
@@ -68,6 +75,11 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private final EventProperties mEventProperties = new EventProperties();
 
+    /**
+     * Effective properties of this target including inherited ones, null until first used.
+     */
+    private volatile Snapshot mSnapshot;
+
     /**
      * Create a new property configurator.
      *
@@ -90,56 +102,19 @@ public class PropertyConfigurator extends AbstractChannelListener {
             UserExtension user = ((CommonSchemaLog) log).getExt().getUser();
             DeviceExtension device = ((CommonSchemaLog) log).getExt().getDevice();
 
-            /* Override app name if not null, else use the name of the nearest parent. */
-            if (mAppName != null) {
-                app.setName(mAppName);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppName = target.getPropertyConfigurator().getAppName();
-                    if (parentAppName != null) {
-                        app.setName(parentAppName);
-                        break;
-                    }
-                }
+            /* Override with the values of this target, else use the values of the nearest parent. */
+            Snapshot snapshot = getSnapshot();
+            if (snapshot.mAppName != null) {
+                app.setName(snapshot.mAppName);
             }
-
-            /* Override app version if not null, else use the version of the nearest parent. */
-            if (mAppVersion != null) {
-                app.setVer(mAppVersion);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppVersion = target.getPropertyConfigurator().getAppVersion();
-                    if (parentAppVersion != null) {
-                        app.setVer(parentAppVersion);
-                        break;
-                    }
-                }
+            if (snapshot.mAppVersion != null) {
+                app.setVer(snapshot.mAppVersion);
             }
-
-            /* Override app locale if not null, else use the locale of the nearest parent. */
-            if (mAppLocale != null) {
-                app.setLocale(mAppLocale);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppLocale = target.getPropertyConfigurator().getAppLocale();
-                    if (parentAppLocale != null) {
-                        app.setLocale(parentAppLocale);
-                        break;
-                    }
-                }
+            if (snapshot.mAppLocale != null) {
+                app.setLocale(snapshot.mAppLocale);
             }
-
-            /* Override userId if not null, else use the userId of the nearest parent. */
-            if (mUserId != null) {
-                user.setLocalId(mUserId);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentUserId = target.getPropertyConfigurator().getUserId();
-                    if (parentUserId != null) {
-                        user.setLocalId(parentUserId);
-                        break;
-                    }
-                }
+            if (snapshot.mUserId != null) {
+                user.setLocalId(snapshot.mUserId);
             }
 
             /* Fill out the device id if it has been collected. */
@@ -153,6 +128,32 @@ public class PropertyConfigurator extends AbstractChannelListener {
         }
     }
 
+    /**
+     * Get the effective properties of this target, rebuilding them if any configurator changed since last time.
+     *
+     * @return effective properties.
+     */
+    @NonNull
+    Snapshot getSnapshot() {
+
+        /* Read version before properties so that a concurrent change invalidates the new snapshot. */
+        long version = sVersion.get();
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null || snapshot.mVersion != version) {
+            snapshot = new Snapshot(mTransmissionTarget, version);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Invalidate snapshots of all targets, called after changing a property.
+     * Properties rarely change so we don't track which targets inherit from this one.
+     */
+    private static void invalidateSnapshots() {
+        sVersion.incrementAndGet();
+    }
+
     /**
      * Checks if the log should be overridden by this instance.
      *
@@ -164,15 +165,6 @@ public class PropertyConfigurator extends AbstractChannelListener {
                 mTransmissionTarget.isEnabled();
     }
 
-    /**
-     * Get app name.
-     *
-     * @return App name.
-     */
-    private String getAppName() {
-        return mAppName;
-    }
-
     /**
      * Override common schema Part A property App.Name.
      *
@@ -184,19 +176,11 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppName = appName;
+                invalidateSnapshots();
             }
         });
     }
 
-    /**
-     * Get app version.
-     *
-     * @return App version.
-     */
-    private String getAppVersion() {
-        return mAppVersion;
-    }
-
     /**
      * Override common schema Part A property App.Version.
      *
@@ -208,19 +192,11 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppVersion = appVersion;
+                invalidateSnapshots();
             }
         });
     }
 
-    /**
-     * Get app locale.
-     *
-     * @return App locale.
-     */
-    private String getAppLocale() {
-        return mAppLocale;
-    }
-
     /**
      * Override common schema Part A property App.Locale.
      *
@@ -232,19 +208,11 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppLocale = appLocale;
+                invalidateSnapshots();
             }
         });
     }
 
-    /**
-     * Get user id.
-     *
-     * @return user id.
-     */
-    private String getUserId() {
-        return mUserId;
-    }
-
     /**
      * Set the user identifier.
      * The user identifier needs to start with the c: prefix or must not have a prefix.
@@ -260,6 +228,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
                 @Override
                 public void run() {
                     mUserId = UserIdContext.getPrefixedUserId(userId);
+                    invalidateSnapshots();
                 }
             });
         }
@@ -274,6 +243,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, boolean value) {
         mEventProperties.set(key, value);
+        invalidateSnapshots();
     }
 
     /**
@@ -285,6 +255,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, Date value) {
         mEventProperties.set(key, value);
+        invalidateSnapshots();
     }
 
     /**
@@ -296,6 +267,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, double value) {
         mEventProperties.set(key, value);
+        invalidateSnapshots();
     }
 
     /**
@@ -307,6 +279,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, long value) {
         mEventProperties.set(key, value);
+        invalidateSnapshots();
     }
 
     /**
@@ -318,6 +291,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, String value) {
         mEventProperties.set(key, value);
+        invalidateSnapshots();
     }
 
     /**
@@ -327,6 +301,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void removeEventProperty(String key) {
         mEventProperties.getProperties().remove(key);
+        invalidateSnapshots();
     }
 
     /**
@@ -347,12 +322,67 @@ public class PropertyConfigurator extends AbstractChannelListener {
      * Extracted method to synchronize on each level at once while reading properties.
      * Nesting synchronize between parent/child could lead to deadlocks.
      */
-    synchronized void mergeEventProperties(EventProperties mergedProperties) {
+    private synchronized void mergeEventProperties(Map<String, TypedProperty> mergedProperties) {
         for (Map.Entry<String, TypedProperty> property : mEventProperties.getProperties().entrySet()) {
             String key = property.getKey();
-            if (!mergedProperties.getProperties().containsKey(key)) {
-                mergedProperties.getProperties().put(key, property.getValue());
+            if (!mergedProperties.containsKey(key)) {
+                mergedProperties.put(key, property.getValue());
+            }
+        }
+    }
+
+    /**
+     * Immutable effective properties of a target: its own values if set, else the values of the nearest parent.
+     */
+    static class Snapshot {
+
+        /**
+         * Version of the properties used to build this snapshot.
+         */
+        private final long mVersion;
+
+        private final String mAppName;
+
+        private final String mAppVersion;
+
+        private final String mAppLocale;
+
+        private final String mUserId;
+
+        /**
+         * Common event properties merged with the ones of the parents, more specific target wins conflicts.
+         */
+        private final TypedProperty[] mEventProperties;
+
+        private Snapshot(AnalyticsTransmissionTarget transmissionTarget, long version) {
+            mVersion = version;
+            String appName = null;
+            String appVersion = null;
+            String appLocale = null;
+            String userId = null;
+            Map<String, TypedProperty> eventProperties = new HashMap<>();
+            for (AnalyticsTransmissionTarget target = transmissionTarget; target != null; target = target.mParentTarget) {
+                PropertyConfigurator configurator = target.getPropertyConfigurator();
+                appName = appName != null ? appName : configurator.mAppName;
+                appVersion = appVersion != null ? appVersion : configurator.mAppVersion;
+                appLocale = appLocale != null ? appLocale : configurator.mAppLocale;
+                userId = userId != null ? userId : configurator.mUserId;
+                configurator.mergeEventProperties(eventProperties);
             }
+            mAppName = appName;
+            mAppVersion = appVersion;
+            mAppLocale = appLocale;
+            mUserId = userId;
+            mEventProperties = eventProperties.values().toArray(new TypedProperty[0]);
+        }
+
+        /**
+         * Get common event properties.
+         *
+         * @return common event properties, must not be modified.
+         */
+        TypedProperty[] getEventProperties() {
+            return mEventProperties;
         }
     }
 }
@@ -22,6 +22,7 @@ import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -45,9 +46,26 @@ public class AnalyticsValidator extends AbstractChannelListener {
     /**
      * Max number of properties.
      */
-    @VisibleForTesting
     static final int MAX_PROPERTY_COUNT = 20;
 
+    /**
+     * Max number of event names whose last valid property keys are remembered.
+     */
+    @VisibleForTesting
+    static final int MAX_VALIDATED_EVENT_SHAPES = 256;
+
+    /**
+     * Property keys of the last event validated without any change, by event name, least recently used first.
+     * Events having the same name and keys skip name and key validation. Only accessed from the channel thread.
+     */
+    private final Map<String, String[]> mValidatedEventShapes = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > MAX_VALIDATED_EVENT_SHAPES;
+        }
+    };
+
     /**
      * Validates log.
      *
@@ -72,12 +90,56 @@ public class AnalyticsValidator extends AbstractChannelListener {
      * @return true if validation passed, false otherwise.
      */
     private boolean validateLog(@NonNull EventLog log) {
-        String name = validateName(log.getName(), log.getType());
+        String originalName = log.getName();
+        List<TypedProperty> properties = log.getTypedProperties();
+        if (originalName != null && isValidatedShape(mValidatedEventShapes.get(originalName), properties)) {
+            return true;
+        }
+        String name = validateName(originalName, log.getType());
         if (name == null) {
             return false;
         }
-        validateProperties(log.getTypedProperties());
+        boolean propertiesUnchanged = validateProperties(properties);
         log.setName(name);
+
+        /* Remember the shape only if nothing had to be fixed, so that the fast path never needs to change the log. */
+        if (propertiesUnchanged && name.equals(originalName)) {
+            String[] keys = new String[properties == null ? 0 : properties.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = properties.get(i).getName();
+            }
+            mValidatedEventShapes.put(name, keys);
+        }
+        return true;
+    }
+
+    /**
+     * Check if properties have the keys of an event validated before and valid values.
+     *
+     * @param keys       keys of the validated event having the same name, null if none.
+     * @param properties properties to check.
+     * @return true if the event is valid as is, false if it needs a full validation.
+     */
+    private static boolean isValidatedShape(String[] keys, List<TypedProperty> properties) {
+        if (keys == null) {
+            return false;
+        }
+        int size = properties == null ? 0 : properties.size();
+        if (size != keys.length) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            TypedProperty property = properties.get(i);
+            if (!keys[i].equals(property.getName())) {
+                return false;
+            }
+            if (property instanceof StringTypedProperty) {
+                String value = ((StringTypedProperty) property).getValue();
+                if (value == null || value.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                    return false;
+                }
+            }
+        }
         return true;
     }
 
@@ -151,11 +213,13 @@ public class AnalyticsValidator extends AbstractChannelListener {
      * Validates typed properties.
      *
      * @param properties Typed properties collection to validate.
+     * @return true if properties were valid as is, false if some had to be removed or truncated.
      */
-    private static void validateProperties(List<TypedProperty> properties) {
+    private static boolean validateProperties(List<TypedProperty> properties) {
         if (properties == null) {
-            return;
+            return true;
         }
+        boolean unchanged = true;
         int count = 0;
         boolean maxCountReached = false;
         String message;
@@ -170,11 +234,13 @@ public class AnalyticsValidator extends AbstractChannelListener {
                     maxCountReached = true;
                 }
                 iterator.remove();
+                unchanged = false;
                 continue;
             }
             if (key == null || key.isEmpty()) {
                 AppCenterLog.warn(LOG_TAG, "A typed property key cannot be null or empty. Property will be skipped.");
                 iterator.remove();
+                unchanged = false;
                 continue;
             }
             if (key.length() > MAX_PROPERTY_ITEM_LENGTH) {
@@ -183,6 +249,7 @@ public class AnalyticsValidator extends AbstractChannelListener {
                 key = key.substring(0, MAX_PROPERTY_ITEM_LENGTH);
                 property = copyProperty(property, key);
                 iterator.set(property);
+                unchanged = false;
                 copyNeededOnModification = false;
             }
             if (property instanceof StringTypedProperty) {
@@ -192,12 +259,14 @@ public class AnalyticsValidator extends AbstractChannelListener {
                     message = String.format("Typed property '%s' : property value cannot be null. Property '%s' will be skipped.", key, key);
                     AppCenterLog.warn(LOG_TAG, message);
                     iterator.remove();
+                    unchanged = false;
                     continue;
                 }
                 if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
                     message = String.format("A String property '%s' : property value cannot be longer than %s characters. Property value will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
                     AppCenterLog.warn(LOG_TAG, message);
                     value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+                    unchanged = false;
                     if (copyNeededOnModification) {
                         stringTypedProperty = new StringTypedProperty();
                         stringTypedProperty.setName(key);
@@ -210,6 +279,7 @@ public class AnalyticsValidator extends AbstractChannelListener {
             }
             count++;
         }
+        return unchanged;
     }
 
     private static TypedProperty copyProperty(TypedProperty property, String newKey) {
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics.channel;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.channel.AbstractChannelListener;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HashUtils;
+import com.microsoft.appcenter.utils.IdHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_COUNT;
+
+/**
+ * Samples and rate limits events by name and transmission target.
+ * <p>
+ * Sampling is deterministic for an installation: for a given event name, an installation either
+ * always or never sends the event. The sampling rate is added to kept events so that counts can
+ * be re-weighted: as a property for App Center and as the Part A <code>popSample</code> field for
+ * One Collector.
+ * <p>
+ * This listener must be added after the ones validating logs so that only events that would be
+ * sent are counted by rate limits. Events are rejected before being serialized.
+ */
+public class EventSampler extends AbstractChannelListener {
+
+    /**
+     * Property added to App Center events to record the sampling rate in percent.
+     */
+    @VisibleForTesting
+    static final String SAMPLING_RATE_PROPERTY = "samplingRate";
+
+    /**
+     * Sampling rate to send all events.
+     */
+    private static final double FULL_SAMPLING_RATE = 100;
+
+    /**
+     * Rules by scope then by event name. Null scope is for all events,
+     * null event name for all events of the scope.
+     */
+    private final Map<String, Map<String, Rule>> mRules = new HashMap<>();
+
+    /**
+     * Cache of the sampling score of this installation by event name.
+     */
+    private final Map<String, Double> mSamplingScores = new HashMap<>();
+
+    /**
+     * Rules matching the event being filtered, most specific first, reused to avoid allocations.
+     */
+    private final Rule[] mMatchingRules = new Rule[4];
+
+    /**
+     * Install identifier, read when first needed.
+     */
+    private String mInstallId;
+
+    /**
+     * Set the percentage of installations sending an event.
+     *
+     * @param transmissionTargetToken transmission target token, or null for all events.
+     * @param eventName               event name, or null for all events of the scope.
+     * @param samplingRate            percentage of installations sending the event, between 0 and 100.
+     */
+    public synchronized void setSamplingRate(String transmissionTargetToken, String eventName, double samplingRate) {
+        if (!(samplingRate >= 0 && samplingRate <= FULL_SAMPLING_RATE)) {
+            AppCenterLog.error(LOG_TAG, "Sampling rate must be between 0 and 100.");
+            return;
+        }
+        Rule rule = getRule(transmissionTargetToken, eventName);
+        rule.mSamplingRate = samplingRate;
+        rule.mSamplingRateSet = true;
+    }
+
+    /**
+     * Limit the number of events sent.
+     *
+     * @param transmissionTargetToken transmission target token, or null for all events.
+     * @param eventName               event name, or null for all events of the scope that share the limit.
+     * @param maxEventCount           maximum number of events sent per interval, 0 or less to remove the limit.
+     * @param intervalMillis          interval in milliseconds.
+     */
+    public synchronized void setRateLimit(String transmissionTargetToken, String eventName, int maxEventCount, long intervalMillis) {
+        Rule rule = getRule(transmissionTargetToken, eventName);
+        if (maxEventCount <= 0) {
+            rule.mMaxEventCount = 0;
+            return;
+        }
+        if (intervalMillis <= 0) {
+            AppCenterLog.error(LOG_TAG, "Rate limit interval must be positive.");
+            return;
+        }
+        rule.mMaxEventCount = maxEventCount;
+        rule.mIntervalMillis = intervalMillis;
+        rule.mTokens = maxEventCount;
+        rule.mLastRefillTime = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public synchronized boolean shouldFilter(@NonNull Log log) {
+
+        /* Event logs sent to One Collector are filtered before reaching here, their converted logs are not. */
+        String scope;
+        String eventName;
+        if (log instanceof EventLog) {
+            scope = null;
+            eventName = ((EventLog) log).getName();
+        } else if (log instanceof CommonSchemaEventLog) {
+            scope = ((CommonSchemaLog) log).getIKey();
+            eventName = ((CommonSchemaLog) log).getName();
+        } else {
+            return false;
+        }
+        int ruleCount = findRules(scope, eventName);
+        if (ruleCount == 0) {
+            return false;
+        }
+
+        /* Sampling: the most specific rule defining a sampling rate applies. */
+        double samplingRate = FULL_SAMPLING_RATE;
+        for (int i = 0; i < ruleCount; i++) {
+            if (mMatchingRules[i].mSamplingRateSet) {
+                samplingRate = mMatchingRules[i].mSamplingRate;
+                break;
+            }
+        }
+        if (samplingRate < FULL_SAMPLING_RATE && getSamplingScore(eventName) >= samplingRate) {
+            AppCenterLog.verbose(LOG_TAG, "Event '" + eventName + "' is not sampled.");
+            return true;
+        }
+
+        /* Rate limit: every matching limit applies, tokens are consumed only if all of them allow the event. */
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ruleCount; i++) {
+            Rule rule = mMatchingRules[i];
+            if (rule.mMaxEventCount > 0 && !rule.refill(now)) {
+                AppCenterLog.verbose(LOG_TAG, "Event '" + eventName + "' exceeds rate limit.");
+                return true;
+            }
+        }
+        for (int i = 0; i < ruleCount; i++) {
+            Rule rule = mMatchingRules[i];
+            if (rule.mMaxEventCount > 0) {
+                rule.mTokens--;
+            }
+        }
+        if (samplingRate < FULL_SAMPLING_RATE) {
+            recordSamplingRate(log, samplingRate);
+        }
+        return false;
+    }
+
+    @NonNull
+    private Rule getRule(String transmissionTargetToken, String eventName) {
+        String scope = transmissionTargetToken == null ? null : getScope(transmissionTargetToken);
+        Map<String, Rule> rules = mRules.get(scope);
+        if (rules == null) {
+            rules = new HashMap<>();
+            mRules.put(scope, rules);
+        }
+        Rule rule = rules.get(eventName);
+        if (rule == null) {
+            rule = new Rule();
+            rules.put(eventName, rule);
+        }
+        return rule;
+    }
+
+    /**
+     * Find the rules matching an event into {@link #mMatchingRules}, most specific first:
+     * the event name then all events of the scope, then the same for all scopes.
+     *
+     * @return number of matching rules.
+     */
+    private int findRules(String scope, String eventName) {
+        int count = 0;
+        if (scope != null) {
+            count = findRules(mRules.get(scope), eventName, count);
+        }
+        return findRules(mRules.get(null), eventName, count);
+    }
+
+    private int findRules(Map<String, Rule> rules, String eventName, int count) {
+        if (rules == null) {
+            return count;
+        }
+        Rule rule = eventName != null ? rules.get(eventName) : null;
+        if (rule != null) {
+            mMatchingRules[count++] = rule;
+        }
+        rule = rules.get(null);
+        if (rule != null) {
+            mMatchingRules[count++] = rule;
+        }
+        return count;
+    }
+
+    /**
+     * Get the scope of a transmission target, matching the iKey of Common Schema logs.
+     */
+    private static String getScope(String transmissionTargetToken) {
+        return "o" + COMMON_SCHEMA_PREFIX_SEPARATOR + PartAUtils.getTargetKey(transmissionTargetToken);
+    }
+
+    /**
+     * Get a stable score between 0 and 100 for this installation and event name.
+     */
+    @VisibleForTesting
+    double getSamplingScore(String eventName) {
+        Double score = mSamplingScores.get(eventName);
+        if (score == null) {
+            if (mInstallId == null) {
+                mInstallId = IdHelper.getInstallId().toString();
+            }
+            String hash = HashUtils.sha256(mInstallId + ":" + eventName);
+            score = Long.parseLong(hash.substring(0, 8), 16) * FULL_SAMPLING_RATE / 0x100000000L;
+            mSamplingScores.put(eventName, score);
+        }
+        return score;
+    }
+
+    /**
+     * Record the sampling rate in a sampled event. The App Center property is reserved: it replaces
+     * a property of the same name and takes the place of the last one if the event already has
+     * the maximum number of properties.
+     */
+    private static void recordSamplingRate(Log log, double samplingRate) {
+        if (log instanceof CommonSchemaLog) {
+            ((CommonSchemaLog) log).setPopSample(samplingRate);
+        } else {
+            EventLog eventLog = (EventLog) log;
+            DoubleTypedProperty property = new DoubleTypedProperty();
+            property.setName(SAMPLING_RATE_PROPERTY);
+            property.setValue(samplingRate);
+            List<TypedProperty> properties = eventLog.getTypedProperties();
+            properties = properties != null ? new ArrayList<>(properties) : new ArrayList<TypedProperty>(1);
+            for (Iterator<TypedProperty> iterator = properties.iterator(); iterator.hasNext(); ) {
+                if (SAMPLING_RATE_PROPERTY.equals(iterator.next().getName())) {
+                    AppCenterLog.warn(LOG_TAG, "Property '" + SAMPLING_RATE_PROPERTY + "' of sampled event '" + eventLog.getName() + "' is replaced by the sampling rate.");
+                    iterator.remove();
+                }
+            }
+            if (properties.size() >= MAX_PROPERTY_COUNT) {
+                TypedProperty removed = properties.remove(MAX_PROPERTY_COUNT - 1);
+                AppCenterLog.warn(LOG_TAG, "Property '" + removed.getName() + "' of sampled event '" + eventLog.getName() + "' is skipped to record the sampling rate.");
+            }
+            properties.add(property);
+            eventLog.setTypedProperties(properties);
+        }
+    }
+
+    /**
+     * Sampling rate and token bucket of an event name in a scope.
+     */
+    private static class Rule {
+
+        double mSamplingRate = FULL_SAMPLING_RATE;
+
+        boolean mSamplingRateSet;
+
+        int mMaxEventCount;
+
+        long mIntervalMillis;
+
+        double mTokens;
+
+        long mLastRefillTime;
+
+        /**
+         * Refill tokens for the time elapsed since the last refill.
+         *
+         * @return true if a token is available.
+         */
+        boolean refill(long now) {
+            mTokens = Math.min(mMaxEventCount, mTokens + (now - mLastRefillTime) * (double) mMaxEventCount / mIntervalMillis);
+            mLastRefillTime = now;
+            return mTokens >= 1;
+        }
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.microsoft.appcenter.analytics;
 
+import android.os.Handler;
 import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
@@ -44,6 +45,9 @@ abstract class AbstractAnalyticsTest {
     @Mock
     AppCenter mAppCenter;
 
+    @Mock
+    Handler mMainHandler;
+
     @Mock
     private AppCenterFuture<Boolean> mCoreEnabledFuture;
 
@@ -69,6 +73,7 @@ abstract class AbstractAnalyticsTest {
         mockStatic(HandlerUtils.class);
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
 
         /* First call to com.microsoft.appcenter.AppCenter.isEnabled shall return true, initial state. */
         mockStatic(SharedPreferencesManager.class);
@@ -27,8 +27,10 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +44,7 @@ import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.channel.EventSampler;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
@@ -69,12 +72,16 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -350,6 +357,206 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         AppCenterLog.warn(eq(AppCenter.LOG_TAG), anyString());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackEvents() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        EventProperties properties = new EventProperties().set("key", "value");
+        Analytics.trackEvents(Arrays.asList(
+                new AnalyticsEvent("eventName1"),
+                new AnalyticsEvent("eventName2", properties, CRITICAL),
+                null,
+                new AnalyticsEvent("eventName3", Collections.singletonMap("key", "value"), 0x03)));
+
+        /* Modifying properties after tracking does not change the event. */
+        properties.set("other", "value");
+
+        /* Verify events are enqueued together by persistence flag. */
+        ArgumentCaptor<List<Log>> normalLogs = ArgumentCaptor.forClass((Class) List.class);
+        ArgumentCaptor<List<Log>> criticalLogs = ArgumentCaptor.forClass((Class) List.class);
+        verify(channel).enqueue(normalLogs.capture(), eq(ANALYTICS_GROUP), eq(NORMAL));
+        verify(channel).enqueue(criticalLogs.capture(), eq(ANALYTICS_CRITICAL_GROUP), eq(CRITICAL));
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+        assertEquals(2, normalLogs.getValue().size());
+        assertEquals("eventName1", ((EventLog) normalLogs.getValue().get(0)).getName());
+        assertNull(((EventLog) normalLogs.getValue().get(0)).getTypedProperties());
+        assertEquals("eventName3", ((EventLog) normalLogs.getValue().get(1)).getName());
+        assertEquals(1, ((EventLog) normalLogs.getValue().get(1)).getTypedProperties().size());
+        assertEquals(1, criticalLogs.getValue().size());
+        assertEquals("eventName2", ((EventLog) criticalLogs.getValue().get(0)).getName());
+        assertEquals(1, ((EventLog) criticalLogs.getValue().get(0)).getTypedProperties().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackEventsNothingToTrack() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.trackEvents(null);
+        Analytics.trackEvents(Collections.<AnalyticsEvent>emptyList());
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackEventsNotStartedFromApp() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, null, false);
+        Analytics.trackEvents(Arrays.asList(new AnalyticsEvent("eventName1"), new AnalyticsEvent("eventName2")));
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+
+        /* The error is logged once for all events. */
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("not started from app"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackMetrics() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.trackMetric("latency", 10);
+        Analytics.trackMetric("latency", 20);
+        Analytics.incrementCounter("hits");
+        Analytics.incrementCounter("hits", 2);
+        Analytics.trackMetric(null, 1);
+        Analytics.incrementCounter(null);
+
+        /* Nothing is sent before the flush and it is scheduled only once. */
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        verifyStatic(AppCenterLog.class, times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("name cannot be null"));
+
+        /* Flush sends one event per metric. */
+        flush.getValue().run();
+        ArgumentCaptor<List<Log>> logs = ArgumentCaptor.forClass((Class) List.class);
+        verify(channel).enqueue(logs.capture(), eq(ANALYTICS_GROUP), eq(NORMAL));
+        assertEquals(2, logs.getValue().size());
+        Map<String, EventLog> eventLogs = new HashMap<>();
+        for (Log log : logs.getValue()) {
+            eventLogs.put(((EventLog) log).getName(), (EventLog) log);
+        }
+        assertEquals(7, eventLogs.get("latency").getTypedProperties().size());
+        List<TypedProperty> counterProperties = eventLogs.get("hits").getTypedProperties();
+        assertEquals(1, counterProperties.size());
+        assertEquals(3, ((LongTypedProperty) counterProperties.get(0)).getValue());
+
+        /* Next sample schedules a new flush. */
+        Analytics.incrementCounter("hits");
+        verify(mMainHandler, times(2)).postDelayed(flush.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackMetricsSentBeforeDisabled() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.trackMetric("latency", 10);
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+
+        /* Disabling sends metrics before clearing the group and cancels the flush. */
+        Analytics.setEnabled(false);
+        ArgumentCaptor<List<Log>> logs = ArgumentCaptor.forClass((Class) List.class);
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).enqueue(logs.capture(), eq(ANALYTICS_GROUP), eq(NORMAL));
+        inOrder.verify(channel).clear(ANALYTICS_GROUP);
+        assertEquals(1, logs.getValue().size());
+        verify(mMainHandler).removeCallbacks(flush.getValue());
+        Analytics.setEnabled(true);
+        flush.getValue().run();
+        verify(channel).enqueue(any(Collection.class), anyString(), anyInt());
+
+        /* Metrics tracked while disabled are rejected. */
+        Analytics.setEnabled(false);
+        Analytics.trackMetric("latency", 10);
+        Analytics.incrementCounter("hits");
+        verify(mMainHandler).postDelayed(any(Runnable.class), anyLong());
+        verifyStatic(AppCenterLog.class, times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("is disabled or not started from app"));
+        Analytics.setEnabled(true);
+        flush.getValue().run();
+        verify(channel).enqueue(any(Collection.class), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackMetricsSentWhenActivityPaused() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.trackMetric("latency", 10);
+        Analytics.incrementCounter("hits");
+
+        /* Pausing sends metrics without waiting for the flush. */
+        analytics.onActivityPaused(new Activity());
+        ArgumentCaptor<List<Log>> logs = ArgumentCaptor.forClass((Class) List.class);
+        verify(channel).enqueue(logs.capture(), eq(ANALYTICS_GROUP), eq(NORMAL));
+        assertEquals(2, logs.getValue().size());
+
+        /* Nothing left for the flush. */
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        flush.getValue().run();
+        verify(channel).enqueue(any(Collection.class), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackMetricsWithDisabledTransmissionTarget() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, "t1", true);
+        Analytics.trackMetric("latency", 10);
+        Analytics.incrementCounter("hits");
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        analytics.mDefaultTransmissionTarget = spy(analytics.mDefaultTransmissionTarget);
+        when(analytics.mDefaultTransmissionTarget.isEnabled()).thenReturn(false);
+        flush.getValue().run();
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+
+        /* The error is logged once for all metrics which are discarded. */
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("transmission target is disabled"));
+        when(analytics.mDefaultTransmissionTarget.isEnabled()).thenReturn(true);
+        flush.getValue().run();
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackMetricsNotStartedFromApp() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, null, false);
+        Analytics.trackMetric("latency", 10);
+        Analytics.incrementCounter("hits");
+
+        /* Samples are rejected up front. */
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+        verify(channel, never()).enqueue(any(Collection.class), anyString(), anyInt());
+        verifyStatic(AppCenterLog.class, times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("not started from app"));
+    }
+
     @Test
     public void trackEventWithUserIdWhenConfiguredForTarget() {
         UserIdContext.getInstance().setUserId("c:alice");
@@ -452,6 +659,7 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(channel).addListener(isA(SessionTracker.class));
         verify(channel).addListener(isA(AnalyticsValidator.class));
         verify(channel).addListener(isA(AnalyticsTransmissionTarget.getChannelListener().getClass()));
+        verify(channel).addListener(isA(EventSampler.class));
 
         /* Now we can see the service enabled. */
         assertTrue(Analytics.isEnabled().get());
@@ -462,6 +670,7 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(channel).removeListener(isA(SessionTracker.class));
         verify(channel).removeListener(isA(AnalyticsValidator.class));
         verify(channel).removeListener(isA(AnalyticsTransmissionTarget.getChannelListener().getClass()));
+        verify(channel).removeListener(isA(EventSampler.class));
         verify(channel).removeGroup(eq(ANALYTICS_CRITICAL_GROUP));
         verify(channel, times(2)).removeGroup(eq(ANALYTICS_GROUP));
         verify(channel).clear(analytics.getGroupName());
@@ -797,6 +1006,16 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(analyticsListener, never()).onSendingFailed(any(EventLog.class), any(Exception.class));
     }
 
+    @Test
+    public void channelListenerRequiresLogCallbacksOnlyWithAnalyticsListener() {
+        Channel.BatchListener listener = (Channel.BatchListener) Analytics.getInstance().getChannelListener();
+        assertFalse(listener.requiresLogCallbacks());
+        Analytics.setListener(mock(AnalyticsListener.class));
+        assertTrue(listener.requiresLogCallbacks());
+        Analytics.setListener(null);
+        assertFalse(listener.requiresLogCallbacks());
+    }
+
     @Test
     public void appOnlyFeatures() {
 
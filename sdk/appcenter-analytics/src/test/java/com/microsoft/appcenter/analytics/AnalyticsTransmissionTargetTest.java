@@ -29,6 +29,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -86,6 +88,40 @@ public class AnalyticsTransmissionTargetTest extends AbstractAnalyticsTest {
         assertNotNull(Analytics.getTransmissionTarget("token"));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void trackEventsWithCommonProperties() {
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget("token");
+        target.getPropertyConfigurator().setEventProperty("common", "common");
+        target.getPropertyConfigurator().setEventProperty("key", "common");
+        target.trackEvents(Arrays.asList(
+                new AnalyticsEvent("name1"),
+                null,
+                new AnalyticsEvent("name2", Collections.singletonMap("key", "value"))));
+
+        /* Verify events are enqueued together with merged properties. */
+        ArgumentCaptor<List<Log>> logs = ArgumentCaptor.forClass((Class) List.class);
+        verify(mChannel).enqueue(logs.capture(), eq(ANALYTICS_GROUP), eq(NORMAL));
+        assertEquals(2, logs.getValue().size());
+        EventLog firstLog = (EventLog) logs.getValue().get(0);
+        EventLog secondLog = (EventLog) logs.getValue().get(1);
+        assertEquals("name1", firstLog.getName());
+        assertEquals(2, firstLog.getTypedProperties().size());
+        assertEquals("name2", secondLog.getName());
+        assertEquals(2, secondLog.getTypedProperties().size());
+        for (TypedProperty property : secondLog.getTypedProperties()) {
+            if (property.getName().equals("key")) {
+                assertEquals("value", ((StringTypedProperty) property).getValue());
+            }
+        }
+        assertTrue(firstLog.getTransmissionTargetTokens().contains("token"));
+        assertSame(target, firstLog.getTag());
+
+        /* Null collection does nothing. */
+        target.trackEvents(null);
+        verify(mChannel).enqueue(any(Collection.class), anyString(), anyInt());
+    }
+
     @Test
     public void testGetTransmissionTargetWithNullToken() {
         mockStatic(AppCenterLog.class);
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.analytics.MetricAggregator.COUNT_PROPERTY;
+import static com.microsoft.appcenter.analytics.MetricAggregator.MAX_METRICS;
+import static com.microsoft.appcenter.analytics.MetricAggregator.MAX_PROPERTY;
+import static com.microsoft.appcenter.analytics.MetricAggregator.MIN_PROPERTY;
+import static com.microsoft.appcenter.analytics.MetricAggregator.QUANTILE_PROPERTIES;
+import static com.microsoft.appcenter.analytics.MetricAggregator.SUM_PROPERTY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class MetricAggregatorTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private MetricAggregator mMetricAggregator;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mMetricAggregator = new MetricAggregator();
+    }
+
+    private static TypedProperty getProperty(List<TypedProperty> properties, String name) {
+        for (TypedProperty property : properties) {
+            if (property.getName().equals(name)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    private static double getDouble(List<TypedProperty> properties, String name) {
+        return ((DoubleTypedProperty) getProperty(properties, name)).getValue();
+    }
+
+    private static long getLong(List<TypedProperty> properties, String name) {
+        return ((LongTypedProperty) getProperty(properties, name)).getValue();
+    }
+
+    @Test
+    public void histogram() {
+
+        /* Only the first sample requires scheduling a flush. */
+        assertFalse(mMetricAggregator.isFlushPending());
+        assertTrue(mMetricAggregator.recordValue("latency", 1));
+        for (int i = 2; i <= 1000; i++) {
+            assertFalse(mMetricAggregator.recordValue("latency", i));
+        }
+        assertTrue(mMetricAggregator.isFlushPending());
+        Map<String, List<TypedProperty>> summaries = mMetricAggregator.flush();
+        assertFalse(mMetricAggregator.isFlushPending());
+        assertEquals(1, summaries.size());
+        List<TypedProperty> properties = summaries.get("latency");
+        assertEquals(4 + QUANTILE_PROPERTIES.length, properties.size());
+        assertEquals(1000, getLong(properties, COUNT_PROPERTY));
+        assertEquals(500500, getDouble(properties, SUM_PROPERTY), 0);
+        assertEquals(1, getDouble(properties, MIN_PROPERTY), 0);
+        assertEquals(1000, getDouble(properties, MAX_PROPERTY), 0);
+
+        /* Quantiles are within the relative accuracy. */
+        double accuracy = MetricAggregator.Histogram.RELATIVE_ACCURACY;
+        assertEquals(500, getDouble(properties, "p50"), 500 * accuracy);
+        assertEquals(900, getDouble(properties, "p90"), 900 * accuracy);
+        assertEquals(990, getDouble(properties, "p99"), 990 * accuracy);
+
+        /* Metric is reset after flush. */
+        assertTrue(mMetricAggregator.flush().isEmpty());
+        assertTrue(mMetricAggregator.recordValue("latency", 5));
+        properties = mMetricAggregator.flush().get("latency");
+        assertEquals(1, getLong(properties, COUNT_PROPERTY));
+        assertEquals(5, getDouble(properties, SUM_PROPERTY), 0);
+        assertEquals(5, getDouble(properties, MIN_PROPERTY), 0);
+        assertEquals(5, getDouble(properties, MAX_PROPERTY), 0);
+        assertEquals(5, getDouble(properties, "p50"), 0);
+    }
+
+    @Test
+    public void histogramQuantilesWithinSamples() {
+
+        /* Values below the indexed range. */
+        MetricAggregator.Histogram histogram = new MetricAggregator.Histogram();
+        histogram.record(0);
+        histogram.record(1e-4);
+        assertEquals(1e-4, histogram.getQuantile(0.5), 0);
+
+        /* Values above the indexed range. */
+        histogram = new MetricAggregator.Histogram();
+        histogram.record(2e12);
+        histogram.record(3e12);
+        assertEquals(2e12, histogram.getQuantile(0.5), 0);
+    }
+
+    @Test
+    public void invalidValues() {
+        assertFalse(mMetricAggregator.recordValue("latency", Double.NaN));
+        assertFalse(mMetricAggregator.recordValue("latency", Double.POSITIVE_INFINITY));
+        assertFalse(mMetricAggregator.recordValue("latency", -1));
+        assertTrue(mMetricAggregator.flush().isEmpty());
+        verifyStatic(AppCenterLog.class, times(3));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("finite positive number or zero"));
+
+        /* Zero is valid. */
+        assertTrue(mMetricAggregator.recordValue("latency", 0));
+    }
+
+    @Test
+    public void counter() {
+        assertTrue(mMetricAggregator.incrementCounter("hits", 1));
+        assertFalse(mMetricAggregator.incrementCounter("hits", 41));
+        assertTrue(mMetricAggregator.recordValue("latency", 3));
+        Map<String, List<TypedProperty>> summaries = mMetricAggregator.flush();
+        assertEquals(2, summaries.size());
+        List<TypedProperty> properties = summaries.get("hits");
+        assertEquals(1, properties.size());
+        assertEquals(42, getLong(properties, COUNT_PROPERTY));
+
+        /* Counter is reset after flush. */
+        assertTrue(mMetricAggregator.incrementCounter("hits", 2));
+        assertEquals(2, getLong(mMetricAggregator.flush().get("hits"), COUNT_PROPERTY));
+        assertTrue(mMetricAggregator.flush().isEmpty());
+    }
+
+    @Test
+    public void nameUsedWithAnotherType() {
+        mMetricAggregator.incrementCounter("hits", 1);
+        assertFalse(mMetricAggregator.recordValue("hits", 1));
+        mMetricAggregator.recordValue("latency", 1);
+        mMetricAggregator.flush();
+        assertFalse(mMetricAggregator.incrementCounter("latency", 1));
+        assertTrue(mMetricAggregator.flush().isEmpty());
+        verifyStatic(AppCenterLog.class, times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), contains("already used"));
+    }
+
+    @Test
+    public void tooManyMetrics() {
+        for (int i = 0; i < MAX_METRICS; i++) {
+            mMetricAggregator.incrementCounter("counter" + i, 1);
+        }
+        assertFalse(mMetricAggregator.incrementCounter("oneMore", 1));
+        assertFalse(mMetricAggregator.recordValue("oneMore", 1));
+        Map<String, List<TypedProperty>> summaries = mMetricAggregator.flush();
+        assertEquals(MAX_METRICS, summaries.size());
+        assertNull(summaries.get("oneMore"));
+
+        /* Known metrics can still be updated. */
+        assertTrue(mMetricAggregator.incrementCounter("counter0", 1));
+        assertFalse(mMetricAggregator.incrementCounter("oneMore", 1));
+
+        /* Metrics without samples since the previous flush are removed, making room for others. */
+        assertEquals(1, mMetricAggregator.flush().size());
+        assertTrue(mMetricAggregator.flush().isEmpty());
+        assertTrue(mMetricAggregator.incrementCounter("oneMore", 1));
+
+        /* The name of a removed counter can be reused for a histogram. */
+        assertFalse(mMetricAggregator.recordValue("counter0", 1));
+        summaries = mMetricAggregator.flush();
+        assertEquals(2, summaries.size());
+        assertEquals(4 + QUANTILE_PROPERTIES.length, summaries.get("counter0").size());
+    }
+
+    @Test
+    public void clear() {
+        mMetricAggregator.incrementCounter("hits", 1);
+        mMetricAggregator.recordValue("latency", 1);
+        mMetricAggregator.clear();
+        assertTrue(mMetricAggregator.flush().isEmpty());
+
+        /* A new flush is needed for the next sample. */
+        assertTrue(mMetricAggregator.recordValue("latency", 1));
+    }
+}
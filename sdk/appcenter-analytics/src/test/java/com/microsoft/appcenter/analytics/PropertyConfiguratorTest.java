@@ -47,6 +47,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -677,6 +678,41 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
         assertUnorderedListEquals(typedProperties, log.getTypedProperties());
     }
 
+    @Test
+    public void snapshotRebuiltOnlyAfterChange() {
+
+        /* Create transmission target hierarchy with common properties. */
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        parent.getPropertyConfigurator().setEventProperty("a", "1");
+        child.getPropertyConfigurator().setEventProperty("a", "11");
+
+        /* Snapshot is reused while nothing changes. */
+        PropertyConfigurator.Snapshot snapshot = child.getPropertyConfigurator().getSnapshot();
+        assertSame(snapshot, child.getPropertyConfigurator().getSnapshot());
+        assertEquals(1, snapshot.getEventProperties().length);
+        assertEquals(typedProperty("a", "11"), snapshot.getEventProperties()[0]);
+
+        /* Changing a parent property rebuilds the snapshot of the child. */
+        parent.getPropertyConfigurator().setAppName("parentName");
+        PropertyConfigurator.Snapshot newSnapshot = child.getPropertyConfigurator().getSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertSame(newSnapshot, child.getPropertyConfigurator().getSnapshot());
+        parent.getPropertyConfigurator().setEventProperty("b", "2");
+        snapshot = child.getPropertyConfigurator().getSnapshot();
+        assertNotSame(newSnapshot, snapshot);
+        assertEquals(2, snapshot.getEventProperties().length);
+
+        /* Inherited Part A property is applied. */
+        CommonSchemaLog log = new CommonSchemaEventLog();
+        log.setExt(new Extensions());
+        log.getExt().setApp(new AppExtension());
+        log.getExt().setUser(new UserExtension());
+        log.setTag(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("parentName", log.getExt().getApp().getName());
+    }
+
     @Test
     public void defaultTargetIsNotReturnedFromGetTransmissionTarget() {
 
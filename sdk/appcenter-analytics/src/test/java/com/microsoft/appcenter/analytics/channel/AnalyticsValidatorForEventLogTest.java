@@ -248,4 +248,65 @@ public class AnalyticsValidatorForEventLogTest {
         assertEquals("name", booleanProperty.getName());
         assertTrue(booleanProperty.getValue());
     }
-}
\ No newline at end of file
+
+    private static EventLog newEventLog(String name, String... keyValues) {
+        EventLog eventLog = new EventLog();
+        eventLog.setName(name);
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            StringTypedProperty property = new StringTypedProperty();
+            property.setName(keyValues[i]);
+            property.setValue(keyValues[i + 1]);
+            properties.add(property);
+        }
+        eventLog.setTypedProperties(properties);
+        return eventLog;
+    }
+
+    @Test
+    public void validatedShapeIsReused() {
+        assertFalse(mAnalyticsValidator.shouldFilter(newEventLog("eventName", "a", "1", "b", "2")));
+
+        /* Same shape is kept as is. */
+        EventLog eventLog = newEventLog("eventName", "a", "3", "b", "4");
+        List<TypedProperty> properties = eventLog.getTypedProperties();
+        TypedProperty firstProperty = properties.get(0);
+        assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+        assertSame(properties, eventLog.getTypedProperties());
+        assertSame(firstProperty, eventLog.getTypedProperties().get(0));
+        assertEquals(2, eventLog.getTypedProperties().size());
+
+        /* Values are still validated with the same shape. */
+        String longValue = generateString(MAX_PROPERTY_ITEM_LENGTH + 1, '*');
+        eventLog = newEventLog("eventName", "a", longValue, "b", null);
+        assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+        assertEquals(1, eventLog.getTypedProperties().size());
+        assertEquals(MAX_PROPERTY_ITEM_LENGTH, ((StringTypedProperty) eventLog.getTypedProperties().get(0)).getValue().length());
+
+        /* Other keys for the same name are validated. */
+        eventLog = newEventLog("eventName", "a", "1", "", "2");
+        assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+        assertEquals(1, eventLog.getTypedProperties().size());
+
+        /* Event without properties. */
+        eventLog = new EventLog();
+        eventLog.setName("noProperties");
+        assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+        assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+        assertNull(eventLog.getTypedProperties());
+    }
+
+    @Test
+    public void shapeNotRememberedWhenFixed() {
+        String longKey = generateString(MAX_PROPERTY_ITEM_LENGTH + 1, '*');
+        String longName = generateString(MAX_NAME_LENGTH + 1, '*');
+        for (int i = 0; i < 2; i++) {
+            EventLog eventLog = newEventLog("eventName", longKey, "1");
+            assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+            assertEquals(MAX_PROPERTY_ITEM_LENGTH, eventLog.getTypedProperties().get(0).getName().length());
+            eventLog = newEventLog(longName);
+            assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+            assertEquals(MAX_NAME_LENGTH, eventLog.getName().length());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics.channel;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.IdHelper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_COUNT;
+import static com.microsoft.appcenter.analytics.channel.EventSampler.SAMPLING_RATE_PROPERTY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest({
+        AppCenterLog.class,
+        IdHelper.class,
+        SystemClock.class
+})
+public class EventSamplerTest {
+
+    private static final String TARGET_TOKEN = "targetKey-secret";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private EventSampler mEventSampler;
+
+    private static EventLog newEvent(String name) {
+        EventLog eventLog = new EventLog();
+        eventLog.setName(name);
+        return eventLog;
+    }
+
+    private static CommonSchemaEventLog newCommonSchemaEvent(String name) {
+        CommonSchemaEventLog log = new CommonSchemaEventLog();
+        log.setName(name);
+        log.setIKey("o" + COMMON_SCHEMA_PREFIX_SEPARATOR + "targetKey");
+        return log;
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(SystemClock.class);
+        mockStatic(IdHelper.class);
+        when(IdHelper.getInstallId()).thenReturn(UUID.fromString("a7a1c3a4-1d1c-4ab5-9c87-5e0bfd3d7cf1"));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        mEventSampler = new EventSampler();
+    }
+
+    @Test
+    public void noRule() {
+        EventLog log = newEvent("event");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertFalse(mEventSampler.shouldFilter(newCommonSchemaEvent("event")));
+        assertFalse(mEventSampler.shouldFilter(new PageLog()));
+        assertNull(log.getTypedProperties());
+    }
+
+    @Test
+    public void samplingIsStablePerEventName() {
+        double score = mEventSampler.getSamplingScore("event");
+        assertTrue(score >= 0 && score < 100);
+        assertEquals(score, mEventSampler.getSamplingScore("event"), 0);
+
+        /* Keep the event when the rate is above the score of this installation. */
+        mEventSampler.setSamplingRate(null, "event", Math.nextUp(score));
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty property = new StringTypedProperty();
+        property.setName("key");
+        property.setValue("value");
+        properties.add(property);
+        EventLog log = newEvent("event");
+        log.setTypedProperties(properties);
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertEquals(2, log.getTypedProperties().size());
+        DoubleTypedProperty samplingRate = (DoubleTypedProperty) log.getTypedProperties().get(1);
+        assertEquals(SAMPLING_RATE_PROPERTY, samplingRate.getName());
+        assertEquals(Math.nextUp(score), samplingRate.getValue(), 0);
+
+        /* Original properties are not modified. */
+        assertEquals(1, properties.size());
+
+        /* Discard the event when the rate is below the score, every time. */
+        mEventSampler.setSamplingRate(null, "event", score);
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+
+        /* Other events are not sampled. */
+        log = newEvent("other");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertNull(log.getTypedProperties());
+    }
+
+    @Test
+    public void samplingRatePropertyIsReserved() {
+        mEventSampler.setSamplingRate(null, "event", 100 - Math.ulp(100.0));
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < MAX_PROPERTY_COUNT; i++) {
+            StringTypedProperty property = new StringTypedProperty();
+            property.setName(i == 0 ? SAMPLING_RATE_PROPERTY : "key" + i);
+            property.setValue("value");
+            properties.add(property);
+        }
+        EventLog log = newEvent("event");
+        log.setTypedProperties(properties);
+        assertFalse(mEventSampler.shouldFilter(log));
+
+        /* Property of the same name is replaced and the limit is respected. */
+        properties = log.getTypedProperties();
+        assertEquals(MAX_PROPERTY_COUNT, properties.size());
+        assertEquals("key1", properties.get(0).getName());
+        assertEquals("key" + (MAX_PROPERTY_COUNT - 1), properties.get(MAX_PROPERTY_COUNT - 2).getName());
+        assertEquals(SAMPLING_RATE_PROPERTY, properties.get(MAX_PROPERTY_COUNT - 1).getName());
+        assertTrue(properties.get(MAX_PROPERTY_COUNT - 1) instanceof DoubleTypedProperty);
+
+        /* Skip the last property when already at the limit. */
+        properties = new ArrayList<>();
+        for (int i = 0; i < MAX_PROPERTY_COUNT; i++) {
+            StringTypedProperty property = new StringTypedProperty();
+            property.setName("key" + i);
+            property.setValue("value");
+            properties.add(property);
+        }
+        log = newEvent("event");
+        log.setTypedProperties(properties);
+        assertFalse(mEventSampler.shouldFilter(log));
+        properties = log.getTypedProperties();
+        assertEquals(MAX_PROPERTY_COUNT, properties.size());
+        assertEquals("key" + (MAX_PROPERTY_COUNT - 2), properties.get(MAX_PROPERTY_COUNT - 2).getName());
+        assertEquals(SAMPLING_RATE_PROPERTY, properties.get(MAX_PROPERTY_COUNT - 1).getName());
+        verifyStatic(AppCenterLog.class, times(2));
+        AppCenterLog.warn(anyString(), anyString());
+    }
+
+    @Test
+    public void samplingBoundaries() {
+        mEventSampler.setSamplingRate(null, null, 0);
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+        mEventSampler.setSamplingRate(null, null, 100);
+        EventLog log = newEvent("event");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertNull(log.getTypedProperties());
+    }
+
+    @Test
+    public void invalidConfiguration() {
+        mEventSampler.setSamplingRate(null, "event", -1);
+        mEventSampler.setSamplingRate(null, "event", 101);
+        mEventSampler.setSamplingRate(null, "event", Double.NaN);
+        verifyStatic(AppCenterLog.class, times(3));
+        AppCenterLog.error(anyString(), eq("Sampling rate must be between 0 and 100."));
+        mEventSampler.setRateLimit(null, "event", 1, 0);
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(anyString(), eq("Rate limit interval must be positive."));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        }
+    }
+
+    @Test
+    public void transmissionTargetRule() {
+
+        /* Global rule applies to targets. */
+        mEventSampler.setSamplingRate(null, "event", 0);
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("event")));
+
+        /* Target rule wins over global rule and is recorded as popSample. */
+        mEventSampler.setSamplingRate(TARGET_TOKEN, null, 99.999999);
+        CommonSchemaEventLog log = newCommonSchemaEvent("event");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertEquals(99.999999, log.getPopSample(), 0);
+
+        /* Target rule does not apply to App Center events or other targets. */
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+        log = newCommonSchemaEvent("event");
+        log.setIKey("o" + COMMON_SCHEMA_PREFIX_SEPARATOR + "otherKey");
+        assertTrue(mEventSampler.shouldFilter(log));
+    }
+
+    @Test
+    public void rateLimit() {
+        mEventSampler.setRateLimit(null, "event", 2, 1000);
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+
+        /* Other events are not limited. */
+        assertFalse(mEventSampler.shouldFilter(newEvent("other")));
+
+        /* One token is refilled after half the interval. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1500L);
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+
+        /* Tokens do not accumulate over the limit. */
+        when(SystemClock.elapsedRealtime()).thenReturn(100000L);
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+
+        /* Remove the limit. */
+        mEventSampler.setRateLimit(null, "event", 0, 0);
+        assertFalse(mEventSampler.shouldFilter(newEvent("event")));
+    }
+
+    @Test
+    public void eventRuleDoesNotBypassOtherRules() {
+
+        /* A rate limit for an event name does not hide the sampling rate of all events. */
+        mEventSampler.setSamplingRate(null, null, 0);
+        mEventSampler.setRateLimit(null, "event", 10, 1000);
+        assertTrue(mEventSampler.shouldFilter(newEvent("event")));
+
+        /* A rule for an event name does not bypass the limit shared by all events of the target or of all targets. */
+        mEventSampler.setSamplingRate(null, null, 100);
+        mEventSampler.setRateLimit(TARGET_TOKEN, null, 2, 1000);
+        mEventSampler.setRateLimit(TARGET_TOKEN, "event", 10, 1000);
+        mEventSampler.setSamplingRate(TARGET_TOKEN, "event", 100);
+        mEventSampler.setRateLimit(null, null, 1, 1000);
+        assertFalse(mEventSampler.shouldFilter(newCommonSchemaEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("event")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("other")));
+
+        /* Tokens are not consumed from a limit when another limit discards the event. */
+        mEventSampler.setRateLimit(null, null, 0, 0);
+        assertFalse(mEventSampler.shouldFilter(newCommonSchemaEvent("other")));
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("event")));
+    }
+
+    @Test
+    public void rateLimitSharedByAllEventsOfTarget() {
+        mEventSampler.setRateLimit(TARGET_TOKEN, null, 1, 1000);
+        assertFalse(mEventSampler.shouldFilter(newCommonSchemaEvent("event1")));
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("event2")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("event2")));
+    }
+}
@@ -156,6 +156,9 @@ public class CrashesAndroidTest {
 
         /* Wait for start. */
         assertTrue(Crashes.isEnabled().get());
+
+        /* Wait for pending error files to be processed in background. */
+        Crashes.getInstance().getUnprocessedErrorReports().get();
     }
 
     @Test
@@ -501,7 +504,7 @@ public class CrashesAndroidTest {
             public boolean matches(Object argument) {
                 if (argument instanceof ErrorAttachmentLog) {
                     ErrorAttachmentLog log = (ErrorAttachmentLog) argument;
-                    return "application/octet-stream".equals(log.getContentType()) && "minidump.dmp".equals(log.getFileName());
+                    return "application/octet-stream".equals(log.getContentType()) && "minidump.dmp".equals(log.getFileName()) && log.getFile() != null;
                 }
                 return false;
             }
@@ -644,7 +647,7 @@ public class CrashesAndroidTest {
             public boolean matches(Object argument) {
                 if (argument instanceof ErrorAttachmentLog) {
                     ErrorAttachmentLog log = (ErrorAttachmentLog) argument;
-                    return "application/octet-stream".equals(log.getContentType()) && "minidump.dmp".equals(log.getFileName());
+                    return "application/octet-stream".equals(log.getContentType()) && "minidump.dmp".equals(log.getFileName()) && log.getFile() != null;
                 }
                 return false;
             }
@@ -18,6 +18,8 @@ import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -28,6 +30,9 @@ import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @SuppressWarnings("unused")
@@ -630,6 +635,42 @@ public class ErrorModelTest {
         }
     }
 
+    @Test
+    public void fileBackedErrorAttachmentLog() throws JSONException, IOException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+        File file = File.createTempFile("attachment", ".dmp");
+        try {
+            ErrorAttachmentLog log = ErrorAttachmentLog.attachmentWithFile(file, "minidump.dmp", "application/octet-stream");
+            log.setTimestamp(new Date());
+            log.setId(UUID.randomUUID());
+            log.setErrorId(UUID.randomUUID());
+            assertTrue(log.isValid());
+
+            /* Only the file path is serialized, content is streamed when sending. */
+            String payload = serializer.serializeLog(log);
+            JSONObject json = new JSONObject(payload);
+            assertEquals(log.getContentPlaceholder(), json.getString(DATA));
+            ErrorAttachmentLog deserializedLog = (ErrorAttachmentLog) serializer.deserializeLog(payload, null);
+            checkEquals(log, deserializedLog);
+            assertEquals(file, deserializedLog.getFile());
+            assertNull(deserializedLog.getData());
+
+            /* The log cannot be read anymore once the file is deleted. */
+            assertTrue(file.delete());
+            assertFalse(log.isValid());
+            try {
+                serializer.deserializeLog(payload, null);
+                fail("Expected json exception here");
+            } catch (JSONException ignored) {
+            }
+        } finally {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
     private static class MockErrorLog extends AbstractErrorLog {
 
         @Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.ThreadCapturePolicy;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measure crash log creation with each thread capture policy on a synthetic 300-thread process.
+ */
+public class ThreadCaptureBenchmarkAndroidTest {
+
+    private static final int THREAD_COUNT = 300;
+
+    private static final int STACK_DEPTH = 64;
+
+    private static final int ITERATIONS = 10;
+
+    private static Context sContext;
+
+    private final CountDownLatch mReleaseLatch = new CountDownLatch(1);
+
+    private Thread[] mThreads;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Constants.loadFromContext(sContext);
+    }
+
+    @Before
+    public void setUp() throws InterruptedException {
+        final CountDownLatch startedLatch = new CountDownLatch(THREAD_COUNT);
+        mThreads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            mThreads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    recurse(STACK_DEPTH, startedLatch);
+                }
+            }, "synthetic-" + i);
+            mThreads[i].start();
+        }
+        startedLatch.await();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mReleaseLatch.countDown();
+        for (Thread thread : mThreads) {
+            thread.join();
+        }
+    }
+
+    private void recurse(int depth, CountDownLatch startedLatch) {
+        if (depth > 0) {
+            recurse(depth - 1, startedLatch);
+            return;
+        }
+        startedLatch.countDown();
+        try {
+            mReleaseLatch.await();
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Test
+    public void benchmarkThreadCapturePolicies() throws Exception {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        ThreadCapturePolicy[] policies = {
+                ThreadCapturePolicy.allThreads(),
+                ThreadCapturePolicy.topThreads(16),
+                ThreadCapturePolicy.crashingThreadOnly()
+        };
+        int[] threadCounts = new int[policies.length];
+        int[] logSizes = new int[policies.length];
+        for (int p = 0; p < policies.length; p++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(sContext, Thread.currentThread(),
+                        ErrorLogHelper.getModelExceptionFromThrowable(new RuntimeException()),
+                        ErrorLogHelper.getThreadStackTraces(Thread.currentThread(), policies[p]), 0, true);
+                threadCounts[p] = errorLog.getThreads().size();
+                logSizes[p] = serializer.serializeLog(errorLog).length();
+            }
+            long averageMicros = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS / 1000;
+            Log.i(TAG, "Thread capture maxThreads=" + policies[p].getMaxThreads() + " threads=" + threadCounts[p]
+                    + " logSize=" + logSizes[p] + " averageTime=" + averageMicros + "us");
+        }
+        assertTrue(threadCounts[0] > THREAD_COUNT);
+        assertEquals(16, threadCounts[1]);
+        assertEquals(1, threadCounts[2]);
+        assertTrue(logSizes[2] < logSizes[1]);
+        assertTrue(logSizes[1] < logSizes[0]);
+    }
+}
@@ -9,6 +9,9 @@ import android.annotation.SuppressLint;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
@@ -18,6 +21,7 @@ import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
@@ -31,6 +35,7 @@ import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.HandledErrorAggregator;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
@@ -52,15 +57,23 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
@@ -108,12 +121,43 @@ public class Crashes extends AbstractAppCenterService {
     @VisibleForTesting
     static final String ERROR_GROUP = "groupErrors";
 
+    /**
+     * Storage reserved for crash reports and their attachments, so that other logs are deleted first.
+     * The persistence limits it to half of the maximum storage size.
+     */
+    @VisibleForTesting
+    static final long ERROR_GROUP_RESERVED_STORAGE_SIZE = 2 * 1024 * 1024;
+
     /**
      * Minidump file.
      */
     @VisibleForTesting
     static final String MINIDUMP_FILE = "minidump";
 
+    /**
+     * File name of minidump attachments.
+     */
+    @VisibleForTesting
+    static final String MINIDUMP_ATTACHMENT_FILE_NAME = "minidump.dmp";
+
+    /**
+     * Content type of uncompressed minidump attachments.
+     */
+    @VisibleForTesting
+    static final String MINIDUMP_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * Extension added to compressed minidump file names.
+     */
+    @VisibleForTesting
+    static final String GZIP_FILE_EXTENSION = ".gz";
+
+    /**
+     * Content type of compressed minidump attachments.
+     */
+    @VisibleForTesting
+    static final String GZIP_CONTENT_TYPE = "application/gzip";
+
     /**
      * Name of the service.
      */
@@ -129,6 +173,47 @@ public class Crashes extends AbstractAppCenterService {
      */
     private static final int MAX_ATTACHMENT_SIZE = 7 * 1024 * 1024;
 
+    /**
+     * Maximum number of pending crash reports processed per application launch.
+     * Remaining crash reports stay on disk and are processed on next launches.
+     */
+    @VisibleForTesting
+    static final int MAX_PENDING_ERRORS_PER_LAUNCH = 50;
+
+    /**
+     * Number of pending error files read in background before merging the results and delivering them.
+     */
+    @VisibleForTesting
+    static final int PENDING_ERRORS_BATCH_SIZE = 8;
+
+    /**
+     * Number of background threads reading pending error files.
+     */
+    private static final int PENDING_ERRORS_THREAD_COUNT = 2;
+
+    /**
+     * Idle time after which background threads reading pending error files are stopped.
+     */
+    private static final long PENDING_ERRORS_THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    /**
+     * Number of handled errors with the same fingerprint that are sent without rate limiting.
+     */
+    @VisibleForTesting
+    static final int HANDLED_ERROR_BURST = 5;
+
+    /**
+     * Time in milliseconds after which one more handled error with the same fingerprint can be sent.
+     */
+    @VisibleForTesting
+    static final long HANDLED_ERROR_REFILL_INTERVAL = 10 * 1000;
+
+    /**
+     * Property added to a handled error that aggregates several occurrences.
+     */
+    @VisibleForTesting
+    static final String OCCURRENCE_COUNT_PROPERTY = "occurrenceCount";
+
     /**
      * Default crashes listener.
      */
@@ -140,6 +225,11 @@ public class Crashes extends AbstractAppCenterService {
     @SuppressLint("StaticFieldLeak")
     private static Crashes sInstance = null;
 
+    /**
+     * Executor used to read and parse pending error files outside of the App Center handler thread.
+     */
+    private static Executor sPendingErrorsExecutor;
+
     /**
      * Log factories managed by this service.
      */
@@ -210,6 +300,49 @@ public class Crashes extends AbstractAppCenterService {
      */
     private boolean mHasReceivedMemoryWarningInLastSession;
 
+    /**
+     * Policy defining which threads are attached to crash reports.
+     */
+    private volatile ThreadCapturePolicy mThreadCapturePolicy = ThreadCapturePolicy.DEFAULT;
+
+    /**
+     * Whether minidumps are compressed before being attached to NDK crash reports.
+     */
+    private volatile boolean mMinidumpCompressionEnabled;
+
+    /**
+     * Number of minidump files waiting to be sent or discarded, listed once at startup then tracked in memory.
+     */
+    private final AtomicInteger mPendingMinidumpCount = new AtomicInteger();
+
+    /**
+     * Token of the pending errors processing in progress, null when not processing.
+     * Results of a processing canceled by disabling the service are discarded by comparing tokens.
+     */
+    private Object mPendingErrorsProcessing;
+
+    /**
+     * Commands waiting for pending errors to be processed, such as getting unprocessed reports.
+     */
+    private final List<Runnable> mPendingErrorsProcessedCommands = new ArrayList<>();
+
+    /**
+     * Aggregates repeated handled errors, only accessed from the App Center handler thread.
+     * Suppressed errors of a fingerprint forgotten to track another one are sent right away.
+     */
+    private final HandledErrorAggregator<HandledErrorOccurrence> mHandledErrorAggregator = new HandledErrorAggregator<>(HANDLED_ERROR_BURST, HANDLED_ERROR_REFILL_INTERVAL, new HandledErrorAggregator.EvictionListener<HandledErrorOccurrence>() {
+
+        @Override
+        public void onEvicted(@NonNull HandledErrorAggregator.Aggregate<HandledErrorOccurrence> aggregate) {
+            enqueueHandledError(aggregate.getLatestOccurrence(), aggregate.getCount());
+        }
+    });
+
+    /**
+     * Handler of the App Center thread sending suppressed handled errors later, created when first needed.
+     */
+    private Handler mHandledErrorsHandler;
+
     /**
      * Init.
      */
@@ -278,6 +411,8 @@ public class Crashes extends AbstractAppCenterService {
      * The properties keys can not be null or empty, maximum allowed key length = 64.
      * The properties values can not be null, maximum allowed value length = 64.
      * Any length of name/keys/values that are longer than each limit will be truncated.
+     * Errors repeated with the same type and top stack frames are rate limited: suppressed errors are
+     * counted in the <code>occurrenceCount</code> property of a later report and their attachments are not sent.
      *
      * @param throwable   The throwable describing the handled error.
      * @param properties  Optional properties.
@@ -307,6 +442,28 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().setInstanceListener(listener);
     }
 
+    /**
+     * Set the policy defining which thread states are attached to crash reports.
+     * By default, all threads are captured with all their frames.
+     * This can be called before or after starting the service.
+     *
+     * @param policy thread capture policy, <code>null</code> to restore the default policy.
+     */
+    public static void setThreadCapturePolicy(ThreadCapturePolicy policy) {
+        getInstance().mThreadCapturePolicy = policy != null ? policy : ThreadCapturePolicy.DEFAULT;
+    }
+
+    /**
+     * Enable or disable gzip compression of minidumps attached to NDK crash reports.
+     * Compressed minidumps are much smaller so they are less likely to exceed the attachment size limit.
+     * Compression is disabled by default. This can be called before or after starting the service.
+     *
+     * @param enabled <code>true</code> to compress minidumps, <code>false</code> to send them as is.
+     */
+    public static void setMinidumpCompressionEnabled(boolean enabled) {
+        getInstance().mMinidumpCompressionEnabled = enabled;
+    }
+
     /**
      * Get the path where NDK minidump files should be created.
      * <p>
@@ -455,9 +612,19 @@ public class Crashes extends AbstractAppCenterService {
             }
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
 
+            /* Stop processing pending errors, their files were deleted. */
+            mPendingErrorsProcessing = null;
+            runPendingErrorsProcessedCommands();
+
             /* Delete cache and in memory last session report. */
             mErrorReportCache.clear();
             mLastSessionErrorReport = null;
+
+            /* Forget suppressed handled errors, their scheduled reports are cancelled with them. */
+            if (mHandledErrorsHandler != null) {
+                mHandledErrorsHandler.removeCallbacksAndMessages(null);
+            }
+            mHandledErrorAggregator.clear();
             mContext.unregisterComponentCallbacks(mMemoryWarningListener);
             mMemoryWarningListener = null;
             SharedPreferencesManager.remove(PREF_KEY_MEMORY_RUNNING_LEVEL);
@@ -480,12 +647,6 @@ public class Crashes extends AbstractAppCenterService {
         super.onStarted(context, channel, appSecret, transmissionTargetToken, startedFromApp);
         if (isInstanceEnabled()) {
             processPendingErrors();
-
-            if (mErrorReportCache.isEmpty()) {
-
-                /* Remove lost throwable files. */
-                ErrorLogHelper.removeLostThrowableFiles();
-            }
         }
     }
 
@@ -499,6 +660,11 @@ public class Crashes extends AbstractAppCenterService {
         return ERROR_GROUP;
     }
 
+    @Override
+    protected StorageQuota getStorageQuota() {
+        return StorageQuota.reservedSize(ERROR_GROUP_RESERVED_STORAGE_SIZE);
+    }
+
     @Override
     public String getServiceName() {
         return SERVICE_NAME;
@@ -516,7 +682,7 @@ public class Crashes extends AbstractAppCenterService {
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.BatchListener() {
 
             /** Process callback (template method) */
             private void processCallback(final Log log, final CallbackProcessor callbackProcessor) {
@@ -559,8 +725,44 @@ public class Crashes extends AbstractAppCenterService {
                 });
             }
 
+            @Override
+            public boolean requiresLogCallbacks() {
+
+                /* Read sent logs again only to notify a listener or to delete the minidump files they were streamed from. */
+                return mCrashesListener != DEFAULT_ERROR_REPORTING_LISTENER || mPendingMinidumpCount.get() > 0;
+            }
+
+            @Override
+            public void onBatchSuccess(int logCount, int missingLogCount) {
+            }
+
+            @Override
+            public void onBatchFailure(int logCount, int missingLogCount, java.lang.Exception e) {
+            }
+
+            /** Delete a minidump once its attachment has been sent or discarded. */
+            private void deleteMinidumpAttachmentFile(final Log log) {
+                if (!(log instanceof ErrorAttachmentLog) || ((ErrorAttachmentLog) log).getFile() == null) {
+                    return;
+                }
+                post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        File file = ((ErrorAttachmentLog) log).getFile();
+                        if (ErrorLogHelper.getPendingMinidumpDirectory().equals(file.getParentFile())) {
+                            AppCenterLog.debug(LOG_TAG, "Deleting sent minidump file: " + file);
+                            if (file.delete()) {
+                                onPendingMinidumpDeleted();
+                            }
+                        }
+                    }
+                });
+            }
+
             @Override
             public void onSuccess(Log log) {
+                deleteMinidumpAttachmentFile(log);
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -572,6 +774,7 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void onFailure(Log log, final java.lang.Exception e) {
+                deleteMinidumpAttachmentFile(log);
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -613,6 +816,11 @@ public class Crashes extends AbstractAppCenterService {
             public Exception buildExceptionModel() {
                 return ErrorLogHelper.getModelExceptionFromThrowable(throwable);
             }
+
+            @Override
+            public String getFingerprint() {
+                return HandledErrorAggregator.getFingerprint(throwable);
+            }
         }, properties, attachments);
     }
 
@@ -622,7 +830,7 @@ public class Crashes extends AbstractAppCenterService {
      * @param modelException An handled exception already in JSON model form.
      * @param properties     optional properties.
      * @param attachments    optional attachments.
-     * @return handled error ID.
+     * @return handled error ID, never sent if the error is suppressed by rate limiting and another occurrence is reported instead.
      */
     synchronized UUID queueException(@NonNull final Exception modelException, Map<String, String> properties, Iterable<ErrorAttachmentLog> attachments) {
         return queueException(new ExceptionModelBuilder() {
@@ -631,6 +839,11 @@ public class Crashes extends AbstractAppCenterService {
             public Exception buildExceptionModel() {
                 return modelException;
             }
+
+            @Override
+            public String getFingerprint() {
+                return HandledErrorAggregator.getFingerprint(modelException);
+            }
         }, properties, attachments);
     }
 
@@ -647,14 +860,22 @@ public class Crashes extends AbstractAppCenterService {
             @Override
             public void run() {
 
+                /* Aggregate repeated errors before building the exception model. */
+                HandledErrorOccurrence occurrence = new HandledErrorOccurrence(errorId, userId, dataResidencyRegion, exceptionModelBuilder, validatedProperties);
+                String fingerprint = exceptionModelBuilder.getFingerprint();
+                int occurrenceCount = mHandledErrorAggregator.record(fingerprint, SystemClock.elapsedRealtime(), occurrence);
+                if (occurrenceCount == 0) {
+
+                    /* Only the latest suppressed error can be sent later, with its attachments dropped. */
+                    AppCenterLog.debug(LOG_TAG, "Handled error rate limit reached, aggregating error " + errorId + " with the next report.");
+                    if (mHandledErrorAggregator.getSuppressedCount(fingerprint) == 1) {
+                        scheduleHandledErrorsFlush(fingerprint);
+                    }
+                    return;
+                }
+
                 /* First send the handled error. */
-                HandledErrorLog errorLog = new HandledErrorLog();
-                errorLog.setId(errorId);
-                errorLog.setUserId(userId);
-                errorLog.setDataResidencyRegion(dataResidencyRegion);
-                errorLog.setException(exceptionModelBuilder.buildExceptionModel());
-                errorLog.setProperties(validatedProperties);
-                mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
+                enqueueHandledError(occurrence, occurrenceCount);
 
                 /* Then attachments if any. */
                 if (attachments != null) {
@@ -684,6 +905,7 @@ public class Crashes extends AbstractAppCenterService {
 
             /* Process minidump files. */
             processMinidumpFiles();
+            mPendingMinidumpCount.set(ErrorLogHelper.getPendingMinidumpCount());
         }
     }
 
@@ -816,46 +1038,181 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Read pending error files in background, by batches, without blocking the App Center handler thread.
+     * Reports of each batch are merged back on the handler thread in file order, oldest first.
+     */
     private void processPendingErrors() {
-        for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
-            AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = FileManager.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
-                    UUID id = log.getId();
-                    ErrorReport report = buildErrorReport(log);
-                    if (report == null) {
-                        removeAllStoredErrorLogFiles(id);
-                    } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
-                        if (!mAutomaticProcessing) {
-                            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                        }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
-                        removeAllStoredErrorLogFiles(id);
-                    }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+        File[] logFiles = ErrorLogHelper.getStoredErrorLogFiles().clone();
+        Arrays.sort(logFiles, new Comparator<File>() {
 
-                    //noinspection ResultOfMethodCallIgnored
-                    logFile.delete();
-                }
+            @Override
+            public int compare(File file1, File file2) {
+                long lastModified1 = file1.lastModified();
+                long lastModified2 = file2.lastModified();
+                return lastModified1 < lastModified2 ? -1 : (lastModified1 == lastModified2 ? 0 : 1);
             }
+        });
+        boolean deferred = logFiles.length > MAX_PENDING_ERRORS_PER_LAUNCH;
+        if (deferred) {
+            AppCenterLog.debug(LOG_TAG, "Processing " + MAX_PENDING_ERRORS_PER_LAUNCH + " of " + logFiles.length + " pending error files, others are deferred to next launch.");
+            logFiles = Arrays.copyOf(logFiles, MAX_PENDING_ERRORS_PER_LAUNCH);
         }
         mHasReceivedMemoryWarningInLastSession = isMemoryRunningLevelWasReceived(SharedPreferencesManager.getInt(PREF_KEY_MEMORY_RUNNING_LEVEL, -1));
         if (mHasReceivedMemoryWarningInLastSession) {
             AppCenterLog.debug(LOG_TAG, "The application received a low memory warning in the last session.");
         }
         SharedPreferencesManager.remove(PREF_KEY_MEMORY_RUNNING_LEVEL);
+        Object processing = new Object();
+        mPendingErrorsProcessing = processing;
+        processPendingErrorsBatch(processing, logFiles, 0, deferred);
+    }
 
-        /* If automatic processing is enabled. */
-        if (mAutomaticProcessing) {
+    /**
+     * Read a batch of pending error files in background then merge them on the App Center handler thread.
+     */
+    private void processPendingErrorsBatch(final Object processing, final File[] logFiles, final int start, final boolean deferred) {
+        final int end = Math.min(start + PENDING_ERRORS_BATCH_SIZE, logFiles.length);
+        final PendingErrorLog[] pendingErrorLogs = new PendingErrorLog[end - start];
+        if (pendingErrorLogs.length == 0) {
+            mergePendingErrors(processing, logFiles, end, deferred, pendingErrorLogs);
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(pendingErrorLogs.length);
+        Executor executor = getPendingErrorsExecutor();
+        for (int i = start; i < end; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    pendingErrorLogs[index - start] = readPendingErrorLog(logFiles[index]);
+                    if (remaining.decrementAndGet() == 0) {
+                        post(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                mergePendingErrors(processing, logFiles, end, deferred, pendingErrorLogs);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
 
-            /* Proceed to check if user confirmation is needed. */
+    /**
+     * Read and parse a pending error file, this is called on a background thread.
+     *
+     * @param logFile error log file.
+     * @return parsed error log with its stack trace or null if file is invalid.
+     */
+    @WorkerThread
+    private PendingErrorLog readPendingErrorLog(File logFile) {
+        AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
+        String logfileContents = FileManager.read(logFile);
+        if (logfileContents != null) {
+            try {
+                ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+                return new PendingErrorLog(log, getStoredStackTrace(log));
+            } catch (JSONException e) {
+                AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+
+                //noinspection ResultOfMethodCallIgnored
+                logFile.delete();
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, "Error processing error log: " + logFile, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merge a batch of pending errors read in background, then deliver them.
+     * The next batch is started if any, otherwise the processing is complete.
+     */
+    private void mergePendingErrors(Object processing, File[] logFiles, int next, boolean deferred, PendingErrorLog[] pendingErrorLogs) {
+
+        /* Ignore results if processing was canceled by disabling the service. */
+        if (processing != mPendingErrorsProcessing) {
+            return;
+        }
+        for (PendingErrorLog pendingErrorLog : pendingErrorLogs) {
+            if (pendingErrorLog == null) {
+                continue;
+            }
+            ManagedErrorLog log = pendingErrorLog.log;
+            UUID id = log.getId();
+            ErrorReport report = buildErrorReport(log, pendingErrorLog.stackTrace);
+            if (report == null) {
+                removeAllStoredErrorLogFiles(id);
+            } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
+                if (!mAutomaticProcessing) {
+                    AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
+                }
+                mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
+            } else {
+                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+                removeAllStoredErrorLogFiles(id);
+            }
+        }
+        boolean completed = next >= logFiles.length;
+        if (completed) {
+            mPendingErrorsProcessing = null;
+
+            /* Remove lost throwable files, unless they belong to deferred error logs. */
+            if (mErrorReportCache.isEmpty() && !deferred) {
+                ErrorLogHelper.removeLostThrowableFiles();
+            }
+        }
+
+        /*
+         * If automatic processing is enabled, proceed to check if user confirmation is needed.
+         * Reports are sent progressively when always send was persisted, otherwise user confirmation
+         * is checked only once all the reports are processed.
+         */
+        if (mAutomaticProcessing && (completed || SharedPreferencesManager.getBoolean(PREF_KEY_ALWAYS_SEND, false))) {
             sendCrashReportsOrAwaitUserConfirmation();
         }
+        if (completed) {
+            runPendingErrorsProcessedCommands();
+        } else {
+            processPendingErrorsBatch(processing, logFiles, next, deferred);
+        }
+    }
+
+    /**
+     * Run a command now or after pending errors are processed if processing is in progress.
+     */
+    private void runAfterPendingErrorsProcessed(Runnable command) {
+        if (mPendingErrorsProcessing == null) {
+            command.run();
+        } else {
+            mPendingErrorsProcessedCommands.add(command);
+        }
+    }
+
+    private void runPendingErrorsProcessedCommands() {
+        List<Runnable> commands = new ArrayList<>(mPendingErrorsProcessedCommands);
+        mPendingErrorsProcessedCommands.clear();
+        for (Runnable command : commands) {
+            command.run();
+        }
+    }
+
+    private static synchronized Executor getPendingErrorsExecutor() {
+        if (sPendingErrorsExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(PENDING_ERRORS_THREAD_COUNT, PENDING_ERRORS_THREAD_COUNT,
+                    PENDING_ERRORS_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sPendingErrorsExecutor = executor;
+        }
+        return sPendingErrorsExecutor;
+    }
+
+    @VisibleForTesting
+    static synchronized void setPendingErrorsExecutor(Executor executor) {
+        sPendingErrorsExecutor = executor;
     }
 
     private static boolean isMemoryRunningLevelWasReceived(int memoryLevel) {
@@ -913,6 +1270,47 @@ public class Crashes extends AbstractAppCenterService {
         removeStoredThrowable(id);
     }
 
+    /**
+     * Delete the pending minidump file of an NDK crash report that is not sent.
+     * Minidumps of other reports, such as those waiting to be sent, are kept.
+     *
+     * @param errorLogReport the discarded report.
+     */
+    private void removePendingMinidump(ErrorLogReport errorLogReport) {
+        if (errorLogReport.report.getDevice() == null || !WRAPPER_SDK_NAME_NDK.equals(errorLogReport.report.getDevice().getWrapperSdkName())) {
+            return;
+        }
+        Exception exception = errorLogReport.log.getException();
+        if (exception == null) {
+            return;
+        }
+
+        /* Before SDK 2.1.0, the JSON was using the stacktrace field to hold file path on file storage. */
+        String minidumpFilePath = exception.getMinidumpFilePath();
+        if (minidumpFilePath == null) {
+            minidumpFilePath = exception.getStackTrace();
+        }
+        if (minidumpFilePath == null) {
+            return;
+        }
+        File minidumpFile = new File(minidumpFilePath);
+        if (ErrorLogHelper.getPendingMinidumpDirectory().equals(minidumpFile.getParentFile())) {
+            AppCenterLog.debug(LOG_TAG, "Deleting discarded minidump file: " + minidumpFile);
+            if (FileManager.delete(minidumpFile)) {
+                onPendingMinidumpDeleted();
+            }
+        }
+    }
+
+    /**
+     * Count a pending minidump file as deleted.
+     */
+    private void onPendingMinidumpDeleted() {
+        if (mPendingMinidumpCount.decrementAndGet() < 0) {
+            mPendingMinidumpCount.set(0);
+        }
+    }
+
     private void removeStoredThrowable(UUID id) {
         mErrorReportCache.remove(id);
         WrapperSdkExceptionManager.deleteWrapperExceptionData(id);
@@ -942,27 +1340,25 @@ public class Crashes extends AbstractAppCenterService {
 
     @VisibleForTesting
     ErrorReport buildErrorReport(ManagedErrorLog log) {
+        return buildErrorReport(log, null);
+    }
+
+    /**
+     * Get the cached report or build it.
+     *
+     * @param log        error log.
+     * @param stackTrace stack trace if already read, otherwise null to read it now.
+     * @return error report.
+     */
+    private ErrorReport buildErrorReport(ManagedErrorLog log, String stackTrace) {
         UUID id = log.getId();
         if (mErrorReportCache.containsKey(id)) {
             ErrorReport report = mErrorReportCache.get(id).report;
             report.setDevice(log.getDevice());
             return report;
         } else {
-            String stackTrace = null;
-
-            /* If exception in the log doesn't have stack trace try get it from the .throwable file. */
-            File file = ErrorLogHelper.getStoredThrowableFile(id);
-            if (file != null) {
-                if (file.length() > 0) {
-                    stackTrace = FileManager.read(file);
-                }
-            }
             if (stackTrace == null) {
-                if (MINIDUMP_FILE.equals(log.getException().getType())) {
-                    stackTrace = getStackTraceString(new NativeException());
-                } else {
-                    stackTrace = buildStackTrace(log.getException());
-                }
+                stackTrace = getStoredStackTrace(log);
             }
             ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, stackTrace);
             mErrorReportCache.put(id, new ErrorLogReport(log, report));
@@ -970,6 +1366,32 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Get the stack trace of an error log, this can be called from any thread.
+     *
+     * @param log error log.
+     * @return stack trace.
+     */
+    private String getStoredStackTrace(ManagedErrorLog log) {
+        String stackTrace = null;
+
+        /* If exception in the log doesn't have stack trace try get it from the .throwable file. */
+        File file = ErrorLogHelper.getStoredThrowableFile(log.getId());
+        if (file != null) {
+            if (file.length() > 0) {
+                stackTrace = FileManager.read(file);
+            }
+        }
+        if (stackTrace == null) {
+            if (MINIDUMP_FILE.equals(log.getException().getType())) {
+                stackTrace = getStackTraceString(new NativeException());
+            } else {
+                stackTrace = buildStackTrace(log.getException());
+            }
+        }
+        return stackTrace;
+    }
+
     @VisibleForTesting
     CrashesListener getInstanceListener() {
         return mCrashesListener;
@@ -993,13 +1415,13 @@ public class Crashes extends AbstractAppCenterService {
                 /* If we don't send. */
                 if (userConfirmation == DONT_SEND) {
 
-                    /* Clean up all pending error log and throwable files. */
-                    for (Iterator<UUID> iterator = mUnprocessedErrorReports.keySet().iterator(); iterator.hasNext(); ) {
-                        UUID id = iterator.next();
+                    /* Clean up all pending error log, throwable and minidump files of the discarded reports. */
+                    for (Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator(); iterator.hasNext(); ) {
+                        Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
                         iterator.remove();
-                        removeAllStoredErrorLogFiles(id);
+                        removeAllStoredErrorLogFiles(entry.getKey());
+                        removePendingMinidump(entry.getValue());
                     }
-                    ErrorLogHelper.cleanPendingMinidumps();
                 }
 
                 /* We send the crash. */
@@ -1015,7 +1437,6 @@ public class Crashes extends AbstractAppCenterService {
                     while (unprocessedIterator.hasNext()) {
 
                         /* If native crash, send dump as attachment and remove the fake stack trace. */
-                        File dumpFile = null;
                         ErrorAttachmentLog dumpAttachment = null;
                         Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
                         ErrorLogReport errorLogReport = unprocessedEntry.getValue();
@@ -1041,9 +1462,7 @@ public class Crashes extends AbstractAppCenterService {
 
                             /* It can be null when NativeException is thrown or there is already invalid stored data. */
                             if (minidumpFilePath != null) {
-                                dumpFile = new File(minidumpFilePath);
-                                byte[] logfileContents = FileManager.readBytes(dumpFile);
-                                dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
+                                dumpAttachment = createMinidumpAttachment(new File(minidumpFilePath));
                                 dumpAttachment.setTimestamp(errorLogReport.log.getTimestamp());
                             } else {
                                 AppCenterLog.warn(LOG_TAG, "NativeException found without minidump.");
@@ -1053,12 +1472,9 @@ public class Crashes extends AbstractAppCenterService {
                         /* Send report. */
                         mChannel.enqueue(errorLogReport.log, ERROR_GROUP, Flags.CRITICAL);
 
-                        /* Send dump attachment and remove file. */
+                        /* Send dump attachment, file is streamed then removed once the attachment is sent. */
                         if (dumpAttachment != null) {
                             sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
-
-                            //noinspection ResultOfMethodCallIgnored
-                            dumpFile.delete();
                         }
 
                         /* Get attachments from callback in automatic processing. */
@@ -1076,6 +1492,73 @@ public class Crashes extends AbstractAppCenterService {
         });
     }
 
+    /**
+     * Create the attachment of a minidump file, compressing it first if enabled.
+     * If compression fails, the minidump is attached uncompressed.
+     */
+    @WorkerThread
+    private ErrorAttachmentLog createMinidumpAttachment(File dumpFile) {
+        if (mMinidumpCompressionEnabled) {
+            File compressedFile = new File(dumpFile.getPath() + GZIP_FILE_EXTENSION);
+            try {
+                FileManager.gzip(dumpFile, compressedFile);
+                AppCenterLog.debug(LOG_TAG, "Compressed minidump from " + dumpFile.length() + " to " + compressedFile.length() + " bytes.");
+
+                //noinspection ResultOfMethodCallIgnored
+                dumpFile.delete();
+                return ErrorAttachmentLog.attachmentWithFile(compressedFile, MINIDUMP_ATTACHMENT_FILE_NAME + GZIP_FILE_EXTENSION, GZIP_CONTENT_TYPE);
+            } catch (IOException e) {
+                AppCenterLog.warn(LOG_TAG, "Failed to compress minidump, it will be sent uncompressed.", e);
+            }
+        }
+        return ErrorAttachmentLog.attachmentWithFile(dumpFile, MINIDUMP_ATTACHMENT_FILE_NAME, MINIDUMP_CONTENT_TYPE);
+    }
+
+    /**
+     * Send a handled error, with the number of occurrences it represents if aggregated.
+     */
+    private void enqueueHandledError(HandledErrorOccurrence occurrence, int occurrenceCount) {
+        HandledErrorLog errorLog = new HandledErrorLog();
+        errorLog.setId(occurrence.errorId);
+        errorLog.setUserId(occurrence.userId);
+        errorLog.setDataResidencyRegion(occurrence.dataResidencyRegion);
+        errorLog.setException(occurrence.exceptionModelBuilder.buildExceptionModel());
+        Map<String, String> properties = occurrence.properties;
+        if (occurrenceCount > 1) {
+            if (properties != null && properties.size() >= ErrorLogHelper.MAX_PROPERTY_COUNT) {
+                AppCenterLog.warn(LOG_TAG, "Cannot add occurrence count to handled error " + occurrence.errorId + " having too many properties.");
+            } else {
+                properties = properties != null ? new HashMap<>(properties) : new HashMap<String, String>();
+                properties.put(OCCURRENCE_COUNT_PROPERTY, String.valueOf(occurrenceCount));
+            }
+        }
+        errorLog.setProperties(properties);
+        mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
+    }
+
+    /**
+     * Send suppressed handled errors once the rate limit allows it, if no other occurrence does it before.
+     */
+    @WorkerThread
+    private void scheduleHandledErrorsFlush(final String fingerprint) {
+        if (mHandledErrorsHandler == null) {
+            mHandledErrorsHandler = new Handler(Looper.myLooper());
+        }
+        long delay = mHandledErrorAggregator.getNextTokenDelay(fingerprint, SystemClock.elapsedRealtime());
+        mHandledErrorsHandler.postDelayed(new Runnable() {
+
+            @Override
+            public void run() {
+                HandledErrorAggregator.Aggregate<HandledErrorOccurrence> aggregate = mHandledErrorAggregator.flush(fingerprint, SystemClock.elapsedRealtime());
+                if (aggregate != null) {
+                    enqueueHandledError(aggregate.getLatestOccurrence(), aggregate.getCount());
+                } else if (mHandledErrorAggregator.getSuppressedCount(fingerprint) > 0) {
+                    scheduleHandledErrorsFlush(fingerprint);
+                }
+            }
+        }, delay);
+    }
+
     /**
      * Send error attachment logs through channel.
      */
@@ -1090,10 +1573,10 @@ public class Crashes extends AbstractAppCenterService {
                     attachment.setErrorId(errorId);
                     if (!attachment.isValid()) {
                         AppCenterLog.error(LOG_TAG, "Not all required fields are present in ErrorAttachmentLog.");
-                    } else if (attachment.getData().length > MAX_ATTACHMENT_SIZE) {
+                    } else if (attachment.getDataSize() > MAX_ATTACHMENT_SIZE) {
                         AppCenterLog.error(LOG_TAG, String.format(Locale.ENGLISH,
                                 "Discarding attachment with size above %d bytes: size=%d, fileName=%s.",
-                                MAX_ATTACHMENT_SIZE, attachment.getData().length, attachment.getFileName()));
+                                MAX_ATTACHMENT_SIZE, attachment.getDataSize(), attachment.getFileName()));
                     } else {
                         mChannel.enqueue(attachment, ERROR_GROUP, Flags.DEFAULTS);
                     }
@@ -1104,6 +1587,11 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    @VisibleForTesting
+    ThreadCapturePolicy getThreadCapturePolicy() {
+        return mThreadCapturePolicy;
+    }
+
     @VisibleForTesting
     void setLogSerializer(LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
@@ -1155,7 +1643,7 @@ public class Crashes extends AbstractAppCenterService {
         mSavedUncaughtException = true;
 
         /* Save error log. */
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, ErrorLogHelper.getThreadStackTraces(thread, mThreadCapturePolicy), mInitializeTimestamp, true);
         return saveErrorLogFiles(throwable, errorLog);
     }
 
@@ -1190,11 +1678,17 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void run() {
-                Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
-                }
-                future.complete(reports);
+                runAfterPendingErrorsProcessed(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
+                        for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
+                            reports.add(entry.report);
+                        }
+                        future.complete(reports);
+                    }
+                });
             }
         }, future, Collections.<ErrorReport>emptyList());
         return future;
@@ -1209,24 +1703,30 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void run() {
+                runAfterPendingErrorsProcessed(new Runnable() {
 
-                /* Apply the filtering. */
-                Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
-                    UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
-                    if (filteredReportIds != null && filteredReportIds.contains(idString)) {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + idString);
-                        removeAllStoredErrorLogFiles(id);
-                        iterator.remove();
-                    }
-                }
+                    @Override
+                    public void run() {
+
+                        /* Apply the filtering. */
+                        Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                        while (iterator.hasNext()) {
+                            Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
+                            UUID id = entry.getKey();
+                            String idString = entry.getValue().report.getId();
+                            if (filteredReportIds != null && filteredReportIds.contains(idString)) {
+                                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
+                            } else {
+                                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + idString);
+                                removeAllStoredErrorLogFiles(id);
+                                iterator.remove();
+                            }
+                        }
 
-                /* Proceed to check if user confirmation is needed. */
-                future.complete(sendCrashReportsOrAwaitUserConfirmation());
+                        /* Proceed to check if user confirmation is needed. */
+                        future.complete(sendCrashReportsOrAwaitUserConfirmation());
+                    }
+                });
             }
         }, future, false);
         return future;
@@ -1275,6 +1775,13 @@ public class Crashes extends AbstractAppCenterService {
          * @return model exception.
          */
         Exception buildExceptionModel();
+
+        /**
+         * Get fingerprint used to aggregate repeated errors.
+         *
+         * @return fingerprint.
+         */
+        String getFingerprint();
     }
 
     /**
@@ -1297,6 +1804,45 @@ public class Crashes extends AbstractAppCenterService {
 
     }
 
+    /**
+     * Handled error data kept until it is sent, possibly aggregated with later occurrences.
+     */
+    private static class HandledErrorOccurrence {
+
+        private final UUID errorId;
+
+        private final String userId;
+
+        private final String dataResidencyRegion;
+
+        private final ExceptionModelBuilder exceptionModelBuilder;
+
+        private final Map<String, String> properties;
+
+        private HandledErrorOccurrence(UUID errorId, String userId, String dataResidencyRegion, ExceptionModelBuilder exceptionModelBuilder, Map<String, String> properties) {
+            this.errorId = errorId;
+            this.userId = userId;
+            this.dataResidencyRegion = dataResidencyRegion;
+            this.exceptionModelBuilder = exceptionModelBuilder;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Error log read from a pending file in background, with its stack trace.
+     */
+    private static class PendingErrorLog {
+
+        private final ManagedErrorLog log;
+
+        private final String stackTrace;
+
+        private PendingErrorLog(ManagedErrorLog log, String stackTrace) {
+            this.log = log;
+            this.stackTrace = stackTrace;
+        }
+    }
+
     /**
      * Class holding an error log and its corresponding error report.
      */
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import androidx.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+
+/**
+ * Policy defining which thread states are attached to crash reports.
+ * <p>
+ * The crashing thread is always captured first. Capturing every thread of a process with hundreds
+ * of threads produces very large error logs, so limiting the thread count or frames per thread
+ * reduces both the time spent in the crash handler and the size of the report.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ThreadCapturePolicy {
+
+    /**
+     * Value used for thread and frame counts to disable any limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Default policy: all threads with all their frames, as captured before policies existed.
+     */
+    static final ThreadCapturePolicy DEFAULT = allThreads().withMaxFramesPerThread(UNLIMITED);
+
+    /**
+     * Maximum number of threads to capture, including the crashing thread.
+     */
+    private final int mMaxThreads;
+
+    /**
+     * Maximum number of frames to keep per captured thread.
+     */
+    private final int mMaxFramesPerThread;
+
+    private ThreadCapturePolicy(int maxThreads, int maxFramesPerThread) {
+        mMaxThreads = maxThreads;
+        mMaxFramesPerThread = maxFramesPerThread;
+    }
+
+    /**
+     * Capture only the thread where the error occurred.
+     *
+     * @return thread capture policy.
+     */
+    @NonNull
+    public static ThreadCapturePolicy crashingThreadOnly() {
+        return new ThreadCapturePolicy(1, ErrorLogHelper.FRAME_LIMIT);
+    }
+
+    /**
+     * Capture the thread where the error occurred, then the main thread, then other live threads
+     * until the specified count is reached.
+     *
+     * @param maxThreads maximum number of threads to capture, must be positive.
+     * @return thread capture policy.
+     * @throws IllegalArgumentException if maxThreads is not positive.
+     */
+    @NonNull
+    public static ThreadCapturePolicy topThreads(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive.");
+        }
+        return new ThreadCapturePolicy(maxThreads, ErrorLogHelper.FRAME_LIMIT);
+    }
+
+    /**
+     * Capture every live thread of the process.
+     *
+     * @return thread capture policy.
+     */
+    @NonNull
+    public static ThreadCapturePolicy allThreads() {
+        return new ThreadCapturePolicy(UNLIMITED, ErrorLogHelper.FRAME_LIMIT);
+    }
+
+    /**
+     * Get a copy of this policy with a different frame limit per thread.
+     * When a thread has more frames than the limit, the top most frames are kept.
+     *
+     * @param maxFramesPerThread maximum number of frames per thread, must be positive.
+     *                           Use {@link #UNLIMITED} to keep all frames.
+     * @return thread capture policy.
+     * @throws IllegalArgumentException if maxFramesPerThread is not positive.
+     */
+    @NonNull
+    public ThreadCapturePolicy withMaxFramesPerThread(int maxFramesPerThread) {
+        if (maxFramesPerThread <= 0) {
+            throw new IllegalArgumentException("maxFramesPerThread must be positive.");
+        }
+        return new ThreadCapturePolicy(mMaxThreads, maxFramesPerThread);
+    }
+
+    /**
+     * Get the maximum number of threads to capture, including the crashing thread.
+     *
+     * @return maximum number of threads or {@link #UNLIMITED}.
+     */
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    /**
+     * Get the maximum number of frames to keep per captured thread.
+     *
+     * @return maximum number of frames or {@link #UNLIMITED}.
+     */
+    public int getMaxFramesPerThread() {
+        return mMaxFramesPerThread;
+    }
+}
@@ -133,7 +133,8 @@ public class WrapperSdkExceptionManager {
      * @param modelException An handled exception already in JSON model form.
      * @param properties     optional properties.
      * @param attachments    optional attachments.
-     * @return error report ID.
+     * @return error report ID. If the error is suppressed by rate limiting, it is counted in a later
+     * report having another ID and this ID never reaches the backend.
      */
     public static String trackException(com.microsoft.appcenter.crashes.ingestion.models.Exception modelException, Map<String, String> properties, Iterable<ErrorAttachmentLog> attachments) {
         return Crashes.getInstance().queueException(modelException, properties, attachments).toString();
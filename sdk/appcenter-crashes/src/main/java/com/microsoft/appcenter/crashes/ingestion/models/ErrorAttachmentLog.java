@@ -5,16 +5,19 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.FileBackedLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.UUID;
@@ -24,7 +27,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Error attachment log.
  */
-public class ErrorAttachmentLog extends AbstractLog {
+public class ErrorAttachmentLog extends AbstractLog implements FileBackedLog {
 
     /**
      * Plain text mime type.
@@ -46,6 +49,12 @@ public class ErrorAttachmentLog extends AbstractLog {
     @VisibleForTesting
     static final String DATA = "data";
 
+    /**
+     * Prefix of the data value stored for a file-backed attachment, followed by the file path.
+     */
+    @VisibleForTesting
+    static final String FILE_DATA_PREFIX = "appcenter-file:";
+
     /**
      * Error attachment identifier.
      */
@@ -71,6 +80,11 @@ public class ErrorAttachmentLog extends AbstractLog {
      */
     private byte[] data;
 
+    /**
+     * File whose content is streamed as data, when not held in memory.
+     */
+    private File file;
+
     /**
      * Build an error attachment log with text suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
      *
@@ -101,6 +115,24 @@ public class ErrorAttachmentLog extends AbstractLog {
         return attachmentLog;
     }
 
+    /**
+     * Build an error attachment log whose content is read from a file only when sending it.
+     * The file content is base64 encoded on the fly into the request body, so it's never fully
+     * loaded in memory. The file must not be modified or deleted until the attachment is sent.
+     *
+     * @param file        file to attach.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType file content MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithFile(File file, String fileName, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setFile(file);
+        attachmentLog.setFileName(fileName);
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
     @Override
     public String getType() {
         return TYPE;
@@ -198,13 +230,56 @@ public class ErrorAttachmentLog extends AbstractLog {
         this.data = data;
     }
 
+    /**
+     * Get the file value.
+     *
+     * @return the file value, null if data is held in memory.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Set the file value.
+     *
+     * @param file the file value to set
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the size of the attachment content before encoding.
+     *
+     * @return size in bytes, either from data or file.
+     */
+    public long getDataSize() {
+        if (file != null) {
+            return file.length();
+        }
+        return data != null ? data.length : 0;
+    }
+
+    @Nullable
+    @Override
+    public File getContentFile() {
+        return file;
+    }
+
+    @Nullable
+    @Override
+    public String getContentPlaceholder() {
+        return file != null ? FILE_DATA_PREFIX + file.getAbsolutePath() : null;
+    }
+
     /**
      * Checks if the log's values are valid.
      *
      * @return true if validation succeeded, otherwise false.
      */
     public boolean isValid() {
-        return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
+        return getId() != null && getErrorId() != null && getContentType() != null && (getData() != null || (getFile() != null && getFile().exists()));
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -215,8 +290,19 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
+        String data = object.getString(DATA);
+        if (data.startsWith(FILE_DATA_PREFIX)) {
+
+            /* The file may have been deleted since the log was persisted, this log cannot be sent anymore. */
+            File file = new File(data.substring(FILE_DATA_PREFIX.length()));
+            if (!file.exists()) {
+                throw new JSONException("Attachment file does not exist: " + file);
+            }
+            setFile(file);
+            return;
+        }
         try {
-            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
+            setData(Base64.decode(data, Base64.DEFAULT));
         } catch (IllegalArgumentException e) {
             throw new JSONException(e.getMessage());
         }
@@ -229,7 +315,13 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        if (getFile() != null) {
+
+            /* Only reference the file, content is streamed when sending the log. */
+            JSONUtils.write(writer, DATA, getContentPlaceholder());
+        } else {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
@@ -257,6 +349,9 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
             return false;
         }
+        if (file != null ? !file.equals(that.file) : that.file != null) {
+            return false;
+        }
         return Arrays.equals(data, that.data);
 
     }
@@ -268,6 +363,7 @@ public class ErrorAttachmentLog extends AbstractLog {
         result = 31 * result + (errorId != null ? errorId.hashCode() : 0);
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
         result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
+        result = 31 * result + (file != null ? file.hashCode() : 0);
         result = 31 * result + Arrays.hashCode(data);
         return result;
     }
@@ -9,6 +9,7 @@ import android.annotation.TargetApi;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.os.Build;
+import android.os.Looper;
 import android.os.Process;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,6 +18,7 @@ import androidx.annotation.VisibleForTesting;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ThreadCapturePolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
@@ -39,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -117,7 +120,7 @@ public class ErrorLogHelper {
     /**
      * Max number of properties.
      */
-    private static final int MAX_PROPERTY_COUNT = 20;
+    public static final int MAX_PROPERTY_COUNT = 20;
 
     /**
      * Max length of properties.
@@ -235,6 +238,80 @@ public class ErrorLogHelper {
         return errorLog;
     }
 
+    /**
+     * Capture thread stack traces according to a thread capture policy.
+     * Only the policy capturing all threads pays the cost of {@link java.lang.Thread#getAllStackTraces()},
+     * other policies only walk the stacks of the threads that are kept.
+     *
+     * @param crashingThread thread where the error occurred, always captured first.
+     * @param policy         thread capture policy.
+     * @return stack traces by thread, frames truncated to the policy limit.
+     */
+    @NonNull
+    public static Map<java.lang.Thread, StackTraceElement[]> getThreadStackTraces(@NonNull java.lang.Thread crashingThread, @NonNull ThreadCapturePolicy policy) {
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces;
+        int maxThreads = policy.getMaxThreads();
+        if (maxThreads == ThreadCapturePolicy.UNLIMITED) {
+            stackTraces = java.lang.Thread.getAllStackTraces();
+        } else {
+            stackTraces = new LinkedHashMap<>();
+            stackTraces.put(crashingThread, crashingThread.getStackTrace());
+            if (maxThreads > 1) {
+                Looper mainLooper = Looper.getMainLooper();
+                java.lang.Thread mainThread = mainLooper != null ? mainLooper.getThread() : null;
+                if (mainThread != null && mainThread != crashingThread) {
+                    stackTraces.put(mainThread, mainThread.getStackTrace());
+                }
+                for (java.lang.Thread thread : getLiveThreads()) {
+                    if (stackTraces.size() >= maxThreads) {
+                        break;
+                    }
+                    if (!stackTraces.containsKey(thread)) {
+                        stackTraces.put(thread, thread.getStackTrace());
+                    }
+                }
+            }
+        }
+        int maxFrames = policy.getMaxFramesPerThread();
+        if (maxFrames != ThreadCapturePolicy.UNLIMITED) {
+            for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : stackTraces.entrySet()) {
+                StackTraceElement[] stackTrace = entry.getValue();
+                if (stackTrace.length > maxFrames) {
+                    StackTraceElement[] stackTraceTruncated = new StackTraceElement[maxFrames];
+                    System.arraycopy(stackTrace, 0, stackTraceTruncated, 0, maxFrames);
+                    entry.setValue(stackTraceTruncated);
+                }
+            }
+        }
+        return stackTraces;
+    }
+
+    /**
+     * Enumerate live threads without walking their stacks.
+     *
+     * @return live threads of the process.
+     */
+    @NonNull
+    private static java.lang.Thread[] getLiveThreads() {
+        ThreadGroup rootGroup = java.lang.Thread.currentThread().getThreadGroup();
+        while (rootGroup != null && rootGroup.getParent() != null) {
+            rootGroup = rootGroup.getParent();
+        }
+        if (rootGroup == null) {
+            return new java.lang.Thread[0];
+        }
+
+        /* Enumerate returns at most the array size, grow until all threads fit. */
+        java.lang.Thread[] threads = new java.lang.Thread[rootGroup.activeCount() + 1];
+        int count;
+        while ((count = rootGroup.enumerate(threads, true)) == threads.length) {
+            threads = new java.lang.Thread[threads.length * 2];
+        }
+        java.lang.Thread[] liveThreads = new java.lang.Thread[count];
+        System.arraycopy(threads, 0, liveThreads, 0, count);
+        return liveThreads;
+    }
+
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private static String getArchitecture() {
@@ -707,6 +784,16 @@ public class ErrorLogHelper {
         return result;
     }
 
+    /**
+     * Count the minidumps of processed NDK crashes that are waiting to be sent or discarded.
+     *
+     * @return the number of files in the pending minidump directory.
+     */
+    public static int getPendingMinidumpCount() {
+        String[] files = getPendingMinidumpDirectory().list();
+        return files != null ? files.length : 0;
+    }
+
     /**
      * Clear (delete all content) pending minidump directory.
      */
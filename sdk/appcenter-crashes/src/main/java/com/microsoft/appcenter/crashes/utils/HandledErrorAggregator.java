@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.utils.HashUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rate limits handled errors having the same fingerprint with a token bucket per fingerprint.
+ * Occurrences exceeding the rate are not reported individually: they are counted and the count is
+ * reported with the next occurrence allowed by the rate limit, or with the latest suppressed one
+ * when flushed or when its fingerprint is forgotten. Identifiers of the other suppressed
+ * occurrences are thus never reported.
+ *
+ * @param <T> type of the data kept for the latest suppressed occurrence, used when flushing.
+ */
+public class HandledErrorAggregator<T> {
+
+    /**
+     * Number of top frames used to compute a fingerprint.
+     */
+    @VisibleForTesting
+    static final int FINGERPRINT_FRAME_COUNT = 5;
+
+    /**
+     * Maximum number of fingerprints tracked, the least recently used one is forgotten first.
+     */
+    @VisibleForTesting
+    static final int MAX_FINGERPRINTS = 64;
+
+    /**
+     * Token bucket capacity: number of occurrences reported without delay.
+     */
+    private final int mBurst;
+
+    /**
+     * Time in milliseconds to get a new token in a bucket.
+     */
+    private final long mRefillIntervalMillis;
+
+    /**
+     * Listener notified of suppressed occurrences of a forgotten fingerprint, null if none.
+     */
+    private final EvictionListener<T> mEvictionListener;
+
+    /**
+     * Buckets by fingerprint, in access order.
+     */
+    private final Map<String, Bucket<T>> mBuckets = new LinkedHashMap<String, Bucket<T>>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket<T>> eldest) {
+            if (size() <= MAX_FINGERPRINTS) {
+                return false;
+            }
+
+            /* Do not lose the suppressed occurrences of the forgotten fingerprint. */
+            Bucket<T> bucket = eldest.getValue();
+            if (bucket.suppressedCount > 0 && mEvictionListener != null) {
+                mEvictionListener.onEvicted(new Aggregate<>(bucket.suppressedCount, bucket.latestSuppressed));
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Init.
+     *
+     * @param burst                number of occurrences per fingerprint reported without delay.
+     * @param refillIntervalMillis time to allow one more occurrence per fingerprint.
+     */
+    public HandledErrorAggregator(int burst, long refillIntervalMillis) {
+        this(burst, refillIntervalMillis, null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param burst                number of occurrences per fingerprint reported without delay.
+     * @param refillIntervalMillis time to allow one more occurrence per fingerprint.
+     * @param evictionListener     listener reporting suppressed occurrences of forgotten fingerprints.
+     */
+    public HandledErrorAggregator(int burst, long refillIntervalMillis, @Nullable EvictionListener<T> evictionListener) {
+        mBurst = burst;
+        mRefillIntervalMillis = refillIntervalMillis;
+        mEvictionListener = evictionListener;
+    }
+
+    /**
+     * Compute the fingerprint of a throwable from its type and top stack frames.
+     *
+     * @param throwable throwable.
+     * @return fingerprint.
+     */
+    @NonNull
+    public static String getFingerprint(@NonNull Throwable throwable) {
+        StringBuilder builder = new StringBuilder(throwable.getClass().getName());
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        for (int i = 0; i < Math.min(FINGERPRINT_FRAME_COUNT, stackTrace.length); i++) {
+            StackTraceElement frame = stackTrace[i];
+            appendFrame(builder, frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber());
+        }
+        return HashUtils.sha256(builder.toString());
+    }
+
+    /**
+     * Compute the fingerprint of an exception model from its type and top stack frames.
+     *
+     * @param exception exception model.
+     * @return fingerprint.
+     */
+    @NonNull
+    public static String getFingerprint(@NonNull Exception exception) {
+        StringBuilder builder = new StringBuilder(String.valueOf(exception.getType()));
+        List<StackFrame> frames = exception.getFrames();
+        if (frames != null) {
+            for (int i = 0; i < Math.min(FINGERPRINT_FRAME_COUNT, frames.size()); i++) {
+                StackFrame frame = frames.get(i);
+                appendFrame(builder, frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber());
+            }
+        }
+        return HashUtils.sha256(builder.toString());
+    }
+
+    private static void appendFrame(StringBuilder builder, String className, String methodName, String fileName, Integer lineNumber) {
+        builder.append('\n').append(className).append('.').append(methodName)
+                .append('(').append(fileName).append(':').append(lineNumber).append(')');
+    }
+
+    /**
+     * Record an occurrence.
+     *
+     * @param fingerprint occurrence fingerprint.
+     * @param now         current time in milliseconds, from a monotonic clock.
+     * @param occurrence  data kept if the occurrence is suppressed.
+     * @return number of occurrences to report now, including previously suppressed ones,
+     * or 0 if this occurrence is suppressed.
+     */
+    public synchronized int record(@NonNull String fingerprint, long now, T occurrence) {
+        Bucket<T> bucket = mBuckets.get(fingerprint);
+        if (bucket == null) {
+            bucket = new Bucket<>(mBurst, now);
+            mBuckets.put(fingerprint, bucket);
+        }
+        refill(bucket, now);
+        if (bucket.tokens >= 1) {
+            bucket.tokens--;
+            int count = 1 + bucket.suppressedCount;
+            bucket.suppressedCount = 0;
+            bucket.latestSuppressed = null;
+            return count;
+        }
+        bucket.suppressedCount++;
+        bucket.latestSuppressed = occurrence;
+        return 0;
+    }
+
+    /**
+     * Get the number of suppressed occurrences not yet reported.
+     *
+     * @param fingerprint fingerprint.
+     * @return suppressed occurrence count.
+     */
+    public synchronized int getSuppressedCount(@NonNull String fingerprint) {
+        Bucket<T> bucket = mBuckets.get(fingerprint);
+        return bucket != null ? bucket.suppressedCount : 0;
+    }
+
+    /**
+     * Get the time to wait before the rate limit allows another occurrence.
+     *
+     * @param fingerprint fingerprint.
+     * @param now         current time in milliseconds.
+     * @return delay in milliseconds, 0 if an occurrence can be reported now.
+     */
+    public synchronized long getNextTokenDelay(@NonNull String fingerprint, long now) {
+        Bucket<T> bucket = mBuckets.get(fingerprint);
+        if (bucket == null) {
+            return 0;
+        }
+        refill(bucket, now);
+        return bucket.tokens >= 1 ? 0 : (long) Math.ceil((1 - bucket.tokens) * mRefillIntervalMillis);
+    }
+
+    /**
+     * Take suppressed occurrences to report them, if the rate limit allows it.
+     *
+     * @param fingerprint fingerprint.
+     * @param now         current time in milliseconds.
+     * @return the suppressed occurrences or null if none or if rate limit still applies.
+     */
+    @Nullable
+    public synchronized Aggregate<T> flush(@NonNull String fingerprint, long now) {
+        Bucket<T> bucket = mBuckets.get(fingerprint);
+        if (bucket == null || bucket.suppressedCount == 0) {
+            return null;
+        }
+        refill(bucket, now);
+        if (bucket.tokens < 1) {
+            return null;
+        }
+        bucket.tokens--;
+        Aggregate<T> aggregate = new Aggregate<>(bucket.suppressedCount, bucket.latestSuppressed);
+        bucket.suppressedCount = 0;
+        bucket.latestSuppressed = null;
+        return aggregate;
+    }
+
+    /**
+     * Forget all fingerprints and their suppressed occurrences.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+    }
+
+    private void refill(Bucket<T> bucket, long now) {
+        long elapsed = now - bucket.lastRefillTime;
+        if (elapsed > 0) {
+            bucket.tokens = Math.min(mBurst, bucket.tokens + (double) elapsed / mRefillIntervalMillis);
+            bucket.lastRefillTime = now;
+        }
+    }
+
+    /**
+     * Listener notified when a fingerprint having suppressed occurrences is forgotten to track
+     * another one, called from {@link #record(String, long, Object)}.
+     *
+     * @param <T> type of the data kept for the latest suppressed occurrence.
+     */
+    public interface EvictionListener<T> {
+
+        /**
+         * Called when suppressed occurrences must be reported regardless of the rate limit.
+         *
+         * @param aggregate the suppressed occurrences.
+         */
+        void onEvicted(@NonNull Aggregate<T> aggregate);
+    }
+
+    /**
+     * Suppressed occurrences of a fingerprint.
+     *
+     * @param <T> type of the data kept for the latest suppressed occurrence.
+     */
+    public static class Aggregate<T> {
+
+        private final int mCount;
+
+        private final T mLatestOccurrence;
+
+        private Aggregate(int count, T latestOccurrence) {
+            mCount = count;
+            mLatestOccurrence = latestOccurrence;
+        }
+
+        /**
+         * @return number of suppressed occurrences.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return data of the latest suppressed occurrence.
+         */
+        public T getLatestOccurrence() {
+            return mLatestOccurrence;
+        }
+    }
+
+    private static class Bucket<T> {
+
+        private double tokens;
+
+        private long lastRefillTime;
+
+        private int suppressedCount;
+
+        private T latestSuppressed;
+
+        private Bucket(int tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefillTime = now;
+        }
+    }
+}
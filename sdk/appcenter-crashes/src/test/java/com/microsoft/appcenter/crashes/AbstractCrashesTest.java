@@ -37,6 +37,8 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.util.concurrent.Executor;
+
 @PrepareForTest({
         AppCenter.class,
         AppCenterLog.class,
@@ -110,6 +112,15 @@ public class AbstractCrashesTest {
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
         doAnswer(runNow).when(mAppCenterHandler).post(any(Runnable.class), any());
+
+        /* Read pending error files synchronously. */
+        Crashes.setPendingErrorsExecutor(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
     }
 
     @After
@@ -22,10 +22,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
-import static org.mockito.ArgumentMatchers.anyByte;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyMap;
@@ -36,6 +36,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -57,6 +58,8 @@ import android.os.Looper;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.EvictionPolicy;
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
@@ -108,6 +111,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 @PrepareForTest({android.util.Log.class})
 public class CrashesTest extends AbstractCrashesTest {
@@ -192,6 +196,14 @@ public class CrashesTest extends AbstractCrashesTest {
         assertEquals(Crashes.ERROR_GROUP, instance.getGroupName());
     }
 
+    @Test
+    public void storageIsReserved() {
+        StorageQuota quota = Crashes.getInstance().getStorageQuota();
+        assertEquals(Crashes.ERROR_GROUP_RESERVED_STORAGE_SIZE, quota.getReservedSize());
+        assertEquals(1, quota.getMaxShare(), 0);
+        assertEquals(EvictionPolicy.OLDEST_FIRST, quota.getEvictionPolicy());
+    }
+
     @Test
     public void setEnabled() {
 
@@ -215,6 +227,7 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarting(mAppCenterHandler);
         crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
         verify(mockChannel).removeGroup(eq(crashes.getGroupName()));
+        verify(mockChannel).setStorageQuota(eq(crashes.getGroupName()), any(StorageQuota.class));
         verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(), any(Channel.GroupListener.class));
 
         /* Test. */
@@ -415,6 +428,129 @@ public class CrashesTest extends AbstractCrashesTest {
         verify(mockChannel, times(errorAttachmentLogList.size())).enqueue(mockAttachment, crashes.getGroupName(), DEFAULTS);
     }
 
+    @Test
+    public void processPendingErrorsInBackgroundBatches() throws JSONException {
+
+        /* Queue background tasks to run them manually. */
+        final List<Runnable> tasks = new ArrayList<>();
+        Crashes.setPendingErrorsExecutor(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        /* Setup more pending files than processed on a single launch. */
+        int fileCount = Crashes.MAX_PENDING_ERRORS_PER_LAUNCH + 3;
+        File[] files = new File[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            files[i] = mock(File.class);
+            when(files[i].lastModified()).thenReturn((long) (fileCount - i));
+        }
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenAnswer(new Answer<ErrorReport>() {
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) {
+                return new ErrorReport();
+            }
+        });
+        when(FileManager.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), any())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getException()).thenReturn(new com.microsoft.appcenter.crashes.ingestion.models.Exception());
+                return log;
+            }
+        });
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+        when(listener.shouldAwaitUserConfirmation()).thenReturn(true);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(listener);
+        crashes.onStarting(mAppCenterHandler);
+        Channel channel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Nothing read on the handler thread, only the first batch is scheduled. */
+        verify(logSerializer, never()).deserializeLog(anyString(), any());
+        assertEquals(Crashes.PENDING_ERRORS_BATCH_SIZE, tasks.size());
+
+        /* Getting unprocessed reports waits for the end of processing. */
+        AppCenterFuture<Collection<ErrorReport>> unprocessedReports = WrapperSdkExceptionManager.getUnprocessedErrorReports();
+        assertFalse(unprocessedReports.isDone());
+
+        /* Run tasks batch by batch, oldest files first. */
+        int processed = 0;
+        while (!tasks.isEmpty()) {
+            List<Runnable> batch = new ArrayList<>(tasks);
+            tasks.clear();
+            assertTrue(batch.size() <= Crashes.PENDING_ERRORS_BATCH_SIZE);
+            for (Runnable task : batch) {
+                task.run();
+            }
+            processed += batch.size();
+            verify(listener, times(processed)).shouldProcess(any(ErrorReport.class));
+        }
+        assertEquals(Crashes.MAX_PENDING_ERRORS_PER_LAUNCH, processed);
+        verifyStatic(FileManager.class, never());
+        FileManager.read(files[0]);
+        verifyStatic(FileManager.class);
+        FileManager.read(files[fileCount - 1]);
+
+        /* User confirmation is asked once, when all reports are processed. */
+        verify(listener).shouldAwaitUserConfirmation();
+        assertTrue(unprocessedReports.isDone());
+        assertEquals(Crashes.MAX_PENDING_ERRORS_PER_LAUNCH, unprocessedReports.get().size());
+
+        /* Throwable files of deferred reports are kept. */
+        verifyStatic(ErrorLogHelper.class, never());
+        ErrorLogHelper.removeLostThrowableFiles();
+    }
+
+    @Test
+    public void processPendingErrorsCanceledByDisabling() throws JSONException {
+
+        /* Queue background tasks to run them manually. */
+        final List<Runnable> tasks = new ArrayList<>();
+        Crashes.setPendingErrorsExecutor(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
+        when(FileManager.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), any())).thenReturn(mErrorLog);
+        CrashesListener listener = mock(CrashesListener.class);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(listener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertEquals(1, tasks.size());
+
+        /* Disable before background read completes. */
+        Crashes.setEnabled(false);
+        tasks.get(0).run();
+
+        /* Result is discarded. */
+        verifyNoInteractions(listener);
+    }
+
     @Test
     public void processPendingErrorsCorrupted() throws JSONException {
         mockStatic(ErrorLogHelper.class);
@@ -577,6 +713,45 @@ public class CrashesTest extends AbstractCrashesTest {
         ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
     }
 
+    @Test
+    public void channelListenerRequiresLogCallbacks() {
+        mockStatic(ErrorLogHelper.class);
+        Channel.BatchListener listener = (Channel.BatchListener) Crashes.getInstance().getChannelListener();
+
+        /* Sent logs are not read again without a listener or a minidump to delete. */
+        assertFalse(listener.requiresLogCallbacks());
+
+        /* Pending minidumps are listed once at start. */
+        File pendingDirectory = mock(File.class);
+        when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingDirectory);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getPendingMinidumpCount()).thenReturn(1);
+        Crashes.getInstance().onStarting(mAppCenterHandler);
+        Crashes.getInstance().onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertTrue(listener.requiresLogCallbacks());
+        assertTrue(listener.requiresLogCallbacks());
+        verifyStatic(ErrorLogHelper.class);
+        ErrorLogHelper.getPendingMinidumpCount();
+
+        /* Not needed anymore once the minidump is deleted after being sent. */
+        File minidumpFile = mock(File.class);
+        when(minidumpFile.getParentFile()).thenReturn(pendingDirectory);
+        when(minidumpFile.delete()).thenReturn(true);
+        ErrorAttachmentLog attachmentLog = mock(ErrorAttachmentLog.class);
+        when(attachmentLog.getFile()).thenReturn(minidumpFile);
+        listener.onSuccess(attachmentLog);
+        assertFalse(listener.requiresLogCallbacks());
+        Crashes.getInstance().setInstanceListener(mock(CrashesListener.class));
+        assertTrue(listener.requiresLogCallbacks());
+        Crashes.getInstance().setInstanceListener(null);
+        assertFalse(listener.requiresLogCallbacks());
+
+        /* Batch callbacks do nothing. */
+        listener.onBatchSuccess(1, 0);
+        listener.onBatchFailure(1, 1, EXCEPTION);
+    }
+
     @Test
     public void getChannelListenerErrors() {
         mockStatic(ErrorLogHelper.class);
@@ -630,7 +805,7 @@ public class CrashesTest extends AbstractCrashesTest {
         /* Verify. */
         Crashes.notifyUserConfirmation(Crashes.DONT_SEND);
         verify(mockListener, never()).getErrorAttachments(any(ErrorReport.class));
-        verifyStatic(ErrorLogHelper.class);
+        verifyStatic(ErrorLogHelper.class, never());
         ErrorLogHelper.cleanPendingMinidumps();
         verifyStatic(ErrorLogHelper.class);
         ErrorLogHelper.removeStoredErrorLogFile(mErrorLog.getId());
@@ -638,6 +813,55 @@ public class CrashesTest extends AbstractCrashesTest {
         ErrorLogHelper.removeLostThrowableFiles();
     }
 
+    @Test
+    public void handleUserConfirmationDoNotSendDeletesOnlyDiscardedMinidumps() throws Exception {
+
+        /* Set up mock for a processed NDK crash. */
+        final com.microsoft.appcenter.crashes.ingestion.models.Exception exception = mock(com.microsoft.appcenter.crashes.ingestion.models.Exception.class);
+        mockStatic(ErrorLogHelper.class);
+        ErrorReport errorReport = new ErrorReport();
+        Device device = new Device();
+        device.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
+        errorReport.setDevice(device);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(errorReport);
+        when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(new File("minidump/pending"));
+        when(exception.getMinidumpFilePath()).thenReturn("minidump/pending/crash.dmp");
+        when(exception.getType()).thenReturn(MINIDUMP_FILE);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(FileManager.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), any())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getException()).thenReturn(exception);
+                when(log.getTimestamp()).thenReturn(new Date());
+                return log;
+            }
+        });
+        when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(true);
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "secret-app-mock", null, true);
+
+        /* Verify only the minidump of the discarded report is deleted. */
+        Crashes.notifyUserConfirmation(Crashes.DONT_SEND);
+        verifyStatic(FileManager.class);
+        FileManager.delete(eq(new File("minidump/pending/crash.dmp")));
+        verifyStatic(ErrorLogHelper.class, never());
+        ErrorLogHelper.cleanPendingMinidumps();
+    }
+
     @Test
     public void handleUserConfirmationAlwaysSend() throws JSONException {
 
@@ -1327,11 +1551,11 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarted(mock(Context.class), mock(Channel.class), "secret-app-mock", null, true);
 
         /*
-         * Verify that attachmentWithBinary doesn't get called if minidump is missing.
+         * Verify that attachmentWithFile doesn't get called if minidump is missing.
          * This scenario used to crash before, so if the test succeeds that also tests the crash is fixed.
          */
         verifyStatic(ErrorAttachmentLog.class, never());
-        ErrorAttachmentLog.attachmentWithBinary(new byte[]{anyByte()}, anyString(), anyString());
+        ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), anyString());
     }
 
     @Test
@@ -1374,7 +1598,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
 
         ErrorAttachmentLog errorAttachmentLog = mock(ErrorAttachmentLog.class);
-        when(ErrorAttachmentLog.attachmentWithBinary(any(), anyString(), anyString())).thenReturn(mock(ErrorAttachmentLog.class));
+        when(ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), anyString())).thenReturn(mock(ErrorAttachmentLog.class));
         whenNew(ErrorAttachmentLog.class).withAnyArguments().thenReturn(errorAttachmentLog);
 
         /* Start crashes. */
@@ -1383,14 +1607,89 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarting(mAppCenterHandler);
         crashes.onStarted(mock(Context.class), mock(Channel.class), "secret-app-mock", null, true);
 
-        /* Verify that attachmentWithBinary does get sent. */
+        /* Verify that attachmentWithFile does get sent. */
         verifyStatic(ErrorAttachmentLog.class);
-        ErrorAttachmentLog.attachmentWithBinary(any(), anyString(), anyString());
+        ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), anyString());
 
         /* Verify temporary field erased. */
         verify(exception).setStackTrace(isNull());
     }
 
+    @Test
+    public void minidumpCompressed() throws Exception {
+        Crashes.setMinidumpCompressionEnabled(true);
+        startCrashesWithPendingMinidump("minidump/pending/crash.dmp");
+
+        /* Verify compressed file is attached and the uncompressed one not. */
+        verifyStatic(FileManager.class);
+        FileManager.gzip(eq(new File("minidump/pending/crash.dmp")), eq(new File("minidump/pending/crash.dmp" + Crashes.GZIP_FILE_EXTENSION)));
+        verifyStatic(ErrorAttachmentLog.class);
+        ErrorAttachmentLog.attachmentWithFile(eq(new File("minidump/pending/crash.dmp" + Crashes.GZIP_FILE_EXTENSION)), eq(Crashes.MINIDUMP_ATTACHMENT_FILE_NAME + Crashes.GZIP_FILE_EXTENSION), eq(Crashes.GZIP_CONTENT_TYPE));
+        verifyStatic(ErrorAttachmentLog.class, never());
+        ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), eq(Crashes.MINIDUMP_CONTENT_TYPE));
+    }
+
+    @Test
+    public void minidumpCompressionFailure() throws Exception {
+        Crashes.setMinidumpCompressionEnabled(true);
+        doThrow(new IOException()).when(FileManager.class);
+        FileManager.gzip(any(File.class), any(File.class));
+        startCrashesWithPendingMinidump("minidump/pending/crash.dmp");
+
+        /* Verify uncompressed file is attached instead. */
+        verifyStatic(ErrorAttachmentLog.class);
+        ErrorAttachmentLog.attachmentWithFile(eq(new File("minidump/pending/crash.dmp")), eq(Crashes.MINIDUMP_ATTACHMENT_FILE_NAME), eq(Crashes.MINIDUMP_CONTENT_TYPE));
+        verifyStatic(ErrorAttachmentLog.class, never());
+        ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), eq(Crashes.GZIP_CONTENT_TYPE));
+    }
+
+    @Test
+    public void minidumpNotCompressedByDefault() throws Exception {
+        startCrashesWithPendingMinidump("minidump/pending/crash.dmp");
+        verifyStatic(FileManager.class, never());
+        FileManager.gzip(any(File.class), any(File.class));
+        verifyStatic(ErrorAttachmentLog.class);
+        ErrorAttachmentLog.attachmentWithFile(eq(new File("minidump/pending/crash.dmp")), eq(Crashes.MINIDUMP_ATTACHMENT_FILE_NAME), eq(Crashes.MINIDUMP_CONTENT_TYPE));
+    }
+
+    private void startCrashesWithPendingMinidump(String minidumpFilePath) throws Exception {
+
+        /* Set up mock for a processed NDK crash. */
+        final com.microsoft.appcenter.crashes.ingestion.models.Exception exception = mock(com.microsoft.appcenter.crashes.ingestion.models.Exception.class);
+        mockStatic(ErrorLogHelper.class);
+        mockStatic(ErrorAttachmentLog.class);
+        ErrorReport errorReport = new ErrorReport();
+        Device device = new Device();
+        device.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
+        errorReport.setDevice(device);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(errorReport);
+        when(exception.getMinidumpFilePath()).thenReturn(minidumpFilePath);
+        when(exception.getType()).thenReturn(MINIDUMP_FILE);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(FileManager.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), any())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getException()).thenReturn(exception);
+                when(log.getTimestamp()).thenReturn(new Date());
+                return log;
+            }
+        });
+        when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
+        when(ErrorAttachmentLog.attachmentWithFile(any(File.class), anyString(), anyString())).thenReturn(mock(ErrorAttachmentLog.class));
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "secret-app-mock", null, true);
+    }
+
     @Test
     public void stackOverflowOnSavingThrowable() throws Exception {
 
@@ -1431,6 +1730,46 @@ public class CrashesTest extends AbstractCrashesTest {
         FileManager.write(any(File.class), eq(jsonCrash));
     }
 
+    @Test
+    public void threadCapturePolicyUsedOnSavingUncaughtException() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getModelExceptionFromThrowable(any(Throwable.class))).thenCallRealMethod();
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mTemporaryFolder.getRoot());
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), notNull(), anyMap(), anyLong(), anyBoolean())).thenReturn(mErrorLog);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+
+        /* Default policy. */
+        assertEquals(ThreadCapturePolicy.UNLIMITED, Crashes.getInstance().getThreadCapturePolicy().getMaxThreads());
+        assertEquals(ThreadCapturePolicy.UNLIMITED, Crashes.getInstance().getThreadCapturePolicy().getMaxFramesPerThread());
+
+        /* Set a policy before start. */
+        ThreadCapturePolicy policy = ThreadCapturePolicy.topThreads(10).withMaxFramesPerThread(32);
+        Crashes.setThreadCapturePolicy(policy);
+        assertSame(policy, Crashes.getInstance().getThreadCapturePolicy());
+
+        /* Simulate start SDK. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Simulate crash. */
+        crashes.saveUncaughtException(Thread.currentThread(), new Throwable());
+
+        /* Verify the policy was used. */
+        verifyStatic(ErrorLogHelper.class);
+        ErrorLogHelper.getThreadStackTraces(eq(Thread.currentThread()), same(policy));
+
+        /* Null restores the default. */
+        Crashes.setThreadCapturePolicy(null);
+        assertEquals(ThreadCapturePolicy.UNLIMITED, Crashes.getInstance().getThreadCapturePolicy().getMaxThreads());
+    }
+
     @Test
     public void handlerMemoryWarning() {
 
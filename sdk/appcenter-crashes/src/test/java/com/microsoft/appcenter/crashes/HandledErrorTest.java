@@ -14,6 +14,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -22,10 +23,15 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static java.util.Collections.singletonList;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.channel.Channel;
@@ -43,6 +49,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -369,4 +376,83 @@ public class HandledErrorTest extends AbstractCrashesTest {
         assertNull(logs.getAllValues().get(1).getUserId());
         assertNull(logs.getAllValues().get(2).getUserId());
     }
+    @Test
+    public void trackErrorStormIsAggregated() throws java.lang.Exception {
+        startCrashes();
+        Handler handler = mock(Handler.class);
+        whenNew(Handler.class).withAnyArguments().thenReturn(handler);
+        long now = SystemClock.elapsedRealtime();
+
+        /* Track the same error more times than allowed by the rate limit. */
+        int suppressedCount = 3;
+        for (int i = 0; i < Crashes.HANDLED_ERROR_BURST + suppressedCount; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel, times(Crashes.HANDLED_ERROR_BURST)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* A single flush is scheduled when the next occurrence is allowed. */
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(flush.capture(), eq(Crashes.HANDLED_ERROR_REFILL_INTERVAL));
+
+        /* A different error is not rate limited. */
+        Crashes.trackError(new IllegalStateException());
+        verify(mChannel, times(Crashes.HANDLED_ERROR_BURST + 1)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Flushing sends one report for all suppressed occurrences. */
+        reset(mChannel);
+        when(SystemClock.elapsedRealtime()).thenReturn(now + Crashes.HANDLED_ERROR_REFILL_INTERVAL);
+        flush.getValue().run();
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals(EXCEPTION.getMessage(), log.getValue().getException().getMessage());
+        assertEquals(String.valueOf(suppressedCount), log.getValue().getProperties().get(Crashes.OCCURRENCE_COUNT_PROPERTY));
+
+        /* Nothing left to flush. */
+        reset(mChannel);
+        flush.getValue().run();
+        verify(mChannel, never()).enqueue(any(Log.class), anyString(), anyInt());
+        verify(handler).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void trackErrorAggregatedWithNextOccurrence() throws java.lang.Exception {
+        startCrashes();
+        whenNew(Handler.class).withAnyArguments().thenReturn(mock(Handler.class));
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < Crashes.HANDLED_ERROR_BURST + 2; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        reset(mChannel);
+
+        /* Next occurrence allowed reports suppressed ones too. */
+        when(SystemClock.elapsedRealtime()).thenReturn(now + Crashes.HANDLED_ERROR_REFILL_INTERVAL);
+        Crashes.trackError(EXCEPTION);
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals("3", log.getValue().getProperties().get(Crashes.OCCURRENCE_COUNT_PROPERTY));
+    }
+
+    @Test
+    public void disablingForgetsAggregatedErrors() throws java.lang.Exception {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
+        startCrashes();
+        Handler handler = mock(Handler.class);
+        whenNew(Handler.class).withAnyArguments().thenReturn(handler);
+        for (int i = 0; i < Crashes.HANDLED_ERROR_BURST + 2; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(flush.capture(), anyLong());
+
+        /* Disabling cancels the scheduled report and resets the rate limit. */
+        Crashes.setEnabled(false);
+        verify(handler).removeCallbacksAndMessages(null);
+        Crashes.setEnabled(true);
+        reset(mChannel);
+        Crashes.trackError(EXCEPTION);
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertNull(log.getValue().getProperties());
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class ThreadCapturePolicyTest {
+
+    @Test
+    public void defaultPolicy() {
+        assertEquals(ThreadCapturePolicy.UNLIMITED, ThreadCapturePolicy.DEFAULT.getMaxThreads());
+        assertEquals(ThreadCapturePolicy.UNLIMITED, ThreadCapturePolicy.DEFAULT.getMaxFramesPerThread());
+    }
+
+    @Test
+    public void crashingThreadOnly() {
+        ThreadCapturePolicy policy = ThreadCapturePolicy.crashingThreadOnly();
+        assertEquals(1, policy.getMaxThreads());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, policy.getMaxFramesPerThread());
+    }
+
+    @Test
+    public void topThreads() {
+        ThreadCapturePolicy policy = ThreadCapturePolicy.topThreads(20);
+        assertEquals(20, policy.getMaxThreads());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, policy.getMaxFramesPerThread());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topThreadsInvalid() {
+        ThreadCapturePolicy.topThreads(0);
+    }
+
+    @Test
+    public void allThreads() {
+        ThreadCapturePolicy policy = ThreadCapturePolicy.allThreads();
+        assertEquals(ThreadCapturePolicy.UNLIMITED, policy.getMaxThreads());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, policy.getMaxFramesPerThread());
+    }
+
+    @Test
+    public void withMaxFramesPerThread() {
+        ThreadCapturePolicy policy = ThreadCapturePolicy.topThreads(5);
+        ThreadCapturePolicy copy = policy.withMaxFramesPerThread(16);
+        assertNotSame(policy, copy);
+        assertEquals(5, copy.getMaxThreads());
+        assertEquals(16, copy.getMaxFramesPerThread());
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, policy.getMaxFramesPerThread());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withMaxFramesPerThreadInvalid() {
+        ThreadCapturePolicy.allThreads().withMaxFramesPerThread(-1);
+    }
+}
@@ -5,8 +5,12 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
@@ -18,6 +22,9 @@ import static org.junit.Assert.assertTrue;
 
 public class ErrorAttachmentLogTest {
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void attachmentWithText() {
         String text = "Hello World!";
@@ -51,6 +58,36 @@ public class ErrorAttachmentLogTest {
         assertEquals(contentType, attachment.getContentType());
     }
 
+    @Test
+    public void attachmentWithFile() throws Exception {
+        File file = mTemporaryFolder.newFile("minidump.dmp");
+        String fileName = "minidump.dmp";
+        String contentType = "application/octet-stream";
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(file, fileName, contentType);
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertEquals(file, attachment.getFile());
+        assertEquals(file, attachment.getContentFile());
+        assertEquals(ErrorAttachmentLog.FILE_DATA_PREFIX + file.getAbsolutePath(), attachment.getContentPlaceholder());
+        assertEquals(fileName, attachment.getFileName());
+        assertEquals(contentType, attachment.getContentType());
+    }
+
+    @Test
+    public void dataSize() throws Exception {
+        ErrorAttachmentLog attachment = new ErrorAttachmentLog();
+        assertEquals(0, attachment.getDataSize());
+        assertNull(attachment.getContentPlaceholder());
+        attachment.setData(new byte[3]);
+        assertEquals(3, attachment.getDataSize());
+        File file = mTemporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(new byte[5]);
+        outputStream.close();
+        attachment = ErrorAttachmentLog.attachmentWithFile(file, null, "application/octet-stream");
+        assertEquals(5, attachment.getDataSize());
+    }
+
     @Test
     public void attachmentWithoutFilename() {
         String text = "Hello World!";
@@ -89,4 +126,15 @@ public class ErrorAttachmentLogTest {
             assertTrue(log.isValid());
         }
     }
+
+    @Test
+    public void validateFileBackedErrorAttachmentLog() throws Exception {
+        File file = mTemporaryFolder.newFile();
+        ErrorAttachmentLog log = ErrorAttachmentLog.attachmentWithFile(file, "file", "application/octet-stream");
+        log.setId(UUID.randomUUID());
+        log.setErrorId(UUID.randomUUID());
+        assertTrue(log.isValid());
+        assertTrue(file.delete());
+        assertFalse(log.isValid());
+    }
 }
@@ -32,6 +32,7 @@ import android.os.Build;
 import android.os.Process;
 import android.text.TextUtils;
 
+import com.microsoft.appcenter.crashes.ThreadCapturePolicy;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
@@ -64,6 +65,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 @PrepareForTest({
         AppCenterLog.class,
@@ -610,4 +612,68 @@ public class ErrorLogHelperTest {
         /* Coverage check. */
         ErrorLogHelper.removeStoredErrorLogFile(UUID.randomUUID());
     }
+
+    @Test
+    public void getThreadStackTracesCrashingThreadOnly() {
+        java.lang.Thread currentThread = java.lang.Thread.currentThread();
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.crashingThreadOnly());
+        assertEquals(1, stackTraces.size());
+        assertNotNull(stackTraces.get(currentThread));
+        assertTrue(stackTraces.get(currentThread).length > 0);
+    }
+
+    @Test
+    public void getThreadStackTracesTopThreads() throws java.lang.Exception {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        java.lang.Thread[] threads = new java.lang.Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new java.lang.Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            java.lang.Thread currentThread = java.lang.Thread.currentThread();
+            Map<java.lang.Thread, StackTraceElement[]> stackTraces = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.topThreads(3));
+            assertEquals(3, stackTraces.size());
+
+            /* Crashing thread is always first. */
+            assertEquals(currentThread, stackTraces.keySet().iterator().next());
+        } finally {
+            releaseLatch.countDown();
+            for (java.lang.Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    public void getThreadStackTracesAllThreads() {
+        java.lang.Thread currentThread = java.lang.Thread.currentThread();
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.allThreads().withMaxFramesPerThread(ThreadCapturePolicy.UNLIMITED));
+        assertTrue(stackTraces.containsKey(currentThread));
+        assertTrue(stackTraces.size() >= 1);
+    }
+
+    @Test
+    public void getThreadStackTracesTruncatesFrames() {
+        java.lang.Thread currentThread = java.lang.Thread.currentThread();
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.allThreads().withMaxFramesPerThread(2));
+        for (StackTraceElement[] stackTrace : stackTraces.values()) {
+            assertTrue(stackTrace.length <= 2);
+        }
+
+        /* Top frames are kept. */
+        StackTraceElement[] fullStackTrace = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.crashingThreadOnly()).get(currentThread);
+        StackTraceElement[] truncatedStackTrace = ErrorLogHelper.getThreadStackTraces(currentThread, ThreadCapturePolicy.crashingThreadOnly().withMaxFramesPerThread(2)).get(currentThread);
+        assertEquals(2, truncatedStackTrace.length);
+        assertEquals(fullStackTrace[0].getClassName(), truncatedStackTrace[0].getClassName());
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import androidx.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class HandledErrorAggregatorTest {
+
+    private static final int BURST = 2;
+
+    private static final long REFILL_INTERVAL = 1000;
+
+    @Test
+    public void rateLimitAndAggregate() {
+        HandledErrorAggregator<String> aggregator = new HandledErrorAggregator<>(BURST, REFILL_INTERVAL);
+        long now = 1000;
+
+        /* Burst is allowed. */
+        assertEquals(1, aggregator.record("a", now, "1"));
+        assertEquals(1, aggregator.record("a", now, "2"));
+
+        /* Then occurrences are suppressed. */
+        assertEquals(0, aggregator.record("a", now, "3"));
+        assertEquals(0, aggregator.record("a", now, "4"));
+        assertEquals(2, aggregator.getSuppressedCount("a"));
+        assertEquals(REFILL_INTERVAL, aggregator.getNextTokenDelay("a", now));
+        assertEquals(REFILL_INTERVAL / 2, aggregator.getNextTokenDelay("a", now + REFILL_INTERVAL / 2));
+        assertNull(aggregator.flush("a", now + REFILL_INTERVAL / 2));
+
+        /* Other fingerprints are not affected. */
+        assertEquals(1, aggregator.record("b", now, "5"));
+        assertEquals(0, aggregator.getSuppressedCount("b"));
+
+        /* Next allowed occurrence reports suppressed ones too. */
+        assertEquals(3, aggregator.record("a", now + REFILL_INTERVAL, "6"));
+        assertEquals(0, aggregator.getSuppressedCount("a"));
+    }
+
+    @Test
+    public void flush() {
+        HandledErrorAggregator<String> aggregator = new HandledErrorAggregator<>(1, REFILL_INTERVAL);
+        long now = 1000;
+        assertNull(aggregator.flush("a", now));
+        assertEquals(0, aggregator.getNextTokenDelay("a", now));
+        assertEquals(1, aggregator.record("a", now, "1"));
+        assertNull(aggregator.flush("a", now + 2 * REFILL_INTERVAL));
+        assertEquals(1, aggregator.record("a", now + 2 * REFILL_INTERVAL, "2"));
+        assertEquals(0, aggregator.record("a", now + 2 * REFILL_INTERVAL, "3"));
+        assertEquals(0, aggregator.record("a", now + 2 * REFILL_INTERVAL, "4"));
+
+        /* Tokens are capped to the burst size, so flush needs to wait. */
+        assertNull(aggregator.flush("a", now + 2 * REFILL_INTERVAL));
+        HandledErrorAggregator.Aggregate<String> aggregate = aggregator.flush("a", now + 3 * REFILL_INTERVAL);
+        assertNotNull(aggregate);
+        assertEquals(2, aggregate.getCount());
+        assertEquals("4", aggregate.getLatestOccurrence());
+
+        /* Flush consumed the token. */
+        assertEquals(0, aggregator.getSuppressedCount("a"));
+        assertEquals(0, aggregator.record("a", now + 3 * REFILL_INTERVAL, "5"));
+    }
+
+    @Test
+    public void leastRecentlyUsedFingerprintIsForgotten() {
+        HandledErrorAggregator<String> aggregator = new HandledErrorAggregator<>(1, REFILL_INTERVAL);
+        assertEquals(1, aggregator.record("first", 0, null));
+        assertEquals(0, aggregator.record("first", 0, null));
+        for (int i = 0; i < HandledErrorAggregator.MAX_FINGERPRINTS; i++) {
+            aggregator.record("other" + i, 0, null);
+        }
+        assertEquals(0, aggregator.getSuppressedCount("first"));
+        assertEquals(1, aggregator.record("first", 0, null));
+    }
+
+    @Test
+    public void suppressedOccurrencesAreReportedWhenFingerprintIsForgotten() {
+        final List<HandledErrorAggregator.Aggregate<String>> evicted = new ArrayList<>();
+        HandledErrorAggregator<String> aggregator = new HandledErrorAggregator<>(1, REFILL_INTERVAL, new HandledErrorAggregator.EvictionListener<String>() {
+
+            @Override
+            public void onEvicted(@NonNull HandledErrorAggregator.Aggregate<String> aggregate) {
+                evicted.add(aggregate);
+            }
+        });
+        assertEquals(1, aggregator.record("first", 0, "1"));
+        assertEquals(0, aggregator.record("first", 0, "2"));
+        assertEquals(0, aggregator.record("first", 0, "3"));
+
+        /* Fingerprints without suppressed occurrences are forgotten silently. */
+        for (int i = 0; i < HandledErrorAggregator.MAX_FINGERPRINTS; i++) {
+            aggregator.record("other" + i, 0, null);
+        }
+        assertEquals(1, evicted.size());
+        assertEquals(2, evicted.get(0).getCount());
+        assertEquals("3", evicted.get(0).getLatestOccurrence());
+        aggregator.record("oneMore", 0, null);
+        assertEquals(1, evicted.size());
+    }
+
+    @Test
+    public void throwableFingerprint() {
+        java.lang.Exception first = null;
+        java.lang.Exception second = null;
+        for (int i = 0; i < 2; i++) {
+            java.lang.Exception exception = new IllegalStateException("message " + i);
+            if (first == null) {
+                first = exception;
+            } else {
+                second = exception;
+            }
+        }
+        assertNotNull(second);
+
+        /* Message is not part of the fingerprint. */
+        assertEquals(HandledErrorAggregator.getFingerprint(first), HandledErrorAggregator.getFingerprint(second));
+
+        /* Type is. */
+        java.lang.Exception otherType = new IllegalArgumentException();
+        otherType.setStackTrace(first.getStackTrace());
+        assertNotEquals(HandledErrorAggregator.getFingerprint(first), HandledErrorAggregator.getFingerprint(otherType));
+
+        /* Top frames too. */
+        java.lang.Exception otherLocation = new IllegalStateException();
+        assertNotEquals(HandledErrorAggregator.getFingerprint(first), HandledErrorAggregator.getFingerprint(otherLocation));
+
+        /* Frames after the top ones are not. */
+        StackTraceElement[] frames = new StackTraceElement[HandledErrorAggregator.FINGERPRINT_FRAME_COUNT + 1];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class", "method" + i, "File.java", i);
+        }
+        java.lang.Exception deepFrames = new IllegalStateException();
+        deepFrames.setStackTrace(frames);
+        String fingerprint = HandledErrorAggregator.getFingerprint(deepFrames);
+        frames[frames.length - 1] = new StackTraceElement("Other", "method", "Other.java", 1);
+        deepFrames.setStackTrace(frames);
+        assertEquals(fingerprint, HandledErrorAggregator.getFingerprint(deepFrames));
+        frames[0] = new StackTraceElement("Other", "method", "Other.java", 1);
+        deepFrames.setStackTrace(frames);
+        assertNotEquals(fingerprint, HandledErrorAggregator.getFingerprint(deepFrames));
+    }
+
+    @Test
+    public void clear() {
+        HandledErrorAggregator<String> aggregator = new HandledErrorAggregator<>(1, REFILL_INTERVAL);
+        long now = 1000;
+        assertEquals(1, aggregator.record("a", now, "1"));
+        assertEquals(0, aggregator.record("a", now, "2"));
+        aggregator.clear();
+
+        /* Suppressed occurrences and rate limit are forgotten. */
+        assertEquals(0, aggregator.getSuppressedCount("a"));
+        assertNull(aggregator.flush("a", now + REFILL_INTERVAL));
+        assertEquals(1, aggregator.record("a", now, "3"));
+    }
+
+    @Test
+    public void modelFingerprint() {
+        Exception exception = new Exception();
+        exception.setType("type");
+        exception.setMessage("message");
+        String noFrames = HandledErrorAggregator.getFingerprint(exception);
+        exception.setMessage("other message");
+        assertEquals(noFrames, HandledErrorAggregator.getFingerprint(exception));
+
+        StackFrame frame = new StackFrame();
+        frame.setClassName("Class");
+        frame.setMethodName("method");
+        frame.setFileName("File.java");
+        frame.setLineNumber(1);
+        exception.setFrames(Collections.singletonList(frame));
+        String withFrames = HandledErrorAggregator.getFingerprint(exception);
+        assertNotEquals(noFrames, withFrames);
+
+        exception.setType("other");
+        assertNotEquals(withFrames, HandledErrorAggregator.getFingerprint(exception));
+    }
+}
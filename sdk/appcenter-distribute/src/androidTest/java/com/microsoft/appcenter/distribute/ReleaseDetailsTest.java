@@ -508,4 +508,64 @@ public class ReleaseDetailsTest {
         assertEquals("9f52199c986d9210842824df695900e1656180946212bd5e8978501a5b732e60", releaseDetails.getReleaseHash());
         assertNull(releaseDetails.getDistributionGroupId());
     }
+
+    @Test
+    public void parsePatch() throws JSONException {
+        String json = "{" +
+                "id: 42," +
+                "version: '14'," +
+                "short_version: '2.1.5'," +
+                "android_min_api_level: 19," +
+                "download_url: 'https://mock/release.apk'," +
+                "size: 4242," +
+                "mandatory_update: false," +
+                "package_hashes: ['9f52199c986d9210842824df695900e1656180946212bd5e8978501a5b732e60']," +
+                "package_sha256: 'c2a3c4e5a2b4f5e9a1e7fb1b1b0e4c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b'," +
+                "patch_url: 'https://mock/release.patch'," +
+                "patch_base_release_hash: '7e8ba06f7b6df0f9b0a7d3b2c4d9e8f1a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5'" +
+                "}";
+        ReleaseDetails releaseDetails = ReleaseDetails.parse(json);
+        assertEquals("c2a3c4e5a2b4f5e9a1e7fb1b1b0e4c2d3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b", releaseDetails.getPackageSha256());
+        assertEquals(Uri.parse("https://mock/release.patch"), releaseDetails.getPatchUrl());
+        assertEquals("7e8ba06f7b6df0f9b0a7d3b2c4d9e8f1a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5", releaseDetails.getPatchBaseReleaseHash());
+    }
+
+    @Test
+    public void patchIgnoredWithoutBaseReleaseHash() throws JSONException {
+        String json = "{" +
+                "id: 42," +
+                "version: '14'," +
+                "short_version: '2.1.5'," +
+                "android_min_api_level: 19," +
+                "download_url: 'https://mock/release.apk'," +
+                "size: 4242," +
+                "mandatory_update: false," +
+                "package_hashes: ['9f52199c986d9210842824df695900e1656180946212bd5e8978501a5b732e60']," +
+                "patch_url: 'https://mock/release.patch'" +
+                "}";
+        ReleaseDetails releaseDetails = ReleaseDetails.parse(json);
+        assertNull(releaseDetails.getPackageSha256());
+        assertNull(releaseDetails.getPatchUrl());
+        assertNull(releaseDetails.getPatchBaseReleaseHash());
+    }
+
+    @Test
+    public void patchIgnoredWithInvalidPatchUrlScheme() throws JSONException {
+        String json = "{" +
+                "id: 42," +
+                "version: '14'," +
+                "short_version: '2.1.5'," +
+                "android_min_api_level: 19," +
+                "download_url: 'https://mock/release.apk'," +
+                "size: 4242," +
+                "mandatory_update: false," +
+                "package_hashes: ['9f52199c986d9210842824df695900e1656180946212bd5e8978501a5b732e60']," +
+                "patch_url: 'file:///release.patch'," +
+                "patch_base_release_hash: '7e8ba06f7b6df0f9b0a7d3b2c4d9e8f1a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d5'" +
+                "}";
+        ReleaseDetails releaseDetails = ReleaseDetails.parse(json);
+        assertEquals(Uri.parse("https://mock/release.apk"), releaseDetails.getDownloadUrl());
+        assertNull(releaseDetails.getPatchUrl());
+        assertNull(releaseDetails.getPatchBaseReleaseHash());
+    }
 }
@@ -94,6 +94,7 @@ import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 import org.json.JSONException;
 
 import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.util.Date;
 import java.util.HashMap;
@@ -273,6 +274,24 @@ public class Distribute extends AbstractAppCenterService {
      */
     private boolean mEnabledForDebuggableBuild;
 
+    /**
+     * Flag to track whether releases are downloaded with resumable HTTP range requests instead of the system download manager.
+     * Flag is false by default.
+     * Updated by calling {@link #setResumableDownloadEnabled(boolean)}.
+     */
+    private boolean mResumableDownloadEnabled;
+
+    /**
+     * Minimum interval between two automatic checks of the latest release, in milliseconds.
+     * Updated by calling {@link #setMinimumCheckInterval(long)}.
+     */
+    private long mMinimumCheckInterval;
+
+    /**
+     * Cache of the last latest release check response.
+     */
+    private final ReleaseCheckCache mReleaseCheckCache = new ReleaseCheckCache();
+
     /**
      * Flag to check if automatic check for update is disabled.
      */
@@ -391,6 +410,30 @@ public class Distribute extends AbstractAppCenterService {
         getInstance().setInstanceEnabledForDebuggableBuild(enabled);
     }
 
+    /**
+     * Set whether releases are downloaded by the SDK with resumable HTTP range requests instead of the system download manager.
+     * The download resumes where it stopped after a network error or if the application was killed.
+     * The downloaded file is kept in the application cache directory.
+     * This must be called before starting the SDK to apply to the next download.
+     *
+     * @param enabled <code>true</code> to enable, <code>false</code> to use the system download manager.
+     */
+    public static void setResumableDownloadEnabled(boolean enabled) {
+        getInstance().setInstanceResumableDownloadEnabled(enabled);
+    }
+
+    /**
+     * Set the minimum interval between two automatic checks of the latest release.
+     * Within this interval, the release details of the last check are reused without calling the server.
+     * Outside of it, the server is still asked to send the release details only if they changed.
+     * Manual checks with {@link #checkForUpdate()} always call the server.
+     *
+     * @param intervalMillis minimum interval in milliseconds, 0 (the default) to check on every launch.
+     */
+    public static void setMinimumCheckInterval(long intervalMillis) {
+        getInstance().setInstanceMinimumCheckInterval(intervalMillis);
+    }
+
     /**
      * If update dialog is customized by returning <code>true</code> in  {@link DistributeListener#onReleaseAvailable(Activity, ReleaseDetails)},
      * You need to tell the distribute SDK using this function what is the user action.
@@ -548,6 +591,7 @@ public class Distribute extends AbstractAppCenterService {
             mBrowserOpenedOrAborted = false;
             mWorkflowCompleted = false;
             cancelPreviousTasks();
+            mReleaseCheckCache.clear();
             SharedPreferencesManager.remove(PREFERENCE_KEY_REQUEST_ID);
             SharedPreferencesManager.remove(PREFERENCE_KEY_POSTPONE_TIME);
             SharedPreferencesManager.remove(PREFERENCE_KEY_UPDATE_SETUP_FAILED_PACKAGE_HASH_KEY);
@@ -667,6 +711,24 @@ public class Distribute extends AbstractAppCenterService {
         mEnabledForDebuggableBuild = enabled;
     }
 
+    /**
+     * Implements {@link #setResumableDownloadEnabled(boolean)}.
+     */
+    private synchronized void setInstanceResumableDownloadEnabled(boolean enabled) {
+        mResumableDownloadEnabled = enabled;
+    }
+
+    /**
+     * Implements {@link #setMinimumCheckInterval(long)}.
+     */
+    private synchronized void setInstanceMinimumCheckInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            AppCenterLog.error(LOG_TAG, "Minimum check interval cannot be negative.");
+            return;
+        }
+        mMinimumCheckInterval = intervalMillis;
+    }
+
     /**
      * Implements {@link #checkForUpdate()}.
      */
@@ -1065,18 +1127,32 @@ public class Distribute extends AbstractAppCenterService {
         } else {
             url += String.format(GET_LATEST_PRIVATE_RELEASE_PATH_FORMAT, mAppSecret, releaseHash, getReportingParametersForUpdatedRelease(false, distributionGroupId));
         }
+        final Object releaseCallId = mCheckReleaseCallId = new Object();
+
+        /* Reuse the last response if checked recently, the same URL means reporting parameters were already sent. */
+        if (!mManualCheckForUpdateRequested && mReleaseCheckCache.isFresh(url, mMinimumCheckInterval)) {
+            ReleaseDetails cachedReleaseDetails = mReleaseCheckCache.getReleaseDetails();
+            if (cachedReleaseDetails != null) {
+                AppCenterLog.debug(LOG_TAG, "Latest release was checked less than " + mMinimumCheckInterval + "ms ago, using cached release details.");
+                handleApiCallSuccess(releaseCallId, mReleaseCheckCache.getPayload(), cachedReleaseDetails, distributionGroupId);
+                return;
+            }
+        }
         Map<String, String> headers = new HashMap<>();
         if (updateToken != null) {
             headers.put(HEADER_API_TOKEN, updateToken);
         }
-        final Object releaseCallId = mCheckReleaseCallId = new Object();
+        mReleaseCheckCache.addConditionalHeaders(url, headers);
+        final String checkReleaseUrl = url;
         mCheckReleaseApiCall = new DistributeIngestion(mContext).checkReleaseAsync(mAppSecret, url, headers, new ServiceCallback() {
 
             @Override
             public void onCallSucceeded(final HttpResponse httpResponse) {
                 try {
                     String payload = httpResponse.getPayload();
-                    handleApiCallSuccess(releaseCallId, payload, ReleaseDetails.parse(payload), distributionGroupId);
+                    ReleaseDetails releaseDetails = ReleaseDetails.parse(payload);
+                    mReleaseCheckCache.store(checkReleaseUrl, httpResponse, releaseDetails);
+                    handleApiCallSuccess(releaseCallId, payload, releaseDetails, distributionGroupId);
                 } catch (JSONException e) {
                     onCallFailed(e);
                 }
@@ -1084,6 +1160,21 @@ public class Distribute extends AbstractAppCenterService {
 
             @Override
             public void onCallFailed(Exception e) {
+
+                /* Release details did not change since the last check: use the cached ones. */
+                if (e instanceof HttpException && ((HttpException) e).getHttpResponse().getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ReleaseDetails cachedReleaseDetails = mReleaseCheckCache.getReleaseDetails();
+                    if (cachedReleaseDetails != null) {
+                        AppCenterLog.debug(LOG_TAG, "Latest release did not change since the last check.");
+                        mReleaseCheckCache.touch();
+                        handleApiCallSuccess(releaseCallId, mReleaseCheckCache.getPayload(), cachedReleaseDetails, distributionGroupId);
+                        return;
+                    }
+
+                    /* Don't delete the setup state because of a cache issue, the next launch sends a full request. */
+                    handleApiCallFailure(releaseCallId, new JSONException("Release details are not cached anymore."));
+                    return;
+                }
                 handleApiCallFailure(releaseCallId, e);
             }
         });
@@ -1133,6 +1224,7 @@ public class Distribute extends AbstractAppCenterService {
                 SharedPreferencesManager.remove(PREFERENCE_KEY_DISTRIBUTION_GROUP_ID);
                 SharedPreferencesManager.remove(PREFERENCE_KEY_UPDATE_TOKEN);
                 SharedPreferencesManager.remove(PREFERENCE_KEY_POSTPONE_TIME);
+                mReleaseCheckCache.clear();
                 mDistributeInfoTracker.removeDistributionGroupId();
             }
         }
@@ -1236,7 +1328,7 @@ public class Distribute extends AbstractAppCenterService {
         } else if (releaseDetails == null) {
 
             /* When we disable the SDK or cancel every state, we need to clean download cache. */
-            ReleaseDownloaderFactory.create(mContext, null, null).cancel();
+            ReleaseDownloaderFactory.create(mContext, null, null, mResumableDownloadEnabled).cancel();
         }
         if (mReleaseDownloaderListener != null) {
             mReleaseDownloaderListener.hideProgressDialog();
@@ -1245,9 +1337,21 @@ public class Distribute extends AbstractAppCenterService {
         mReleaseDetails = releaseDetails;
         if (mReleaseDetails != null) {
 
+            /* A patch can only rebuild the release from the one it was generated against. */
+            String patchBaseReleaseHash = mReleaseDetails.getPatchBaseReleaseHash();
+            if (patchBaseReleaseHash != null) {
+
+                /* Package info is not initialized yet when started from background. */
+                PackageInfo packageInfo = DeviceInfoHelper.getPackageInfo(mContext);
+                if (packageInfo == null || !patchBaseReleaseHash.equals(DistributeUtils.computeReleaseHash(packageInfo))) {
+                    AppCenterLog.debug(LOG_TAG, "Release patch does not apply to the installed release.");
+                    mReleaseDetails.ignorePatch();
+                }
+            }
+
             /* Create release downloader here to be able correctly cancel downloading from previous runs. */
             mReleaseDownloaderListener = new ReleaseDownloadListener(mContext, mReleaseDetails);
-            mReleaseDownloader = ReleaseDownloaderFactory.create(mContext, mReleaseDetails, mReleaseDownloaderListener);
+            mReleaseDownloader = ReleaseDownloaderFactory.create(mContext, mReleaseDetails, mReleaseDownloaderListener, mResumableDownloadEnabled);
         }
     }
 
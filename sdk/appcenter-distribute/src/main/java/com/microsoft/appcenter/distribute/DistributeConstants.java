@@ -172,11 +172,6 @@ public final class DistributeConstants {
      */
     static final int DOWNLOAD_STATE_INSTALLING = 4;
 
-    /**
-     * Token used for handler callbacks to check download progress.
-     */
-    public static final String HANDLER_TOKEN_CHECK_PROGRESS = SERVICE_NAME + ".handler_token_check_progress";
-
     /**
      * The download progress will be reported not more often than this number of milliseconds.
      */
@@ -283,6 +278,31 @@ public final class DistributeConstants {
      */
     public static final String PREFERENCE_KEY_DOWNLOADED_RELEASE_FILE = PREFERENCE_PREFIX + "downloaded_release_file";
 
+    /**
+     * Preference key to store the hash of the URL of the last successful latest release check.
+     */
+    static final String PREFERENCE_KEY_CHECK_RELEASE_URL_HASH = PREFERENCE_PREFIX + "check_release_url_hash";
+
+    /**
+     * Preference key to store the ETag of the last successful latest release check.
+     */
+    static final String PREFERENCE_KEY_CHECK_RELEASE_ETAG = PREFERENCE_PREFIX + "check_release_etag";
+
+    /**
+     * Preference key to store the Last-Modified header of the last successful latest release check.
+     */
+    static final String PREFERENCE_KEY_CHECK_RELEASE_LAST_MODIFIED = PREFERENCE_PREFIX + "check_release_last_modified";
+
+    /**
+     * Preference key to store the response of the last successful latest release check.
+     */
+    static final String PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD = PREFERENCE_PREFIX + "check_release_payload";
+
+    /**
+     * Preference key to store the time of the last successful latest release check.
+     */
+    static final String PREFERENCE_KEY_CHECK_RELEASE_TIME = PREFERENCE_PREFIX + "check_release_time";
+
     @VisibleForTesting
     DistributeConstants() {
 
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_ETAG;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_LAST_MODIFIED;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_TIME;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_URL_HASH;
+import static com.microsoft.appcenter.distribute.ingestion.DistributeIngestion.HEADER_ETAG;
+import static com.microsoft.appcenter.distribute.ingestion.DistributeIngestion.HEADER_IF_MODIFIED_SINCE;
+import static com.microsoft.appcenter.distribute.ingestion.DistributeIngestion.HEADER_IF_NONE_MATCH;
+import static com.microsoft.appcenter.distribute.ingestion.DistributeIngestion.HEADER_LAST_MODIFIED;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.appcenter.distribute.ingestion.DistributeIngestion;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HashUtils;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.json.JSONException;
+
+import java.util.Map;
+
+/**
+ * Cache of the last latest release check response, used to send conditional requests and to
+ * skip checks that happen less than a minimum interval apart.
+ * <p>
+ * The cached response is tied to the request URL, which includes the installed release hash
+ * and the reporting parameters, so a new request is always sent when any of them changes.
+ */
+class ReleaseCheckCache {
+
+    /**
+     * Raw release details of the cached response, kept in memory to parse it once per process.
+     */
+    private String mPayload;
+
+    /**
+     * Parsed {@link #mPayload}.
+     */
+    private ReleaseDetails mReleaseDetails;
+
+    /**
+     * Check if the last successful check was made for the same URL less than the minimum interval ago.
+     *
+     * @param url             request URL.
+     * @param minimumInterval minimum interval between checks in milliseconds.
+     * @return true if the cached release details can be used without calling the server.
+     */
+    synchronized boolean isFresh(@NonNull String url, long minimumInterval) {
+        if (minimumInterval <= 0 || !isCachedUrl(url)) {
+            return false;
+        }
+        long elapsed = System.currentTimeMillis() - SharedPreferencesManager.getLong(PREFERENCE_KEY_CHECK_RELEASE_TIME);
+        return elapsed >= 0 && elapsed < minimumInterval;
+    }
+
+    /**
+     * Add the conditional request headers if a response is cached for the same URL.
+     *
+     * @param url     request URL.
+     * @param headers request headers to update.
+     */
+    synchronized void addConditionalHeaders(@NonNull String url, @NonNull Map<String, String> headers) {
+        if (!isCachedUrl(url)) {
+            return;
+        }
+        String eTag = SharedPreferencesManager.getString(PREFERENCE_KEY_CHECK_RELEASE_ETAG);
+        if (eTag != null) {
+            headers.put(HEADER_IF_NONE_MATCH, eTag);
+        }
+        String lastModified = SharedPreferencesManager.getString(PREFERENCE_KEY_CHECK_RELEASE_LAST_MODIFIED);
+        if (lastModified != null) {
+            headers.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Store a successful response.
+     *
+     * @param url            request URL.
+     * @param httpResponse   response.
+     * @param releaseDetails release details parsed from the response payload.
+     */
+    synchronized void store(@NonNull String url, @NonNull HttpResponse httpResponse, @NonNull ReleaseDetails releaseDetails) {
+        String eTag = DistributeIngestion.getHeader(httpResponse, HEADER_ETAG);
+        String lastModified = DistributeIngestion.getHeader(httpResponse, HEADER_LAST_MODIFIED);
+        mPayload = httpResponse.getPayload();
+        mReleaseDetails = releaseDetails;
+        SharedPreferencesManager.putString(PREFERENCE_KEY_CHECK_RELEASE_URL_HASH, HashUtils.sha256(url));
+        SharedPreferencesManager.putString(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD, mPayload);
+        putOrRemove(PREFERENCE_KEY_CHECK_RELEASE_ETAG, eTag);
+        putOrRemove(PREFERENCE_KEY_CHECK_RELEASE_LAST_MODIFIED, lastModified);
+        SharedPreferencesManager.putLong(PREFERENCE_KEY_CHECK_RELEASE_TIME, System.currentTimeMillis());
+    }
+
+    /**
+     * Mark the cached response as checked again, when the server answered that it did not change.
+     */
+    synchronized void touch() {
+        SharedPreferencesManager.putLong(PREFERENCE_KEY_CHECK_RELEASE_TIME, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the cached raw release details.
+     *
+     * @return raw release details or null if nothing is cached.
+     */
+    @Nullable
+    synchronized String getPayload() {
+        if (mPayload == null) {
+            mPayload = SharedPreferencesManager.getString(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD);
+        }
+        return mPayload;
+    }
+
+    /**
+     * Get the cached release details, parsing them only the first time.
+     *
+     * @return release details or null if nothing valid is cached.
+     */
+    @Nullable
+    synchronized ReleaseDetails getReleaseDetails() {
+        if (mReleaseDetails == null) {
+            String payload = getPayload();
+            if (payload != null) {
+                try {
+                    mReleaseDetails = ReleaseDetails.parse(payload);
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Invalid release check response in cache.", e);
+                    clear();
+                }
+            }
+        }
+        return mReleaseDetails;
+    }
+
+    /**
+     * Clear the cache.
+     */
+    synchronized void clear() {
+        mPayload = null;
+        mReleaseDetails = null;
+        SharedPreferencesManager.remove(PREFERENCE_KEY_CHECK_RELEASE_URL_HASH);
+        SharedPreferencesManager.remove(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD);
+        SharedPreferencesManager.remove(PREFERENCE_KEY_CHECK_RELEASE_ETAG);
+        SharedPreferencesManager.remove(PREFERENCE_KEY_CHECK_RELEASE_LAST_MODIFIED);
+        SharedPreferencesManager.remove(PREFERENCE_KEY_CHECK_RELEASE_TIME);
+    }
+
+    private boolean isCachedUrl(String url) {
+        String urlHash = SharedPreferencesManager.getString(PREFERENCE_KEY_CHECK_RELEASE_URL_HASH);
+        return urlHash != null && urlHash.equals(HashUtils.sha256(url)) && getPayload() != null;
+    }
+
+    private static void putOrRemove(String key, String value) {
+        if (value != null) {
+            SharedPreferencesManager.putString(key, value);
+        } else {
+            SharedPreferencesManager.remove(key);
+        }
+    }
+}
@@ -9,9 +9,13 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.microsoft.appcenter.utils.AppCenterLog;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
+
 /**
  * Release details JSON schema.
  */
@@ -42,6 +46,12 @@ public class ReleaseDetails {
 
     private static final String DISTRIBUTION_GROUP_ID = "distribution_group_id";
 
+    private static final String PACKAGE_SHA256 = "package_sha256";
+
+    private static final String PATCH_URL = "patch_url";
+
+    private static final String PATCH_BASE_RELEASE_HASH = "patch_base_release_hash";
+
     /**
      * ID identifying this unique release.
      */
@@ -106,6 +116,21 @@ public class ReleaseDetails {
      */
     private String distributionGroupId;
 
+    /**
+     * SHA-256 digest of the package, if provided.
+     */
+    private String packageSha256;
+
+    /**
+     * The URL that hosts a binary patch to rebuild the package from another release, if any.
+     */
+    private Uri patchUrl;
+
+    /**
+     * Release hash of the installed release the patch applies to.
+     */
+    private String patchBaseReleaseHash;
+
     /**
      * Parse a JSON string describing release details.
      *
@@ -133,6 +158,19 @@ public class ReleaseDetails {
         releaseDetails.mandatoryUpdate = object.getBoolean(MANDATORY_UPDATE);
         releaseDetails.releaseHash = object.getJSONArray(PACKAGE_HASHES).getString(0);
         releaseDetails.distributionGroupId = object.isNull(DISTRIBUTION_GROUP_ID) ? null : object.getString(DISTRIBUTION_GROUP_ID);
+        releaseDetails.packageSha256 = object.isNull(PACKAGE_SHA256) ? null : object.getString(PACKAGE_SHA256);
+        if (!object.isNull(PATCH_URL) && !object.isNull(PATCH_BASE_RELEASE_HASH)) {
+
+            /* The patch is optional: an invalid one is ignored and the full package is downloaded. */
+            Uri patchUrl = Uri.parse(object.getString(PATCH_URL));
+            String patchScheme = patchUrl.getScheme();
+            if (patchScheme == null || !patchScheme.startsWith("http")) {
+                AppCenterLog.warn(LOG_TAG, "Ignoring patch with invalid patch_url scheme.");
+            } else {
+                releaseDetails.patchUrl = patchUrl;
+                releaseDetails.patchBaseReleaseHash = object.getString(PATCH_BASE_RELEASE_HASH);
+            }
+        }
         return releaseDetails;
     }
 
@@ -249,4 +287,42 @@ public class ReleaseDetails {
     public String getDistributionGroupId() {
         return distributionGroupId;
     }
+
+    /**
+     * Get the SHA-256 digest of the package.
+     *
+     * @return the packageSha256 value, null if not provided.
+     */
+    @Nullable
+    public String getPackageSha256() {
+        return packageSha256;
+    }
+
+    /**
+     * Get the URL of a binary patch rebuilding this release from the release identified by {@link #getPatchBaseReleaseHash()}.
+     *
+     * @return the patchUrl value, null if no patch is available.
+     */
+    @Nullable
+    public Uri getPatchUrl() {
+        return patchUrl;
+    }
+
+    /**
+     * Get the release hash of the release the patch applies to.
+     *
+     * @return the patchBaseReleaseHash value, null if no patch is available.
+     */
+    @Nullable
+    public String getPatchBaseReleaseHash() {
+        return patchBaseReleaseHash;
+    }
+
+    /**
+     * Forget the patch so that the full package is downloaded, used when the patch does not apply to the installed release.
+     */
+    void ignorePatch() {
+        patchUrl = null;
+        patchBaseReleaseHash = null;
+    }
 }
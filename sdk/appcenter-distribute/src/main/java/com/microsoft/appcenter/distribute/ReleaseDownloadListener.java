@@ -5,7 +5,6 @@
 
 package com.microsoft.appcenter.distribute;
 
-import static com.microsoft.appcenter.distribute.DistributeConstants.HANDLER_TOKEN_CHECK_PROGRESS;
 import static com.microsoft.appcenter.distribute.DistributeConstants.KIBIBYTE_IN_BYTES;
 import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
 import static com.microsoft.appcenter.distribute.DistributeConstants.MEBIBYTE_IN_BYTES;
@@ -151,7 +150,6 @@ class ReleaseDownloadListener implements ReleaseDownloader.Listener {
                     progressDialog.cancel();
                 }
             });
-            HandlerUtils.getMainHandler().removeCallbacksAndMessages(HANDLER_TOKEN_CHECK_PROGRESS);
         }
     }
 
@@ -8,10 +8,12 @@ package com.microsoft.appcenter.distribute.download;
 import android.content.Context;
 
 import com.microsoft.appcenter.distribute.ReleaseDetails;
+import com.microsoft.appcenter.distribute.download.http.HttpReleaseDownloader;
 import com.microsoft.appcenter.distribute.download.manager.DownloadManagerReleaseDownloader;
 
 /**
- * The factory that can be used to create an instance of a {@link DownloadManagerReleaseDownloader}.
+ * The factory that can be used to create an instance of a {@link DownloadManagerReleaseDownloader}
+ * or a {@link HttpReleaseDownloader}.
  */
 public class ReleaseDownloaderFactory {
 
@@ -24,6 +26,22 @@ public class ReleaseDownloaderFactory {
      * @return release downloader instance.
      */
     public static ReleaseDownloader create(Context context, ReleaseDetails releaseDetails, ReleaseDownloader.Listener listener) {
+        return create(context, releaseDetails, listener, false);
+    }
+
+    /**
+     * Create release downloader instance.
+     *
+     * @param context        android context.
+     * @param releaseDetails release to download.
+     * @param listener       listener to be notified of status.
+     * @param resumable      <code>true</code> to download with resumable HTTP range requests instead of the system download manager.
+     * @return release downloader instance.
+     */
+    public static ReleaseDownloader create(Context context, ReleaseDetails releaseDetails, ReleaseDownloader.Listener listener, boolean resumable) {
+        if (resumable) {
+            return new HttpReleaseDownloader(context, releaseDetails, listener);
+        }
         return new DownloadManagerReleaseDownloader(context, releaseDetails, listener);
     }
 }
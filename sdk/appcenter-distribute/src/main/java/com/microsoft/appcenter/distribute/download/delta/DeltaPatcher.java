@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.delta;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Rebuild a package from the installed package and a binary patch.
+ * <p>
+ * The patch is a big endian stream made of:
+ * <ul>
+ * <li>the {@link #MAGIC} header.</li>
+ * <li>the size of the package to rebuild, as a long.</li>
+ * <li>a sequence of instructions, each one starting with an opcode byte:
+ * <ul>
+ * <li>{@link #OP_COPY} followed by a long offset and an int length: copy bytes from the base file.</li>
+ * <li>{@link #OP_ADD} followed by an int length and that many bytes: write the bytes from the patch.</li>
+ * <li>{@link #OP_END}: end of the patch.</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * The patch and the output are streamed, only the base file is read at random offsets.
+ */
+public class DeltaPatcher {
+
+    /**
+     * Header of a patch.
+     */
+    @VisibleForTesting
+    static final byte[] MAGIC = {'A', 'C', 'D', 'E', 'L', 'T', 'A', '1'};
+
+    /**
+     * End of patch opcode.
+     */
+    @VisibleForTesting
+    static final int OP_END = 0;
+
+    /**
+     * Copy from base file opcode.
+     */
+    @VisibleForTesting
+    static final int OP_COPY = 1;
+
+    /**
+     * Add bytes from the patch opcode.
+     */
+    @VisibleForTesting
+    static final int OP_ADD = 2;
+
+    /**
+     * Size of the buffer used to copy bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @VisibleForTesting
+    DeltaPatcher() {
+
+        /* Hide constructor in utils pattern. */
+    }
+
+    /**
+     * Apply a patch.
+     *
+     * @param baseFile the file the patch was generated against.
+     * @param patch    the patch stream, it's not closed by this method.
+     * @param output   the stream to write the rebuilt package into, it's not closed by this method.
+     * @return the number of bytes written.
+     * @throws IOException if an I/O error occurs or if the patch is invalid for this base file.
+     */
+    public static long apply(@NonNull File baseFile, @NonNull InputStream patch, @NonNull OutputStream output) throws IOException {
+        DataInputStream in = new DataInputStream(patch);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Invalid patch header.");
+        }
+        long targetSize = in.readLong();
+        long written = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        RandomAccessFile base = new RandomAccessFile(baseFile, "r");
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            long baseSize = base.length();
+            int opcode;
+            while ((opcode = in.read()) != OP_END) {
+                if (opcode == OP_COPY) {
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if (offset < 0 || length < 0 || offset + length > baseSize) {
+                        throw new IOException("Invalid patch copy instruction.");
+                    }
+                    base.seek(offset);
+                    while (length > 0) {
+                        int chunk = Math.min(length, buffer.length);
+                        base.readFully(buffer, 0, chunk);
+                        output.write(buffer, 0, chunk);
+                        length -= chunk;
+                        written += chunk;
+                    }
+                } else if (opcode == OP_ADD) {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Invalid patch add instruction.");
+                    }
+                    while (length > 0) {
+                        int chunk = Math.min(length, buffer.length);
+                        in.readFully(buffer, 0, chunk);
+                        output.write(buffer, 0, chunk);
+                        length -= chunk;
+                        written += chunk;
+                    }
+                } else if (opcode == -1) {
+                    throw new EOFException("Patch is truncated.");
+                } else {
+                    throw new IOException("Invalid patch opcode " + opcode + ".");
+                }
+                if (written > targetSize) {
+                    throw new IOException("Patch output exceeds expected size.");
+                }
+            }
+        } finally {
+            base.close();
+        }
+        if (written != targetSize) {
+            throw new IOException("Patch output size " + written + " does not match expected size " + targetSize + ".");
+        }
+        return written;
+    }
+}
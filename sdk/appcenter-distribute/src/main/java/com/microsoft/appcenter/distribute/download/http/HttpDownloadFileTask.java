@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.http;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
+import static com.microsoft.appcenter.distribute.DistributeConstants.UPDATE_PROGRESS_TIME_THRESHOLD;
+
+import android.net.TrafficStats;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.distribute.download.delta.DeltaPatcher;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HashUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Download the release file with HTTP range requests, resuming any partially downloaded file.
+ * A new download first tries to rebuild the release from the installed package and a patch.
+ */
+class HttpDownloadFileTask extends AsyncTask<Void, Void, Void> {
+
+    /**
+     * Buffer size used to read the response and the partially downloaded file.
+     */
+    @VisibleForTesting
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of attempts to resume the download after a recoverable network error.
+     */
+    @VisibleForTesting
+    static final int MAX_ATTEMPTS = 4;
+
+    /**
+     * Delay before resuming the download after a recoverable network error, doubled on each attempt.
+     */
+    @VisibleForTesting
+    static final long RETRY_DELAY = 2 * 1000;
+
+    /**
+     * Timeout to read the next bytes of the response, in milliseconds.
+     */
+    private static final int READ_TIMEOUT = 30 * 1000;
+
+    /**
+     * Status code returned when the requested range starts after the end of the file.
+     */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Prefix of the Content-Range header of a 416 response, followed by the size of the file on the server.
+     */
+    private static final String UNSATISFIED_CONTENT_RANGE_PREFIX = "bytes */";
+
+    private final HttpReleaseDownloader mDownloader;
+
+    /**
+     * SHA-256 digest of the file if it was already completely downloaded, null otherwise.
+     */
+    private final String mCompletedDigest;
+
+    HttpDownloadFileTask(@NonNull HttpReleaseDownloader downloader, @Nullable String completedDigest) {
+        mDownloader = downloader;
+        mCompletedDigest = completedDigest;
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        TrafficStats.setThreadStatsTag(HttpUtils.THREAD_STATS_TAG);
+        try {
+            File targetFile = mDownloader.getTargetFile();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            /* Digest the bytes already downloaded so that the final digest covers the whole file. */
+            if (targetFile.exists()) {
+                digestFile(targetFile, digest);
+                if (mCompletedDigest != null) {
+                    String completedDigest = HashUtils.encodeHex(digest.digest());
+                    if (mCompletedDigest.equals(completedDigest)) {
+                        AppCenterLog.debug(LOG_TAG, "Release was already downloaded to " + targetFile);
+                        mDownloader.onDownloadComplete(targetFile, completedDigest);
+                        return null;
+                    }
+                    AppCenterLog.warn(LOG_TAG, "Downloaded release file was modified, downloading it again.");
+                    deleteTargetFile(targetFile);
+                }
+            } else {
+                mDownloader.setValidator(null);
+                mDownloader.onDownloadStarted(System.currentTimeMillis());
+                File baseFile = mDownloader.getPatchBaseFile();
+                if (baseFile != null) {
+                    String patchedDigest = applyPatch(baseFile, targetFile);
+                    if (patchedDigest != null) {
+                        mDownloader.onDownloadComplete(targetFile, patchedDigest);
+                        return null;
+                    }
+                    if (isCancelled()) {
+                        return null;
+                    }
+                }
+            }
+            URL downloadUrl = new URL(mDownloader.getReleaseDetails().getDownloadUrl().toString());
+            downloadWithRetries(downloadUrl, targetFile, digest);
+            if (!isCancelled()) {
+                mDownloader.onDownloadComplete(targetFile, HashUtils.encodeHex(digest.digest()));
+            }
+        } catch (InterruptedException e) {
+            AppCenterLog.debug(LOG_TAG, "Download was interrupted.");
+        } catch (IOException | NoSuchAlgorithmException e) {
+            if (!isCancelled()) {
+                mDownloader.onDownloadError(e);
+            }
+        } finally {
+            TrafficStats.clearThreadStatsTag();
+        }
+        return null;
+    }
+
+    /**
+     * Download and apply the release patch to the installed package.
+     *
+     * @return digest of the rebuilt release or null if the patch could not be applied.
+     */
+    @Nullable
+    private String applyPatch(File baseFile, File targetFile) throws InterruptedException, NoSuchAlgorithmException {
+        File patchFile = mDownloader.getPatchFile();
+        try {
+
+            /* Always download the patch from scratch, it's much smaller than the release. */
+            //noinspection ResultOfMethodCallIgnored
+            patchFile.delete();
+            URL patchUrl = new URL(mDownloader.getReleaseDetails().getPatchUrl().toString());
+            downloadWithRetries(patchUrl, patchFile, MessageDigest.getInstance("SHA-256"));
+            if (isCancelled()) {
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream in = new BufferedInputStream(new FileInputStream(patchFile), BUFFER_SIZE);
+            OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE), digest);
+            try {
+                DeltaPatcher.apply(baseFile, in, out);
+            } finally {
+                out.close();
+                in.close();
+            }
+            String patchedDigest = HashUtils.encodeHex(digest.digest());
+            if (!patchedDigest.equalsIgnoreCase(mDownloader.getReleaseDetails().getPackageSha256())) {
+                throw new IOException("Patched release digest " + patchedDigest + " does not match.");
+            }
+            AppCenterLog.debug(LOG_TAG, "Release was rebuilt from patch, " + patchFile.length() + " bytes downloaded.");
+            return patchedDigest;
+        } catch (IOException e) {
+            if (!isCancelled()) {
+                AppCenterLog.warn(LOG_TAG, "Cannot apply release patch, downloading the full release.", e);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            targetFile.delete();
+            return null;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            patchFile.delete();
+
+            /* The validator belongs to the patch, not to the release. */
+            mDownloader.setValidator(null);
+        }
+    }
+
+    /**
+     * Download the file, resuming it after recoverable network errors.
+     */
+    private void downloadWithRetries(URL url, File file, MessageDigest digest) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                download(url, file, digest);
+                return;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || isCancelled() || !HttpUtils.isRecoverableError(e)) {
+                    throw e;
+                }
+                long delay = RETRY_DELAY << (attempt - 1);
+                AppCenterLog.warn(LOG_TAG, "Download interrupted, resuming in " + delay + "ms.", e);
+                sleep(delay);
+
+                /* Digest again what was written so far as the last chunk might have been partially written. */
+                digest.reset();
+                if (file.exists()) {
+                    digestFile(file, digest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Download the remaining part of the file, appending it to the file and updating the digest.
+     */
+    private void download(URL url, File targetFile, MessageDigest digest) throws IOException {
+        long offset = targetFile.length();
+        HttpURLConnection connection = createConnection(url);
+        try {
+            connection.setReadTimeout(READ_TIMEOUT);
+            String validator = mDownloader.getValidator();
+            if (offset > 0 && validator != null) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                connection.setRequestProperty("If-Range", validator);
+            }
+            int statusCode = connection.getResponseCode();
+            boolean append;
+            if (statusCode == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+
+                /* The download was interrupted after the last byte was written: nothing left to download. */
+                if (getUnsatisfiedRangeLength(connection) == offset) {
+                    AppCenterLog.debug(LOG_TAG, "Download was already complete at " + offset + " bytes.");
+                    return;
+                }
+
+                /* The partial file is longer than the file on the server: start over from the first byte. */
+                AppCenterLog.debug(LOG_TAG, "Cannot resume download at " + offset + " bytes, starting over.");
+                connection.disconnect();
+                deleteTargetFile(targetFile);
+                digest.reset();
+                download(url, targetFile, digest);
+                return;
+            } else if (statusCode == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                append = true;
+                AppCenterLog.debug(LOG_TAG, "Resuming download at " + offset + " bytes.");
+            } else if (statusCode == HttpURLConnection.HTTP_OK) {
+
+                /* The server ignored the range or the file changed: start over. */
+                append = false;
+                if (offset > 0) {
+                    AppCenterLog.debug(LOG_TAG, "Cannot resume download, starting over.");
+                    offset = 0;
+                    digest.reset();
+                }
+                String etag = connection.getHeaderField("ETag");
+                mDownloader.setValidator(etag != null ? etag : connection.getHeaderField("Last-Modified"));
+            } else {
+
+                /* Server errors are retried as recoverable errors. */
+                throw new HttpException(new HttpResponse(statusCode));
+            }
+            long contentLength = connection.getContentLength();
+            long totalSize = contentLength >= 0 ? offset + contentLength : -1;
+            File directory = targetFile.getParentFile();
+            if (directory != null && !directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create download directory " + directory);
+            }
+            InputStream in = connection.getInputStream();
+            OutputStream out = new FileOutputStream(targetFile, append);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long currentSize = offset;
+                long lastProgressTime = 0;
+                boolean reportProgress = true;
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    out.write(buffer, 0, length);
+                    digest.update(buffer, 0, length);
+                    currentSize += length;
+                    long now = SystemClock.uptimeMillis();
+                    if (reportProgress && now - lastProgressTime >= UPDATE_PROGRESS_TIME_THRESHOLD) {
+                        lastProgressTime = now;
+                        reportProgress = mDownloader.onDownloadProgress(currentSize, totalSize);
+                    }
+                }
+                if (totalSize >= 0 && currentSize != totalSize) {
+                    throw new EOFException("Download ended at " + currentSize + " of " + totalSize + " bytes.");
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @VisibleForTesting
+    void sleep(long delay) throws InterruptedException {
+        Thread.sleep(delay);
+    }
+
+    @VisibleForTesting
+    HttpURLConnection createConnection(URL url) throws IOException {
+        return HttpUtils.createHttpsConnection(url);
+    }
+
+    private static void digestFile(File file, MessageDigest digest) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void deleteTargetFile(File targetFile) {
+
+        //noinspection ResultOfMethodCallIgnored
+        targetFile.delete();
+        mDownloader.setValidator(null);
+    }
+
+    /**
+     * Get the size of the file on the server from the Content-Range header of a 416 response.
+     *
+     * @return size in bytes or -1 if unknown.
+     */
+    private static long getUnsatisfiedRangeLength(HttpURLConnection connection) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange != null && contentRange.startsWith(UNSATISFIED_CONTENT_RANGE_PREFIX)) {
+            try {
+                return Long.parseLong(contentRange.substring(UNSATISFIED_CONTENT_RANGE_PREFIX.length()).trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.http;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.microsoft.appcenter.distribute.FileExtension;
+import com.microsoft.appcenter.distribute.ReleaseDetails;
+import com.microsoft.appcenter.distribute.download.AbstractReleaseDownloader;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.AsyncTaskUtils;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import java.io.File;
+
+/**
+ * Downloads the release with HTTP range requests into the application cache directory.
+ * A partially downloaded file is resumed, even after the process was killed, and its SHA-256
+ * digest is computed while streaming.
+ * <p>
+ * When the release provides a patch against the installed release, the patch is downloaded and
+ * applied to the installed package instead, falling back to the full download on any failure.
+ */
+public class HttpReleaseDownloader extends AbstractReleaseDownloader {
+
+    /**
+     * Directory name, in the application cache directory, where releases are downloaded.
+     */
+    @VisibleForTesting
+    static final String DOWNLOAD_DIRECTORY = "appcenter-distribute";
+
+    /**
+     * Preference key prefix, followed by the release identifier, to store the validator (ETag or Last-Modified)
+     * of the partially downloaded file.
+     */
+    @VisibleForTesting
+    static final String PREFERENCE_KEY_VALIDATOR_PREFIX = "Distribute.http_download_validator_";
+
+    /**
+     * Preference key prefix, followed by the release identifier, to store the SHA-256 digest
+     * of the downloaded file once completed.
+     */
+    @VisibleForTesting
+    static final String PREFERENCE_KEY_DIGEST_PREFIX = "Distribute.http_download_digest_";
+
+    /**
+     * Current task downloading the file.
+     */
+    private HttpDownloadFileTask mDownloadTask;
+
+    public HttpReleaseDownloader(@NonNull Context context, @NonNull ReleaseDetails releaseDetails, @NonNull Listener listener) {
+        super(context, releaseDetails, listener);
+    }
+
+    /**
+     * Get the directory where releases are downloaded.
+     *
+     * @return download directory.
+     */
+    @NonNull
+    File getDownloadDirectory() {
+        return new File(mContext.getCacheDir(), DOWNLOAD_DIRECTORY);
+    }
+
+    /**
+     * Get the file where the current release is downloaded.
+     *
+     * @return target file.
+     */
+    @NonNull
+    File getTargetFile() {
+        return new File(getDownloadDirectory(), "release-" + mReleaseDetails.getId() + "." + mReleaseDetails.getFileExtension());
+    }
+
+    /**
+     * Get the file where the patch of the current release is downloaded.
+     *
+     * @return patch file.
+     */
+    @NonNull
+    File getPatchFile() {
+        return new File(getDownloadDirectory(), "release-" + mReleaseDetails.getId() + ".patch");
+    }
+
+    /**
+     * Get the installed package to apply the release patch to, if the patch can be used.
+     * Release details only keep a patch generated against the installed release. It is used only if
+     * the digest of the rebuilt package is known to verify it and if the installed application is not split.
+     *
+     * @return base package file or null if the patch cannot be used.
+     */
+    @Nullable
+    @WorkerThread
+    File getPatchBaseFile() {
+        if (mReleaseDetails.getPatchUrl() == null || mReleaseDetails.getPackageSha256() == null || mReleaseDetails.getFileExtension() != FileExtension.apk) {
+            return null;
+        }
+        ApplicationInfo applicationInfo = mContext.getApplicationInfo();
+        if (applicationInfo.splitSourceDirs != null && applicationInfo.splitSourceDirs.length > 0) {
+            AppCenterLog.debug(LOG_TAG, "Release patch cannot be applied to a split application.");
+            return null;
+        }
+        File baseFile = new File(applicationInfo.sourceDir);
+        return baseFile.canRead() ? baseFile : null;
+    }
+
+    /**
+     * Get the validator of the partially downloaded file, used to resume only if the file did not change.
+     *
+     * @return validator or null if unknown.
+     */
+    @Nullable
+    String getValidator() {
+        return SharedPreferencesManager.getString(getValidatorKey());
+    }
+
+    void setValidator(@Nullable String validator) {
+        if (validator != null) {
+            SharedPreferencesManager.putString(getValidatorKey(), validator);
+        } else {
+            SharedPreferencesManager.remove(getValidatorKey());
+        }
+    }
+
+    @NonNull
+    private String getValidatorKey() {
+        return PREFERENCE_KEY_VALIDATOR_PREFIX + mReleaseDetails.getId();
+    }
+
+    @NonNull
+    private String getDigestKey() {
+        return PREFERENCE_KEY_DIGEST_PREFIX + mReleaseDetails.getId();
+    }
+
+    @Override
+    public synchronized boolean isDownloading() {
+        return mDownloadTask != null;
+    }
+
+    @AnyThread
+    @Override
+    public synchronized void resume() {
+
+        /* Force resume means that we want another completion event. */
+        mCompleted = false;
+        if (mDownloadTask != null) {
+            AppCenterLog.debug(LOG_TAG, "Downloading is already in progress.");
+            return;
+        }
+        mDownloadTask = AsyncTaskUtils.execute(LOG_TAG, new HttpDownloadFileTask(this, SharedPreferencesManager.getString(getDigestKey())));
+    }
+
+    @Override
+    public synchronized void cancel() {
+        super.cancel();
+        if (mDownloadTask != null) {
+            mDownloadTask.cancel(true);
+            mDownloadTask = null;
+        }
+
+        /* Only one release is downloaded at a time, remove any previous download. */
+        FileManager.deleteDirectory(getDownloadDirectory());
+        SharedPreferencesManager.remove(getValidatorKey());
+        SharedPreferencesManager.remove(getDigestKey());
+    }
+
+    @WorkerThread
+    synchronized void onDownloadStarted(long enqueueTime) {
+        if (isCompleted()) {
+            return;
+        }
+        mListener.onStart(enqueueTime);
+    }
+
+    @WorkerThread
+    synchronized boolean onDownloadProgress(long currentSize, long totalSize) {
+        if (isCompleted()) {
+            return false;
+        }
+        return mListener.onProgress(currentSize, totalSize);
+    }
+
+    @WorkerThread
+    synchronized void onDownloadComplete(@NonNull File file, @NonNull String digest) {
+        if (isCompleted()) {
+            return;
+        }
+
+        /* Mark download completed. */
+        mCompleted = true;
+        mDownloadTask = null;
+        if (!isDownloadedFileValid(file, digest)) {
+            FileManager.delete(file);
+            SharedPreferencesManager.remove(getValidatorKey());
+            mListener.onError("Downloaded package file is invalid.");
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Download was successful for " + file + " sha256=" + digest);
+        SharedPreferencesManager.putString(getDigestKey(), digest);
+        mListener.onComplete(Uri.fromFile(file));
+    }
+
+    @WorkerThread
+    synchronized void onDownloadError(@NonNull Exception e) {
+        if (isCompleted()) {
+            return;
+        }
+        mCompleted = true;
+        mDownloadTask = null;
+        AppCenterLog.error(LOG_TAG, "Failed to download update " + mReleaseDetails.getId(), e);
+        mListener.onError(e.getMessage());
+    }
+
+    private boolean isDownloadedFileValid(File file, String digest) {
+        String expectedDigest = mReleaseDetails.getPackageSha256();
+        if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest)) {
+            return false;
+        }
+
+        /* Only the files with APK extension have their size correctly indicated in the release details. */
+        return mReleaseDetails.getFileExtension() != FileExtension.apk || file.length() == mReleaseDetails.getSize();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.manager;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.UPDATE_PROGRESS_TIME_THRESHOLD;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Observe the download manager changes of a download to update its progress instead of polling it.
+ * Changes are coalesced on a background thread and the download is inspected at most once per
+ * {@link com.microsoft.appcenter.distribute.DistributeConstants#UPDATE_PROGRESS_TIME_THRESHOLD}.
+ */
+class DownloadManagerProgressObserver extends ContentObserver {
+
+    /**
+     * Content URI of the downloads of this application, download identifier being the last path segment.
+     */
+    static final Uri DOWNLOADS_CONTENT_URI = Uri.parse("content://downloads/my_downloads");
+
+    /**
+     * Name of the thread receiving the changes.
+     */
+    private static final String THREAD_NAME = "AppCenter.DownloadProgress";
+
+    private final DownloadManagerReleaseDownloader mDownloader;
+
+    private final HandlerThread mHandlerThread;
+
+    private final Handler mHandler;
+
+    /**
+     * Inspect the download, only one is scheduled at a time.
+     */
+    private final Runnable mUpdateRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mUpdateScheduled = false;
+            mLastUpdateTime = SystemClock.uptimeMillis();
+            mDownloader.update();
+        }
+    };
+
+    /**
+     * Time of the last inspection, only accessed on the handler thread.
+     */
+    private long mLastUpdateTime;
+
+    /**
+     * Whether an inspection is already scheduled, only accessed on the handler thread.
+     */
+    private boolean mUpdateScheduled;
+
+    /**
+     * Create an observer receiving changes on a new background thread.
+     *
+     * @param downloader downloader to update on changes.
+     * @return observer.
+     */
+    static DownloadManagerProgressObserver create(@NonNull DownloadManagerReleaseDownloader downloader) {
+        HandlerThread handlerThread = new HandlerThread(THREAD_NAME);
+        handlerThread.start();
+        return new DownloadManagerProgressObserver(downloader, handlerThread, new Handler(handlerThread.getLooper()));
+    }
+
+    @VisibleForTesting
+    DownloadManagerProgressObserver(@NonNull DownloadManagerReleaseDownloader downloader, @NonNull HandlerThread handlerThread, @NonNull Handler handler) {
+        super(handler);
+        mDownloader = downloader;
+        mHandlerThread = handlerThread;
+        mHandler = handler;
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        if (mUpdateScheduled) {
+            return;
+        }
+        mUpdateScheduled = true;
+        long updateTime = Math.max(SystemClock.uptimeMillis(), mLastUpdateTime + UPDATE_PROGRESS_TIME_THRESHOLD);
+        mHandler.postAtTime(mUpdateRunnable, updateTime);
+    }
+
+    /**
+     * Stop the background thread, must be called after unregistering the observer.
+     */
+    void quit() {
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mHandlerThread.quitSafely();
+    }
+}
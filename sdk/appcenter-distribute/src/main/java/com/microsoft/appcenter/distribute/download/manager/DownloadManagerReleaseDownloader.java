@@ -6,18 +6,16 @@
 package com.microsoft.appcenter.distribute.download.manager;
 
 import static android.content.Context.DOWNLOAD_SERVICE;
-import static com.microsoft.appcenter.distribute.DistributeConstants.HANDLER_TOKEN_CHECK_PROGRESS;
 import static com.microsoft.appcenter.distribute.DistributeConstants.INVALID_DOWNLOAD_IDENTIFIER;
 import static com.microsoft.appcenter.distribute.DistributeConstants.LOG_TAG;
 import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_DOWNLOAD_ID;
-import static com.microsoft.appcenter.distribute.DistributeConstants.UPDATE_PROGRESS_TIME_THRESHOLD;
 
 import android.app.DownloadManager;
+import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
-import android.os.SystemClock;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
@@ -56,6 +54,16 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
      */
     private DownloadManagerRequestTask mRequestTask;
 
+    /**
+     * Observer of the download changes while the listener wants progress updates.
+     */
+    private DownloadManagerProgressObserver mProgressObserver;
+
+    /**
+     * Last progress percentage reported to the listener, -1 if none.
+     */
+    private int mLastProgressPercentage = -1;
+
     public DownloadManagerReleaseDownloader(@NonNull Context context, @NonNull ReleaseDetails releaseDetails, @NonNull Listener listener) {
         super(context, releaseDetails, listener);
     }
@@ -94,6 +102,9 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
         /* Force resume means that we want another completion event. */
         mCompleted = false;
 
+        /* The listener might have a new progress dialog to update. */
+        mLastProgressPercentage = -1;
+
         /*
          * Just update the current downloading status.
          * All checks will be performed in the background thread.
@@ -112,6 +123,7 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
             mUpdateTask.cancel(true);
             mUpdateTask = null;
         }
+        stopObservingProgress();
         long downloadId = getDownloadId();
         if (downloadId != INVALID_DOWNLOAD_IDENTIFIER) {
             remove(downloadId);
@@ -146,7 +158,7 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
     /**
      * Update the state on current download.
      */
-    private synchronized void update() {
+    synchronized void update() {
         if (isCompleted()) {
             return;
         }
@@ -158,6 +170,26 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
         AsyncTaskUtils.execute(LOG_TAG, new DownloadManagerRemoveTask(mContext, downloadId));
     }
 
+    /**
+     * Start observing the download changes to update progress, if not already observing.
+     */
+    private void observeProgress(long downloadId) {
+        if (mProgressObserver != null) {
+            return;
+        }
+        mProgressObserver = DownloadManagerProgressObserver.create(this);
+        Uri downloadUri = ContentUris.withAppendedId(DownloadManagerProgressObserver.DOWNLOADS_CONTENT_URI, downloadId);
+        mContext.getContentResolver().registerContentObserver(downloadUri, false, mProgressObserver);
+    }
+
+    private void stopObservingProgress() {
+        if (mProgressObserver != null) {
+            mContext.getContentResolver().unregisterContentObserver(mProgressObserver);
+            mProgressObserver.quit();
+            mProgressObserver = null;
+        }
+    }
+
     /**
      * Cancels download if it's still in pending state.
      */
@@ -205,16 +237,19 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
         }
         long totalSize = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
         long currentSize = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-        if (mListener.onProgress(currentSize, totalSize)) {
 
-            /* Schedule the next check if more updates are needed. */
-            HandlerUtils.getMainHandler().postAtTime(new Runnable() {
+        /* Only report visible changes, the size is unknown until the download actually starts. */
+        int percentage = totalSize > 0 ? (int) (currentSize * 100 / totalSize) : -1;
+        if (percentage == mLastProgressPercentage && mProgressObserver != null) {
+            return;
+        }
+        mLastProgressPercentage = percentage;
+        if (mListener.onProgress(currentSize, totalSize)) {
 
-                @Override
-                public void run() {
-                    update();
-                }
-            }, HANDLER_TOKEN_CHECK_PROGRESS, SystemClock.uptimeMillis() + UPDATE_PROGRESS_TIME_THRESHOLD);
+            /* Get notified of the next changes if more updates are needed. */
+            observeProgress(getDownloadId());
+        } else {
+            stopObservingProgress();
         }
     }
 
@@ -226,6 +261,7 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
 
         /* Mark download completed. */
         mCompleted = true;
+        stopObservingProgress();
         if (!isDownloadedFileValid()) {
             mListener.onError("Downloaded package file is invalid.");
             return;
@@ -245,6 +281,7 @@ public class DownloadManagerReleaseDownloader extends AbstractReleaseDownloader
             return;
         }
         mCompleted = true;
+        stopObservingProgress();
         AppCenterLog.error(LOG_TAG, "Failed to download update id=" + mDownloadId, e);
         mListener.onError(e.getMessage());
     }
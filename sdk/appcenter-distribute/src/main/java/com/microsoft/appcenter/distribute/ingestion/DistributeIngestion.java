@@ -8,8 +8,10 @@ package com.microsoft.appcenter.distribute.ingestion;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.microsoft.appcenter.DependencyConfiguration;
+import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -32,6 +34,26 @@ import static com.microsoft.appcenter.http.HttpUtils.createHttpClient;
  */
 public class DistributeIngestion extends AbstractAppCenterIngestion {
 
+    /**
+     * Response header identifying the version of the latest release details.
+     */
+    public static final String HEADER_ETAG = "ETag";
+
+    /**
+     * Response header containing the modification date of the latest release details.
+     */
+    public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * Request header to get the latest release details only if its {@link #HEADER_ETAG} changed.
+     */
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    /**
+     * Request header to get the latest release details only if modified after {@link #HEADER_LAST_MODIFIED}.
+     */
+    public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
     public DistributeIngestion(@NonNull Context context) {
         HttpClient httpClient = DependencyConfiguration.getHttpClient();
         if (httpClient == null) {
@@ -69,4 +91,21 @@ public class DistributeIngestion extends AbstractAppCenterIngestion {
             }
         }, serviceCallback);
     }
+
+    /**
+     * Get a response header, ignoring the case of its name as HTTP/2 servers send lower case names.
+     *
+     * @param httpResponse HTTP response.
+     * @param name         header name.
+     * @return header value or null if missing.
+     */
+    @Nullable
+    public static String getHeader(@NonNull HttpResponse httpResponse, @NonNull String name) {
+        for (Map.Entry<String, String> header : httpResponse.getHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
 }
@@ -17,9 +17,11 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.microsoft.appcenter.distribute.install.AbstractReleaseInstaller;
@@ -29,9 +31,10 @@ import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Installer based on {@link PackageInstaller.Session} API.
@@ -202,12 +205,16 @@ public class SessionReleaseInstaller extends AbstractReleaseInstaller {
 
             /* Prepare session. */
             session = createSession(fileDescriptor);
-            addFileToInstallSession(fileDescriptor, session);
+            long[] timings = addFileToInstallSession(fileDescriptor, session);
 
             /* Start to install a new release. */
+            long commitStartTime = SystemClock.elapsedRealtime();
             IntentSender statusReceiver = InstallStatusReceiver.getInstallStatusIntentSender(mContext, mSessionId);
             session.commit(statusReceiver);
             session.close();
+            long commitTime = SystemClock.elapsedRealtime() - commitStartTime;
+            AppCenterLog.debug(LOG_TAG, "Install session committed: copy=" + timings[0] + "ms, fsync=" + timings[1] +
+                    "ms, commit=" + commitTime + "ms.");
         } catch (IOException | RuntimeException e) {
             if (session != null) {
                 session.abandon();
@@ -216,17 +223,65 @@ public class SessionReleaseInstaller extends AbstractReleaseInstaller {
         }
     }
 
+    /**
+     * Write the package into the install session.
+     *
+     * @param fileDescriptor package file descriptor.
+     * @param session        install session.
+     * @return copy and fsync durations in milliseconds.
+     * @throws IOException if the package cannot be written.
+     */
     @WorkerThread
-    private static void addFileToInstallSession(ParcelFileDescriptor fileDescriptor, PackageInstaller.Session session)
+    private static long[] addFileToInstallSession(ParcelFileDescriptor fileDescriptor, PackageInstaller.Session session)
             throws IOException {
-        try (OutputStream out = session.openWrite(sOutputStreamName, 0, fileDescriptor.getStatSize());
-             InputStream in = new FileInputStream(fileDescriptor.getFileDescriptor())) {
-            byte[] buffer = new byte[BUFFER_CAPACITY];
-            int read;
-            while ((read = in.read(buffer)) >= 0) {
-                out.write(buffer, 0, read);
-            }
+        long size = fileDescriptor.getStatSize();
+        try (OutputStream out = session.openWrite(sOutputStreamName, 0, size);
+             FileInputStream in = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            long copyStartTime = SystemClock.elapsedRealtime();
+            copy(in, out, size);
+            long fsyncStartTime = SystemClock.elapsedRealtime();
             session.fsync(out);
+            long fsyncEndTime = SystemClock.elapsedRealtime();
+            return new long[]{fsyncStartTime - copyStartTime, fsyncEndTime - fsyncStartTime};
+        }
+    }
+
+    /**
+     * Copy the package into the session stream. When the session stream is backed by a file
+     * descriptor, the bytes are transferred between channels by the kernel without going
+     * through a Java buffer. Otherwise, or if the channel transfer stops making progress,
+     * the remaining bytes are copied with a buffer.
+     *
+     * @param in   package stream.
+     * @param out  session stream.
+     * @param size package size in bytes, negative if unknown.
+     * @throws IOException if the copy fails.
+     */
+    @VisibleForTesting
+    static void copy(FileInputStream in, OutputStream out, long size) throws IOException {
+        if (size > 0 && out instanceof FileOutputStream) {
+            FileChannel source = in.getChannel();
+            FileChannel destination = ((FileOutputStream) out).getChannel();
+            if (source != null && destination != null) {
+                long position = source.position();
+                while (position < size) {
+                    long transferred = source.transferTo(position, size - position, destination);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                }
+                if (position >= size) {
+                    return;
+                }
+                AppCenterLog.debug(LOG_TAG, "Channel transfer stopped at " + position + " bytes, continue with a buffer.");
+                source.position(position);
+            }
+        }
+        byte[] buffer = new byte[BUFFER_CAPACITY];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
         }
     }
 
@@ -310,7 +310,7 @@ public class AbstractDistributeTest {
 
         /* Mock Release Downloader. */
         mockStatic(ReleaseDownloaderFactory.class);
-        when(ReleaseDownloaderFactory.create(any(Context.class), any(), any())).thenReturn(mReleaseDownloader);
+        when(ReleaseDownloaderFactory.create(any(Context.class), any(), any(), anyBoolean())).thenReturn(mReleaseDownloader);
         when(mReleaseDownloader.getReleaseDetails()).thenReturn(mReleaseDetails);
 
         /* Mock Release Downloader Listener. */
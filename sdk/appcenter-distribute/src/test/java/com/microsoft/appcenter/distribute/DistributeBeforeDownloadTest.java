@@ -18,6 +18,7 @@ import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_
 import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_UPDATE_TOKEN;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyMap;
@@ -991,7 +992,7 @@ public class DistributeBeforeDownloadTest extends AbstractDistributeTest {
         when(mReleaseDetails.getId()).thenReturn(1);
         when(DistributeUtils.loadCachedReleaseDetails()).thenReturn(mReleaseDetails);
         ReleaseDownloader cachedReleaseDownloader = mock(ReleaseDownloader.class);
-        when(ReleaseDownloaderFactory.create(any(Context.class), same(mReleaseDetails), any(ReleaseDownloadListener.class))).thenReturn(cachedReleaseDownloader);
+        when(ReleaseDownloaderFactory.create(any(Context.class), same(mReleaseDetails), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(cachedReleaseDownloader);
         when(cachedReleaseDownloader.getReleaseDetails()).thenReturn(mReleaseDetails);
 
         /* Mock next release. */
@@ -1000,7 +1001,7 @@ public class DistributeBeforeDownloadTest extends AbstractDistributeTest {
         when(nextReleaseDetails.getVersion()).thenReturn(7);
         when(ReleaseDetails.parse(anyString())).thenReturn(nextReleaseDetails);
         ReleaseDownloader nextReleaseDownloader = mock(ReleaseDownloader.class);
-        when(ReleaseDownloaderFactory.create(any(Context.class), same(nextReleaseDetails), any(ReleaseDownloadListener.class))).thenReturn(nextReleaseDownloader);
+        when(ReleaseDownloaderFactory.create(any(Context.class), same(nextReleaseDetails), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(nextReleaseDownloader);
         when(nextReleaseDownloader.getReleaseDetails()).thenReturn(nextReleaseDetails);
 
         /* Simulate cache update. */
@@ -1049,7 +1050,7 @@ public class DistributeBeforeDownloadTest extends AbstractDistributeTest {
         when(nextReleaseDetails.getVersion()).thenReturn(7);
         when(ReleaseDetails.parse(anyString())).thenReturn(nextReleaseDetails);
         ReleaseDownloader nextReleaseDownloader = mock(ReleaseDownloader.class);
-        when(ReleaseDownloaderFactory.create(any(Context.class), same(nextReleaseDetails), any(ReleaseDownloadListener.class))).thenReturn(nextReleaseDownloader);
+        when(ReleaseDownloaderFactory.create(any(Context.class), same(nextReleaseDetails), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(nextReleaseDownloader);
         when(nextReleaseDownloader.getReleaseDetails()).thenReturn(nextReleaseDetails);
 
         /* Simulate cache update. */
@@ -1083,7 +1084,7 @@ public class DistributeBeforeDownloadTest extends AbstractDistributeTest {
 
         /* Disable SDK. */
         ReleaseDownloader cleanupReleaseDownloader = mock(ReleaseDownloader.class);
-        when(ReleaseDownloaderFactory.create(any(Context.class), isNull(), any())).thenReturn(cleanupReleaseDownloader);
+        when(ReleaseDownloaderFactory.create(any(Context.class), isNull(), any(), anyBoolean())).thenReturn(cleanupReleaseDownloader);
         Distribute.setEnabled(false).get();
         Distribute.setEnabled(true).get();
 
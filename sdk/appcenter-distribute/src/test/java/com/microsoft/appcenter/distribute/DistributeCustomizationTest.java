@@ -35,6 +35,7 @@ import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_
 import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_POSTPONE_TIME;
 import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_UPDATE_TOKEN;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyMap;
@@ -368,7 +369,7 @@ public class DistributeCustomizationTest extends AbstractDistributeTest {
         AppCenterLog.error(anyString(), anyString());
 
         /* mReleaseListener is null. */
-        Mockito.when(ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloadListener.class))).thenReturn(null);
+        Mockito.when(ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(null);
         distribute.handleUpdateAction(UpdateAction.POSTPONE);
 
         /* Verify the user action has NOT been processed. */
@@ -377,7 +378,7 @@ public class DistributeCustomizationTest extends AbstractDistributeTest {
 
         /* Enable the service. */
         ReleaseDownloader cleanupReleaseDownloader = mock(ReleaseDownloader.class);
-        Mockito.when(ReleaseDownloaderFactory.create(any(Context.class), isNull(), any(ReleaseDownloadListener.class))).thenReturn(cleanupReleaseDownloader);
+        Mockito.when(ReleaseDownloaderFactory.create(any(Context.class), isNull(), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(cleanupReleaseDownloader);
         distribute.setInstanceEnabled(true);
 
         /* Verify the method is called by resumeDistributeWorkflow. */
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_ETAG;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_CHECK_RELEASE_TIME;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_DISTRIBUTION_GROUP_ID;
+import static com.microsoft.appcenter.distribute.DistributeConstants.PREFERENCE_KEY_UPDATE_TOKEN;
+import static com.microsoft.appcenter.distribute.ingestion.DistributeIngestion.HEADER_IF_NONE_MATCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@SuppressWarnings({"Convert2Lambda", "RedundantSuppression", "unchecked"})
+public class DistributeReleaseCheckCacheTest extends AbstractDistributeTest {
+
+    private static final String CHECK_RELEASE_PREFIX = "Distribute.check_release";
+
+    private static final String PAYLOAD = "<mock_release_details>";
+
+    private static final String ETAG = "\"v1\"";
+
+    /**
+     * Storage of the release check cache preferences.
+     */
+    private final Map<String, Object> mPreferences = new HashMap<>();
+
+    /**
+     * Responses of the next release checks.
+     */
+    private final List<Object> mResponses = new ArrayList<>();
+
+    @Mock
+    private DistributeListener mListener;
+
+    @Before
+    public void setUpReleaseCheck() throws Exception {
+        Answer<Void> putAnswer = new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mPreferences.put(invocation.<String>getArgument(0), invocation.getArgument(1));
+                return null;
+            }
+        };
+        doAnswer(putAnswer).when(SharedPreferencesManager.class);
+        SharedPreferencesManager.putString(startsWith(CHECK_RELEASE_PREFIX), anyString());
+        doAnswer(putAnswer).when(SharedPreferencesManager.class);
+        SharedPreferencesManager.putLong(startsWith(CHECK_RELEASE_PREFIX), anyLong());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mPreferences.remove(invocation.<String>getArgument(0));
+                return null;
+            }
+        }).when(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(startsWith(CHECK_RELEASE_PREFIX));
+        when(SharedPreferencesManager.getString(startsWith(CHECK_RELEASE_PREFIX))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return (String) mPreferences.get(invocation.<String>getArgument(0));
+            }
+        });
+        when(SharedPreferencesManager.getLong(startsWith(CHECK_RELEASE_PREFIX))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                Long value = (Long) mPreferences.get(invocation.<String>getArgument(0));
+                return value != null ? value : 0L;
+            }
+        });
+
+        /* Release check answers with the next queued response. */
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMap(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                ServiceCallback serviceCallback = invocation.getArgument(4);
+                Object response = mResponses.remove(0);
+                if (response instanceof Exception) {
+                    serviceCallback.onCallFailed((Exception) response);
+                } else {
+                    serviceCallback.onCallSucceeded((HttpResponse) response);
+                }
+                return mock(ServiceCall.class);
+            }
+        });
+
+        /* Latest release is not more recent than the installed one. */
+        when(mReleaseDetails.getDistributionGroupId()).thenReturn(UUID.randomUUID().toString());
+        when(ReleaseDetails.parse(PAYLOAD)).thenReturn(mReleaseDetails);
+        Distribute.setListener(mListener);
+    }
+
+    private static HttpResponse okResponse() {
+        Map<String, String> headers = new HashMap<>();
+
+        /* HTTP/2 header names are lower case. */
+        headers.put("etag", ETAG);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, PAYLOAD, headers);
+    }
+
+    private static HttpException notModified() {
+        return new HttpException(new HttpResponse(HttpURLConnection.HTTP_NOT_MODIFIED));
+    }
+
+    private List<Map<String, String>> captureRequestHeaders(int count) {
+        ArgumentCaptor<Map<String, String>> headers = ArgumentCaptor.forClass(Map.class);
+        verify(mHttpClient, times(count)).callAsync(anyString(), anyString(), headers.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        return headers.getAllValues();
+    }
+
+    @Test
+    public void notModifiedReusesParsedReleaseDetails() throws Exception {
+        mResponses.add(okResponse());
+        mResponses.add(notModified());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        assertEquals(ETAG, mPreferences.get(PREFERENCE_KEY_CHECK_RELEASE_ETAG));
+        assertEquals(PAYLOAD, mPreferences.get(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD));
+
+        /* Check again on next launcher resume. */
+        restartResumeLauncher(mActivity);
+        List<Map<String, String>> headers = captureRequestHeaders(2);
+        assertNull(headers.get(0).get(HEADER_IF_NONE_MATCH));
+        assertEquals(ETAG, headers.get(1).get(HEADER_IF_NONE_MATCH));
+
+        /* Release details were parsed once and both checks completed. */
+        verifyStatic(ReleaseDetails.class);
+        ReleaseDetails.parse(anyString());
+        verify(mListener, times(2)).onNoReleaseAvailable(mActivity);
+
+        /* Setup state is kept. */
+        verifyStatic(SharedPreferencesManager.class, never());
+        SharedPreferencesManager.remove(PREFERENCE_KEY_UPDATE_TOKEN);
+    }
+
+    @Test
+    public void notModifiedAfterProcessRestart() throws Exception {
+        mResponses.add(okResponse());
+        mResponses.add(notModified());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        restartProcessAndSdk();
+        Distribute.setListener(mListener);
+        Distribute.getInstance().onActivityResumed(mActivity);
+        assertEquals(ETAG, captureRequestHeaders(2).get(1).get(HEADER_IF_NONE_MATCH));
+
+        /* Cached release details are parsed again in the new process. */
+        verifyStatic(ReleaseDetails.class, times(2));
+        ReleaseDetails.parse(PAYLOAD);
+        verify(mListener, times(2)).onNoReleaseAvailable(mActivity);
+    }
+
+    @Test
+    public void notModifiedWithInvalidCache() throws Exception {
+        mResponses.add(okResponse());
+        mResponses.add(notModified());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        restartProcessAndSdk();
+        when(ReleaseDetails.parse(PAYLOAD)).thenThrow(new JSONException("mock"));
+        Distribute.getInstance().onActivityResumed(mActivity);
+
+        /* The cache is cleared but the setup state is kept. */
+        assertFalse(mPreferences.containsKey(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD));
+        verifyStatic(SharedPreferencesManager.class, never());
+        SharedPreferencesManager.remove(PREFERENCE_KEY_UPDATE_TOKEN);
+        verifyStatic(SharedPreferencesManager.class, never());
+        SharedPreferencesManager.remove(PREFERENCE_KEY_DISTRIBUTION_GROUP_ID);
+    }
+
+    @Test
+    public void minimumCheckIntervalSkipsServerCall() {
+        Distribute.setMinimumCheckInterval(60 * 60 * 1000);
+        mResponses.add(okResponse());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        restartResumeLauncher(mActivity);
+
+        /* Only one call but both checks completed. */
+        captureRequestHeaders(1);
+        verify(mListener, times(2)).onNoReleaseAvailable(mActivity);
+
+        /* Manual check always calls the server, conditionally. */
+        mResponses.add(notModified());
+        Distribute.checkForUpdate();
+        assertEquals(ETAG, captureRequestHeaders(2).get(1).get(HEADER_IF_NONE_MATCH));
+        verify(mListener, times(3)).onNoReleaseAvailable(mActivity);
+    }
+
+    @Test
+    public void minimumCheckIntervalElapsed() {
+        Distribute.setMinimumCheckInterval(60 * 1000);
+        mResponses.add(okResponse());
+        mResponses.add(okResponse());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+
+        /* Simulate the last check happened 2 minutes ago. */
+        mPreferences.put(PREFERENCE_KEY_CHECK_RELEASE_TIME, System.currentTimeMillis() - 2 * 60 * 1000);
+        restartResumeLauncher(mActivity);
+        captureRequestHeaders(2);
+    }
+
+    @Test
+    public void negativeMinimumCheckIntervalIgnored() {
+        Distribute.setMinimumCheckInterval(60 * 60 * 1000);
+        Distribute.setMinimumCheckInterval(-1);
+        mResponses.add(okResponse());
+        mResponses.add(okResponse());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        restartResumeLauncher(mActivity);
+        captureRequestHeaders(1);
+    }
+
+    @Test
+    public void disableClearsCache() {
+        mResponses.add(okResponse());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        assertEquals(PAYLOAD, mPreferences.get(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD));
+        Distribute.setEnabled(false);
+        assertFalse(mPreferences.containsKey(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD));
+        assertFalse(mPreferences.containsKey(PREFERENCE_KEY_CHECK_RELEASE_ETAG));
+        assertFalse(mPreferences.containsKey(PREFERENCE_KEY_CHECK_RELEASE_TIME));
+    }
+
+    @Test
+    public void unrecoverableErrorClearsCache() {
+        mResponses.add(okResponse());
+        mResponses.add(new HttpException(new HttpResponse(HttpURLConnection.HTTP_FORBIDDEN)));
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+        restartResumeLauncher(mActivity);
+        assertFalse(mPreferences.containsKey(PREFERENCE_KEY_CHECK_RELEASE_PAYLOAD));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(PREFERENCE_KEY_UPDATE_TOKEN);
+    }
+
+    @Test
+    public void differentUrlSendsFullRequest() {
+        mResponses.add(okResponse());
+        mResponses.add(okResponse());
+        start();
+        Distribute.getInstance().onActivityResumed(mActivity);
+
+        /* Reporting parameters change the URL. */
+        when(SharedPreferencesManager.getString(DistributeConstants.PREFERENCE_KEY_DOWNLOADED_RELEASE_HASH)).thenReturn(TEST_HASH);
+        when(SharedPreferencesManager.getInt(DistributeConstants.PREFERENCE_KEY_DOWNLOADED_RELEASE_ID)).thenReturn(4);
+        restartResumeLauncher(mActivity);
+        assertNull(captureRequestHeaders(2).get(1).get(HEADER_IF_NONE_MATCH));
+    }
+}
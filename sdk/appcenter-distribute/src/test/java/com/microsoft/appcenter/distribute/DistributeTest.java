@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -350,7 +351,7 @@ public class DistributeTest extends AbstractDistributeTest {
         /* mReleaseDownloader is null and is created. */
         Distribute.getInstance().startFromBackground(mContext);
         verifyStatic(ReleaseDownloaderFactory.class);
-        ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloader.Listener.class));
+        ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloader.Listener.class), anyBoolean());
 
         /* mReleaseDetails not null but id is not equal to mReleaseDownloader details id. */
         Distribute.getInstance().startFromBackground(mContext);
@@ -365,6 +366,33 @@ public class DistributeTest extends AbstractDistributeTest {
         verify(mReleaseDownloader, never()).resume();
     }
 
+    @Test
+    public void keepPatchOfInstalledRelease() {
+        mockReleaseDetails(false);
+        when(mReleaseDetails.getPatchBaseReleaseHash()).thenReturn("base-hash");
+        when(DistributeUtils.computeReleaseHash(any(PackageInfo.class))).thenReturn("base-hash");
+        Distribute.getInstance().startFromBackground(mContext);
+        verify(mReleaseDetails, never()).ignorePatch();
+    }
+
+    @Test
+    public void ignorePatchOfAnotherRelease() {
+        mockReleaseDetails(false);
+        when(mReleaseDetails.getPatchBaseReleaseHash()).thenReturn("base-hash");
+        when(DistributeUtils.computeReleaseHash(any(PackageInfo.class))).thenReturn("other-hash");
+        Distribute.getInstance().startFromBackground(mContext);
+        verify(mReleaseDetails).ignorePatch();
+    }
+
+    @Test
+    public void ignorePatchWithoutPackageInfo() {
+        mockReleaseDetails(false);
+        when(mReleaseDetails.getPatchBaseReleaseHash()).thenReturn("base-hash");
+        when(DeviceInfoHelper.getPackageInfo(any(Context.class))).thenReturn(null);
+        Distribute.getInstance().startFromBackground(mContext);
+        verify(mReleaseDetails).ignorePatch();
+    }
+
     @Test
     public void discardDownloadAsAppUpdateTest() {
         when(DistributeUtils.getStoredDownloadState()).thenReturn(DOWNLOAD_STATE_INSTALLING);
@@ -540,7 +568,7 @@ public class DistributeTest extends AbstractDistributeTest {
         when(DistributeUtils.getStoredDownloadState()).thenReturn(DOWNLOAD_STATE_AVAILABLE);
 
         /* Mock mReleaseDownloader null. */
-        when(ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloadListener.class))).thenReturn(null);
+        when(ReleaseDownloaderFactory.create(any(Context.class), any(ReleaseDetails.class), any(ReleaseDownloadListener.class), anyBoolean())).thenReturn(null);
 
         /* Mock that download time is bigger than packageInfo.lastUpdateTime. */
         when(SharedPreferencesManager.getLong(eq(PREFERENCE_KEY_DOWNLOAD_TIME))).thenReturn(3L);
@@ -277,7 +277,6 @@ public class ReleaseDownloadListenerTest {
 
         /* Verify that the null progressDialog is not attempted to be hidden. */
         verify(mProgressDialog, never()).hide();
-        verify(mHandler, never()).removeCallbacksAndMessages(any());
     }
 
     @Test
@@ -290,7 +289,6 @@ public class ReleaseDownloadListenerTest {
         /* Verify that the dialog is hidden. */
         releaseDownloadListener.hideProgressDialog();
         verify(mProgressDialog, times(1)).cancel();
-        verify(mHandler).removeCallbacksAndMessages(any());
     }
 
     @Test
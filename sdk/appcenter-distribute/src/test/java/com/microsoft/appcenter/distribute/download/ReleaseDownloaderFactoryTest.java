@@ -12,6 +12,7 @@ import android.content.Context;
 import android.os.Build;
 
 import com.microsoft.appcenter.distribute.ReleaseDetails;
+import com.microsoft.appcenter.distribute.download.http.HttpReleaseDownloader;
 import com.microsoft.appcenter.distribute.download.manager.DownloadManagerReleaseDownloader;
 
 import org.junit.After;
@@ -52,4 +53,12 @@ public class ReleaseDownloaderFactoryTest {
         ReleaseDownloader releaseDownloader = ReleaseDownloaderFactory.create(mockContext, mockReleaseDetails, mockReleaseDownloaderListener);
         assertTrue(releaseDownloader instanceof DownloadManagerReleaseDownloader);
     }
+
+    @Test
+    public void createResumable() {
+        ReleaseDownloader releaseDownloader = ReleaseDownloaderFactory.create(mockContext, mockReleaseDetails, mockReleaseDownloaderListener, true);
+        assertTrue(releaseDownloader instanceof HttpReleaseDownloader);
+        releaseDownloader = ReleaseDownloaderFactory.create(mockContext, mockReleaseDetails, mockReleaseDownloaderListener, false);
+        assertTrue(releaseDownloader instanceof DownloadManagerReleaseDownloader);
+    }
 }
\ No newline at end of file
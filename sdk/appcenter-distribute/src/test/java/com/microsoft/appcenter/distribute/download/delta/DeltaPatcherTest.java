@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.delta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DeltaPatcherTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mBaseFile;
+
+    private byte[] mBase;
+
+    private ByteArrayOutputStream mPatch;
+
+    private DataOutputStream mPatchWriter;
+
+    @Before
+    public void setUp() throws IOException {
+        mBase = new byte[200 * 1024];
+        for (int i = 0; i < mBase.length; i++) {
+            mBase[i] = (byte) (i * 31);
+        }
+        mBaseFile = mTemporaryFolder.newFile("base.apk");
+        FileOutputStream outputStream = new FileOutputStream(mBaseFile);
+        outputStream.write(mBase);
+        outputStream.close();
+        mPatch = new ByteArrayOutputStream();
+        mPatchWriter = new DataOutputStream(mPatch);
+    }
+
+    @Test
+    public void init() {
+        new DeltaPatcher();
+    }
+
+    private void writeHeader(long targetSize) throws IOException {
+        mPatchWriter.write(DeltaPatcher.MAGIC);
+        mPatchWriter.writeLong(targetSize);
+    }
+
+    private void writeCopy(long offset, int length) throws IOException {
+        mPatchWriter.write(DeltaPatcher.OP_COPY);
+        mPatchWriter.writeLong(offset);
+        mPatchWriter.writeInt(length);
+    }
+
+    private void writeAdd(byte[] data) throws IOException {
+        mPatchWriter.write(DeltaPatcher.OP_ADD);
+        mPatchWriter.writeInt(data.length);
+        mPatchWriter.write(data);
+    }
+
+    private byte[] apply() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long written = DeltaPatcher.apply(mBaseFile, new ByteArrayInputStream(mPatch.toByteArray()), output);
+        assertEquals(output.size(), written);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void applyPatch() throws IOException {
+
+        /* Target is the base with a modified block in the middle and an appended tail. */
+        byte[] modified = "modified".getBytes("UTF-8");
+        byte[] tail = new byte[100 * 1024];
+        Arrays.fill(tail, (byte) 42);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(mBase, 0, 1000);
+        expected.write(modified);
+        expected.write(mBase, 1000 + modified.length, mBase.length - 1000 - modified.length);
+        expected.write(tail);
+        writeHeader(expected.size());
+        writeCopy(0, 1000);
+        writeAdd(modified);
+        writeCopy(1000 + modified.length, mBase.length - 1000 - modified.length);
+        writeAdd(tail);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        assertArrayEquals(expected.toByteArray(), apply());
+    }
+
+    @Test
+    public void emptyPatch() throws IOException {
+        writeHeader(0);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        assertEquals(0, apply().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidHeader() throws IOException {
+        mPatchWriter.write("BSDIFF40".getBytes("UTF-8"));
+        mPatchWriter.writeLong(0);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedHeader() throws IOException {
+        mPatchWriter.write(DeltaPatcher.MAGIC, 0, 4);
+        apply();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedPatch() throws IOException {
+        writeHeader(10);
+        writeCopy(0, 10);
+        apply();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedAdd() throws IOException {
+        writeHeader(10);
+        mPatchWriter.write(DeltaPatcher.OP_ADD);
+        mPatchWriter.writeInt(10);
+        mPatchWriter.write(new byte[5]);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void copyOutOfBounds() throws IOException {
+        writeHeader(10);
+        writeCopy(mBase.length - 5, 10);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeCopyOffset() throws IOException {
+        writeHeader(10);
+        writeCopy(-1, 10);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeAddLength() throws IOException {
+        writeHeader(10);
+        mPatchWriter.write(DeltaPatcher.OP_ADD);
+        mPatchWriter.writeInt(-1);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidOpcode() throws IOException {
+        writeHeader(10);
+        mPatchWriter.write(42);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void outputTooLarge() throws IOException {
+        writeHeader(10);
+        writeCopy(0, 11);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+
+    @Test(expected = IOException.class)
+    public void outputTooSmall() throws IOException {
+        writeHeader(10);
+        writeCopy(0, 9);
+        mPatchWriter.write(DeltaPatcher.OP_END);
+        apply();
+    }
+}
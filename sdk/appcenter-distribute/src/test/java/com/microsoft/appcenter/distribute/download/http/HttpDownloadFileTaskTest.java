@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.spy;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.distribute.ReleaseDetails;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+@PrepareForTest({
+        AppCenterLog.class,
+        SystemClock.class,
+        TrafficStats.class
+})
+@RunWith(PowerMockRunner.class)
+public class HttpDownloadFileTaskTest {
+
+    private static final String DOWNLOAD_URL = "https://install.appcenter.ms/release.apk";
+
+    private static final String PATCH_URL = "https://install.appcenter.ms/release.patch";
+
+    private static final String ETAG = "\"etag\"";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private HttpReleaseDownloader mDownloader;
+
+    @Mock
+    private ReleaseDetails mReleaseDetails;
+
+    private File mTargetFile;
+
+    private File mPatchFile;
+
+    private byte[] mData;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(AppCenterLog.class);
+        mockStatic(SystemClock.class);
+        mockStatic(TrafficStats.class);
+        Uri downloadUrl = mock(Uri.class);
+        when(downloadUrl.toString()).thenReturn(DOWNLOAD_URL);
+        when(mReleaseDetails.getDownloadUrl()).thenReturn(downloadUrl);
+        when(mDownloader.getReleaseDetails()).thenReturn(mReleaseDetails);
+        mTargetFile = new File(mTemporaryFolder.getRoot(), "release.apk");
+        when(mDownloader.getTargetFile()).thenReturn(mTargetFile);
+        mPatchFile = new File(mTemporaryFolder.getRoot(), "release.patch");
+        when(mDownloader.getPatchFile()).thenReturn(mPatchFile);
+        mData = new byte[3 * HttpDownloadFileTask.BUFFER_SIZE + 42];
+        for (int i = 0; i < mData.length; i++) {
+            mData[i] = (byte) i;
+        }
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static HttpURLConnection mockConnection(int statusCode, byte[] body) throws IOException {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(connection.getResponseCode()).thenReturn(statusCode);
+        when(connection.getContentLength()).thenReturn(body.length);
+        when(connection.getInputStream()).thenReturn(new ByteArrayInputStream(body));
+        when(connection.getHeaderField("ETag")).thenReturn(ETAG);
+        return connection;
+    }
+
+    private HttpDownloadFileTask createTask(String completedDigest, HttpURLConnection... connections) throws Exception {
+        HttpDownloadFileTask task = spy(new HttpDownloadFileTask(mDownloader, completedDigest));
+        if (connections.length > 0) {
+            HttpURLConnection[] next = Arrays.copyOfRange(connections, 1, connections.length);
+            doReturn(connections[0], (Object[]) next).when(task).createConnection(any(URL.class));
+        }
+        doNothing().when(task).sleep(anyLong());
+        return task;
+    }
+
+    private void writePartialFile(int length) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(mTargetFile);
+        outputStream.write(mData, 0, length);
+        outputStream.close();
+    }
+
+    private byte[] readTargetFile() throws IOException {
+        byte[] content = new byte[(int) mTargetFile.length()];
+        InputStream inputStream = new FileInputStream(mTargetFile);
+        int offset = 0;
+        int read;
+        while (offset < content.length && (read = inputStream.read(content, offset, content.length - offset)) > 0) {
+            offset += read;
+        }
+        inputStream.close();
+        return content;
+    }
+
+    @Test
+    public void downloadNewFile() throws Exception {
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        when(mDownloader.onDownloadProgress(anyLong(), anyLong())).thenReturn(true);
+        when(SystemClock.uptimeMillis()).thenReturn(1000L, 1001L, 2000L, 2001L);
+        createTask(null, connection).doInBackground();
+
+        /* Verify. */
+        verify(mDownloader).setValidator(isNull());
+        verify(mDownloader).onDownloadStarted(anyLong());
+        verify(connection, never()).setRequestProperty(eq("Range"), anyString());
+        verify(mDownloader).setValidator(ETAG);
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        verify(connection).disconnect();
+        assertArrayEquals(mData, readTargetFile());
+
+        /* Progress is throttled. */
+        ArgumentCaptor<Long> currentSize = ArgumentCaptor.forClass(Long.class);
+        verify(mDownloader, times(2)).onDownloadProgress(currentSize.capture(), eq((long) mData.length));
+        assertEquals(HttpDownloadFileTask.BUFFER_SIZE, (long) currentSize.getAllValues().get(0));
+    }
+
+    @Test
+    public void stopReportingProgressWhenNotNeeded() throws Exception {
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        when(SystemClock.uptimeMillis()).thenReturn(1000L, 2000L, 3000L, 4000L);
+        createTask(null, connection).doInBackground();
+        verify(mDownloader).onDownloadProgress(anyLong(), anyLong());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+    }
+
+    @Test
+    public void resumePartialFile() throws Exception {
+        int offset = HttpDownloadFileTask.BUFFER_SIZE + 1;
+        writePartialFile(offset);
+        when(mDownloader.getValidator()).thenReturn(ETAG);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_PARTIAL, Arrays.copyOfRange(mData, offset, mData.length));
+        createTask(null, connection).doInBackground();
+
+        /* Verify only the remaining bytes were requested and the digest covers the whole file. */
+        verify(connection).setRequestProperty("Range", "bytes=" + offset + "-");
+        verify(connection).setRequestProperty("If-Range", ETAG);
+        verify(mDownloader, never()).onDownloadStarted(anyLong());
+        verify(mDownloader, never()).setValidator(anyString());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void restartWhenRangeIgnored() throws Exception {
+        writePartialFile(42);
+        when(mDownloader.getValidator()).thenReturn(ETAG);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        createTask(null, connection).doInBackground();
+        verify(connection).setRequestProperty("Range", "bytes=42-");
+        verify(mDownloader).setValidator(ETAG);
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void restartWithoutValidator() throws Exception {
+        writePartialFile(42);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        when(connection.getHeaderField("ETag")).thenReturn(null);
+        when(connection.getHeaderField("Last-Modified")).thenReturn("Wed, 21 Oct 2015 07:28:00 GMT");
+        createTask(null, connection).doInBackground();
+        verify(connection, never()).setRequestProperty(eq("Range"), anyString());
+        verify(mDownloader).setValidator("Wed, 21 Oct 2015 07:28:00 GMT");
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void restartWhenRangeNotSatisfiable() throws Exception {
+        writePartialFile(42);
+        when(mDownloader.getValidator()).thenReturn(ETAG, (String) null);
+        HttpURLConnection notSatisfiable = mockConnection(416, new byte[0]);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        HttpDownloadFileTask task = createTask(null, notSatisfiable, connection);
+        task.doInBackground();
+
+        /* Verify the partial file is deleted and downloaded again from the first byte, without waiting. */
+        verify(notSatisfiable).setRequestProperty("Range", "bytes=42-");
+        verify(connection, never()).setRequestProperty(eq("Range"), anyString());
+        verify(mDownloader).setValidator(isNull());
+        verify(task, never()).sleep(anyLong());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void completeWhenRangeNotSatisfiableAtFileSize() throws Exception {
+        writePartialFile(mData.length);
+        when(mDownloader.getValidator()).thenReturn(ETAG);
+        HttpURLConnection notSatisfiable = mockConnection(416, new byte[0]);
+        when(notSatisfiable.getHeaderField("Content-Range")).thenReturn("bytes */" + mData.length);
+        HttpDownloadFileTask task = createTask(null, notSatisfiable);
+        task.doInBackground();
+
+        /* The interrupted download had written the whole file: it is kept and completed. */
+        verify(notSatisfiable).setRequestProperty("Range", "bytes=" + mData.length + "-");
+        verify(task).createConnection(any(URL.class));
+        verify(mDownloader, never()).setValidator(isNull());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void alreadyDownloaded() throws Exception {
+        writePartialFile(mData.length);
+        HttpDownloadFileTask task = createTask(sha256(mData));
+        task.doInBackground();
+        verify(task, never()).createConnection(any(URL.class));
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+    }
+
+    @Test
+    public void alreadyDownloadedFileModified() throws Exception {
+        writePartialFile(42);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        createTask(sha256(mData), connection).doInBackground();
+        verify(mDownloader).setValidator(isNull());
+        verify(connection, never()).setRequestProperty(eq("Range"), anyString());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void resumeAfterNetworkError() throws Exception {
+
+        /* First response is interrupted in the middle of the body. */
+        final int offset = HttpDownloadFileTask.BUFFER_SIZE;
+        HttpURLConnection interrupted = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        InputStream interruptedStream = mock(InputStream.class);
+        when(interruptedStream.read(any(byte[].class))).thenAnswer(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                byte[] buffer = invocation.getArgument(0);
+                System.arraycopy(mData, 0, buffer, 0, offset);
+                return offset;
+            }
+        }).thenThrow(new SocketException("Connection reset"));
+        when(interrupted.getInputStream()).thenReturn(interruptedStream);
+        HttpURLConnection resumed = mockConnection(HttpURLConnection.HTTP_PARTIAL, Arrays.copyOfRange(mData, offset, mData.length));
+        when(mDownloader.getValidator()).thenReturn(null, ETAG);
+        HttpDownloadFileTask task = createTask(null, interrupted, resumed);
+        task.doInBackground();
+
+        /* Verify. */
+        verify(task).sleep(HttpDownloadFileTask.RETRY_DELAY);
+        verify(resumed).setRequestProperty("Range", "bytes=" + offset + "-");
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void giveUpAfterMaxAttempts() throws Exception {
+        HttpURLConnection[] connections = new HttpURLConnection[HttpDownloadFileTask.MAX_ATTEMPTS];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = mock(HttpURLConnection.class);
+            when(connections[i].getResponseCode()).thenThrow(new SocketException());
+        }
+        HttpDownloadFileTask task = createTask(null, connections);
+        task.doInBackground();
+        verify(task, times(HttpDownloadFileTask.MAX_ATTEMPTS - 1)).sleep(anyLong());
+        verify(task).sleep(HttpDownloadFileTask.RETRY_DELAY << (HttpDownloadFileTask.MAX_ATTEMPTS - 2));
+        verify(mDownloader).onDownloadError(any(SocketException.class));
+        verify(mDownloader, never()).onDownloadComplete(any(File.class), anyString());
+    }
+
+    @Test
+    public void serverErrorIsRetried() throws Exception {
+        HttpURLConnection failed = mockConnection(HttpURLConnection.HTTP_UNAVAILABLE, new byte[0]);
+        HttpURLConnection succeeded = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        HttpDownloadFileTask task = createTask(null, failed, succeeded);
+        task.doInBackground();
+        verify(task).sleep(HttpDownloadFileTask.RETRY_DELAY);
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() throws Exception {
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_NOT_FOUND, new byte[0]);
+        HttpDownloadFileTask task = createTask(null, connection);
+        task.doInBackground();
+        verify(task, never()).sleep(anyLong());
+        verify(mDownloader).onDownloadError(any(HttpException.class));
+        verify(connection).disconnect();
+        assertFalse(mTargetFile.exists());
+    }
+
+    @Test
+    public void truncatedResponse() throws Exception {
+        HttpURLConnection[] connections = new HttpURLConnection[HttpDownloadFileTask.MAX_ATTEMPTS];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = mockConnection(HttpURLConnection.HTTP_OK, new byte[0]);
+            when(connections[i].getContentLength()).thenReturn(mData.length);
+        }
+        createTask(null, connections).doInBackground();
+        verify(mDownloader).onDownloadError(any(IOException.class));
+    }
+
+    @Test
+    public void interruptedWhileWaitingToRetry() throws Exception {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(connection.getResponseCode()).thenThrow(new SocketException());
+        HttpDownloadFileTask task = createTask(null, connection);
+        doThrow(new InterruptedException()).when(task).sleep(anyLong());
+        task.doInBackground();
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        verify(mDownloader, never()).onDownloadComplete(any(File.class), anyString());
+    }
+
+    /**
+     * Prepare a patch against an installed package made of the first half of the release.
+     *
+     * @return patch content rebuilding the release.
+     */
+    private byte[] preparePatch() throws Exception {
+        int baseLength = mData.length / 2;
+        File baseFile = mTemporaryFolder.newFile("base.apk");
+        FileOutputStream outputStream = new FileOutputStream(baseFile);
+        outputStream.write(mData, 0, baseLength);
+        outputStream.close();
+        when(mDownloader.getPatchBaseFile()).thenReturn(baseFile);
+        Uri patchUrl = mock(Uri.class);
+        when(patchUrl.toString()).thenReturn(PATCH_URL);
+        when(mReleaseDetails.getPatchUrl()).thenReturn(patchUrl);
+        when(mReleaseDetails.getPackageSha256()).thenReturn(sha256(mData));
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DataOutputStream patchWriter = new DataOutputStream(patch);
+        patchWriter.write(new byte[]{'A', 'C', 'D', 'E', 'L', 'T', 'A', '1'});
+        patchWriter.writeLong(mData.length);
+        patchWriter.write(1);
+        patchWriter.writeLong(0);
+        patchWriter.writeInt(baseLength);
+        patchWriter.write(2);
+        patchWriter.writeInt(mData.length - baseLength);
+        patchWriter.write(mData, baseLength, mData.length - baseLength);
+        patchWriter.write(0);
+        patchWriter.close();
+        return patch.toByteArray();
+    }
+
+    @Test
+    public void applyPatch() throws Exception {
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, preparePatch());
+        HttpDownloadFileTask task = createTask(null, connection);
+        task.doInBackground();
+
+        /* Verify only the patch was downloaded and the validator of the patch is not kept. */
+        ArgumentCaptor<URL> url = ArgumentCaptor.forClass(URL.class);
+        verify(task).createConnection(url.capture());
+        assertEquals(PATCH_URL, url.getValue().toString());
+        verify(mDownloader).onDownloadStarted(anyLong());
+        verify(mDownloader, times(2)).setValidator(isNull());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        assertArrayEquals(mData, readTargetFile());
+        assertFalse(mPatchFile.exists());
+    }
+
+    @Test
+    public void patchDigestMismatchFallsBackToFullDownload() throws Exception {
+        HttpURLConnection patchConnection = mockConnection(HttpURLConnection.HTTP_OK, preparePatch());
+        byte[] release = Arrays.copyOf(mData, mData.length);
+        release[0]++;
+        when(mReleaseDetails.getPackageSha256()).thenReturn(sha256(release));
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, release);
+        HttpDownloadFileTask task = createTask(null, patchConnection, connection);
+        task.doInBackground();
+        ArgumentCaptor<URL> url = ArgumentCaptor.forClass(URL.class);
+        verify(task, times(2)).createConnection(url.capture());
+        assertEquals(PATCH_URL, url.getAllValues().get(0).toString());
+        assertEquals(DOWNLOAD_URL, url.getAllValues().get(1).toString());
+        verify(connection, never()).setRequestProperty(eq("Range"), anyString());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(release));
+        assertArrayEquals(release, readTargetFile());
+        assertFalse(mPatchFile.exists());
+    }
+
+    @Test
+    public void invalidPatchFallsBackToFullDownload() throws Exception {
+        preparePatch();
+        HttpURLConnection patchConnection = mockConnection(HttpURLConnection.HTTP_OK, new byte[]{1, 2, 3});
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        createTask(null, patchConnection, connection).doInBackground();
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        verify(mDownloader, never()).onDownloadError(any(Exception.class));
+        assertArrayEquals(mData, readTargetFile());
+    }
+
+    @Test
+    public void missingPatchFallsBackToFullDownload() throws Exception {
+        preparePatch();
+        HttpURLConnection patchConnection = mockConnection(HttpURLConnection.HTTP_NOT_FOUND, new byte[0]);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_OK, mData);
+        HttpDownloadFileTask task = createTask(null, patchConnection, connection);
+        task.doInBackground();
+        verify(task, never()).sleep(anyLong());
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+        assertTrue(mTargetFile.exists());
+        assertFalse(mPatchFile.exists());
+    }
+
+    @Test
+    public void patchNotUsedWhenResuming() throws Exception {
+        preparePatch();
+        writePartialFile(42);
+        when(mDownloader.getValidator()).thenReturn(ETAG);
+        HttpURLConnection connection = mockConnection(HttpURLConnection.HTTP_PARTIAL, Arrays.copyOfRange(mData, 42, mData.length));
+        HttpDownloadFileTask task = createTask(null, connection);
+        task.doInBackground();
+        verify(task).createConnection(any(URL.class));
+        verify(mDownloader, never()).getPatchBaseFile();
+        verify(mDownloader).onDownloadComplete(mTargetFile, sha256(mData));
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.http;
+
+import static com.microsoft.appcenter.distribute.download.http.HttpReleaseDownloader.DOWNLOAD_DIRECTORY;
+import static com.microsoft.appcenter.distribute.download.http.HttpReleaseDownloader.PREFERENCE_KEY_DIGEST_PREFIX;
+import static com.microsoft.appcenter.distribute.download.http.HttpReleaseDownloader.PREFERENCE_KEY_VALIDATOR_PREFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+
+import com.microsoft.appcenter.distribute.FileExtension;
+import com.microsoft.appcenter.distribute.ReleaseDetails;
+import com.microsoft.appcenter.distribute.download.ReleaseDownloader;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.AsyncTaskUtils;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.File;
+import java.io.IOException;
+
+@PrepareForTest({
+        AppCenterLog.class,
+        AsyncTaskUtils.class,
+        FileManager.class,
+        SharedPreferencesManager.class,
+        Uri.class
+})
+@RunWith(PowerMockRunner.class)
+public class HttpReleaseDownloaderTest {
+
+    private static final long PACKAGE_SIZE = 42 * 1024;
+
+    private static final String RELEASE_HASH = "release-hash";
+
+    private static final String VALIDATOR_KEY = PREFERENCE_KEY_VALIDATOR_PREFIX + 7;
+
+    private static final String DIGEST_KEY = PREFERENCE_KEY_DIGEST_PREFIX + 7;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Context mContext;
+
+    @Mock
+    private ReleaseDetails mReleaseDetails;
+
+    @Mock
+    private ReleaseDownloader.Listener mListener;
+
+    @Mock
+    private HttpDownloadFileTask mDownloadTask;
+
+    @Mock
+    private File mFile;
+
+    @Mock
+    private Uri mUri;
+
+    private HttpReleaseDownloader mReleaseDownloader;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(FileManager.class);
+        mockStatic(SharedPreferencesManager.class);
+        mockStatic(AsyncTaskUtils.class);
+        when(AsyncTaskUtils.execute(anyString(), isA(HttpDownloadFileTask.class))).thenReturn(mDownloadTask);
+        mockStatic(Uri.class);
+        when(Uri.fromFile(mFile)).thenReturn(mUri);
+        when(mContext.getCacheDir()).thenReturn(new File("cache"));
+        when(mReleaseDetails.getId()).thenReturn(7);
+        when(mReleaseDetails.getSize()).thenReturn(PACKAGE_SIZE);
+        when(mReleaseDetails.getFileExtension()).thenReturn(FileExtension.apk);
+        when(mFile.length()).thenReturn(PACKAGE_SIZE);
+        mReleaseDownloader = new HttpReleaseDownloader(mContext, mReleaseDetails, mListener);
+    }
+
+    @Test
+    public void targetFile() {
+        File directory = new File("cache", DOWNLOAD_DIRECTORY);
+        assertEquals(directory, mReleaseDownloader.getDownloadDirectory());
+        assertEquals(new File(directory, "release-7.apk"), mReleaseDownloader.getTargetFile());
+    }
+
+    @Test
+    public void patchFile() {
+        assertEquals(new File(new File("cache", DOWNLOAD_DIRECTORY), "release-7.patch"), mReleaseDownloader.getPatchFile());
+    }
+
+    /**
+     * Mock a release with a patch against the installed release.
+     *
+     * @return installed package file.
+     */
+    private File mockPatchableRelease() throws IOException {
+        when(mReleaseDetails.getPatchUrl()).thenReturn(mUri);
+        when(mReleaseDetails.getPatchBaseReleaseHash()).thenReturn(RELEASE_HASH);
+        when(mReleaseDetails.getPackageSha256()).thenReturn("digest");
+        File baseFile = mTemporaryFolder.newFile("base.apk");
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.sourceDir = baseFile.getAbsolutePath();
+        when(mContext.getApplicationInfo()).thenReturn(applicationInfo);
+        return baseFile;
+    }
+
+    @Test
+    public void patchBaseFile() throws IOException {
+        File baseFile = mockPatchableRelease();
+        assertEquals(baseFile, mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void noPatchWithoutPatchUrl() throws IOException {
+        mockPatchableRelease();
+        when(mReleaseDetails.getPatchUrl()).thenReturn(null);
+        assertNull(mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void noPatchWithoutPackageDigest() throws IOException {
+        mockPatchableRelease();
+        when(mReleaseDetails.getPackageSha256()).thenReturn(null);
+        assertNull(mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void noPatchForBundles() throws IOException {
+        mockPatchableRelease();
+        when(mReleaseDetails.getFileExtension()).thenReturn(FileExtension.aab);
+        assertNull(mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void noPatchForSplitApplication() throws IOException {
+        mockPatchableRelease();
+        mContext.getApplicationInfo().splitSourceDirs = new String[]{"split.apk"};
+        assertNull(mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void noPatchWithoutReadableBaseFile() throws IOException {
+        File baseFile = mockPatchableRelease();
+        assertTrue(baseFile.delete());
+        assertNull(mReleaseDownloader.getPatchBaseFile());
+    }
+
+    @Test
+    public void validator() {
+        when(SharedPreferencesManager.getString(VALIDATOR_KEY)).thenReturn("etag");
+        assertEquals("etag", mReleaseDownloader.getValidator());
+        mReleaseDownloader.setValidator("etag");
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.putString(VALIDATOR_KEY, "etag");
+        mReleaseDownloader.setValidator(null);
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(VALIDATOR_KEY);
+    }
+
+    @Test
+    public void resumeStartsSingleTask() {
+        assertFalse(mReleaseDownloader.isDownloading());
+        mReleaseDownloader.resume();
+        assertTrue(mReleaseDownloader.isDownloading());
+        mReleaseDownloader.resume();
+        verifyStatic(AsyncTaskUtils.class);
+        AsyncTaskUtils.execute(anyString(), isA(HttpDownloadFileTask.class));
+    }
+
+    @Test
+    public void completeDownload() {
+        mReleaseDownloader.resume();
+        mReleaseDownloader.onDownloadStarted(42);
+        verify(mListener).onStart(42);
+        when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true);
+        assertTrue(mReleaseDownloader.onDownloadProgress(1, 2));
+        verify(mListener).onProgress(1, 2);
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener).onComplete(mUri);
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.putString(DIGEST_KEY, "digest");
+        assertFalse(mReleaseDownloader.isDownloading());
+
+        /* Callbacks are ignored once completed. */
+        assertFalse(mReleaseDownloader.onDownloadProgress(2, 2));
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        mReleaseDownloader.onDownloadError(new IOException());
+        verify(mListener).onProgress(anyLong(), anyLong());
+        verify(mListener).onComplete(any(Uri.class));
+        verify(mListener, never()).onError(anyString());
+    }
+
+    @Test
+    public void resumeCompletedDownloadPassesDigest() throws Exception {
+        when(SharedPreferencesManager.getString(DIGEST_KEY)).thenReturn("digest");
+        mReleaseDownloader.resume();
+        ArgumentCaptor<HttpDownloadFileTask> task = ArgumentCaptor.forClass(HttpDownloadFileTask.class);
+        verifyStatic(AsyncTaskUtils.class);
+        AsyncTaskUtils.execute(anyString(), task.capture());
+        assertEquals("digest", Whitebox.getInternalState(task.getValue(), "mCompletedDigest"));
+    }
+
+    @Test
+    public void resumeAnotherReleaseIgnoresDigest() throws Exception {
+        when(SharedPreferencesManager.getString(DIGEST_KEY)).thenReturn("digest");
+        when(mReleaseDetails.getId()).thenReturn(8);
+        mReleaseDownloader.resume();
+        ArgumentCaptor<HttpDownloadFileTask> task = ArgumentCaptor.forClass(HttpDownloadFileTask.class);
+        verifyStatic(AsyncTaskUtils.class);
+        AsyncTaskUtils.execute(anyString(), task.capture());
+        assertNull(Whitebox.getInternalState(task.getValue(), "mCompletedDigest"));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.getString(PREFERENCE_KEY_DIGEST_PREFIX + 8);
+    }
+
+    @Test
+    public void invalidFileSize() {
+        when(mFile.length()).thenReturn(PACKAGE_SIZE - 1);
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener).onError(anyString());
+        verify(mListener, never()).onComplete(any(Uri.class));
+        verifyStatic(FileManager.class);
+        FileManager.delete(mFile);
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(VALIDATOR_KEY);
+        verifyStatic(SharedPreferencesManager.class, never());
+        SharedPreferencesManager.putString(eq(DIGEST_KEY), anyString());
+    }
+
+    @Test
+    public void packageDigestMismatch() {
+        when(mReleaseDetails.getPackageSha256()).thenReturn("expected");
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener).onError(anyString());
+        verify(mListener, never()).onComplete(any(Uri.class));
+        verifyStatic(FileManager.class);
+        FileManager.delete(mFile);
+    }
+
+    @Test
+    public void packageDigestMatchIgnoresCase() {
+        when(mReleaseDetails.getPackageSha256()).thenReturn("DIGEST");
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener).onComplete(mUri);
+    }
+
+    @Test
+    public void sizeNotCheckedForBundles() {
+        when(mReleaseDetails.getFileExtension()).thenReturn(FileExtension.aab);
+        when(mFile.length()).thenReturn(PACKAGE_SIZE - 1);
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener).onComplete(mUri);
+    }
+
+    @Test
+    public void downloadError() {
+        mReleaseDownloader.resume();
+        mReleaseDownloader.onDownloadError(new IOException("error"));
+        verify(mListener).onError("error");
+        assertFalse(mReleaseDownloader.isDownloading());
+    }
+
+    @Test
+    public void cancel() {
+        mReleaseDownloader.resume();
+        mReleaseDownloader.cancel();
+        verify(mDownloadTask).cancel(true);
+        assertFalse(mReleaseDownloader.isDownloading());
+        verifyStatic(FileManager.class);
+        FileManager.deleteDirectory(new File("cache", DOWNLOAD_DIRECTORY));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(VALIDATOR_KEY);
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(DIGEST_KEY);
+
+        /* Callbacks are ignored after cancel. */
+        mReleaseDownloader.onDownloadStarted(42);
+        mReleaseDownloader.onDownloadComplete(mFile, "digest");
+        verify(mListener, never()).onStart(anyLong());
+        verify(mListener, never()).onComplete(any(Uri.class));
+
+        /* Cancel without task and without release, as when cleaning up previous downloads. */
+        new HttpReleaseDownloader(mContext, null, null).cancel();
+        verifyStatic(FileManager.class, times(2));
+        FileManager.deleteDirectory(new File("cache", DOWNLOAD_DIRECTORY));
+    }
+
+    @Test
+    public void resumeAfterError() {
+        mReleaseDownloader.resume();
+        mReleaseDownloader.onDownloadError(new IOException());
+        mReleaseDownloader.resume();
+        verifyStatic(AsyncTaskUtils.class, times(2));
+        AsyncTaskUtils.execute(anyString(), isA(HttpDownloadFileTask.class));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.distribute.download.manager;
+
+import static com.microsoft.appcenter.distribute.DistributeConstants.UPDATE_PROGRESS_TIME_THRESHOLD;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@PrepareForTest(SystemClock.class)
+@RunWith(PowerMockRunner.class)
+public class DownloadManagerProgressObserverTest {
+
+    @Mock
+    private DownloadManagerReleaseDownloader mDownloader;
+
+    @Mock
+    private HandlerThread mHandlerThread;
+
+    @Mock
+    private Handler mHandler;
+
+    private DownloadManagerProgressObserver mObserver;
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mObserver = new DownloadManagerProgressObserver(mDownloader, mHandlerThread, mHandler);
+    }
+
+    @Test
+    public void create() {
+        DownloadManagerProgressObserver.create(mDownloader);
+    }
+
+    @Test
+    public void changesAreCoalesced() {
+        when(SystemClock.uptimeMillis()).thenReturn(1000L);
+        mObserver.onChange(false);
+        mObserver.onChange(false);
+        mObserver.onChange(false);
+
+        /* Only one update is scheduled, immediately as it's the first one. */
+        ArgumentCaptor<Runnable> update = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postAtTime(update.capture(), eq(1000L));
+        verify(mDownloader, never()).update();
+        update.getValue().run();
+        verify(mDownloader).update();
+
+        /* Next change is throttled. */
+        when(SystemClock.uptimeMillis()).thenReturn(1100L);
+        mObserver.onChange(false);
+        verify(mHandler).postAtTime(update.getValue(), 1000L + UPDATE_PROGRESS_TIME_THRESHOLD);
+
+        /* Change after the threshold is not delayed. */
+        update.getValue().run();
+        when(SystemClock.uptimeMillis()).thenReturn(5000L);
+        mObserver.onChange(false);
+        verify(mHandler).postAtTime(update.getValue(), 5000L);
+        verify(mHandler, times(3)).postAtTime(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void quit() {
+        mObserver.onChange(false);
+        mObserver.quit();
+        verify(mHandler).removeCallbacks(any(Runnable.class));
+        verify(mHandlerThread).quitSafely();
+    }
+}
@@ -12,6 +12,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -27,7 +28,9 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 import android.app.DownloadManager;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
@@ -46,8 +49,6 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -90,6 +91,9 @@ public class DownloadManagerReleaseDownloaderTest {
     @Mock
     private Handler mMainHandler;
 
+    @Mock
+    private ContentResolver mContentResolver;
+
     @Mock
     private DownloadManager mDownloadManager;
 
@@ -110,17 +114,10 @@ public class DownloadManagerReleaseDownloaderTest {
         when(AsyncTaskUtils.execute(anyString(), isA(DownloadManagerRequestTask.class))).thenReturn(mRequestTask);
         when(AsyncTaskUtils.execute(anyString(), isA(DownloadManagerRemoveTask.class))).thenReturn(mRemoveTask);
 
-        /* Run handler immediately. */
+        /* Mock main handler. */
         mockStatic(HandlerUtils.class);
         when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
-        when(mMainHandler.postAtTime(any(Runnable.class), anyString(), anyLong())).thenAnswer(new Answer<Object>() {
-
-            @Override
-            public Object answer(InvocationOnMock invocation) {
-                invocation.<Runnable>getArgument(0).run();
-                return null;
-            }
-        });
+        when(mContext.getContentResolver()).thenReturn(mContentResolver);
 
         /* Mock download manager. */
         when(mContext.getSystemService(DOWNLOAD_SERVICE)).thenReturn(mDownloadManager);
@@ -348,44 +345,88 @@ public class DownloadManagerReleaseDownloaderTest {
         SharedPreferencesManager.putLong(eq(PREFERENCE_KEY_DOWNLOAD_ID), eq(DOWNLOAD_ID));
     }
 
-    @Test
-    public void scheduleAnotherUpdateIfListenerWantsIt() {
+    private static Cursor mockProgressCursor(long currentSize, long totalSize) {
         Cursor cursor = mock(Cursor.class);
-        when(cursor.getLong(eq(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR.hashCode()))).thenReturn(42L);
-        when(cursor.getLong(eq(DownloadManager.COLUMN_TOTAL_SIZE_BYTES.hashCode()))).thenReturn(4242L);
+        when(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR)).thenReturn(1);
+        when(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES)).thenReturn(2);
+        when(cursor.getLong(1)).thenReturn(currentSize);
+        when(cursor.getLong(2)).thenReturn(totalSize);
+        return cursor;
+    }
+
+    @Test
+    public void observeProgressIfListenerWantsIt() {
         when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true);
 
         /* Update download progress. */
-        mReleaseDownloader.onDownloadProgress(cursor);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(42L, 4242L));
 
-        /* Verify. */
-        verify(mListener).onProgress(anyLong(), anyLong());
-        verifyStatic(AsyncTaskUtils.class);
+        /* Verify we get notified of changes instead of polling. */
+        verify(mListener).onProgress(42L, 4242L);
+        verify(mContentResolver).registerContentObserver(any(), eq(false), isA(DownloadManagerProgressObserver.class));
+        verify(mMainHandler, never()).postAtTime(any(Runnable.class), any(), anyLong());
+        verifyStatic(AsyncTaskUtils.class, never());
         AsyncTaskUtils.execute(anyString(), isA(DownloadManagerUpdateTask.class), any());
+
+        /* Same percentage is not reported again. */
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(43L, 4242L));
+        verify(mListener, never()).onProgress(eq(43L), anyLong());
+
+        /* Next percentage is reported, still with a single observer. */
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(100L, 4242L));
+        verify(mListener).onProgress(100L, 4242L);
+        verify(mContentResolver).registerContentObserver(any(), eq(false), isA(DownloadManagerProgressObserver.class));
+
+        /* Resume reports the same percentage again for a new progress dialog. */
+        mReleaseDownloader.resume();
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(101L, 4242L));
+        verify(mListener).onProgress(101L, 4242L);
     }
 
     @Test
-    public void doNotScheduleAnotherUpdateIfListenerDoNotWantsIt() {
-        Cursor cursor = mock(Cursor.class);
-        when(cursor.getLong(eq(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR.hashCode()))).thenReturn(42L);
-        when(cursor.getLong(eq(DownloadManager.COLUMN_TOTAL_SIZE_BYTES.hashCode()))).thenReturn(4242L);
+    public void doNotObserveProgressIfListenerDoNotWantsIt() {
         when(mListener.onProgress(anyLong(), anyLong())).thenReturn(false);
 
         /* Update download progress. */
-        mReleaseDownloader.onDownloadProgress(cursor);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(42L, 4242L));
 
         /* Verify. */
         verify(mListener).onProgress(anyLong(), anyLong());
-        verifyStatic(AsyncTaskUtils.class, never());
-        AsyncTaskUtils.execute(anyString(), isA(DownloadManagerUpdateTask.class), any());
+        verify(mContentResolver, never()).registerContentObserver(any(), anyBoolean(), any(ContentObserver.class));
+    }
+
+    @Test
+    public void stopObservingProgressWhenListenerDoesNotWantItAnymore() {
+        when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true, false);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(42L, 4242L));
+        ArgumentCaptor<ContentObserver> observer = ArgumentCaptor.forClass(ContentObserver.class);
+        verify(mContentResolver).registerContentObserver(any(), eq(false), observer.capture());
+
+        /* Progress dialog was hidden. */
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(4000L, 4242L));
+        verify(mContentResolver).unregisterContentObserver(observer.getValue());
+    }
+
+    @Test
+    public void stopObservingProgressOnCompletion() {
+        when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(42L, 4242L));
+        mReleaseDownloader.onDownloadComplete();
+        verify(mContentResolver).unregisterContentObserver(isA(DownloadManagerProgressObserver.class));
+    }
+
+    @Test
+    public void stopObservingProgressOnError() {
+        when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(42L, 4242L));
+        mReleaseDownloader.onDownloadError(new IllegalStateException());
+        verify(mContentResolver).unregisterContentObserver(isA(DownloadManagerProgressObserver.class));
     }
 
     @Test
     public void doNotOnDownloadProgressAfterCancellation() {
-        Cursor cursor = mock(Cursor.class);
+        Cursor cursor = mockProgressCursor(42L, 4242L);
         when(mListener.onProgress(anyLong(), anyLong())).thenReturn(true);
-        ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
-        when(mMainHandler.postAtTime(runnableCaptor.capture(), anyString(), anyLong())).thenReturn(true);
 
         /* Update download progress. */
         mReleaseDownloader.onDownloadProgress(cursor);
@@ -393,14 +434,15 @@ public class DownloadManagerReleaseDownloaderTest {
 
         /* Cancel downloading. */
         mReleaseDownloader.cancel();
+        verify(mContentResolver).unregisterContentObserver(isA(DownloadManagerProgressObserver.class));
 
-        /* Delayed update does nothing after cancellation. */
-        runnableCaptor.getValue().run();
+        /* Update triggered by a late change does nothing after cancellation. */
+        mReleaseDownloader.update();
         verifyStatic(AsyncTaskUtils.class, never());
         AsyncTaskUtils.execute(anyString(), isA(DownloadManagerUpdateTask.class), any());
 
         /* Update download progress does nothing after cancellation. */
-        mReleaseDownloader.onDownloadProgress(cursor);
+        mReleaseDownloader.onDownloadProgress(mockProgressCursor(4000L, 4242L));
         verifyNoMoreInteractions(mListener);
     }
 
@@ -13,6 +13,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -52,8 +53,10 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.powermock.reflect.Whitebox;
 
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -209,6 +212,53 @@ public class SessionReleaseInstallerTest {
         verify(mPackageInstaller).abandonSession(eq(SESSION_ID));
     }
 
+    @Test
+    public void copyWithChannels() throws IOException {
+        FileChannel source = mock(FileChannel.class);
+        FileChannel destination = mock(FileChannel.class);
+        FileOutputStream outputStream = mock(FileOutputStream.class);
+        when(mInputStream.getChannel()).thenReturn(source);
+        when(outputStream.getChannel()).thenReturn(destination);
+        when(source.transferTo(0, 100, destination)).thenReturn(60L);
+        when(source.transferTo(60, 40, destination)).thenReturn(40L);
+        SessionReleaseInstaller.copy(mInputStream, outputStream, 100);
+
+        /* Verify that nothing is copied through a buffer. */
+        verify(source, times(2)).transferTo(anyLong(), anyLong(), eq(destination));
+        verify(mInputStream, never()).read(any(byte[].class));
+        verify(outputStream, never()).write(any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void copyWithBufferWhenChannelTransferStops() throws IOException {
+        FileChannel source = mock(FileChannel.class);
+        FileChannel destination = mock(FileChannel.class);
+        FileOutputStream outputStream = mock(FileOutputStream.class);
+        when(mInputStream.getChannel()).thenReturn(source);
+        when(outputStream.getChannel()).thenReturn(destination);
+        when(source.transferTo(0, 100, destination)).thenReturn(90L);
+        when(source.transferTo(90, 10, destination)).thenReturn(0L);
+        SessionReleaseInstaller.copy(mInputStream, outputStream, 100);
+
+        /* Verify the remaining bytes are copied through a buffer. */
+        verify(source).position(90);
+        verify(outputStream).write(any(byte[].class), eq(0), eq(10));
+    }
+
+    @Test
+    public void copyWithBufferWhenSizeUnknown() throws IOException {
+        FileOutputStream outputStream = mock(FileOutputStream.class);
+        SessionReleaseInstaller.copy(mInputStream, outputStream, -1);
+        verify(mInputStream, never()).getChannel();
+        verify(outputStream).write(any(byte[].class), eq(0), eq(10));
+    }
+
+    @Test
+    public void copyWithBufferWhenNoChannel() throws IOException {
+        SessionReleaseInstaller.copy(mInputStream, mOutputStream, 100);
+        verify(mOutputStream).write(any(byte[].class), eq(0), eq(10));
+    }
+
     @Test
     public void throwIOExceptionWhenTryToOpenWriteSession() throws IOException {
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare how long a slow disk blocks the App Center thread with and without the persistence lane.
+ */
+public class PersistenceLaneBenchmarkAndroidTest {
+
+    /**
+     * Database name used by {@link DatabasePersistence}.
+     */
+    private static final String DATABASE = "com.microsoft.appcenter.persistence";
+
+    private static final int LOG_COUNT = 100;
+
+    /**
+     * Simulated extra time of each write to storage.
+     */
+    private static final long SLOW_WRITE_MILLIS = 5;
+
+    private static final String[] GROUPS = {"benchmark1", "benchmark2"};
+
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    private HandlerThread mAppCenterThread;
+
+    private HandlerThread mPersistenceThread;
+
+    private Persistence mPersistence;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getInstrumentation().getContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    @Before
+    public void setUp() {
+        sContext.deleteDatabase(DATABASE);
+        mAppCenterThread = new HandlerThread("AppCenter.Looper");
+        mAppCenterThread.start();
+        mPersistenceThread = new HandlerThread("AppCenter.Persistence");
+        mPersistenceThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        mAppCenterThread.quit();
+        mPersistenceThread.quit();
+        if (mPersistence != null) {
+            mPersistence.close();
+        }
+        sContext.deleteDatabase(DATABASE);
+    }
+
+    /**
+     * Enqueue logs in 2 groups and check they are stored in enqueue order.
+     *
+     * @param persistenceLane whether to write logs on the persistence lane.
+     * @return time spent by the App Center thread to process the enqueue calls, in ms.
+     */
+    private long enqueueLogs(boolean persistenceLane) throws InterruptedException {
+        sContext.deleteDatabase(DATABASE);
+        mPersistence = new SlowDatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        mPersistence.setLogSerializer(logSerializer);
+        Handler appCenterHandler = new Handler(mAppCenterThread.getLooper());
+        Handler persistenceHandler = persistenceLane ? new Handler(mPersistenceThread.getLooper()) : null;
+        final DefaultChannel channel = new DefaultChannel(sContext, UUID.randomUUID().toString(), mPersistence, mock(Ingestion.class), appCenterHandler, persistenceHandler);
+        for (String group : GROUPS) {
+            channel.addGroup(group, LOG_COUNT + 1, TimeUnit.HOURS.toMillis(1), 1, null, null);
+        }
+
+        /* Enqueue logs like services do, then measure when the App Center thread is free again. */
+        final List<List<UUID>> expectedIds = new ArrayList<>();
+        for (String ignored : GROUPS) {
+            expectedIds.add(new ArrayList<UUID>());
+        }
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < LOG_COUNT; i++) {
+            final Log log = AndroidTestUtils.generateMockLog();
+            final String group = GROUPS[i % GROUPS.length];
+            expectedIds.get(i % GROUPS.length).add(log.getSid());
+            appCenterHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    channel.enqueue(log, group, Flags.DEFAULTS);
+                }
+            });
+        }
+        final CountDownLatch enqueued = new CountDownLatch(1);
+        appCenterHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                enqueued.countDown();
+            }
+        });
+        assertTrue(enqueued.await(10, TimeUnit.SECONDS));
+        long enqueueMillis = SystemClock.elapsedRealtime() - start;
+
+        /* Shutting down waits for queued writes. */
+        final CountDownLatch stored = new CountDownLatch(1);
+        appCenterHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                channel.shutdown();
+                stored.countDown();
+            }
+        });
+        assertTrue(stored.await(10, TimeUnit.SECONDS));
+        long storeMillis = SystemClock.elapsedRealtime() - start;
+
+        /* Check order in each group. */
+        for (int i = 0; i < GROUPS.length; i++) {
+            List<Log> logs = new ArrayList<>();
+            mPersistence.getLogs(GROUPS[i], Collections.<String>emptyList(), LOG_COUNT, logs);
+            List<UUID> ids = new ArrayList<>();
+            for (Log log : logs) {
+                ids.add(log.getSid());
+            }
+            assertEquals(expectedIds.get(i), ids);
+        }
+        android.util.Log.i(TAG, "Enqueuing " + LOG_COUNT + " logs with " + SLOW_WRITE_MILLIS + "ms writes: persistenceLane=" + persistenceLane
+                + " appCenterThreadBusy=" + enqueueMillis + "ms allStored=" + storeMillis + "ms");
+        mPersistence.close();
+        mPersistence = null;
+        return enqueueMillis;
+    }
+
+    @Test
+    public void benchmarkSlowDisk() throws InterruptedException {
+        long inlineMillis = enqueueLogs(false);
+        long laneMillis = enqueueLogs(true);
+
+        /* Writes alone keep the App Center thread busy that long without the lane. */
+        assertTrue(inlineMillis >= LOG_COUNT * SLOW_WRITE_MILLIS);
+        android.util.Log.i(TAG, "App Center thread busy time: inline=" + inlineMillis + "ms persistenceLane=" + laneMillis + "ms");
+    }
+
+    /**
+     * Database persistence with slower writes.
+     */
+    private static class SlowDatabasePersistence extends DatabasePersistence {
+
+        SlowDatabasePersistence(Context context) {
+            super(context);
+        }
+
+        @Override
+        public synchronized long putLog(@NonNull Log log, @NonNull String group, int flags) throws PersistenceException {
+            SystemClock.sleep(SLOW_WRITE_MILLIS);
+            return super.putLog(log, group, flags);
+        }
+    }
+}
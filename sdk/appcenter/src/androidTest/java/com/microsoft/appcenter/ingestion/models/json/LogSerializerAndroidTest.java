@@ -6,15 +6,21 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.FileBackedLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 
 import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -23,6 +29,7 @@ import java.util.UUID;
 import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
 import static com.microsoft.appcenter.test.TestUtils.TAG;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -126,6 +133,36 @@ public class LogSerializerAndroidTest {
         assertEquals("charlie", actualLog.getUserId());
     }
 
+    @Test
+    public void serializeContainerWithContentOffsets() throws JSONException {
+
+        /* A file-backed log with another value containing its placeholder. */
+        final File file = new File("/mock/file");
+        final String placeholder = "appcenter-file:" + file.getPath();
+        FileBackedLog fileLog = new MockFileBackedLog(file, placeholder);
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.asList(AndroidTestUtils.generateMockLog(), fileLog, new MockFileBackedLog(null, null)));
+        LogSerializer serializer = new DefaultLogSerializer();
+
+        /* Same JSON as the regular container serialization, offset is the one of the content. */
+        List<Integer> contentOffsets = new ArrayList<>();
+        String payload = serializer.serializeContainer(container, contentOffsets);
+        assertEquals(serializer.serializeContainer(container), payload);
+        assertEquals(1, contentOffsets.size());
+        String quotedPlaceholder = JSONObject.quote(placeholder);
+        int offset = contentOffsets.get(0);
+        assertTrue(payload.startsWith(quotedPlaceholder, offset));
+        assertEquals(payload.lastIndexOf(quotedPlaceholder), offset);
+        assertTrue(payload.indexOf(quotedPlaceholder) < offset);
+    }
+
+    @Test(expected = JSONException.class)
+    public void serializeContainerWithContentNotLast() throws JSONException {
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<Log>singletonList(new MockFileBackedLog(new File("/mock/file"), "other")));
+        new DefaultLogSerializer().serializeContainer(container, new ArrayList<Integer>());
+    }
+
     @Test
     public void toCommonSchemaLog() {
         LogFactory logFactory = mock(LogFactory.class);
@@ -135,4 +172,42 @@ public class LogSerializerAndroidTest {
         serializer.toCommonSchemaLog(log);
         verify(logFactory).toCommonSchemaLogs(log);
     }
-}
\ No newline at end of file
+
+    /**
+     * File-backed log writing a decoy value before its content placeholder.
+     */
+    private static class MockFileBackedLog extends AbstractLog implements FileBackedLog {
+
+        private final File mFile;
+
+        private final String mPlaceholder;
+
+        MockFileBackedLog(File file, String placeholder) {
+            mFile = file;
+            mPlaceholder = placeholder;
+            setTimestamp(new Date());
+        }
+
+        @Override
+        public String getType() {
+            return "mockFile";
+        }
+
+        @Override
+        public File getContentFile() {
+            return mFile;
+        }
+
+        @Override
+        public String getContentPlaceholder() {
+            return mPlaceholder;
+        }
+
+        @Override
+        public void write(JSONStringer writer) throws JSONException {
+            super.write(writer);
+            JSONUtils.write(writer, "name", "appcenter-file:" + (mFile != null ? mFile.getPath() : null));
+            JSONUtils.write(writer, "data", mFile != null ? "appcenter-file:" + mFile.getPath() : "abc");
+        }
+    }
+}
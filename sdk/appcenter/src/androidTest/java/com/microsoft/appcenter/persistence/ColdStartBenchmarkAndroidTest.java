@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the storage work done before the first log can be stored, with and without startup mode.
+ */
+public class ColdStartBenchmarkAndroidTest {
+
+    private static final int LOGS_PER_GROUP = 250;
+
+    private static final String[] GROUPS = {"group_core", "group_analytics", "group_crashes", "group_analytics/one"};
+
+    private static final int ITERATIONS = 5;
+
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getInstrumentation().getContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    @After
+    public void tearDown() {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+    }
+
+    private static DatabasePersistence newPersistence(boolean startupMode) {
+        DatabasePersistence persistence = new DatabasePersistence(sContext, startupMode);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        return persistence;
+    }
+
+    private static void fillDatabase() {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        DatabasePersistence persistence = newPersistence(false);
+        try {
+            for (String group : GROUPS) {
+                List<Log> logs = new ArrayList<>(LOGS_PER_GROUP);
+                for (int i = 0; i < LOGS_PER_GROUP; i++) {
+                    logs.add(AndroidTestUtils.generateMockLog());
+                }
+                persistence.putLogs(logs, group, Flags.NORMAL);
+            }
+        } finally {
+            persistence.close();
+        }
+    }
+
+    /**
+     * Create persistence, count logs of every group and store one log, as the channel does at startup.
+     *
+     * @return elapsed time in microseconds.
+     */
+    private static long coldStart(boolean startupMode) throws Persistence.PersistenceException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        DatabasePersistence persistence = newPersistence(startupMode);
+        try {
+            int total = 0;
+            if (startupMode) {
+                Map<String, Integer> counts = persistence.countLogsByGroup();
+                assertNotNull(counts);
+                for (String group : GROUPS) {
+                    total += counts.get(group);
+                }
+            } else {
+                for (String group : GROUPS) {
+                    total += persistence.countLogs(group);
+                }
+            }
+            persistence.putLog(AndroidTestUtils.generateMockLog(), GROUPS[0], Flags.NORMAL);
+            long elapsed = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+            assertEquals(GROUPS.length * LOGS_PER_GROUP, total);
+            return elapsed;
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void benchmarkColdStart() throws Persistence.PersistenceException {
+        long eagerMicros = 0;
+        long startupModeMicros = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            fillDatabase();
+            eagerMicros += coldStart(false);
+            fillDatabase();
+            startupModeMicros += coldStart(true);
+        }
+        android.util.Log.i(TAG, "Cold start with " + GROUPS.length * LOGS_PER_GROUP + " logs in " + GROUPS.length
+                + " groups: eager=" + eagerMicros / ITERATIONS + "us startupMode=" + startupModeMicros / ITERATIONS + "us");
+    }
+}
@@ -39,7 +39,10 @@ import androidx.test.platform.app.InstrumentationRegistry;
 import com.microsoft.appcenter.AndroidTestUtils;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.EvictionPolicy;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
+import com.microsoft.appcenter.channel.ChannelMetrics;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
@@ -102,8 +105,9 @@ public class DatabasePersistenceAndroidTest {
     @Before
     public void setUp() {
 
-        /* Clean up database. */
+        /* Clean up database and the time to live of its logs. */
         sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        SharedPreferencesManager.clear();
     }
 
     @NonNull
@@ -766,6 +770,127 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void deferredStorageCheck() throws PersistenceException, IOException {
+
+        /* Persist logs in 2 groups. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        File orphanFile;
+        try {
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p2", NORMAL);
+
+            /* Simulate a large payload file left without database record. */
+            File directory = persistence.getLargePayloadGroupDirectory("test-p1");
+            FileManager.mkdir(directory.getAbsolutePath());
+            orphanFile = persistence.getLargePayloadFile(directory, Integer.MAX_VALUE);
+            FileManager.write(orphanFile, "orphan");
+        } finally {
+            persistence.close();
+        }
+
+        /* Files are not checked when deferred. */
+        persistence = new DatabasePersistence(sContext, true);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertTrue(orphanFile.exists());
+
+            /* Count all groups at once. */
+            Map<String, Integer> counts = persistence.countLogsByGroup();
+            assertNotNull(counts);
+            assertEquals(2, counts.size());
+            assertEquals(Integer.valueOf(2), counts.get("test-p1"));
+            assertEquals(Integer.valueOf(1), counts.get("test-p2"));
+
+            /* Files are checked only once. */
+            persistence.performDeferredChecks();
+            assertFalse(orphanFile.exists());
+            FileManager.write(orphanFile, "orphan");
+            persistence.performDeferredChecks();
+            assertTrue(orphanFile.exists());
+            assertTrue(orphanFile.delete());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void channelMetrics() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        ChannelMetrics.setEnabled(true);
+        try {
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-m", NORMAL);
+            persistence.putLogs(Arrays.<Log>asList(AndroidTestUtils.generateMockLog(), AndroidTestUtils.generateMockLog()), "test-m", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test-m", Collections.<String>emptyList(), 3, outputLogs));
+
+            /* The batch contains all the stored bytes. */
+            ChannelMetrics.GroupMetrics metrics = ChannelMetrics.getSnapshot().getGroups().get("test-m");
+            assertNotNull(metrics);
+            assertEquals(3, metrics.getPersistedLogCount());
+            assertTrue(metrics.getPersistedBytes() > 0);
+            assertEquals(1, metrics.getBatchSizes().getCount());
+            assertEquals(3, metrics.getBatchSizes().getSum());
+            assertEquals(metrics.getPersistedBytes(), metrics.getBatchBytes().getSum());
+        } finally {
+            ChannelMetrics.setEnabled(false);
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsAgainFromIds() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Persist logs in 2 groups. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            Log log3 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test-p1", NORMAL);
+            persistence.putLog(log2, "test-p1", NORMAL);
+            persistence.putLog(log3, "test-p2", NORMAL);
+
+            /* Get a batch and its identifiers. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test-p1", Collections.emptyList(), 5, outputLogs);
+            assertNotNull(id);
+            long[] logIds = persistence.getLogIds("test-p1", id);
+            assertEquals(2, logIds.length);
+            assertEquals(0, persistence.getLogIds("test-p2", id).length);
+
+            /* Read logs again in the same order, only from the group. */
+            List<Log> readLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", logIds, readLogs);
+            assertEquals(outputLogs, readLogs);
+            readLogs.clear();
+            persistence.getLogs("test-p2", logIds, readLogs);
+            assertEquals(0, readLogs.size());
+
+            /* Deleted logs are skipped. */
+            persistence.deleteLogs("test-p1", id);
+            assertEquals(0, persistence.getLogIds("test-p1", id).length);
+            persistence.getLogs("test-p1", logIds, readLogs);
+            assertEquals(0, readLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+
     @Test
     public void deleteLogsForGroup() throws PersistenceException {
 
@@ -804,11 +929,11 @@ public class DatabasePersistenceAndroidTest {
             persistence.getLogs("test-p3", Collections.emptyList(), 5, outputLogs);
 
             /* Verify. */
-            Map<String, List<Long>> pendingGroups = persistence.mPendingDbIdentifiersGroups;
+            Map<String, long[]> pendingGroups = persistence.mPendingDbIdentifiersGroups;
             assertNull(pendingGroups.get("test-p1" + id1));
-            List<Long> p2Logs = pendingGroups.get("test-p2" + id2);
+            long[] p2Logs = pendingGroups.get("test-p2" + id2);
             assertNotNull(p2Logs);
-            assertEquals(1, p2Logs.size());
+            assertEquals(1, p2Logs.length);
             assertEquals(1, pendingGroups.size());
             assertEquals(0, outputLogs.size());
             assertEquals(1, persistence.mDatabaseManager.getRowCount());
@@ -1180,4 +1305,294 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void upgradeFromVersion6to7() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with the table of the previous version. */
+        String createLogsVersion6 = "CREATE TABLE IF NOT EXISTS `logs`" +
+                "(`oid` INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "`target_token` TEXT," +
+                "`type` TEXT," +
+                "`priority` INTEGER," +
+                "`log` TEXT," +
+                "`persistence_group` TEXT," +
+                "`target_key` TEXT);";
+        ContentValues schema = new ContentValues(SCHEMA);
+        schema.remove(DatabasePersistence.COLUMN_EXPIRES_AT);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_EXPIRES_AT_COLUMN, schema, createLogsVersion6, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            databaseManager.put(contentValues);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade keeps old data, without expiration. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+            assertNull(getContentValues(persistence, "test").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+
+            /* New logs can expire. */
+            persistence.setStorageQuota("test-ttl", StorageQuota.timeToLive(60000));
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-ttl", NORMAL);
+            assertNotNull(getContentValues(persistence, "test-ttl").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void deleteExpiredLogs() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-ttl", StorageQuota.timeToLive(60000));
+        try {
+
+            /* Expiration follows the time the logs were created. */
+            Date expiredTimestamp = new Date(System.currentTimeMillis() - 120000);
+            MockLog sendingLog = AndroidTestUtils.generateMockLog();
+            sendingLog.setTimestamp(expiredTimestamp);
+            persistence.putLog(sendingLog, "test-ttl", NORMAL);
+            MockLog expiredLog = AndroidTestUtils.generateMockLog();
+            expiredLog.setTimestamp(expiredTimestamp);
+            persistence.putLog(expiredLog, "test-ttl", NORMAL);
+            MockLog freshLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(freshLog, "test-ttl", NORMAL);
+
+            /* Logs of groups without time to live are kept. */
+            MockLog otherLog = AndroidTestUtils.generateMockLog();
+            otherLog.setTimestamp(expiredTimestamp);
+            persistence.putLog(otherLog, "test-other", NORMAL);
+
+            /* Logs being sent are kept. */
+            List<Log> outputLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test-ttl", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(Collections.<Log>singletonList(sendingLog), outputLogs);
+            assertEquals(Collections.singletonMap("test-ttl", 1), persistence.deleteExpiredLogs());
+            assertEquals(2, persistence.countLogs("test-ttl"));
+            assertEquals(1, persistence.countLogs("test-other"));
+            persistence.deleteLogs("test-ttl", batchId);
+            outputLogs.clear();
+            persistence.getLogs("test-ttl", Collections.<String>emptyList(), 10, outputLogs);
+            assertEquals(Collections.<Log>singletonList(freshLog), outputLogs);
+
+            /* Nothing else expired. */
+            assertTrue(persistence.deleteExpiredLogs().isEmpty());
+
+            /* Logs stored before a time to live is set get an expiration. */
+            persistence.setStorageQuota("test-other", StorageQuota.timeToLive(60000));
+            assertNotNull(getContentValues(persistence, "test-other").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+            assertTrue(persistence.deleteExpiredLogs().isEmpty());
+            assertEquals(1, persistence.countLogs("test-other"));
+
+            /* A shorter time to live applies to the stored logs from their creation time. */
+            long expiresAt = getContentValues(persistence, "test-ttl").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT);
+            persistence.setStorageQuota("test-ttl", StorageQuota.timeToLive(30000));
+            assertEquals(expiresAt - 30000, (long) getContentValues(persistence, "test-ttl").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+
+            /* Removing the time to live clears the expiration. */
+            persistence.setStorageQuota("test-ttl", null);
+            assertNull(getContentValues(persistence, "test-ttl").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+            persistence.setStorageQuota("test-other", StorageQuota.maxShare(0.5));
+            assertNull(getContentValues(persistence, "test-other").getAsLong(DatabasePersistence.COLUMN_EXPIRES_AT));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void reservedStorageIsNotEvicted() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-reserved", StorageQuota.reservedSize(MAX_STORAGE_SIZE_IN_BYTES / 4));
+        try {
+
+            /* Store the oldest logs in the reserved group. */
+            for (int i = 0; i < 3; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-reserved", NORMAL);
+            }
+
+            /* Generate logs in another group until we notice eviction. */
+            int count = 0;
+            for (int i = 0; count == persistence.countLogs("test-other"); i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-other", NORMAL);
+                count++;
+
+                /* Fail if no eviction happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No eviction is happening", i < 1000);
+            }
+
+            /* The other group made room by deleting its own logs. */
+            assertEquals(3, persistence.countLogs("test-reserved"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void reservedSizeIsLimitedToHalfOfStorage() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-reserved", StorageQuota.reservedSize(MAX_STORAGE_SIZE_IN_BYTES * 2));
+        try {
+
+            /* A group reserving more than the storage can still store logs by deleting its own. */
+            int count = 0;
+            for (int i = 0; count == persistence.countLogs("test-reserved"); i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-reserved", NORMAL);
+                count++;
+
+                /* Fail if no eviction happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No eviction is happening", i < 1000);
+            }
+
+            /* Other groups can use the storage beyond the limited reserved size. */
+            int reservedCount = persistence.countLogs("test-reserved");
+            for (int i = 0; i < reservedCount / 4; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-other", NORMAL);
+            }
+            assertEquals(reservedCount / 4, persistence.countLogs("test-other"));
+            assertTrue(persistence.countLogs("test-reserved") < reservedCount);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void maxShareDeletesOldestLogsOfGroup() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-limited", StorageQuota.maxShare(0.25));
+        ChannelMetrics.setEnabled(true);
+        try {
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-other", NORMAL);
+
+            /* Generate logs until we notice eviction. */
+            List<Log> allLogs = new ArrayList<>();
+            for (int i = 0; allLogs.size() == persistence.countLogs("test-limited"); i++) {
+                MockLog log = AndroidTestUtils.generateMockLog();
+                persistence.putLog(log, "test-limited", NORMAL);
+                allLogs.add(log);
+
+                /* Fail if no eviction happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No eviction is happening", i < 1000);
+            }
+
+            /* Deleted logs are the first ones of the limited group only. */
+            int databaseCount = persistence.countLogs("test-limited");
+            List<Log> actualLogs = new ArrayList<>();
+            persistence.getLogs("test-limited", Collections.<String>emptyList(), allLogs.size(), actualLogs);
+            assertEquals(allLogs.subList(allLogs.size() - databaseCount, allLogs.size()), actualLogs);
+            assertEquals(1, persistence.countLogs("test-other"));
+            ChannelMetrics.GroupMetrics metrics = ChannelMetrics.getSnapshot().getGroups().get("test-limited");
+            assertNotNull(metrics);
+            assertEquals(allLogs.size() - databaseCount, metrics.getEvictedLogCount());
+            assertEquals(0, metrics.getQuotaRejectedLogCount());
+        } finally {
+            ChannelMetrics.setEnabled(false);
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void maxShareDropsNewestLogs() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-limited", StorageQuota.maxShare(0.25).withEvictionPolicy(EvictionPolicy.DROP_NEWEST));
+        ChannelMetrics.setEnabled(true);
+        try {
+
+            /* Generate logs until one is rejected. */
+            List<Log> storedLogs = new ArrayList<>();
+            for (int i = 0; ; i++) {
+                MockLog log = AndroidTestUtils.generateMockLog();
+                try {
+                    persistence.putLog(log, "test-limited", NORMAL);
+                } catch (PersistenceException e) {
+                    break;
+                }
+                storedLogs.add(log);
+
+                /* Fail if no rejection happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No rejection is happening", i < 1000);
+            }
+
+            /* Stored logs are kept. */
+            List<Log> actualLogs = new ArrayList<>();
+            persistence.getLogs("test-limited", Collections.<String>emptyList(), storedLogs.size() + 1, actualLogs);
+            assertEquals(storedLogs, actualLogs);
+            ChannelMetrics.GroupMetrics metrics = ChannelMetrics.getSnapshot().getGroups().get("test-limited");
+            assertNotNull(metrics);
+            assertEquals(0, metrics.getEvictedLogCount());
+            assertEquals(1, metrics.getQuotaRejectedLogCount());
+        } finally {
+            ChannelMetrics.setEnabled(false);
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void maxShareDeletesLargestLogs() throws PersistenceException {
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        persistence.setStorageQuota("test-limited", StorageQuota.maxShare(0.25).withEvictionPolicy(EvictionPolicy.LARGEST_FIRST));
+        try {
+
+            /* Store a small log then a large one. */
+            MockLog smallLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(smallLog, "test-limited", NORMAL);
+            MockLog largeLog = AndroidTestUtils.generateMockLog();
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", generateString(MAX_STORAGE_SIZE_IN_BYTES / 8, 'x'));
+            largeLog.setProperties(properties);
+            persistence.putLog(largeLog, "test-limited", NORMAL);
+
+            /* Fill the quota with small logs: the large log is deleted first. */
+            for (int i = 0; persistence.countLogs("test-limited") == i + 2; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-limited", NORMAL);
+
+                /* Fail if no eviction happens after a long time to avoid infinite loop on bug. */
+                assertTrue("No eviction is happening", i < 1000);
+            }
+            List<Log> actualLogs = new ArrayList<>();
+            persistence.getLogs("test-limited", Collections.<String>emptyList(), 1000, actualLogs);
+            assertEquals(smallLog, actualLogs.get(0));
+            assertFalse(actualLogs.contains(largeLog));
+        } finally {
+            persistence.close();
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare storing logs one by one with storing them in a single transaction.
+ */
+public class PutLogsBenchmarkAndroidTest {
+
+    private static final int LOG_COUNT = 200;
+
+    private static final String GROUP = "benchmark";
+
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    private DatabasePersistence mPersistence;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getInstrumentation().getContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    @Before
+    public void setUp() {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        mPersistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        mPersistence.setLogSerializer(logSerializer);
+    }
+
+    @After
+    public void tearDown() {
+        mPersistence.close();
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+    }
+
+    private static List<Log> generateLogs() {
+        List<Log> logs = new ArrayList<>(LOG_COUNT);
+        for (int i = 0; i < LOG_COUNT; i++) {
+            logs.add(AndroidTestUtils.generateMockLog());
+        }
+        return logs;
+    }
+
+    @Test
+    public void benchmarkPutLogs() throws Persistence.PersistenceException {
+
+        /* Store logs one by one. */
+        List<Log> logs = generateLogs();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (Log log : logs) {
+            mPersistence.putLog(log, GROUP, Flags.NORMAL);
+        }
+        long singleMicros = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        assertEquals(LOG_COUNT, mPersistence.countLogs(GROUP));
+
+        /* Store the same number of logs together. */
+        logs = generateLogs();
+        start = SystemClock.elapsedRealtimeNanos();
+        Persistence.PersistenceException[] errors = mPersistence.putLogs(logs, GROUP, Flags.NORMAL);
+        long batchMicros = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        assertArrayEquals(new Persistence.PersistenceException[LOG_COUNT], errors);
+        assertEquals(2 * LOG_COUNT, mPersistence.countLogs(GROUP));
+        android.util.Log.i(TAG, "Storing " + LOG_COUNT + " logs: putLog=" + singleMicros + "us putLogs=" + batchMicros
+                + "us logsPerSecond=" + (LOG_COUNT * 1000000L / Math.max(singleMicros, 1)) + "/"
+                + (LOG_COUNT * 1000000L / Math.max(batchMicros, 1)));
+    }
+}
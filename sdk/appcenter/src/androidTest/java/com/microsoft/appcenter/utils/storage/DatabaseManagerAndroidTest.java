@@ -19,6 +19,7 @@ import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 
@@ -31,6 +32,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
 import java.util.Random;
 
 @SuppressWarnings("unused")
@@ -278,6 +280,77 @@ public class DatabaseManagerAndroidTest {
         }
     }
 
+    @Test
+    public void reclaimFreePages() {
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 1, mSchema, CREATE_TEST_SQL, mock(DatabaseManager.Listener.class));
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+            assertEquals(2, DatabaseUtils.longForQuery(databaseManager.getDatabase(), "PRAGMA auto_vacuum", null));
+
+            /* Fill pages then delete all records. */
+            long emptySize = databaseManager.getCurrentSize();
+            for (int i = 0; i < 20; i++) {
+                ContentValues values = generateContentValues();
+                values.put("COL_BYTE_ARRAY", new byte[8192]);
+                databaseManager.put(values);
+            }
+            long fullSize = databaseManager.getCurrentSize();
+            assertTrue(fullSize > emptySize);
+            databaseManager.clear();
+
+            /* Free pages are not counted in the size. */
+            long clearedSize = databaseManager.getCurrentSize();
+            assertTrue(clearedSize < fullSize);
+
+            /* Reclaim by steps. */
+            assertTrue(databaseManager.reclaimFreePages(1) > 0);
+            assertEquals(0, databaseManager.reclaimFreePages(Integer.MAX_VALUE));
+            assertTrue(databaseManager.getCurrentSize() <= clearedSize);
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+    }
+
+    @Test
+    public void enableIncrementalVacuumOnDatabaseWithoutAutoVacuum() {
+
+        /* Create a database without auto vacuum. */
+        File databaseFile = sContext.getDatabasePath(DATABASE_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        databaseFile.getParentFile().mkdirs();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+        try {
+            database.execSQL("PRAGMA auto_vacuum = NONE");
+            database.execSQL(CREATE_TEST_SQL);
+            database.setVersion(1);
+        } finally {
+            database.close();
+        }
+
+        /* Get instance to access database. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 1, mSchema, CREATE_TEST_SQL, mock(DatabaseManager.Listener.class));
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+            assertEquals(0, DatabaseUtils.longForQuery(databaseManager.getDatabase(), "PRAGMA auto_vacuum", null));
+            long id = databaseManager.put(generateContentValues());
+
+            /* Full vacuum converts the database and keeps records. */
+            assertEquals(0, databaseManager.reclaimFreePages(1));
+            assertEquals(2, DatabaseUtils.longForQuery(databaseManager.getDatabase(), "PRAGMA auto_vacuum", null));
+            assertNotNull(get(databaseManager, id));
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+    }
+
     @SuppressWarnings("TryFinallyCanBeTryWithResources")
     private boolean checkTableExists(DatabaseManager databaseManager, String tableName) {
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
@@ -202,6 +202,10 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         boolean enabled = isInstanceEnabled();
         if (groupName != null) {
             channel.removeGroup(groupName);
+            StorageQuota storageQuota = getStorageQuota();
+            if (storageQuota != null) {
+                channel.setStorageQuota(groupName, storageQuota);
+            }
 
             /* Add a group to the channel if the service is enabled */
             if (enabled) {
@@ -285,6 +289,16 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets the default storage quota of the group of the service.
+     * The quota set by {@link AppCenter#setStorageQuota(String, StorageQuota)} takes precedence.
+     *
+     * @return A storage quota, null to share storage with other groups without any reservation.
+     */
+    protected StorageQuota getStorageQuota() {
+        return null;
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
@@ -7,7 +7,10 @@ package com.microsoft.appcenter;
 
 import android.annotation.SuppressLint;
 import android.app.Application;
+import android.content.ComponentName;
+import android.content.ContentValues;
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -19,6 +22,7 @@ import androidx.annotation.WorkerThread;
 import android.util.Log;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.ChannelMetrics;
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
 import com.microsoft.appcenter.http.HttpClient;
@@ -28,6 +32,10 @@ import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.StartServiceLogFactory;
+import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.ForwardingPersistence;
+import com.microsoft.appcenter.persistence.HybridPersistence;
+import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.ApplicationLifecycleListener;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
@@ -35,6 +43,8 @@ import com.microsoft.appcenter.utils.IdHelper;
 import com.microsoft.appcenter.utils.InstrumentationRegistryHelper;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.PrefStorageConstants;
+import com.microsoft.appcenter.utils.ProcessHelper;
+import com.microsoft.appcenter.utils.StartupTrace;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.SessionContext;
@@ -42,6 +52,8 @@ import com.microsoft.appcenter.utils.context.UserIdContext;
 import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import org.json.JSONException;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -49,6 +61,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import static android.content.pm.ApplicationInfo.FLAG_DEBUGGABLE;
@@ -200,7 +213,7 @@ public class AppCenter {
     /**
      * Channel.
      */
-    private Channel mChannel;
+    private volatile Channel mChannel;
 
     /**
      * Background handler thread.
@@ -242,6 +255,21 @@ public class AppCenter {
      */
     private @Nullable String mDataResidencyRegion;
 
+    /**
+     * Whether secondary processes forward their logs to the main process.
+     */
+    private boolean mMultiProcessEnabled;
+
+    /**
+     * Whether logs are kept in memory while the application is in foreground.
+     */
+    private boolean mInMemoryStorageEnabled;
+
+    /**
+     * Storage quotas set by the application, by group name.
+     */
+    private final Map<String, StorageQuota> mStorageQuotas = new ConcurrentHashMap<>();
+
     /**
      * Get unique instance.
      *
@@ -314,6 +342,93 @@ public class AppCenter {
         DeviceInfoHelper.setCountryCode(countryCode);
     }
 
+    /**
+     * Get the timings of the SDK startup phases recorded so far, on the calling thread and on the SDK background thread.
+     *
+     * @return startup phases ordered by start time.
+     */
+    @NonNull
+    public static List<StartupTrace.Phase> getStartupTrace() {
+        return StartupTrace.getPhases();
+    }
+
+    /**
+     * Emit startup phases as {@link android.os.Trace} sections so they show up in system traces.
+     * This must be called before configuring or starting the SDK to cover all phases.
+     *
+     * @param enabled true to emit system trace sections, false otherwise.
+     */
+    public static void setStartupSystemTraceEnabled(boolean enabled) {
+        StartupTrace.setSystemTraceEnabled(enabled);
+    }
+
+    /**
+     * Enable or disable collecting metrics about logs being enqueued, stored and sent.
+     * Metrics are not collected by default, as long as no listener is set.
+     *
+     * @param enabled true to collect channel metrics, false otherwise.
+     */
+    public static void setChannelMetricsEnabled(boolean enabled) {
+        ChannelMetrics.setEnabled(enabled);
+    }
+
+    /**
+     * Get the channel metrics collected so far.
+     *
+     * @return metrics by group, empty if metrics are not collected.
+     */
+    @NonNull
+    public static ChannelMetrics.Snapshot getChannelMetrics() {
+        return ChannelMetrics.getSnapshot();
+    }
+
+    /**
+     * Set a listener to export channel metrics each time a batch of logs is sent.
+     * Metrics are collected while a listener is set.
+     *
+     * @param listener listener or null to remove it.
+     */
+    public static void setChannelMetricsListener(@Nullable ChannelMetrics.Listener listener) {
+        ChannelMetrics.setListener(listener);
+    }
+
+    /**
+     * Enable or disable multi-process mode. This must be called before starting the SDK, in every process.
+     * When enabled, the SDK started in a secondary process forwards its logs to the main process,
+     * which stores and sends the logs of all processes. Logs are kept in memory while the main process cannot receive them.
+     * Services must also be started in the main process to receive their logs.
+     *
+     * @param enabled true to forward logs from secondary processes, false otherwise.
+     */
+    public static void setMultiProcessEnabled(boolean enabled) {
+        getInstance().setInstanceMultiProcessEnabled(enabled);
+    }
+
+    /**
+     * Enable or disable keeping logs in memory while the application is in foreground. This must be called before starting the SDK.
+     * When enabled, logs are sent from memory and written to the database only if they cannot be sent fast enough,
+     * when the application goes to background, or if they are critical. Logs kept in memory are lost if the process is killed
+     * while the application is in foreground.
+     *
+     * @param enabled true to keep logs in memory, false to store every log in the database.
+     */
+    public static void setInMemoryStorageEnabled(boolean enabled) {
+        getInstance().setInstanceInMemoryStorageEnabled(enabled);
+    }
+
+    /**
+     * Set the storage quota of a group of logs, to control which logs are deleted when storage is full and how long logs are kept.
+     * The group names of the services are {@code group_analytics}, {@code groupErrors} and {@code group_distribute}.
+     * By default, crash reports have storage reserved so that other logs delete them last.
+     * The quota set here takes precedence over the default quota of the service.
+     *
+     * @param groupName group name.
+     * @param quota     storage quota, null to remove the quota set for the group.
+     */
+    public static void setStorageQuota(@NonNull String groupName, @Nullable StorageQuota quota) {
+        getInstance().setInstanceStorageQuota(groupName, quota);
+    }
+
     /**
      * Set the country code or any other string to identify residency region.
      *
@@ -592,6 +707,132 @@ public class AppCenter {
         AppCenterLog.setLogLevel(logLevel);
     }
 
+    /**
+     * {@link #setMultiProcessEnabled(boolean)} implementation at instance level.
+     *
+     * @param enabled true to forward logs from secondary processes, false otherwise.
+     */
+    private synchronized void setInstanceMultiProcessEnabled(boolean enabled) {
+        if (mHandler != null) {
+            AppCenterLog.error(LOG_TAG, "Multi-process mode can only be changed before starting the SDK.");
+            return;
+        }
+        mMultiProcessEnabled = enabled;
+    }
+
+    /**
+     * {@link #setInMemoryStorageEnabled(boolean)} implementation at instance level.
+     *
+     * @param enabled true to keep logs in memory, false to store every log in the database.
+     */
+    private synchronized void setInstanceInMemoryStorageEnabled(boolean enabled) {
+        if (mHandler != null) {
+            AppCenterLog.error(LOG_TAG, "In-memory storage can only be changed before starting the SDK.");
+            return;
+        }
+        mInMemoryStorageEnabled = enabled;
+    }
+
+    /**
+     * {@link #setStorageQuota(String, StorageQuota)} implementation at instance level.
+     *
+     * @param groupName group name.
+     * @param quota     storage quota, null to remove the quota set for the group.
+     */
+    private synchronized void setInstanceStorageQuota(@NonNull final String groupName, @Nullable final StorageQuota quota) {
+        if (quota == null) {
+            mStorageQuotas.remove(groupName);
+        } else {
+            mStorageQuotas.put(groupName, quota);
+        }
+        if (mHandler != null) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mChannel != null) {
+                        mChannel.setStorageQuota(groupName, quota);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Apply the storage quotas set by the application, after the default quotas of the services.
+     */
+    @WorkerThread
+    private void applyStorageQuotas() {
+        for (Map.Entry<String, StorageQuota> entry : mStorageQuotas.entrySet()) {
+            mChannel.setStorageQuota(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Enqueue logs forwarded by a secondary process, called by {@link LogForwardingProvider}.
+     *
+     * @param values forwarded logs, as created by {@link ForwardingPersistence}.
+     * @return true if logs are accepted, false if the SDK is not started in multi-process mode or a log group cannot be stored.
+     */
+    synchronized boolean enqueueForwardedLogs(@NonNull final ContentValues[] values) {
+        Channel channel = mChannel;
+        if (!mMultiProcessEnabled || mHandler == null || channel == null) {
+            AppCenterLog.warn(LOG_TAG, "Logs forwarded by another process are refused as multi-process mode is not started.");
+            return false;
+        }
+
+        /* Refuse all logs if a group is not accepted yet, the other process keeps them to retry later. */
+        for (ContentValues logValues : values) {
+            String groupName = logValues.getAsString(ForwardingPersistence.COLUMN_GROUP);
+            if (groupName != null && !channel.acceptsForwardedLogs(groupName)) {
+                AppCenterLog.warn(LOG_TAG, "Logs forwarded by another process are refused as group " + groupName + " cannot be stored.");
+                return false;
+            }
+        }
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+
+                /* Consecutive logs of the same group are enqueued together. */
+                List<com.microsoft.appcenter.ingestion.models.Log> logs = new ArrayList<>();
+                String groupName = null;
+                int flags = Flags.DEFAULTS;
+                for (ContentValues logValues : values) {
+                    String logGroupName = logValues.getAsString(ForwardingPersistence.COLUMN_GROUP);
+                    Integer logFlags = logValues.getAsInteger(ForwardingPersistence.COLUMN_FLAGS);
+                    String payload = logValues.getAsString(ForwardingPersistence.COLUMN_LOG);
+                    if (logGroupName == null || logFlags == null || payload == null) {
+                        AppCenterLog.error(LOG_TAG, "Ignoring invalid forwarded log.");
+                        continue;
+                    }
+                    com.microsoft.appcenter.ingestion.models.Log log;
+                    try {
+                        log = mLogSerializer.deserializeLog(payload, logValues.getAsString(ForwardingPersistence.COLUMN_DATA_TYPE));
+                    } catch (JSONException e) {
+                        AppCenterLog.error(LOG_TAG, "Cannot read forwarded log, check the service is started in the main process.", e);
+                        continue;
+                    }
+                    String targetToken = logValues.getAsString(ForwardingPersistence.COLUMN_TARGET_TOKEN);
+                    if (targetToken != null) {
+                        log.addTransmissionTarget(targetToken);
+                    }
+                    if (!logs.isEmpty() && (!logGroupName.equals(groupName) || logFlags != flags)) {
+                        mChannel.enqueueForwarded(logs, groupName, flags);
+                        logs = new ArrayList<>();
+                    }
+                    groupName = logGroupName;
+                    flags = logFlags;
+                    logs.add(log);
+                }
+                if (!logs.isEmpty()) {
+                    mChannel.enqueueForwarded(logs, groupName, flags);
+                }
+            }
+        });
+        return true;
+    }
+
     /**
      * {@link #setLogUrl(String)} implementation at instance level.
      *
@@ -746,6 +987,7 @@ public class AppCenter {
         }
 
         /* Store application to use it later for registering services as lifecycle callbacks. */
+        StartupTrace.beginSection("configureInstance");
         mApplication = application;
         mContext = getApplicationContext(application);
         if (isDeviceProtectedStorage(mContext)) {
@@ -781,9 +1023,15 @@ public class AppCenter {
 
             @Override
             public void run() {
-                finishConfiguration(configureFromApp);
+                StartupTrace.beginSection("finishConfiguration");
+                try {
+                    finishConfiguration(configureFromApp);
+                } finally {
+                    StartupTrace.endSection();
+                }
             }
         });
+        StartupTrace.endSection();
         AppCenterLog.info(LOG_TAG, "App Center SDK configured successfully.");
         return true;
     }
@@ -872,11 +1120,26 @@ public class AppCenter {
     private void finishConfiguration(boolean configureFromApp) {
 
         /* Load some global constants. */
-        Constants.loadFromContext(mContext);
+        StartupTrace.beginSection("Constants.loadFromContext");
+        try {
+            Constants.loadFromContext(mContext);
+        } finally {
+            StartupTrace.endSection();
+        }
 
         /* If parameters are valid, init context related resources. */
-        FileManager.initialize(mContext);
-        SharedPreferencesManager.initialize(mContext);
+        StartupTrace.beginSection("FileManager.initialize");
+        try {
+            FileManager.initialize(mContext);
+        } finally {
+            StartupTrace.endSection();
+        }
+        StartupTrace.beginSection("SharedPreferencesManager.initialize");
+        try {
+            SharedPreferencesManager.initialize(mContext);
+        } finally {
+            StartupTrace.endSection();
+        }
 
         /* Set network requests allowed. */
         if (mAllowedNetworkRequests != null) {
@@ -884,7 +1147,12 @@ public class AppCenter {
         }
 
         /* Initialize session storage. */
-        SessionContext.getInstance();
+        StartupTrace.beginSection("SessionContext.getInstance");
+        try {
+            SessionContext.getInstance();
+        } finally {
+            StartupTrace.endSection();
+        }
 
         /* Get enabled state. */
         boolean enabled = isInstanceEnabled();
@@ -892,23 +1160,57 @@ public class AppCenter {
         /* Instantiate HTTP client if it doesn't exist as a dependency. */
         HttpClient httpClient = DependencyConfiguration.getHttpClient();
         if (httpClient == null) {
-            httpClient = createHttpClient(mContext);
+            StartupTrace.beginSection("createHttpClient");
+            try {
+                httpClient = createHttpClient(mContext);
+            } finally {
+                StartupTrace.endSection();
+            }
         }
 
         /* Init channel. */
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
-        mChannel = new DefaultChannel(mContext, mAppSecret, mLogSerializer, httpClient, mHandler);
+        applyLogForwardingProviderState();
+        StartupTrace.beginSection("DefaultChannel");
+        try {
+            if (mMultiProcessEnabled && !ProcessHelper.isMainProcess(mContext)) {
+
+                /* Secondary processes forward logs to the main process which stores and sends them. */
+                AppCenterLog.info(LOG_TAG, "Logs are forwarded to the main process.");
+                Persistence persistence = new ForwardingPersistence(mContext);
+                persistence.setLogSerializer(mLogSerializer);
+                mChannel = new DefaultChannel(mContext, mAppSecret, persistence, mLogSerializer, httpClient, mHandler, null);
+            } else if (mInMemoryStorageEnabled) {
+                Handler persistenceHandler = createPersistenceHandler();
+
+                /* Logs are stored in the database only when they cannot stay in memory. */
+                HybridPersistence persistence = new HybridPersistence(new DatabasePersistence(mContext, true), persistenceHandler);
+                persistence.setLogSerializer(mLogSerializer);
+                mApplicationLifecycleListener.registerApplicationLifecycleCallbacks(persistence);
+                mChannel = new DefaultChannel(mContext, mAppSecret, persistence, mLogSerializer, httpClient, mHandler, persistenceHandler);
+            } else {
+                mChannel = new DefaultChannel(mContext, mAppSecret, mLogSerializer, httpClient, mHandler, createPersistenceHandler());
+            }
+        } finally {
+            StartupTrace.endSection();
+        }
 
         /* Complete set maximum storage size future if starting from app. */
-        if (configureFromApp) {
-            applyStorageMaxSize();
-        } else {
+        StartupTrace.beginSection("setMaxStorageSize");
+        try {
+            if (configureFromApp) {
+                applyStorageMaxSize();
+            } else {
 
-            /* If from library, we apply storage size only later, we have to try using the default value in the mean time. */
-            mChannel.setMaxStorageSize(DEFAULT_MAX_STORAGE_SIZE_IN_BYTES);
+                /* If from library, we apply storage size only later, we have to try using the default value in the mean time. */
+                mChannel.setMaxStorageSize(DEFAULT_MAX_STORAGE_SIZE_IN_BYTES);
+            }
+        } finally {
+            StartupTrace.endSection();
         }
         mChannel.setEnabled(enabled);
+        applyStorageQuotas();
         mChannel.addGroup(CORE_GROUP, DEFAULT_TRIGGER_COUNT, DEFAULT_TRIGGER_INTERVAL, DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS, null, null);
         mOneCollectorChannelListener = new OneCollectorChannelListener(mChannel, mLogSerializer, httpClient, IdHelper.getInstallId());
         if (mLogUrl != null) {
@@ -935,6 +1237,35 @@ public class AppCenter {
         AppCenterLog.debug(LOG_TAG, "App Center initialized.");
     }
 
+    /**
+     * Enable the provider receiving forwarded logs only in multi-process mode.
+     * It is disabled in the manifest so that it is not created at every launch of applications not using it.
+     */
+    @WorkerThread
+    private void applyLogForwardingProviderState() {
+        ComponentName provider = new ComponentName(mContext, LogForwardingProvider.class);
+        int state = mMultiProcessEnabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT;
+        try {
+            PackageManager packageManager = mContext.getPackageManager();
+            if (packageManager.getComponentEnabledSetting(provider) != state) {
+                packageManager.setComponentEnabledSetting(provider, state, PackageManager.DONT_KILL_APP);
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to update the state of the log forwarding provider.", e);
+        }
+    }
+
+    /**
+     * Start the thread writing logs to the database, so that a slow disk does not delay other SDK calls.
+     *
+     * @return handler of the thread.
+     */
+    private static Handler createPersistenceHandler() {
+        HandlerThread persistenceHandlerThread = new HandlerThread("AppCenter.Persistence");
+        persistenceHandlerThread.start();
+        return new Handler(persistenceHandlerThread.getLooper());
+    }
+
     @WorkerThread
     private void applyStorageMaxSize() {
         boolean resizeResult = mChannel.setMaxStorageSize(mMaxStorageSizeInBytes);
@@ -959,17 +1290,21 @@ public class AppCenter {
         }
 
         /* Start each service and collect info for send start service log. */
+        StartupTrace.beginSection("startServices");
         final Collection<AppCenterService> startedServices = new ArrayList<>();
         final Collection<AppCenterService> updatedServices = new ArrayList<>();
         for (Class<? extends AppCenterService> service : services) {
             if (service == null) {
                 AppCenterLog.warn(LOG_TAG, "Skipping null service, please check your varargs/array does not contain any null reference.");
             } else {
+                StartupTrace.beginSection("startService " + service.getSimpleName());
                 try {
                     AppCenterService serviceInstance = (AppCenterService) service.getMethod("getInstance").invoke(null);
                     startOrUpdateService(serviceInstance, startedServices, updatedServices, startFromApp);
                 } catch (Exception e) {
                     AppCenterLog.error(LOG_TAG, "Failed to get service instance '" + service.getName() + "', skipping it.", e);
+                } finally {
+                    StartupTrace.endSection();
                 }
             }
         }
@@ -979,9 +1314,15 @@ public class AppCenter {
 
             @Override
             public void run() {
-                finishStartServices(updatedServices, startedServices, startFromApp);
+                StartupTrace.beginSection("finishStartServices");
+                try {
+                    finishStartServices(updatedServices, startedServices, startFromApp);
+                } finally {
+                    StartupTrace.endSection();
+                }
             }
         });
+        StartupTrace.endSection();
     }
 
     private void startOrUpdateService(AppCenterService serviceInstance, Collection<AppCenterService> startedServices, Collection<AppCenterService> updatedServices, boolean startFromApp) {
@@ -1057,14 +1398,20 @@ public class AppCenter {
             if (!enabled && service.isInstanceEnabled()) {
                 service.setInstanceEnabled(false);
             }
-            if (startFromApp) {
-                service.onStarted(mContext, mChannel, mAppSecret, mTransmissionTargetToken, true);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
-            } else {
-                service.onStarted(mContext, mChannel, null, null, false);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+            StartupTrace.beginSection("onStarted " + service.getServiceName());
+            try {
+                if (startFromApp) {
+                    service.onStarted(mContext, mChannel, mAppSecret, mTransmissionTargetToken, true);
+                    AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
+                } else {
+                    service.onStarted(mContext, mChannel, null, null, false);
+                    AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+                }
+            } finally {
+                StartupTrace.endSection();
             }
         }
+        applyStorageQuotas();
 
         /* If starting from a library, we will send start service log later when app starts with an app secret. */
         if (startFromApp) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Logs deleted first when a group of logs uses more storage than allowed by its {@link StorageQuota}.
+ * Logs of higher priority than the log being stored are never deleted.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        EvictionPolicy.OLDEST_FIRST,
+        EvictionPolicy.LARGEST_FIRST,
+        EvictionPolicy.DROP_NEWEST
+})
+public @interface EvictionPolicy {
+
+    /**
+     * Delete the oldest logs of the group first.
+     */
+    int OLDEST_FIRST = 1;
+
+    /**
+     * Delete the largest logs of the group first, such as logs with attachments.
+     */
+    int LARGEST_FIRST = 2;
+
+    /**
+     * Keep the oldest logs: new logs of the group are not stored while the group exceeds its quota,
+     * and its newest logs are deleted first when storage is full.
+     */
+    int DROP_NEWEST = 3;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.microsoft.appcenter.persistence.ForwardingPersistence;
+
+/**
+ * Receives, in the main process, the logs forwarded by the secondary processes of the application
+ * when {@link AppCenter#setMultiProcessEnabled(boolean)} is used.
+ * The provider is not exported so only the processes of the application can reach it.
+ *
+ * @see ForwardingPersistence
+ */
+public class LogForwardingProvider extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        if (values == null) {
+            return null;
+        }
+        return bulkInsert(uri, new ContentValues[]{values}) > 0 ? uri : null;
+    }
+
+    /**
+     * Enqueue forwarded logs in the main process channel.
+     *
+     * @return the number of logs accepted, all or none. None if the SDK is not started in multi-process mode yet
+     * or if a log group cannot be stored, so that the other process keeps the logs.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        return AppCenter.getInstance().enqueueForwardedLogs(values) ? values.length : 0;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Share of the storage used by a group of logs, see {@link AppCenter#setStorageQuota(String, StorageQuota)}.
+ * <p>
+ * When storage is full, logs are deleted from the group exceeding its reserved size the most,
+ * following the eviction policy of that group. Logs of a group that uses less than its reserved size
+ * are deleted to make room for logs of other groups only if no other log can be deleted.
+ * A reserved size is limited to half of the maximum storage size.
+ * A group can also be limited to a share of the maximum storage size, and its logs can expire
+ * after a time to live.
+ */
+@SuppressWarnings("WeakerAccess")
+public class StorageQuota {
+
+    /**
+     * Maximum share of the storage, as a fraction of the maximum storage size.
+     */
+    private final double mMaxShare;
+
+    /**
+     * Storage size, in bytes, kept for the group.
+     */
+    private final long mReservedSize;
+
+    /**
+     * Logs deleted first.
+     */
+    private final int mEvictionPolicy;
+
+    /**
+     * Time to live of logs in milliseconds, 0 if logs do not expire.
+     */
+    private final long mTimeToLive;
+
+    private StorageQuota(double maxShare, long reservedSize, @EvictionPolicy int evictionPolicy, long timeToLive) {
+        mMaxShare = maxShare;
+        mReservedSize = reservedSize;
+        mEvictionPolicy = evictionPolicy;
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Limit the group to a share of the maximum storage size, deleting its oldest logs first.
+     *
+     * @param maxShare fraction of the maximum storage size, greater than 0 and up to 1.
+     * @return storage quota.
+     * @throws IllegalArgumentException if maxShare is not greater than 0 and up to 1.
+     */
+    @NonNull
+    public static StorageQuota maxShare(double maxShare) {
+        return new StorageQuota(1, 0, EvictionPolicy.OLDEST_FIRST, 0).withMaxShare(maxShare);
+    }
+
+    /**
+     * Keep storage for the group, deleting its oldest logs first when it uses more than that.
+     *
+     * @param reservedSize size in bytes, must not be negative.
+     * @return storage quota.
+     * @throws IllegalArgumentException if reservedSize is negative.
+     */
+    @NonNull
+    public static StorageQuota reservedSize(long reservedSize) {
+        return new StorageQuota(1, 0, EvictionPolicy.OLDEST_FIRST, 0).withReservedSize(reservedSize);
+    }
+
+    /**
+     * Delete the logs of the group that were not sent after a time to live.
+     *
+     * @param timeToLive time in milliseconds after the creation of a log, must be positive.
+     * @return storage quota.
+     * @throws IllegalArgumentException if timeToLive is not positive.
+     */
+    @NonNull
+    public static StorageQuota timeToLive(long timeToLive) {
+        return new StorageQuota(1, 0, EvictionPolicy.OLDEST_FIRST, 0).withTimeToLive(timeToLive);
+    }
+
+    /**
+     * Get a copy of this quota with a different share of the maximum storage size.
+     *
+     * @param maxShare fraction of the maximum storage size, greater than 0 and up to 1.
+     * @return storage quota.
+     * @throws IllegalArgumentException if maxShare is not greater than 0 and up to 1.
+     */
+    @NonNull
+    public StorageQuota withMaxShare(double maxShare) {
+        if (!(maxShare > 0 && maxShare <= 1)) {
+            throw new IllegalArgumentException("maxShare must be greater than 0 and up to 1.");
+        }
+        return new StorageQuota(maxShare, mReservedSize, mEvictionPolicy, mTimeToLive);
+    }
+
+    /**
+     * Get a copy of this quota with a different reserved size.
+     *
+     * @param reservedSize size in bytes, must not be negative.
+     * @return storage quota.
+     * @throws IllegalArgumentException if reservedSize is negative.
+     */
+    @NonNull
+    public StorageQuota withReservedSize(long reservedSize) {
+        if (reservedSize < 0) {
+            throw new IllegalArgumentException("reservedSize must not be negative.");
+        }
+        return new StorageQuota(mMaxShare, reservedSize, mEvictionPolicy, mTimeToLive);
+    }
+
+    /**
+     * Get a copy of this quota with a different eviction policy.
+     *
+     * @param evictionPolicy logs deleted first.
+     * @return storage quota.
+     * @throws IllegalArgumentException if evictionPolicy is not a {@link EvictionPolicy} value.
+     */
+    @NonNull
+    public StorageQuota withEvictionPolicy(@EvictionPolicy int evictionPolicy) {
+        if (evictionPolicy != EvictionPolicy.OLDEST_FIRST && evictionPolicy != EvictionPolicy.LARGEST_FIRST && evictionPolicy != EvictionPolicy.DROP_NEWEST) {
+            throw new IllegalArgumentException("Invalid eviction policy: " + evictionPolicy);
+        }
+        return new StorageQuota(mMaxShare, mReservedSize, evictionPolicy, mTimeToLive);
+    }
+
+    /**
+     * Get a copy of this quota with a different time to live.
+     * Logs stored before the time to live was set expire after that time from the next expiration check.
+     *
+     * @param timeToLive time in milliseconds after the creation of a log, must be positive.
+     * @return storage quota.
+     * @throws IllegalArgumentException if timeToLive is not positive.
+     */
+    @NonNull
+    public StorageQuota withTimeToLive(long timeToLive) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive.");
+        }
+        return new StorageQuota(mMaxShare, mReservedSize, mEvictionPolicy, timeToLive);
+    }
+
+    /**
+     * Get the maximum share of the storage.
+     *
+     * @return fraction of the maximum storage size, 1 if the group is not limited.
+     */
+    public double getMaxShare() {
+        return mMaxShare;
+    }
+
+    /**
+     * Get the storage size kept for the group.
+     *
+     * @return size in bytes.
+     */
+    public long getReservedSize() {
+        return mReservedSize;
+    }
+
+    /**
+     * Get the eviction policy.
+     *
+     * @return logs deleted first.
+     */
+    @EvictionPolicy
+    public int getEvictionPolicy() {
+        return mEvictionPolicy;
+    }
+
+    /**
+     * Get the time to live of logs.
+     *
+     * @return time in milliseconds after the creation of a log, 0 if logs do not expire.
+     */
+    public long getTimeToLive() {
+        return mTimeToLive;
+    }
+}
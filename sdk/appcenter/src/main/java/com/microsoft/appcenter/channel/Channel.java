@@ -7,10 +7,15 @@ package com.microsoft.appcenter.channel;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 
+import java.util.Collection;
+import java.util.List;
+
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
 
@@ -35,6 +40,14 @@ public interface Channel {
      */
     boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Set the storage quota of a group, used when logs are deleted to make room for other logs.
+     *
+     * @param groupName the name of a group.
+     * @param quota     the quota, null to remove it.
+     */
+    void setStorageQuota(@NonNull String groupName, @Nullable StorageQuota quota);
+
     /**
      * Add a group for logs to be persisted and sent.
      *
@@ -81,6 +94,39 @@ public interface Channel {
                  @NonNull String groupName,
                  @IntRange(from = NORMAL, to = CRITICAL) int flags);
 
+    /**
+     * Add logs to queue to be persisted and sent. Logs are prepared one by one as with
+     * {@link #enqueue(Log, String, int)} then persisted together.
+     *
+     * @param logs      the logs to be enqueued.
+     * @param groupName the group to use.
+     * @param flags     the flags for these logs.
+     */
+    void enqueue(@NonNull Collection<Log> logs,
+                 @NonNull String groupName,
+                 @IntRange(from = NORMAL, to = CRITICAL) int flags);
+
+    /**
+     * Add logs forwarded by another process of the application to queue to be persisted and sent.
+     * These logs were already prepared and filtered in that process, so listeners are not called.
+     *
+     * @param logs      the forwarded logs.
+     * @param groupName the group to use.
+     * @param flags     the flags for these logs.
+     */
+    void enqueueForwarded(@NonNull List<Log> logs,
+                          @NonNull String groupName,
+                          @IntRange(from = NORMAL, to = CRITICAL) int flags);
+
+    /**
+     * Check whether logs forwarded by another process for a group are currently accepted.
+     * Can be called from any thread, so that the other process keeps the logs it cannot forward.
+     *
+     * @param groupName the group name.
+     * @return true if {@link #enqueueForwarded} would store logs of that group.
+     */
+    boolean acceptsForwardedLogs(@NonNull String groupName);
+
     /**
      * Check whether channel is enabled or disabled.
      *
@@ -248,4 +294,37 @@ public interface Channel {
          */
         void onFailure(Log log, Exception e);
     }
+
+    /**
+     * Group listener notified once per batch. Logs of a batch are not kept in memory while the batch is sent,
+     * they are read again from persistence for {@link #onSuccess} and {@link #onFailure} only when required.
+     */
+    interface BatchListener extends GroupListener {
+
+        /**
+         * Check whether {@link #onSuccess} and {@link #onFailure} must be called for each log of a batch.
+         *
+         * @return true to read the logs again and call the listener for each of them.
+         */
+        boolean requiresLogCallbacks();
+
+        /**
+         * Called when a batch is delivered successfully, before log callbacks if any.
+         *
+         * @param logCount        The number of logs in the batch.
+         * @param missingLogCount The number of logs deleted from storage while the batch was sent,
+         *                        which get no log callback. Always 0 when log callbacks are not required.
+         */
+        void onBatchSuccess(int logCount, int missingLogCount);
+
+        /**
+         * Called when a batch is not delivered and its logs are discarded, before log callbacks if any.
+         *
+         * @param logCount        The number of logs in the batch.
+         * @param missingLogCount The number of logs deleted from storage while the batch was sent,
+         *                        which get no log callback. Always 0 when log callbacks are not required.
+         * @param e               The exception for failure.
+         */
+        void onBatchFailure(int logCount, int missingLogCount, Exception e);
+    }
 }
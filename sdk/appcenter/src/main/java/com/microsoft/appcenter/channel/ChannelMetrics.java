@@ -0,0 +1,713 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Counters and histograms about the log pipeline: enqueuing, persistence and sending.
+ * <p>
+ * Nothing is recorded unless collection is enabled or a listener is set, the recording methods
+ * then only read a volatile flag. When collecting, recording does not allocate memory
+ * except for the first value of each group.
+ */
+public class ChannelMetrics {
+
+    /**
+     * Upper bounds (inclusive) of histogram buckets, following a 1-2-5 series.
+     * An extra bucket counts values above the last bound.
+     */
+    @VisibleForTesting
+    static final long[] BUCKET_UPPER_BOUNDS = {
+            1, 2, 5,
+            10, 20, 50,
+            100, 200, 500,
+            1000, 2000, 5000,
+            10000, 20000, 50000,
+            100000, 200000, 500000,
+            1000000, 2000000, 5000000,
+            10000000
+    };
+
+    /**
+     * Number of HTTP status classes counted, index 0 is for calls that got no HTTP response.
+     */
+    private static final int STATUS_CLASS_COUNT = 6;
+
+    /**
+     * Counters by group name.
+     */
+    private static final ConcurrentHashMap<String, GroupCounters> sGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Lock for global state.
+     */
+    private static final Object sLock = new Object();
+
+    /**
+     * Whether values are recorded.
+     */
+    private static volatile boolean sEnabled;
+
+    /**
+     * Whether collection was enabled explicitly, regardless of listener.
+     */
+    private static boolean sCollectionEnabled;
+
+    /**
+     * Export hook.
+     */
+    private static volatile Listener sListener;
+
+    /**
+     * When collection started, in milliseconds since boot.
+     */
+    private static long sStartTime;
+
+    /**
+     * Number of HTTP calls retried, for all groups.
+     */
+    private static long sHttpRetryCount;
+
+    /**
+     * Enable or disable collecting metrics. Enabling after being disabled starts with empty metrics.
+     *
+     * @param enabled true to collect metrics even if no listener is set.
+     */
+    public static void setEnabled(boolean enabled) {
+        synchronized (sLock) {
+            sCollectionEnabled = enabled;
+            updateEnabled();
+        }
+    }
+
+    /**
+     * Check whether metrics are collected.
+     *
+     * @return true if collection is enabled or a listener is set.
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Set a listener that receives metrics after each batch is sent. Metrics are collected while a listener is set.
+     *
+     * @param listener listener or null to remove it.
+     */
+    public static void setListener(@Nullable Listener listener) {
+        synchronized (sLock) {
+            sListener = listener;
+            updateEnabled();
+        }
+    }
+
+    private static void updateEnabled() {
+        boolean enabled = sCollectionEnabled || sListener != null;
+        if (enabled && !sEnabled) {
+            sGroups.clear();
+            sHttpRetryCount = 0;
+            sStartTime = SystemClock.elapsedRealtime();
+        }
+        sEnabled = enabled;
+    }
+
+    /**
+     * Get the metrics collected so far.
+     *
+     * @return a copy of the metrics.
+     */
+    @NonNull
+    public static Snapshot getSnapshot() {
+        long elapsedMillis;
+        long httpRetryCount;
+        synchronized (sLock) {
+            elapsedMillis = sEnabled ? SystemClock.elapsedRealtime() - sStartTime : 0;
+            httpRetryCount = sHttpRetryCount;
+        }
+        Map<String, GroupMetrics> groups = new HashMap<>();
+        for (Map.Entry<String, GroupCounters> entry : sGroups.entrySet()) {
+            groups.put(entry.getKey(), entry.getValue().snapshot(entry.getKey(), elapsedMillis));
+        }
+        return new Snapshot(elapsedMillis, httpRetryCount, groups);
+    }
+
+    /**
+     * Send the current metrics to the listener if any.
+     */
+    static void notifyListener() {
+        Listener listener = sListener;
+        if (listener != null) {
+            try {
+                listener.onChannelMetrics(getSnapshot());
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, "Channel metrics listener failed.", e);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        synchronized (sLock) {
+            sCollectionEnabled = false;
+            sListener = null;
+            sEnabled = false;
+            sGroups.clear();
+            sHttpRetryCount = 0;
+        }
+    }
+
+    @Nullable
+    private static GroupCounters getCounters(String group) {
+        if (!sEnabled) {
+            return null;
+        }
+        GroupCounters counters = sGroups.get(group);
+        if (counters == null) {
+            counters = new GroupCounters();
+            GroupCounters previous = sGroups.putIfAbsent(group, counters);
+            if (previous != null) {
+                counters = previous;
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Record a log enqueued in the channel.
+     *
+     * @param group group name.
+     */
+    static void recordEnqueue(String group) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordEnqueue();
+        }
+    }
+
+    /**
+     * Record the duration of a call writing logs to persistence.
+     *
+     * @param group            group name.
+     * @param durationInMicros duration in microseconds.
+     */
+    static void recordPutLogLatency(String group, long durationInMicros) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordPutLogLatency(durationInMicros);
+        }
+    }
+
+    /**
+     * Record the current number of logs waiting to be sent.
+     *
+     * @param group group name.
+     * @param count pending log count.
+     */
+    static void recordPendingLogCount(String group, int count) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordPendingLogCount(count);
+        }
+    }
+
+    /**
+     * Record the result of sending a batch.
+     *
+     * @param group            group name.
+     * @param durationInMillis duration of the HTTP call including retries, in milliseconds.
+     * @param statusCode       HTTP status code, 0 if no response was received.
+     */
+    static void recordHttpCall(String group, long durationInMillis, int statusCode) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordHttpCall(durationInMillis, statusCode);
+        }
+    }
+
+    /**
+     * Record a log written to persistence.
+     *
+     * @param group group name.
+     * @param bytes payload size in bytes.
+     */
+    public static void recordPersistedLog(String group, long bytes) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordPersistedLog(bytes);
+        }
+    }
+
+    /**
+     * Record a log deleted from persistence to make room for other logs.
+     *
+     * @param group group name.
+     */
+    public static void recordEvictedLog(String group) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordEvictedLog();
+        }
+    }
+
+    /**
+     * Record a log not stored because its group exceeds its storage quota.
+     *
+     * @param group group name.
+     */
+    public static void recordQuotaRejectedLog(String group) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordQuotaRejectedLog();
+        }
+    }
+
+    /**
+     * Record a batch of logs read from persistence.
+     *
+     * @param group    group name.
+     * @param logCount number of logs in the batch.
+     * @param bytes    payload size of the batch in bytes.
+     */
+    public static void recordBatch(String group, int logCount, long bytes) {
+        GroupCounters counters = getCounters(group);
+        if (counters != null) {
+            counters.recordBatch(logCount, bytes);
+        }
+    }
+
+    /**
+     * Record an HTTP call scheduled for retry.
+     */
+    public static void recordHttpRetry() {
+        if (sEnabled) {
+            synchronized (sLock) {
+                sHttpRetryCount++;
+            }
+        }
+    }
+
+    /**
+     * Listener for exporting metrics.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the SDK background thread each time a batch of logs is sent or fails to be sent.
+         *
+         * @param snapshot metrics collected since collection started.
+         */
+        void onChannelMetrics(@NonNull Snapshot snapshot);
+    }
+
+    /**
+     * Mutable histogram with fixed buckets.
+     */
+    private static class HistogramCounters {
+
+        private final long[] mBucketCounts = new long[BUCKET_UPPER_BOUNDS.length + 1];
+
+        private long mCount;
+
+        private long mSum;
+
+        private long mMax;
+
+        void record(long value) {
+            int index = Arrays.binarySearch(BUCKET_UPPER_BOUNDS, value);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            mBucketCounts[index]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        Histogram snapshot() {
+            return new Histogram(mBucketCounts.clone(), mCount, mSum, mMax);
+        }
+    }
+
+    /**
+     * Mutable counters of a group.
+     */
+    private static class GroupCounters {
+
+        private final HistogramCounters mPutLogLatency = new HistogramCounters();
+
+        private final HistogramCounters mBatchSizes = new HistogramCounters();
+
+        private final HistogramCounters mBatchBytes = new HistogramCounters();
+
+        private final HistogramCounters mHttpLatency = new HistogramCounters();
+
+        private final long[] mHttpStatusClassCounts = new long[STATUS_CLASS_COUNT];
+
+        private long mEnqueuedLogCount;
+
+        private long mPersistedLogCount;
+
+        private long mPersistedBytes;
+
+        private long mEvictedLogCount;
+
+        private long mQuotaRejectedLogCount;
+
+        private int mPendingLogCount;
+
+        synchronized void recordEnqueue() {
+            mEnqueuedLogCount++;
+        }
+
+        synchronized void recordPutLogLatency(long durationInMicros) {
+            mPutLogLatency.record(durationInMicros);
+        }
+
+        synchronized void recordPendingLogCount(int count) {
+            mPendingLogCount = count;
+        }
+
+        synchronized void recordHttpCall(long durationInMillis, int statusCode) {
+            mHttpLatency.record(durationInMillis);
+            int statusClass = statusCode / 100;
+            mHttpStatusClassCounts[statusClass > 0 && statusClass < STATUS_CLASS_COUNT ? statusClass : 0]++;
+        }
+
+        synchronized void recordPersistedLog(long bytes) {
+            mPersistedLogCount++;
+            mPersistedBytes += bytes;
+        }
+
+        synchronized void recordEvictedLog() {
+            mEvictedLogCount++;
+        }
+
+        synchronized void recordQuotaRejectedLog() {
+            mQuotaRejectedLogCount++;
+        }
+
+        synchronized void recordBatch(int logCount, long bytes) {
+            mBatchSizes.record(logCount);
+            mBatchBytes.record(bytes);
+        }
+
+        synchronized GroupMetrics snapshot(String group, long elapsedMillis) {
+            return new GroupMetrics(group, elapsedMillis, mEnqueuedLogCount, mPersistedLogCount, mPersistedBytes,
+                    mEvictedLogCount, mQuotaRejectedLogCount, mPendingLogCount, mHttpStatusClassCounts.clone(), mPutLogLatency.snapshot(),
+                    mBatchSizes.snapshot(), mBatchBytes.snapshot(), mHttpLatency.snapshot());
+        }
+    }
+
+    /**
+     * Metrics of all groups at a given time.
+     */
+    public static class Snapshot {
+
+        private final long mElapsedMillis;
+
+        private final long mHttpRetryCount;
+
+        private final Map<String, GroupMetrics> mGroups;
+
+        Snapshot(long elapsedMillis, long httpRetryCount, Map<String, GroupMetrics> groups) {
+            mElapsedMillis = elapsedMillis;
+            mHttpRetryCount = httpRetryCount;
+            mGroups = Collections.unmodifiableMap(groups);
+        }
+
+        /**
+         * Get the time since collection started.
+         *
+         * @return duration in milliseconds, 0 if not collecting.
+         */
+        public long getElapsedMillis() {
+            return mElapsedMillis;
+        }
+
+        /**
+         * Get the number of HTTP calls scheduled for retry, for all groups.
+         *
+         * @return retry count.
+         */
+        public long getHttpRetryCount() {
+            return mHttpRetryCount;
+        }
+
+        /**
+         * Get metrics by group name.
+         *
+         * @return unmodifiable map of group metrics.
+         */
+        @NonNull
+        public Map<String, GroupMetrics> getGroups() {
+            return mGroups;
+        }
+    }
+
+    /**
+     * Metrics of a group of logs, usually one per service.
+     */
+    public static class GroupMetrics {
+
+        private final String mGroupName;
+
+        private final long mElapsedMillis;
+
+        private final long mEnqueuedLogCount;
+
+        private final long mPersistedLogCount;
+
+        private final long mPersistedBytes;
+
+        private final long mEvictedLogCount;
+
+        private final long mQuotaRejectedLogCount;
+
+        private final int mPendingLogCount;
+
+        private final long[] mHttpStatusClassCounts;
+
+        private final Histogram mPutLogLatency;
+
+        private final Histogram mBatchSizes;
+
+        private final Histogram mBatchBytes;
+
+        private final Histogram mHttpLatency;
+
+        GroupMetrics(String groupName, long elapsedMillis, long enqueuedLogCount, long persistedLogCount, long persistedBytes,
+                     long evictedLogCount, long quotaRejectedLogCount, int pendingLogCount, long[] httpStatusClassCounts, Histogram putLogLatency,
+                     Histogram batchSizes, Histogram batchBytes, Histogram httpLatency) {
+            mGroupName = groupName;
+            mElapsedMillis = elapsedMillis;
+            mEnqueuedLogCount = enqueuedLogCount;
+            mPersistedLogCount = persistedLogCount;
+            mPersistedBytes = persistedBytes;
+            mEvictedLogCount = evictedLogCount;
+            mQuotaRejectedLogCount = quotaRejectedLogCount;
+            mPendingLogCount = pendingLogCount;
+            mHttpStatusClassCounts = httpStatusClassCounts;
+            mPutLogLatency = putLogLatency;
+            mBatchSizes = batchSizes;
+            mBatchBytes = batchBytes;
+            mHttpLatency = httpLatency;
+        }
+
+        /**
+         * Get the group name.
+         *
+         * @return group name.
+         */
+        @NonNull
+        public String getGroupName() {
+            return mGroupName;
+        }
+
+        /**
+         * Get the number of logs enqueued in the channel.
+         *
+         * @return log count.
+         */
+        public long getEnqueuedLogCount() {
+            return mEnqueuedLogCount;
+        }
+
+        /**
+         * Get the average enqueue rate since collection started.
+         *
+         * @return logs per second.
+         */
+        public double getEnqueueRate() {
+            return mElapsedMillis > 0 ? mEnqueuedLogCount * 1000.0 / mElapsedMillis : 0;
+        }
+
+        /**
+         * Get the number of logs written to persistence.
+         *
+         * @return log count.
+         */
+        public long getPersistedLogCount() {
+            return mPersistedLogCount;
+        }
+
+        /**
+         * Get the payload size of the logs written to persistence.
+         *
+         * @return size in bytes.
+         */
+        public long getPersistedBytes() {
+            return mPersistedBytes;
+        }
+
+        /**
+         * Get the number of logs deleted from persistence to make room for other logs.
+         *
+         * @return log count.
+         */
+        public long getEvictedLogCount() {
+            return mEvictedLogCount;
+        }
+
+        /**
+         * Get the number of logs not stored because the group exceeds its storage quota
+         * with the {@link com.microsoft.appcenter.EvictionPolicy#DROP_NEWEST} policy.
+         *
+         * @return log count.
+         */
+        public long getQuotaRejectedLogCount() {
+            return mQuotaRejectedLogCount;
+        }
+
+        /**
+         * Get the number of logs waiting to be sent, when last recorded.
+         *
+         * @return log count.
+         */
+        public int getPendingLogCount() {
+            return mPendingLogCount;
+        }
+
+        /**
+         * Get the number of sent batches by HTTP status class.
+         *
+         * @return counts indexed by status code divided by 100, index 0 counting calls without HTTP response.
+         */
+        @NonNull
+        public long[] getHttpStatusClassCounts() {
+            return mHttpStatusClassCounts.clone();
+        }
+
+        /**
+         * Get the duration of calls writing logs to persistence.
+         *
+         * @return histogram of durations in microseconds.
+         */
+        @NonNull
+        public Histogram getPutLogLatency() {
+            return mPutLogLatency;
+        }
+
+        /**
+         * Get the number of logs in batches read from persistence.
+         *
+         * @return histogram of log counts.
+         */
+        @NonNull
+        public Histogram getBatchSizes() {
+            return mBatchSizes;
+        }
+
+        /**
+         * Get the payload size of batches read from persistence.
+         *
+         * @return histogram of sizes in bytes.
+         */
+        @NonNull
+        public Histogram getBatchBytes() {
+            return mBatchBytes;
+        }
+
+        /**
+         * Get the duration of HTTP calls sending batches, including retries.
+         *
+         * @return histogram of durations in milliseconds.
+         */
+        @NonNull
+        public Histogram getHttpLatency() {
+            return mHttpLatency;
+        }
+    }
+
+    /**
+     * Distribution of recorded values in fixed buckets.
+     */
+    public static class Histogram {
+
+        private final long[] mBucketCounts;
+
+        private final long mCount;
+
+        private final long mSum;
+
+        private final long mMax;
+
+        Histogram(long[] bucketCounts, long count, long sum, long max) {
+            mBucketCounts = bucketCounts;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        /**
+         * Get the upper bounds (inclusive) of buckets. The last bucket has no upper bound.
+         *
+         * @return bounds, one less than the number of buckets.
+         */
+        @NonNull
+        public static long[] getBucketUpperBounds() {
+            return BUCKET_UPPER_BOUNDS.clone();
+        }
+
+        /**
+         * Get the number of values in each bucket.
+         *
+         * @return counts by bucket.
+         */
+        @NonNull
+        public long[] getBucketCounts() {
+            return mBucketCounts.clone();
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getSum() {
+            return mSum;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mCount > 0 ? (double) mSum / mCount : 0;
+        }
+
+        /**
+         * Estimate a percentile as the upper bound of the bucket containing it, capped by the maximum value.
+         *
+         * @param percentile percentile between 0 and 100.
+         * @return estimated value, 0 if no value was recorded.
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long cumulated = 0;
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS.length; i++) {
+                cumulated += mBucketCounts[i];
+                if (cumulated >= rank && cumulated > 0) {
+                    return Math.min(BUCKET_UPPER_BOUNDS[i], mMax);
+                }
+            }
+            return mMax;
+        }
+    }
+}
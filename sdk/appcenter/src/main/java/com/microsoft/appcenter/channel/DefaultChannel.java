@@ -7,14 +7,18 @@ package com.microsoft.appcenter.channel;
 
 import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpException;
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -23,6 +27,7 @@ import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.ReloadableLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
@@ -30,6 +35,7 @@ import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.StartupTrace;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.io.IOException;
@@ -40,12 +46,16 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
@@ -68,6 +78,30 @@ public class DefaultChannel implements Channel {
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * Delay after channel creation before ending startup mode, in ms.
+     */
+    @VisibleForTesting
+    static final long STARTUP_DURATION = 10000;
+
+    /**
+     * Interval between storage maintenance tasks, in ms.
+     */
+    @VisibleForTesting
+    static final long STORAGE_MAINTENANCE_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Delay before reclaiming more storage when free storage is left, in ms.
+     */
+    @VisibleForTesting
+    static final long RECLAIM_STORAGE_STEP_DELAY = 10000;
+
+    /**
+     * Maximum time to wait on shutdown for logs queued on the persistence lane to be stored, in ms.
+     */
+    @VisibleForTesting
+    static final long SHUTDOWN_FLUSH_TIMEOUT = 4000;
+
     /**
      * Application context.
      */
@@ -76,7 +110,7 @@ public class DefaultChannel implements Channel {
     /**
      * The application secret for the ingestion service.
      */
-    private String mAppSecret;
+    private volatile String mAppSecret;
 
     /**
      * The installId that's required for forwarding to ingestion.
@@ -113,6 +147,16 @@ public class DefaultChannel implements Channel {
      */
     private final Handler mAppCenterHandler;
 
+    /**
+     * Handler of the persistence lane that writes logs in enqueue order, null to write them on the App Center thread.
+     */
+    private final Handler mPersistenceHandler;
+
+    /**
+     * Number of writes and deletes posted to the persistence lane that did not run yet.
+     */
+    private final AtomicInteger mQueuedWriteCount = new AtomicInteger();
+
     /**
      * Is channel enabled?
      */
@@ -122,19 +166,46 @@ public class DefaultChannel implements Channel {
      * Is channel disabled due to connectivity issues or was the problem fatal?
      * In that case we stop accepting new logs in database.
      */
-    private boolean mDiscardLogs;
+    private volatile boolean mDiscardLogs;
 
     /**
      * Device properties.
      */
     private Device mDevice;
 
+    /**
+     * Logs prepared by {@link #enqueue(Collection, String, int)} and not yet persisted,
+     * by group name and flags. Null when not enqueuing a collection.
+     */
+    private Map<String, BatchedLogs> mBatchedLogs;
+
     /**
      * State checker. If this counter changes during an async call, we have to ignore the result in the callback.
      * Cancelling a database call would be unreliable, and if it's too fast you could still have the callback being called.
      */
     private int mCurrentState;
 
+    /**
+     * True while groups added at startup share a single log count query.
+     */
+    private boolean mStartupMode;
+
+    /**
+     * Log counts by group read once during startup mode. A group that already consumed its count is mapped to null.
+     */
+    private Map<String, Integer> mStartupLogCounts;
+
+    /**
+     * Runnable that performs storage maintenance and triggers itself in {@link #STORAGE_MAINTENANCE_INTERVAL} ms.
+     */
+    private final Runnable mStorageMaintenanceRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            performStorageMaintenance();
+        }
+    };
+
     /**
      * Creates and initializes a new instance.
      *
@@ -145,7 +216,37 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(httpClient, logSerializer), appCenterHandler);
+        this(context, appSecret, logSerializer, httpClient, appCenterHandler, null);
+    }
+
+    /**
+     * Creates and initializes a new instance that writes logs to storage on a separate lane.
+     *
+     * @param context            The context.
+     * @param appSecret          The application secret.
+     * @param logSerializer      The log serializer.
+     * @param httpClient         The HTTP client instance.
+     * @param appCenterHandler   App Center looper thread handler.
+     * @param persistenceHandler Handler of a thread dedicated to writing logs, null to write them on the App Center thread.
+     */
+    public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler, @Nullable Handler persistenceHandler) {
+        this(context, appSecret, buildDefaultPersistence(context, logSerializer), logSerializer, httpClient, appCenterHandler, persistenceHandler);
+    }
+
+    /**
+     * Creates and initializes a new instance with the given storage.
+     *
+     * @param context            The context.
+     * @param appSecret          The application secret.
+     * @param persistence        The storage, with its log serializer set.
+     * @param logSerializer      The log serializer.
+     * @param httpClient         The HTTP client instance.
+     * @param appCenterHandler   App Center looper thread handler.
+     * @param persistenceHandler Handler of a thread dedicated to writing logs, null to write them on the App Center thread.
+     */
+    public DefaultChannel(@NonNull Context context, String appSecret, @NonNull Persistence persistence, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler, @Nullable Handler persistenceHandler) {
+        this(context, appSecret, persistence, new AppCenterIngestion(httpClient, logSerializer), appCenterHandler, persistenceHandler);
+        enableStartupMode();
     }
 
     /**
@@ -159,6 +260,21 @@ public class DefaultChannel implements Channel {
      */
     @VisibleForTesting
     DefaultChannel(@NonNull Context context, String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler) {
+        this(context, appSecret, persistence, ingestion, appCenterHandler, null);
+    }
+
+    /**
+     * Overloaded constructor with limited visibility that allows for dependency injection.
+     *
+     * @param context            The context.
+     * @param appSecret          The application secret.
+     * @param persistence        Persistence object for dependency injection.
+     * @param ingestion          Ingestion object for dependency injection.
+     * @param appCenterHandler   App Center looper thread handler.
+     * @param persistenceHandler Handler of a thread dedicated to writing logs, null to write them on the App Center thread.
+     */
+    @VisibleForTesting
+    DefaultChannel(@NonNull Context context, String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler, @Nullable Handler persistenceHandler) {
         mContext = context;
         mAppSecret = appSecret;
         mInstallId = IdHelper.getInstallId();
@@ -169,6 +285,7 @@ public class DefaultChannel implements Channel {
         mIngestions = new HashSet<>();
         mIngestions.add(mIngestion);
         mAppCenterHandler = appCenterHandler;
+        mPersistenceHandler = persistenceHandler;
         mEnabled = true;
     }
 
@@ -176,17 +293,162 @@ public class DefaultChannel implements Channel {
      * Init Persistence for default constructor.
      */
     private static Persistence buildDefaultPersistence(@NonNull Context context, @NonNull LogSerializer logSerializer) {
-        Persistence persistence = new DatabasePersistence(context);
+        Persistence persistence = new DatabasePersistence(context, true);
         persistence.setLogSerializer(logSerializer);
         return persistence;
     }
 
+    /**
+     * Start counting logs of all groups added during startup with a single query,
+     * and schedule the storage checks deferred by persistence.
+     */
+    @VisibleForTesting
+    void enableStartupMode() {
+        mStartupMode = true;
+        mAppCenterHandler.postDelayed(new Runnable() {
+
+            @Override
+            public void run() {
+                mStartupMode = false;
+                mStartupLogCounts = null;
+                mPersistence.performDeferredChecks();
+                performStorageMaintenance();
+            }
+        }, STARTUP_DURATION);
+    }
+
+    /**
+     * Delete expired logs and reclaim free storage if no log is being written or sent, then schedule the next maintenance.
+     * Storage is reclaimed by steps until no free storage is left.
+     */
+    @VisibleForTesting
+    void performStorageMaintenance() {
+        if (!isIdle()) {
+            AppCenterLog.verbose(LOG_TAG, "Storage maintenance postponed while logs are written or sent.");
+            scheduleStorageMaintenance(STORAGE_MAINTENANCE_INTERVAL);
+            return;
+        }
+
+        /* Vacuuming can take a while, run it on the persistence lane if any and keep it in order with writes. */
+        final Map<String, GroupState> groupStates = mEnabled ? new HashMap<>(mGroupStates) : null;
+        final Map<String, Integer> writeGenerations = new HashMap<>();
+        if (groupStates != null) {
+            for (GroupState groupState : groupStates.values()) {
+                writeGenerations.put(groupState.mName, groupState.mWriteGeneration);
+            }
+        }
+        runAfterQueuedWrites(new Runnable() {
+
+            @Override
+            public void run() {
+                final Map<String, Integer> expiredCounts = groupStates != null ? mPersistence.deleteExpiredLogs() : Collections.<String, Integer>emptyMap();
+                final boolean reclaimMore = mPersistence.reclaimStorage();
+                runOnAppCenterThread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        onExpiredLogsDeleted(groupStates, writeGenerations, expiredCounts);
+                        scheduleStorageMaintenance(reclaimMore ? RECLAIM_STORAGE_STEP_DELAY : STORAGE_MAINTENANCE_INTERVAL);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Schedule the next storage maintenance.
+     *
+     * @param delay delay in milliseconds.
+     */
+    private void scheduleStorageMaintenance(long delay) {
+        mAppCenterHandler.removeCallbacks(mStorageMaintenanceRunnable);
+        mAppCenterHandler.postDelayed(mStorageMaintenanceRunnable, delay);
+    }
+
+    /**
+     * Update pending log counts after deleting expired logs, they are not pending anymore.
+     *
+     * @param groupStates      group states when the logs were deleted, null if they were not deleted.
+     * @param writeGenerations write generation of each group when the logs were deleted.
+     * @param expiredCounts    deleted log count by group.
+     */
+    private void onExpiredLogsDeleted(Map<String, GroupState> groupStates, Map<String, Integer> writeGenerations, Map<String, Integer> expiredCounts) {
+        if (groupStates == null) {
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : expiredCounts.entrySet()) {
+            GroupState groupState = groupStates.get(entry.getKey());
+
+            /* Logs of a group cleared or removed in the meantime are already not counted. */
+            if (groupState != null && groupState == mGroupStates.get(groupState.mName) && writeGenerations.get(groupState.mName) == groupState.mWriteGeneration) {
+                groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - entry.getValue());
+                AppCenterLog.debug(LOG_TAG, "deleteExpiredLogs(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+                ChannelMetrics.recordPendingLogCount(groupState.mName, groupState.mPendingLogCount);
+            }
+        }
+    }
+
+    /**
+     * Check whether logs are being written or sent.
+     *
+     * @return true if no log is being written or sent.
+     */
+    private boolean isIdle() {
+        if (mQueuedWriteCount.get() > 0) {
+            return false;
+        }
+        for (GroupState groupState : mGroupStates.values()) {
+            if (!groupState.mSendingBatches.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the logs of a group being added.
+     *
+     * @param groupName the group name.
+     * @return the number of logs of the group in persistence.
+     */
+    private int countLogs(String groupName) {
+        if (mStartupMode) {
+            if (mStartupLogCounts == null) {
+                mStartupLogCounts = mPersistence.countLogsByGroup();
+                if (mStartupLogCounts == null) {
+                    mStartupMode = false;
+                    return mPersistence.countLogs(groupName);
+                }
+            }
+
+            /*
+             * Logs are only stored for added groups, so the count stays valid until the group is added.
+             * It might be higher if logs were deleted to fit the storage size, which only triggers an earlier batch.
+             * Counts are used once, the group might have been removed and added again.
+             */
+            boolean counted = mStartupLogCounts.containsKey(groupName);
+            Integer count = mStartupLogCounts.put(groupName, null);
+            if (!counted) {
+                return 0;
+            }
+            if (count != null) {
+                return count;
+            }
+        }
+        return mPersistence.countLogs(groupName);
+    }
+
     @WorkerThread
     @Override
     public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
         return mPersistence.setMaxStorageSize(maxStorageSizeInBytes);
     }
 
+    @Override
+    public void setStorageQuota(@NonNull String groupName, @Nullable StorageQuota quota) {
+        mPersistence.setStorageQuota(groupName, quota);
+    }
+
     /**
      * Call this after every async (such as database/ingestion) callback and stop processing if it returns false.
      * That means either the groupState was removed (or removed/added again),
@@ -229,7 +491,7 @@ public class DefaultChannel implements Channel {
         mGroupStates.put(groupName, groupState);
 
         /* Count pending logs. */
-        groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        groupState.mPendingLogCount = countLogs(groupName);
 
         /*
          * If no app secret, don't resume sending App Center logs from storage.
@@ -365,12 +627,20 @@ public class DefaultChannel implements Channel {
      * @param groupName the group name.
      */
     @Override
-    public void clear(String groupName) {
-        if (!mGroupStates.containsKey(groupName)) {
+    public void clear(final String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
             return;
         }
         AppCenterLog.debug(LOG_TAG, "clear(" + groupName + ")");
-        mPersistence.deleteLogs(groupName);
+        groupState.mWriteGeneration++;
+        runAfterQueuedWrites(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.deleteLogs(groupName);
+            }
+        });
 
         /* Call listeners so that they can react on group clearing. */
         for (Listener listener : mListeners) {
@@ -396,16 +666,11 @@ public class DefaultChannel implements Channel {
             cancelTimer(groupState);
 
             /* Delete all other batches and call callback method that are currently in progress. */
-            for (Iterator<Map.Entry<String, List<Log>>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<String, List<Log>> entry = iterator.next();
+            for (Iterator<Map.Entry<String, long[]>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, long[]> entry = iterator.next();
                 iterator.remove();
                 if (deleteLogs) {
-                    GroupListener groupListener = groupState.mListener;
-                    if (groupListener != null) {
-                        for (Log log : entry.getValue()) {
-                            groupListener.onFailure(log, exception);
-                        }
-                    }
+                    notifyBatchFailure(groupState, entry.getValue(), exception);
                 }
             }
         }
@@ -417,8 +682,15 @@ public class DefaultChannel implements Channel {
             }
         }
         if (deleteLogs) {
-            for (GroupState groupState : mGroupStates.values()) {
-                deleteLogsOnSuspended(groupState);
+            for (final GroupState groupState : mGroupStates.values()) {
+                groupState.mWriteGeneration++;
+                runAfterQueuedWrites(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        deleteLogsOnSuspended(groupState);
+                    }
+                });
             }
         } else {
             mPersistence.clearPendingLogState();
@@ -429,10 +701,16 @@ public class DefaultChannel implements Channel {
         final List<Log> logs = new ArrayList<>();
         mPersistence.getLogs(groupState.mName, Collections.<String>emptyList(), CLEAR_BATCH_SIZE, logs);
         if (logs.size() > 0 && groupState.mListener != null) {
-            for (Log log : logs) {
-                groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
-            }
+            runOnAppCenterThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (Log log : logs) {
+                        groupState.mListener.onBeforeSending(log);
+                        groupState.mListener.onFailure(log, new CancellationException());
+                    }
+                }
+            });
         }
         if (logs.size() >= CLEAR_BATCH_SIZE && groupState.mListener != null) {
             deleteLogsOnSuspended(groupState);
@@ -483,6 +761,7 @@ public class DefaultChannel implements Channel {
 
         /* Decrement counter. */
         groupState.mPendingLogCount -= maxFetch;
+        ChannelMetrics.recordPendingLogCount(groupState.mName, groupState.mPendingLogCount);
 
         /* Nothing more to do if no logs. */
         if (batchId == null) {
@@ -497,8 +776,8 @@ public class DefaultChannel implements Channel {
             }
         }
 
-        /* Remember this batch. */
-        groupState.mSendingBatches.put(batchId, batch);
+        /* Remember this batch by storage identifiers, logs are read again later only if the listener needs them. */
+        groupState.mSendingBatches.put(batchId, mPersistence.getLogIds(groupState.mName, batchId));
         sendLogs(groupState, mCurrentState, batch, batchId);
     }
 
@@ -513,13 +792,28 @@ public class DefaultChannel implements Channel {
     @MainThread
     private void sendLogs(final GroupState groupState, final int currentState, List<Log> batch, final String batchId) {
 
-        /* Send logs. */
-        LogContainer logContainer = new LogContainer();
+        /* Send logs, they are read again by identifiers if the call is retried. */
+        final long[] logIds = groupState.mSendingBatches.get(batchId);
+        LogContainer logContainer = new ReloadableLogContainer() {
+
+            @Override
+            protected List<Log> readLogs() {
+                List<Log> logs = new ArrayList<>();
+                if (logIds != null) {
+                    mPersistence.getLogs(groupState.mName, logIds, logs);
+                }
+                return logs;
+            }
+        };
         logContainer.setLogs(batch);
+        final long sendTime = ChannelMetrics.isEnabled() ? SystemClock.elapsedRealtime() : 0;
         groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
 
             @Override
             public void onCallSucceeded(HttpResponse httpResponse) {
+                if (sendTime > 0) {
+                    ChannelMetrics.recordHttpCall(groupState.mName, SystemClock.elapsedRealtime() - sendTime, httpResponse.getStatusCode());
+                }
                 mAppCenterHandler.post(new Runnable() {
 
                     @Override
@@ -531,6 +825,10 @@ public class DefaultChannel implements Channel {
 
             @Override
             public void onCallFailed(final Exception e) {
+                if (sendTime > 0) {
+                    int statusCode = e instanceof HttpException ? ((HttpException) e).getHttpResponse().getStatusCode() : 0;
+                    ChannelMetrics.recordHttpCall(groupState.mName, SystemClock.elapsedRealtime() - sendTime, statusCode);
+                }
                 mAppCenterHandler.post(new Runnable() {
 
                     @Override
@@ -564,16 +862,21 @@ public class DefaultChannel implements Channel {
      * @param batchId    The batch ID.
      */
     private void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId) {
-        List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
-        if (removedLogsForBatchId != null) {
+        long[] removedLogIdsForBatchId = groupState.mSendingBatches.remove(batchId);
+        if (removedLogIdsForBatchId != null) {
+            List<Log> logs = getLogsForCallbacks(groupState, removedLogIdsForBatchId);
             mPersistence.deleteLogs(groupState.mName, batchId);
             GroupListener groupListener = groupState.mListener;
-            if (groupListener != null) {
-                for (Log log : removedLogsForBatchId) {
+            if (groupListener instanceof BatchListener) {
+                ((BatchListener) groupListener).onBatchSuccess(removedLogIdsForBatchId.length, getMissingLogCount(removedLogIdsForBatchId, logs));
+            }
+            if (logs != null) {
+                for (Log log : logs) {
                     groupListener.onSuccess(log);
                 }
             }
             checkPendingLogs(groupState);
+            ChannelMetrics.notifyListener();
         }
     }
 
@@ -588,22 +891,71 @@ public class DefaultChannel implements Channel {
      */
     private void handleSendingFailure(@NonNull GroupState groupState, @NonNull String batchId, @NonNull Exception e) {
         String groupName = groupState.mName;
-        List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
-        if (removedLogsForBatchId != null) {
+        long[] removedLogIdsForBatchId = groupState.mSendingBatches.remove(batchId);
+        if (removedLogIdsForBatchId != null) {
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
             boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
-                groupState.mPendingLogCount += removedLogsForBatchId.size();
+                groupState.mPendingLogCount += removedLogIdsForBatchId.length;
+                ChannelMetrics.recordPendingLogCount(groupName, groupState.mPendingLogCount);
             } else {
-                GroupListener groupListener = groupState.mListener;
-                if (groupListener != null) {
-                    for (Log log : removedLogsForBatchId) {
-                        groupListener.onFailure(log, e);
-                    }
-                }
+                notifyBatchFailure(groupState, removedLogIdsForBatchId, e);
             }
             mEnabled = false;
             suspend(!recoverableError, e);
+            ChannelMetrics.notifyListener();
+        }
+    }
+
+    /**
+     * Read the logs of a batch again if the group listener needs a callback for each of them.
+     * This must be called before the logs are deleted from persistence.
+     *
+     * @param groupState The group state.
+     * @param logIds     The storage identifiers of the batch.
+     * @return The logs, or null if no log callback is needed.
+     */
+    private List<Log> getLogsForCallbacks(@NonNull GroupState groupState, @NonNull long[] logIds) {
+        GroupListener groupListener = groupState.mListener;
+        if (groupListener == null || groupListener instanceof BatchListener && !((BatchListener) groupListener).requiresLogCallbacks()) {
+            return null;
+        }
+        List<Log> logs = new ArrayList<>(logIds.length);
+        mPersistence.getLogs(groupState.mName, logIds, logs);
+        if (logs.size() < logIds.length) {
+            AppCenterLog.warn(LOG_TAG, (logIds.length - logs.size()) + " log(s) of a batch of " + groupState.mName + " were deleted while being sent.");
+        }
+        return logs;
+    }
+
+    /**
+     * Get the number of logs of a batch that could not be read again for callbacks.
+     *
+     * @param logIds The storage identifiers of the batch.
+     * @param logs   The logs read again, null if not needed.
+     * @return The number of missing logs.
+     */
+    private static int getMissingLogCount(@NonNull long[] logIds, @Nullable List<Log> logs) {
+        return logs == null ? 0 : logIds.length - logs.size();
+    }
+
+    /**
+     * Notify the group listener that a batch is discarded.
+     *
+     * @param groupState The group state.
+     * @param logIds     The storage identifiers of the batch.
+     * @param e          The exception for failure.
+     */
+    private void notifyBatchFailure(@NonNull GroupState groupState, @NonNull long[] logIds, Exception e) {
+        List<Log> logs = getLogsForCallbacks(groupState, logIds);
+        GroupListener groupListener = groupState.mListener;
+        if (groupListener instanceof BatchListener) {
+            ((BatchListener) groupListener).onBatchFailure(logIds.length, getMissingLogCount(logIds, logs), e);
+        }
+        if (logs != null) {
+            for (Log log : logs) {
+                groupListener.onFailure(log, e);
+            }
         }
     }
 
@@ -626,6 +978,7 @@ public class DefaultChannel implements Channel {
             }
             return;
         }
+        ChannelMetrics.recordEnqueue(groupName);
 
         /* Call listeners so that they can decorate the log. */
         for (Listener listener : mListeners) {
@@ -637,11 +990,14 @@ public class DefaultChannel implements Channel {
 
             /* Generate device properties only once per process life time. */
             if (mDevice == null) {
+                StartupTrace.beginSection("DeviceInfoHelper.getDeviceInfo");
                 try {
                     mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
                 } catch (DeviceInfoHelper.DeviceInfoException e) {
                     AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
                     return;
+                } finally {
+                    StartupTrace.endSection();
                 }
             }
 
@@ -680,35 +1036,274 @@ public class DefaultChannel implements Channel {
                 AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
                 return;
             }
-            try {
 
-                /* Persist log. */
-                mPersistence.putLog(log, groupName, flags);
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
-                if (groupState.mListener != null) {
-                    groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
+            /* Logs enqueued as a collection are persisted together. */
+            if (mBatchedLogs != null) {
+                String key = groupName + "/" + flags;
+                BatchedLogs batchedLogs = mBatchedLogs.get(key);
+                if (batchedLogs == null) {
+                    batchedLogs = new BatchedLogs(groupState, flags);
+                    mBatchedLogs.put(key, batchedLogs);
                 }
+                batchedLogs.mLogs.add(log);
                 return;
             }
 
-            /* Nothing more to do if the log is from a paused transmission target. */
-            Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
-            String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
-            if (groupState.mPausedTargetKeys.contains(targetKey)) {
-                AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
-                return;
+            /* Persist log. */
+            persistLogs(groupState, Collections.singletonList(log), flags, false);
+        }
+    }
+
+    @Override
+    public void enqueue(@NonNull Collection<Log> logs, @NonNull String groupName, int flags) {
+
+        /* Nested calls are part of the current batch. */
+        if (mBatchedLogs != null) {
+            for (Log log : logs) {
+                enqueue(log, groupName, flags);
             }
+            return;
+        }
 
-            /* Increment counters and schedule ingestion if we are enabled. */
-            groupState.mPendingLogCount++;
-            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-            if (mEnabled) {
-                checkPendingLogs(groupState);
-            } else {
-                AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+        /*
+         * Prepare every log, including the ones listeners enqueue while preparing them,
+         * before persisting them together.
+         */
+        Collection<BatchedLogs> batches;
+        mBatchedLogs = new LinkedHashMap<>();
+        try {
+            for (Log log : logs) {
+                enqueue(log, groupName, flags);
+            }
+        } finally {
+            batches = mBatchedLogs.values();
+            mBatchedLogs = null;
+        }
+        for (BatchedLogs batchedLogs : batches) {
+            persistLogs(batchedLogs.mGroupState, batchedLogs.mLogs, batchedLogs.mFlags, true);
+        }
+    }
+
+    @Override
+    public boolean acceptsForwardedLogs(@NonNull String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        return groupState != null && !mDiscardLogs && (mAppSecret != null || groupState.mIngestion != mIngestion);
+    }
+
+    @Override
+    public void enqueueForwarded(@NonNull List<Log> logs, @NonNull String groupName, int flags) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            AppCenterLog.error(LOG_TAG, "Invalid group name for forwarded logs:" + groupName);
+            return;
+        }
+        if (mDiscardLogs) {
+            AppCenterLog.warn(LOG_TAG, "Channel is disabled, forwarded logs are discarded.");
+            return;
+        }
+        if (mAppSecret == null && groupState.mIngestion == mIngestion) {
+            AppCenterLog.debug(LOG_TAG, "No app secret was provided. Not persisting/sending forwarded logs.");
+            return;
+        }
+        for (int i = 0; i < logs.size(); i++) {
+            ChannelMetrics.recordEnqueue(groupName);
+        }
+        persistLogs(groupState, logs, flags, true);
+    }
+
+    /**
+     * Write logs to persistence, then count them as pending.
+     * With a persistence lane, logs are written on that lane and counted later on the App Center thread.
+     * As the lane runs writes in the order they were posted, logs are still stored in enqueue order.
+     *
+     * @param groupState the group state.
+     * @param logs       the logs to write.
+     * @param flags      the persistence flags.
+     * @param together   true to write the logs together, false to write a single log.
+     */
+    private void persistLogs(@NonNull final GroupState groupState, @NonNull final List<Log> logs, final int flags, final boolean together) {
+        final int writeGeneration = groupState.mWriteGeneration;
+        if (mPersistenceHandler == null) {
+            onLogsPersisted(groupState, writeGeneration, logs, writeLogs(groupState.mName, logs, flags, together));
+            return;
+        }
+        mQueuedWriteCount.incrementAndGet();
+        mPersistenceHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                final Persistence.PersistenceException[] errors;
+                try {
+                    errors = writeLogs(groupState.mName, logs, flags, together);
+                } finally {
+                    mQueuedWriteCount.decrementAndGet();
+                }
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        onLogsPersisted(groupState, writeGeneration, logs, errors);
+                    }
+                });
             }
+        });
+    }
+
+    /**
+     * Write logs to persistence.
+     *
+     * @param groupName the group name.
+     * @param logs      the logs to write.
+     * @param flags     the persistence flags.
+     * @param together  true to write the logs together, false to write a single log.
+     * @return errors by log index, null for logs that were stored.
+     */
+    @NonNull
+    private Persistence.PersistenceException[] writeLogs(@NonNull String groupName, @NonNull List<Log> logs, int flags, boolean together) {
+        long startTime = ChannelMetrics.isEnabled() ? SystemClock.elapsedRealtimeNanos() : 0;
+        try {
+            if (together) {
+                return mPersistence.putLogs(logs, groupName, flags);
+            }
+            Persistence.PersistenceException[] errors = new Persistence.PersistenceException[1];
+            try {
+                mPersistence.putLog(logs.get(0), groupName, flags);
+            } catch (Persistence.PersistenceException e) {
+                errors[0] = e;
+            }
+            return errors;
+        } finally {
+            recordPutLogLatency(groupName, startTime);
+        }
+    }
+
+    /**
+     * Report persistence errors and count stored logs as pending.
+     *
+     * @param groupState      the group state.
+     * @param writeGeneration the write generation of the group when the logs were enqueued.
+     * @param logs            the written logs.
+     * @param errors          errors by log index, null for logs that were stored.
+     */
+    private void onLogsPersisted(@NonNull GroupState groupState, int writeGeneration, @NonNull List<Log> logs, @NonNull Persistence.PersistenceException[] errors) {
+
+        /*
+         * Stored logs of a removed group are counted again if the group is added again.
+         * Logs enqueued before the group was cleared are deleted after being written, don't count them.
+         */
+        boolean currentGroup = groupState == mGroupStates.get(groupState.mName) && writeGeneration == groupState.mWriteGeneration;
+        boolean counted = false;
+        for (int i = 0; i < logs.size(); i++) {
+            Log log = logs.get(i);
+            if (errors[i] != null) {
+                onPersistenceFailure(groupState, log, errors[i]);
+            } else if (currentGroup) {
+                counted |= countPersistedLog(groupState, log);
+            }
+        }
+        if (counted) {
+            checkPendingLogsIfEnabled(groupState);
+        }
+    }
+
+    /**
+     * Run a persistence operation after the logs already queued on the persistence lane are written.
+     * Without a persistence lane, the operation runs immediately.
+     *
+     * @param runnable the persistence operation.
+     */
+    private void runAfterQueuedWrites(@NonNull final Runnable runnable) {
+        if (mPersistenceHandler == null) {
+            runnable.run();
+            return;
+        }
+        mQueuedWriteCount.incrementAndGet();
+        mPersistenceHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    mQueuedWriteCount.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a runnable on the App Center thread, immediately if there is no persistence lane as we already are on it.
+     *
+     * @param runnable the runnable.
+     */
+    private void runOnAppCenterThread(@NonNull Runnable runnable) {
+        if (mPersistenceHandler == null) {
+            runnable.run();
+        } else {
+            mAppCenterHandler.post(runnable);
+        }
+    }
+
+    /**
+     * Record the duration of a persistence write if metrics were collected when it started.
+     *
+     * @param groupName the group name.
+     * @param startTime when the write started, in nanoseconds since boot, 0 if metrics were not collected.
+     */
+    private static void recordPutLogLatency(@NonNull String groupName, long startTime) {
+        if (startTime > 0) {
+            ChannelMetrics.recordPutLogLatency(groupName, (SystemClock.elapsedRealtimeNanos() - startTime) / 1000);
+        }
+    }
+
+    /**
+     * Report a log that could not be persisted.
+     *
+     * @param groupState the group state.
+     * @param log        the log.
+     * @param e          the persistence error.
+     */
+    private void onPersistenceFailure(@NonNull GroupState groupState, @NonNull Log log, @NonNull Persistence.PersistenceException e) {
+        AppCenterLog.error(LOG_TAG, "Error persisting log", e);
+        if (groupState.mListener != null) {
+            groupState.mListener.onBeforeSending(log);
+            groupState.mListener.onFailure(log, e);
+        }
+    }
+
+    /**
+     * Count a persisted log as pending unless it's from a paused transmission target.
+     *
+     * @param groupState the group state.
+     * @param log        the persisted log.
+     * @return true if the log was counted as pending.
+     */
+    private boolean countPersistedLog(@NonNull GroupState groupState, @NonNull Log log) {
+
+        /* Nothing more to do if the log is from a paused transmission target. */
+        Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
+        String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
+        if (groupState.mPausedTargetKeys.contains(targetKey)) {
+            AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
+            return false;
+        }
+
+        /* Increment counters. */
+        groupState.mPendingLogCount++;
+        AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+        return true;
+    }
+
+    /**
+     * Schedule ingestion if we are enabled.
+     *
+     * @param groupState the group state.
+     */
+    private void checkPendingLogsIfEnabled(@NonNull GroupState groupState) {
+        if (mEnabled) {
+            checkPendingLogs(groupState);
+        } else {
+            AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
         }
     }
 
@@ -721,6 +1316,7 @@ public class DefaultChannel implements Channel {
     void checkPendingLogs(@NonNull GroupState groupState) {
         AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
                 groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
+        ChannelMetrics.recordPendingLogCount(groupState.mName, groupState.mPendingLogCount);
         Long batchTimeInterval = resolveTriggerInterval(groupState);
 
         /* Check if there is no need to trigger ingestion. */
@@ -814,6 +1410,28 @@ public class DefaultChannel implements Channel {
     public void shutdown() {
         mEnabled = false;
         suspend(false, new CancellationException());
+
+        /*
+         * Store logs kept in memory, including those of cancelled batches, as they would not survive the process.
+         * With a persistence lane, this runs after the logs enqueued before shutdown are written
+         * and we wait for it as the process is about to exit.
+         */
+        final Semaphore semaphore = new Semaphore(0);
+        runAfterQueuedWrites(new Runnable() {
+
+            @Override
+            public void run() {
+                mPersistence.flush();
+                semaphore.release();
+            }
+        });
+        try {
+            if (!semaphore.tryAcquire(SHUTDOWN_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                AppCenterLog.error(LOG_TAG, "Timeout waiting for logs to be written to persistence.");
+            }
+        } catch (InterruptedException e) {
+            AppCenterLog.warn(LOG_TAG, "Interrupted while waiting for logs to be written to persistence.", e);
+        }
     }
 
     @Override
@@ -829,6 +1447,32 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Logs of the same group and flags to persist together.
+     */
+    private static class BatchedLogs {
+
+        /**
+         * Group state.
+         */
+        final GroupState mGroupState;
+
+        /**
+         * Persistence flags.
+         */
+        final int mFlags;
+
+        /**
+         * Logs in enqueue order.
+         */
+        final List<Log> mLogs = new ArrayList<>();
+
+        BatchedLogs(GroupState groupState, int flags) {
+            mGroupState = groupState;
+            mFlags = flags;
+        }
+    }
+
     /**
      * State for a specific log group.
      */
@@ -858,7 +1502,7 @@ public class DefaultChannel implements Channel {
         /**
          * Batches being currently sent to ingestion.
          */
-        final Map<String, List<Log>> mSendingBatches = new HashMap<>();
+        final Map<String, long[]> mSendingBatches = new HashMap<>();
 
         /**
          * Ingestion for the group state.
@@ -875,6 +1519,11 @@ public class DefaultChannel implements Channel {
          */
         int mPendingLogCount;
 
+        /**
+         * Incremented when logs of the group are deleted, logs enqueued before are not counted once written.
+         */
+        int mWriteGeneration;
+
         /**
          * Is timer scheduled.
          */
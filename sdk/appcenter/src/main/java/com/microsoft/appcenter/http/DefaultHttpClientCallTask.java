@@ -166,12 +166,18 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             byte[] binaryPayload = null;
             boolean shouldCompress = false;
             boolean isPost = mMethod.equals(METHOD_POST);
+            HttpClient.StreamingCallTemplate streamingCallTemplate = null;
             if (isPost && mCallTemplate != null) {
 
                 /* Get bytes, check if large enough to compress. */
                 payload = mCallTemplate.buildRequestBody();
                 binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                if (mCallTemplate instanceof HttpClient.StreamingCallTemplate && ((HttpClient.StreamingCallTemplate) mCallTemplate).isStreamingRequestBody()) {
+                    streamingCallTemplate = (HttpClient.StreamingCallTemplate) mCallTemplate;
+                }
+
+                /* Streamed content size is not known in advance, always compress it if enabled. */
+                shouldCompress = mCompressionEnabled && (streamingCallTemplate != null || binaryPayload.length >= MIN_GZIP_LENGTH);
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -211,25 +217,43 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                     AppCenterLog.verbose(LOG_TAG, payload);
                 }
 
-                /* Compress payload if large enough to be worth it. */
-                if (shouldCompress) {
-                    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
-                    GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-                    gzipStream.write(binaryPayload);
-                    gzipStream.close();
-                    binaryPayload = gzipBuffer.toByteArray();
-                }
+                /* Stream payload on the wire, length is unknown so use chunked mode. */
+                if (streamingCallTemplate != null) {
+                    httpsURLConnection.setDoOutput(true);
+                    httpsURLConnection.setChunkedStreamingMode(0);
+                    OutputStream out = httpsURLConnection.getOutputStream();
+
+                    //noinspection TryFinallyCanBeTryWithResources
+                    try {
+                        if (shouldCompress) {
+                            out = new GZIPOutputStream(out, WRITE_BUFFER_SIZE);
+                        }
+                        streamingCallTemplate.writeRequestBody(payload, out);
+                    } finally {
+                        out.close();
+                    }
+                } else {
 
-                /* Send payload on the wire. */
-                httpsURLConnection.setDoOutput(true);
-                httpsURLConnection.setFixedLengthStreamingMode(binaryPayload.length);
-                OutputStream out = httpsURLConnection.getOutputStream();
+                    /* Compress payload if large enough to be worth it. */
+                    if (shouldCompress) {
+                        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
+                        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
+                        gzipStream.write(binaryPayload);
+                        gzipStream.close();
+                        binaryPayload = gzipBuffer.toByteArray();
+                    }
 
-                //noinspection TryFinallyCanBeTryWithResources
-                try {
-                    writePayload(out, binaryPayload);
-                } finally {
-                    out.close();
+                    /* Send payload on the wire. */
+                    httpsURLConnection.setDoOutput(true);
+                    httpsURLConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                    OutputStream out = httpsURLConnection.getOutputStream();
+
+                    //noinspection TryFinallyCanBeTryWithResources
+                    try {
+                        writePayload(out, binaryPayload);
+                    } finally {
+                        out.close();
+                    }
                 }
             }
             if (isCancelled()) {
@@ -8,6 +8,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -50,6 +52,30 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call template for request bodies that reference content streamed from outside of memory.
+     * The body returned by {@link #buildRequestBody()} is then written through
+     * {@link #writeRequestBody(String, OutputStream)} instead of being sent as is.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Check whether the request body needs to be written by {@link #writeRequestBody(String, OutputStream)}.
+         *
+         * @return true to stream the request body, false to send {@link #buildRequestBody()} as is.
+         */
+        boolean isStreamingRequestBody();
+
+        /**
+         * Called when the method is POST and the body is streamed, to write it on the wire.
+         *
+         * @param requestBody  request body as returned by {@link #buildRequestBody()}.
+         * @param outputStream stream to write the full request body into.
+         * @throws IOException callback can throw this to make the call fail if streamed content cannot be read.
+         */
+        void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException;
+    }
+
     /**
      * Make this client active again after closing.
      */
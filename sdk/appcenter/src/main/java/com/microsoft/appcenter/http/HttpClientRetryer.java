@@ -10,6 +10,7 @@ import android.os.Looper;
 import androidx.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.channel.ChannelMetrics;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import java.net.UnknownHostException;
@@ -114,6 +115,7 @@ public class HttpClientRetryer extends HttpClientDecorator {
                     message += " (UnknownHostException)";
                 }
                 AppCenterLog.warn(AppCenter.LOG_TAG, message, e);
+                ChannelMetrics.recordHttpRetry();
                 mHandler.postDelayed(this, delay);
             } else {
                 mServiceCallback.onCallFailed(e);
@@ -12,13 +12,21 @@ import com.microsoft.appcenter.http.AbstractAppCallTemplate;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.FileBackedLog;
+import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.ReloadableLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.storage.FileManager;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -48,6 +56,11 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
     @VisibleForTesting
     static final String INSTALL_ID = "Install-ID";
 
+    /**
+     * Charset used to write request body around streamed content.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
     /**
      * Log serializer.
      */
@@ -77,12 +90,25 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.StreamingCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
+        /**
+         * Logs to send, released after each attempt if they can be read again from storage.
+         */
         private final LogContainer mLogContainer;
 
+        /**
+         * Logs whose content is streamed from a file, in serialization order, for the current attempt.
+         */
+        private List<FileBackedLog> mFileBackedLogs;
+
+        /**
+         * Offsets of the quoted content placeholders of {@link #mFileBackedLogs} in the request body of the current attempt.
+         */
+        private List<Integer> mContentOffsets;
+
         IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
             mLogSerializer = logSerializer;
             mLogContainer = logContainer;
@@ -91,8 +117,62 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
         @Override
         public String buildRequestBody() throws JSONException {
 
-            /* Serialize payload. */
-            return mLogSerializer.serializeContainer(mLogContainer);
+            /* Serialize payload, the body is not kept between attempts. */
+            try {
+                mFileBackedLogs = null;
+                if (getFileBackedLogs().isEmpty()) {
+                    mContentOffsets = null;
+                    return mLogSerializer.serializeContainer(mLogContainer);
+                }
+                mContentOffsets = new ArrayList<>();
+                return mLogSerializer.serializeContainer(mLogContainer, mContentOffsets);
+            } finally {
+                if (mLogContainer instanceof ReloadableLogContainer) {
+                    ((ReloadableLogContainer) mLogContainer).releaseLogs();
+                }
+            }
+        }
+
+        private List<FileBackedLog> getFileBackedLogs() {
+            if (mFileBackedLogs == null) {
+                mFileBackedLogs = new ArrayList<>();
+                for (Log log : mLogContainer.getLogs()) {
+                    if (log instanceof FileBackedLog && ((FileBackedLog) log).getContentFile() != null) {
+                        mFileBackedLogs.add((FileBackedLog) log);
+                    }
+                }
+            }
+            return mFileBackedLogs;
+        }
+
+        @Override
+        public boolean isStreamingRequestBody() {
+            return !getFileBackedLogs().isEmpty();
+        }
+
+        @Override
+        public void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException {
+            List<FileBackedLog> fileBackedLogs = getFileBackedLogs();
+            if (mContentOffsets == null || mContentOffsets.size() != fileBackedLogs.size()) {
+                throw new IOException("Request body was not built for streaming.");
+            }
+
+            /* Replace placeholders, at the offsets recorded while serializing, by the base64 encoded content of each file. */
+            int index = 0;
+            for (int i = 0; i < fileBackedLogs.size(); i++) {
+                FileBackedLog fileBackedLog = fileBackedLogs.get(i);
+                String quotedPlaceholder = JSONObject.quote(fileBackedLog.getContentPlaceholder());
+                int placeholderIndex = mContentOffsets.get(i);
+                if (placeholderIndex < index || !requestBody.startsWith(quotedPlaceholder, placeholderIndex)) {
+                    throw new IOException("Cannot find content placeholder in request body.");
+                }
+                outputStream.write(requestBody.substring(index, placeholderIndex).getBytes(CHARSET_NAME));
+                outputStream.write('"');
+                FileManager.writeBase64(fileBackedLog.getContentFile(), outputStream);
+                outputStream.write('"');
+                index = placeholderIndex + quotedPlaceholder.length();
+            }
+            outputStream.write(requestBody.substring(index).getBytes(CHARSET_NAME));
         }
     }
 }
@@ -15,6 +15,7 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.ReloadableLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -179,7 +180,7 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
         private final LogSerializer mLogSerializer;
 
         /**
-         * Log container.
+         * Log container, its logs are released after each attempt if they can be read again from storage.
          */
         private final LogContainer mLogContainer;
 
@@ -194,15 +195,21 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
         @Override
         public String buildRequestBody() throws JSONException {
 
-            /* Serialize payload. */
-            StringBuilder jsonStream = new StringBuilder();
-            for (Log log : mLogContainer.getLogs()) {
-                jsonStream.append(mLogSerializer.serializeLog(log));
+            /* Serialize payload, the body is not kept between attempts. */
+            try {
+                StringBuilder jsonStream = new StringBuilder();
+                for (Log log : mLogContainer.getLogs()) {
+                    jsonStream.append(mLogSerializer.serializeLog(log));
 
-                /* We have to use a different delimiter specific to OneCollector. */
-                jsonStream.append('\n');
+                    /* We have to use a different delimiter specific to OneCollector. */
+                    jsonStream.append('\n');
+                }
+                return jsonStream.toString();
+            } finally {
+                if (mLogContainer instanceof ReloadableLogContainer) {
+                    ((ReloadableLogContainer) mLogContainer).releaseLogs();
+                }
             }
-            return jsonStream.toString();
         }
 
         @Override
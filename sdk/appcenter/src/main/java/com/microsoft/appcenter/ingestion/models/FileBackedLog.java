@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Log with a property whose content is stored in a file instead of memory.
+ * When serialized, the property value is a placeholder that is replaced by the base64 encoded
+ * file content while streaming the HTTP request body. The placeholder must be the last value written by {@link #write}.
+ */
+public interface FileBackedLog extends Log {
+
+    /**
+     * Get the file holding the content.
+     *
+     * @return the content file or null if the content is held in memory.
+     */
+    @Nullable
+    File getContentFile();
+
+    /**
+     * Get the JSON string value written in place of the content when the content is held in a file.
+     *
+     * @return the placeholder value (not quoted).
+     */
+    @Nullable
+    String getContentPlaceholder();
+}
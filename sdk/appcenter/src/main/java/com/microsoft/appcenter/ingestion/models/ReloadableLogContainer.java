@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import java.util.List;
+
+/**
+ * Log container whose logs can be released while an ingestion call waits to be retried,
+ * and read again from storage for the next attempt.
+ */
+public abstract class ReloadableLogContainer extends LogContainer {
+
+    /**
+     * Get the logs, reading them again if they were released.
+     *
+     * @return the logs value.
+     */
+    @Override
+    public List<Log> getLogs() {
+        List<Log> logs = super.getLogs();
+        if (logs == null) {
+            logs = readLogs();
+            setLogs(logs);
+        }
+        return logs;
+    }
+
+    /**
+     * Release the logs, they are read again the next time they are needed.
+     */
+    public void releaseLogs() {
+        setLogs(null);
+    }
+
+    /**
+     * Read the logs again.
+     *
+     * @return the logs, without the ones deleted meanwhile.
+     */
+    protected abstract List<Log> readLogs();
+}
@@ -7,6 +7,7 @@ package com.microsoft.appcenter.ingestion.models.json;
 
 import androidx.annotation.NonNull;
 
+import com.microsoft.appcenter.ingestion.models.FileBackedLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
@@ -87,6 +88,34 @@ public class DefaultLogSerializer implements LogSerializer {
         return writer.toString();
     }
 
+    @NonNull
+    @Override
+    public String serializeContainer(@NonNull LogContainer logContainer, @NonNull List<Integer> contentOffsets) throws JSONException {
+
+        /* Write logs one by one to know where each of them starts, producing the same JSON as a single writer. */
+        StringBuilder json = new StringBuilder("{").append(JSONObject.quote(LOGS)).append(":[");
+        List<Log> logs = logContainer.getLogs();
+        for (int i = 0; i < logs.size(); i++) {
+            Log log = logs.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            String logJson = serializeLog(log);
+            if (log instanceof FileBackedLog && ((FileBackedLog) log).getContentFile() != null) {
+
+                /* The placeholder is the last value of the log, so it cannot be confused with another string value. */
+                String placeholder = ((FileBackedLog) log).getContentPlaceholder();
+                String suffix = JSONObject.quote(placeholder) + "}";
+                if (placeholder == null || !logJson.endsWith(suffix)) {
+                    throw new JSONException("Content placeholder must be the last property of a file-backed log.");
+                }
+                contentOffsets.add(json.length() + logJson.length() - suffix.length());
+            }
+            json.append(logJson);
+        }
+        return json.append("]}").toString();
+    }
+
     @NonNull
     @Override
     public LogContainer deserializeContainer(@NonNull String json, String type) throws JSONException {
@@ -14,6 +14,7 @@ import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import org.json.JSONException;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface LogSerializer {
 
@@ -28,6 +29,18 @@ public interface LogSerializer {
     @NonNull
     String serializeContainer(@NonNull LogContainer container) throws JSONException;
 
+    /**
+     * Serialize a container whose file-backed logs have their content streamed separately.
+     *
+     * @param container      the logs to serialize.
+     * @param contentOffsets filled with the offset of the quoted content placeholder in the result,
+     *                       for each {@link com.microsoft.appcenter.ingestion.models.FileBackedLog} having a content file, in order.
+     * @return the serialized container.
+     * @throws JSONException if a log cannot be serialized.
+     */
+    @NonNull
+    String serializeContainer(@NonNull LogContainer container, @NonNull List<Integer> contentOffsets) throws JSONException;
+
     @NonNull
     LogContainer deserializeContainer(@NonNull String json, String type) throws JSONException;
 
@@ -23,7 +23,10 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.EvictionPolicy;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
+import com.microsoft.appcenter.channel.ChannelMetrics;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
@@ -32,14 +35,20 @@ import com.microsoft.appcenter.utils.crypto.CryptoUtils;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SQLiteUtils;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.json.JSONException;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -49,6 +58,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Persistence backed by a SQLite database.
+ * Methods are synchronized as the channel can write logs on a separate thread.
+ */
 @SuppressWarnings("TryFinallyCanBeTryWithResources")
 public class DatabasePersistence extends Persistence {
 
@@ -84,10 +97,16 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_TIMESTAMP_COLUMN = 5;
 
+    /**
+     * Version before the expiration column was added, tables of this version are altered instead of recreated.
+     */
+    @VisibleForTesting
+    static final int VERSION_EXPIRES_AT_COLUMN = 6;
+
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 6;
+    private static final int VERSION = 7;
 
     /**
      * Project identifier part of the target token in clear text (the target token key).
@@ -106,6 +125,18 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String COLUMN_DATA_TYPE = "type";
 
+    /**
+     * Time in milliseconds since epoch after which the log is deleted, null if it does not expire.
+     */
+    @VisibleForTesting
+    static final String COLUMN_EXPIRES_AT = "expires_at";
+
+    /**
+     * Preference key prefix for the time to live the stored logs of a group expire with.
+     */
+    @VisibleForTesting
+    static final String PREFERENCE_KEY_TIME_TO_LIVE_PREFIX = "persistence.timeToLive.";
+
     /**
      * Database name.
      */
@@ -116,13 +147,30 @@ public class DatabasePersistence extends Persistence {
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0);
+    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0, 0L);
 
     /**
      * Order by clause to select logs.
      */
     private static final String GET_SORT_ORDER = COLUMN_PRIORITY + " DESC, " + PRIMARY_KEY;
 
+    /**
+     * Expression of the payload size in bytes stored in the database, null for large payloads stored in files.
+     */
+    private static final String PAYLOAD_SIZE_EXPRESSION = "LENGTH(CAST(" + COLUMN_LOG + " AS BLOB))";
+
+    /**
+     * Maximum number of free database pages returned to the file system by {@link #reclaimStorage()}.
+     */
+    @VisibleForTesting
+    static final int RECLAIMED_PAGES_PER_STEP = 256;
+
+    /**
+     * Maximum share of the storage size that a group can reserve, so that other groups can always store logs.
+     */
+    @VisibleForTesting
+    static final double MAX_RESERVED_SHARE = 0.5;
+
     /**
      * Size limit (in bytes) for a database row log payload.
      * A separate file is used if payload is larger.
@@ -151,7 +199,8 @@ public class DatabasePersistence extends Persistence {
             "`priority` INTEGER," +
             "`log` TEXT," +
             "`persistence_group` TEXT," +
-            "`target_key` TEXT);";
+            "`target_key` TEXT," +
+            "`expires_at` INTEGER);";
 
     /**
      * SQL command to drop logs table
@@ -163,6 +212,16 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String CREATE_PRIORITY_INDEX_LOGS = "CREATE INDEX `ix_logs_priority` ON logs (`priority`)";
 
+    /**
+     * SQL command to add the expiration column to logs of a previous version.
+     */
+    private static final String ADD_EXPIRES_AT_COLUMN_LOGS = "ALTER TABLE `logs` ADD COLUMN `expires_at` INTEGER";
+
+    /**
+     * SQL command to create index for expired logs to be deleted by range.
+     */
+    private static final String CREATE_EXPIRES_AT_INDEX_LOGS = "CREATE INDEX `ix_logs_expires_at` ON logs (`expires_at`)";
+
     /**
      * Database manager instance to access Persistence database.
      */
@@ -170,10 +229,10 @@ public class DatabasePersistence extends Persistence {
     final DatabaseManager mDatabaseManager;
 
     /**
-     * Pending log groups. Key is a UUID and value is a list of database identifiers.
+     * Pending log groups. Key is a UUID and value is an array of database identifiers.
      */
     @VisibleForTesting
-    final Map<String, List<Long>> mPendingDbIdentifiersGroups;
+    final Map<String, long[]> mPendingDbIdentifiersGroups;
 
     /**
      * Pending logs across all groups.
@@ -191,18 +250,50 @@ public class DatabasePersistence extends Persistence {
      */
     private final File mLargePayloadDirectory;
 
+    /**
+     * Storage quotas by group.
+     */
+    private final Map<String, StorageQuota> mStorageQuotas = new HashMap<>();
+
+    /**
+     * Payload size of the logs of each group, computed only when quotas are used.
+     * Null when it needs to be computed again.
+     */
+    private Map<String, Long> mGroupSizes;
+
+    /**
+     * Payload size of pending logs, recorded when quotas are used so that deleting sent logs keeps group sizes up to date.
+     */
+    private final Map<Long, Long> mPendingLogSizes = new HashMap<>();
+
     /**
      * The size of the separated large files.
      */
     private long mLargePayloadsSize;
 
+    /**
+     * Whether large payload files were checked against database records and counted in {@link #mLargePayloadsSize}.
+     */
+    private boolean mLargePayloadsChecked;
+
     /**
      * Initializes variables with default values.
      *
      * @param context application context.
      */
     public DatabasePersistence(Context context) {
-        this(context, VERSION, SCHEMA);
+        this(context, false);
+    }
+
+    /**
+     * Initializes variables with default values.
+     *
+     * @param context           application context.
+     * @param deferStorageCheck true to check large payload files in {@link #performDeferredChecks()} instead of now.
+     *                          The database is then not opened until it's first used.
+     */
+    public DatabasePersistence(Context context, boolean deferStorageCheck) {
+        this(context, VERSION, SCHEMA, deferStorageCheck);
     }
 
     /**
@@ -213,6 +304,18 @@ public class DatabasePersistence extends Persistence {
      * @param schema  schema.
      */
     DatabasePersistence(Context context, int version, @SuppressWarnings("SameParameterValue") final ContentValues schema) {
+        this(context, version, schema, false);
+    }
+
+    /**
+     * Initializes variables.
+     *
+     * @param context           application context.
+     * @param version           The version of current schema.
+     * @param schema            schema.
+     * @param deferStorageCheck true to check large payload files in {@link #performDeferredChecks()} instead of now.
+     */
+    private DatabasePersistence(Context context, int version, final ContentValues schema, boolean deferStorageCheck) {
         mContext = context;
         mPendingDbIdentifiersGroups = new HashMap<>();
         mPendingDbIdentifiers = new HashSet<>();
@@ -222,6 +325,7 @@ public class DatabasePersistence extends Persistence {
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                db.execSQL(CREATE_EXPIRES_AT_INDEX_LOGS);
             }
 
             @Override
@@ -230,20 +334,45 @@ public class DatabasePersistence extends Persistence {
                 /*
                  * With version 3.0 of the SDK we decided to remove timestamp column and as
                  * it's a major SDK version and SQLite does not support removing column we just start over.
-                 * When adding a new column in a future version, update this code by something like
-                 * if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {drop/create} else {add missing columns}
+                 * Later versions only add columns, so logs are kept.
                  */
-                db.execSQL(DROP_LOGS_SQL);
-                db.execSQL(CREATE_LOGS_SQL);
-                db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {
+                    db.execSQL(DROP_LOGS_SQL);
+                    db.execSQL(CREATE_LOGS_SQL);
+                    db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                } else if (oldVersion <= VERSION_EXPIRES_AT_COLUMN) {
+                    db.execSQL(ADD_EXPIRES_AT_COLUMN_LOGS);
+                }
+                db.execSQL(CREATE_EXPIRES_AT_INDEX_LOGS);
             }
         });
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
 
         //noinspection ResultOfMethodCallIgnored we handle errors at read/write time for each file.
         mLargePayloadDirectory.mkdirs();
+        if (!deferStorageCheck) {
+            mLargePayloadsSize = checkLargePayloadFilesAndCollectTheirSize();
+            mLargePayloadsChecked = true;
+        }
+    }
+
+    @Override
+    public synchronized void performDeferredChecks() {
+        if (mLargePayloadsChecked) {
+            return;
+        }
+        mLargePayloadsChecked = true;
 
+        /*
+         * Files written or deleted since startup were counted incrementally,
+         * but the total is computed again from all files that are still referenced.
+         */
+        long largePayloadsSize = mLargePayloadsSize;
         mLargePayloadsSize = checkLargePayloadFilesAndCollectTheirSize();
+        mGroupSizes = null;
+        if (mLargePayloadsSize > largePayloadsSize) {
+            deleteLogsThatNotFitMaxSize();
+        }
     }
 
     /**
@@ -254,9 +383,10 @@ public class DatabasePersistence extends Persistence {
      * @param targetToken The target token if the log is common schema.
      * @param targetKey   The project identifier part of the target token in clear text.
      * @param priority    The persistence priority.
+     * @param expiresAt   The time in milliseconds since epoch after which the log is deleted, null if it does not expire.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority, @Nullable Long expiresAt) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
@@ -264,24 +394,29 @@ public class DatabasePersistence extends Persistence {
         values.put(COLUMN_DATA_TYPE, type);
         values.put(COLUMN_TARGET_KEY, targetKey);
         values.put(COLUMN_PRIORITY, priority);
+        values.put(COLUMN_EXPIRES_AT, expiresAt);
         return values;
     }
 
     @Override
-    public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
+    public synchronized boolean setMaxStorageSize(long maxStorageSizeInBytes) {
         boolean success = mDatabaseManager.setMaxSize(maxStorageSizeInBytes);
         deleteLogsThatNotFitMaxSize();
         return success;
     }
 
-    @Override
-    public long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
-
-        /* Convert log to JSON string and put in the database. */
+    /**
+     * Serialize a log and check that it can be stored.
+     *
+     * @param log   The log to be placed in the storage.
+     * @param group The group of the storage for the log.
+     * @param flags The persistence flags.
+     * @return The serialized log.
+     * @throws PersistenceException if the log cannot be stored.
+     */
+    private SerializedLog serializeLog(@NonNull Log log, @NonNull String group, int flags) throws PersistenceException {
         try {
-            AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
             String payload = getLogSerializer().serializeLog(log);
-            ContentValues contentValues;
 
             //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
             int payloadSize = payload.getBytes("UTF-8").length;
@@ -308,54 +443,128 @@ public class DatabasePersistence extends Persistence {
                         "Current maximum database size is " + maxSize + " bytes.");
             }
             int priority = Flags.getPersistenceFlag(flags, false);
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, priority);
-            while (isLargePayload && payloadSize + getStoredDataSize() > maxSize) {
+            ContentValues contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, priority, getExpiresAt(log, group));
+            return new SerializedLog(payload, payloadSize, maxSize, priority, contentValues);
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string.", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new PersistenceException("Cannot get the size of the JSON string.", e);
+        }
+    }
+
+    @Override
+    public synchronized long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+
+        /* Convert log to JSON string and put in the database. */
+        AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
+        SerializedLog serializedLog = serializeLog(log, group, flags);
+        applyStorageQuota(serializedLog, group);
+        boolean isLargePayload = serializedLog.isLargePayload();
+        long allocatedSize = isLargePayload ? mDatabaseManager.getAllocatedSize() : 0;
+        while (isLargePayload && serializedLog.mPayloadSize + getStoredDataSize(allocatedSize) > serializedLog.mMaxSize) {
+            AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete the oldest log that has the lowest priority which is lower or equal priority than the new log.");
+            if (evictLog(group, serializedLog.mPriority) == OPERATION_FAILED_FLAG) {
+                throw new PersistenceException("Failed to clear space for new log record.");
+            }
+        }
+        Long databaseId = null;
+        while (databaseId == null) {
+            try {
+                databaseId = mDatabaseManager.put(serializedLog.mContentValues);
+            } catch (SQLiteFullException e) {
                 AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete the oldest log that has the lowest priority which is lower or equal priority than the new log.");
-                if (deleteTheOldestLog(priority) == OPERATION_FAILED_FLAG) {
-                    throw new PersistenceException("Failed to clear space for new log record.");
+                if (evictLog(group, serializedLog.mPriority) == OPERATION_FAILED_FLAG) {
+                    databaseId = OPERATION_FAILED_FLAG;
                 }
             }
-            Long databaseId = null;
-            while (databaseId == null) {
+        }
+        if (databaseId == OPERATION_FAILED_FLAG) {
+            throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
+        }
+        AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
+        if (isLargePayload) {
+            AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
+            File directory = getLargePayloadGroupDirectory(group);
+
+            //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
+            directory.mkdir();
+            File payloadFile = getLargePayloadFile(directory, databaseId);
+            try {
+                FileManager.write(payloadFile, serializedLog.mPayload);
+                mLargePayloadsSize += payloadFile.length();
+                AppCenterLog.verbose(LOG_TAG, "Store extra " + payloadFile.length() + " KB as a separated payload file.");
+            } catch (IOException e) {
+
+                /* Remove database entry if we cannot save payload as a file. */
+                mDatabaseManager.delete(databaseId);
+                throw new PersistenceException("Cannot save large payload in a file.", e);
+            }
+            AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+        }
+        ChannelMetrics.recordPersistedLog(group, serializedLog.mPayloadSize);
+        addGroupSize(group, serializedLog.mPayloadSize);
+        deleteLogsThatNotFitMaxSize();
+        return databaseId;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Logs are inserted in a single transaction. Large payloads are stored one by one after
+     * the transaction, and so are all the logs if the database gets full during the transaction,
+     * as making room for them requires deleting other logs.
+     */
+    @NonNull
+    @Override
+    public synchronized PersistenceException[] putLogs(@NonNull List<Log> logs, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) {
+        if (logs.size() < 2 || !mDatabaseManager.beginTransaction()) {
+            return super.putLogs(logs, group, flags);
+        }
+        AppCenterLog.debug(LOG_TAG, "Storing " + logs.size() + " logs to the Persistence database with flags=" + flags);
+        PersistenceException[] errors = new PersistenceException[logs.size()];
+        List<Integer> remainingIndexes = new ArrayList<>();
+        boolean successful = false;
+        try {
+            for (int i = 0; i < logs.size(); i++) {
+                Log log = logs.get(i);
                 try {
-                    databaseId = mDatabaseManager.put(contentValues);
-                } catch (SQLiteFullException e) {
-                    AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete the oldest log that has the lowest priority which is lower or equal priority than the new log.");
-                    if (deleteTheOldestLog(priority) == OPERATION_FAILED_FLAG) {
-                        databaseId = OPERATION_FAILED_FLAG;
+                    SerializedLog serializedLog = serializeLog(log, group, flags);
+                    if (serializedLog.isLargePayload()) {
+                        remainingIndexes.add(i);
+                        continue;
+                    }
+                    applyStorageQuota(serializedLog, group);
+                    if (mDatabaseManager.put(serializedLog.mContentValues) == OPERATION_FAILED_FLAG) {
+                        errors[i] = new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
+                    } else {
+                        ChannelMetrics.recordPersistedLog(group, serializedLog.mPayloadSize);
+                        addGroupSize(group, serializedLog.mPayloadSize);
                     }
+                } catch (PersistenceException e) {
+                    errors[i] = e;
                 }
             }
-            if (databaseId == OPERATION_FAILED_FLAG) {
-                throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
-            }
-            AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
-            if (isLargePayload) {
-                AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
-                File directory = getLargePayloadGroupDirectory(group);
+            successful = true;
+        } catch (SQLiteFullException e) {
+            AppCenterLog.debug(LOG_TAG, "Storage is full, storing the logs one by one to make room for them.");
+        } finally {
+            successful = mDatabaseManager.endTransaction(successful);
+        }
 
-                //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
-                directory.mkdir();
-                File payloadFile = getLargePayloadFile(directory, databaseId);
-                try {
-                    FileManager.write(payloadFile, payload);
-                    mLargePayloadsSize += payloadFile.length();
-                    AppCenterLog.verbose(LOG_TAG, "Store extra " + payloadFile.length() + " KB as a separated payload file.");
-                } catch (IOException e) {
-
-                    /* Remove database entry if we cannot save payload as a file. */
-                    mDatabaseManager.delete(databaseId);
-                    throw e;
-                }
-                AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+        /* If the transaction was rolled back, start over without it. */
+        if (!successful) {
+            mGroupSizes = null;
+            return super.putLogs(logs, group, flags);
+        }
+        for (int i : remainingIndexes) {
+            try {
+                putLog(logs.get(i), group, flags);
+            } catch (PersistenceException e) {
+                errors[i] = e;
             }
-            deleteLogsThatNotFitMaxSize();
-            return databaseId;
-        } catch (JSONException e) {
-            throw new PersistenceException("Cannot convert to JSON string.", e);
-        } catch (IOException e) {
-            throw new PersistenceException("Cannot save large payload in a file.", e);
         }
+        deleteLogsThatNotFitMaxSize();
+        return errors;
     }
 
     @NonNull
@@ -378,26 +587,32 @@ public class DatabasePersistence extends Persistence {
     }
 
     @Override
-    public void deleteLogs(@NonNull String group, @NonNull String id) {
+    public synchronized void deleteLogs(@NonNull String group, @NonNull String id) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
         AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
 
         /* Delete logs. */
-        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
+        long[] dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
         File directory = getLargePayloadGroupDirectory(group);
         if (dbIdentifiers != null) {
-            for (Long dbIdentifier : dbIdentifiers) {
+            for (long dbIdentifier : dbIdentifiers) {
                 AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
                 deleteLog(directory, dbIdentifier);
                 mPendingDbIdentifiers.remove(dbIdentifier);
+                Long payloadSize = mPendingLogSizes.remove(dbIdentifier);
+                if (payloadSize == null) {
+                    mGroupSizes = null;
+                } else {
+                    addGroupSize(group, -payloadSize);
+                }
             }
         }
     }
 
     @Override
-    public void deleteLogs(String group) {
+    public synchronized void deleteLogs(String group) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting all logs from the Persistence database for " + group);
@@ -418,19 +633,23 @@ public class DatabasePersistence extends Persistence {
 
         /* Delete from database. */
         int deletedCount = mDatabaseManager.delete(COLUMN_GROUP, group);
+        mGroupSizes = null;
         AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
 
         /* Delete from pending state. */
-        for (Iterator<String> iterator = mPendingDbIdentifiersGroups.keySet().iterator(); iterator.hasNext(); ) {
-            String key = iterator.next();
-            if (key.startsWith(group)) {
+        for (Iterator<Map.Entry<String, long[]>> iterator = mPendingDbIdentifiersGroups.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, long[]> entry = iterator.next();
+            if (entry.getKey().startsWith(group)) {
+                for (long dbIdentifier : entry.getValue()) {
+                    mPendingLogSizes.remove(dbIdentifier);
+                }
                 iterator.remove();
             }
         }
     }
 
     @Override
-    public int countLogs(@NonNull String group) {
+    public synchronized int countLogs(@NonNull String group) {
 
         /* Query database and get scanner. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
@@ -450,9 +669,15 @@ public class DatabasePersistence extends Persistence {
         return count;
     }
 
+    @Nullable
+    @Override
+    public synchronized Map<String, Integer> countLogsByGroup() {
+        return mDatabaseManager.getRowCountByColumn(COLUMN_GROUP);
+    }
+
     @Override
     @Nullable
-    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+    public synchronized String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
@@ -475,7 +700,11 @@ public class DatabasePersistence extends Persistence {
 
         /* Add logs to output parameter after deserialization if logs are not already sent. */
         int count = 0;
+        boolean measureBatch = ChannelMetrics.isEnabled();
+        boolean measureLogs = !mStorageQuotas.isEmpty();
+        long batchBytes = 0;
         Map<Long, Log> candidates = new LinkedHashMap<>();
+        Map<Long, Long> candidateSizes = new HashMap<>();
         List<Long> failedDbIdentifiers = new ArrayList<>();
         File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
         String[] selectionArgsArray = selectionArgs.toArray(new String[0]);
@@ -505,6 +734,7 @@ public class DatabasePersistence extends Persistence {
 
                         /* Found the record to delete that we could not read when selecting all fields. */
                         deleteLog(largePayloadGroupDirectory, corruptedId);
+                        mGroupSizes = null;
                         AppCenterLog.error(LOG_TAG, "Empty database corrupted empty record deleted, id=" + corruptedId);
                         break;
                     }
@@ -516,32 +746,16 @@ public class DatabasePersistence extends Persistence {
             if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
                 try {
 
-                    /* Deserialize JSON to Log. */
-                    String logPayload;
-                    String databasePayload = values.getAsString(COLUMN_LOG);
-                    if (databasePayload == null) {
-                        File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
-                        AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
-                        logPayload = FileManager.read(file);
-                        if (logPayload == null) {
-                            throw new JSONException("Log payload is null and not stored as a file.");
-                        }
-                    } else {
-                        logPayload = databasePayload;
-                    }
-                    String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
-                    Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
-
-                    /* Restore target token. */
-                    String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
-                    if (targetToken != null) {
-                        CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
-                        log.addTransmissionTarget(data.getDecryptedData());
-                    }
-
                     /* Add log to list and count. */
-                    candidates.put(dbIdentifier, log);
+                    candidates.put(dbIdentifier, readLog(values, largePayloadGroupDirectory, dbIdentifier));
                     count++;
+                    if (measureBatch || measureLogs) {
+                        long payloadSize = getPayloadSize(values, largePayloadGroupDirectory, dbIdentifier);
+                        batchBytes += payloadSize;
+                        if (measureLogs) {
+                            candidateSizes.put(dbIdentifier, payloadSize);
+                        }
+                    }
                 } catch (JSONException e) {
 
                     /* If it is not able to deserialize, delete and get another log. */
@@ -564,6 +778,7 @@ public class DatabasePersistence extends Persistence {
             for (long id : failedDbIdentifiers) {
                 deleteLog(largePayloadGroupDirectory, id);
             }
+            mGroupSizes = null;
             AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
         }
 
@@ -579,15 +794,20 @@ public class DatabasePersistence extends Persistence {
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
         AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
-        List<Long> pendingDbIdentifiersGroup = new ArrayList<>();
+        long[] pendingDbIdentifiersGroup = new long[candidates.size()];
+        int index = 0;
         for (Map.Entry<Long, Log> entry : candidates.entrySet()) {
             Long dbIdentifier = entry.getKey();
 
             /* Change a database identifier to pending state. */
             mPendingDbIdentifiers.add(dbIdentifier);
+            Long payloadSize = candidateSizes.get(dbIdentifier);
+            if (payloadSize != null) {
+                mPendingLogSizes.put(dbIdentifier, payloadSize);
+            }
 
             /* Store a database identifier to a group of the ID. */
-            pendingDbIdentifiersGroup.add(dbIdentifier);
+            pendingDbIdentifiersGroup[index++] = dbIdentifier;
 
             /* Add to output parameter. */
             outLogs.add(entry.getValue());
@@ -598,35 +818,149 @@ public class DatabasePersistence extends Persistence {
 
         /* Update pending IDs. */
         mPendingDbIdentifiersGroups.put(group + id, pendingDbIdentifiersGroup);
+        if (measureBatch) {
+            ChannelMetrics.recordBatch(group, pendingDbIdentifiersGroup.length, batchBytes);
+        }
         return id;
     }
 
+    @NonNull
+    @Override
+    public synchronized long[] getLogIds(@NonNull String group, @NonNull String batchId) {
+        long[] dbIdentifiers = mPendingDbIdentifiersGroups.get(group + batchId);
+        return dbIdentifiers != null ? dbIdentifiers : new long[0];
+    }
+
+    @Override
+    public synchronized void getLogs(@NonNull String group, @NonNull long[] logIds, @NonNull List<Log> outLogs) {
+        if (logIds.length == 0) {
+            return;
+        }
+
+        /* Identifiers are numbers, they can be inlined without exceeding the limit of query arguments. */
+        StringBuilder filter = new StringBuilder();
+        for (long logId : logIds) {
+            filter.append(logId).append(',');
+        }
+        filter.deleteCharAt(filter.length() - 1);
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(COLUMN_GROUP + " = ?");
+        builder.appendWhere(" AND ");
+        builder.appendWhere(PRIMARY_KEY + " IN (" + filter.toString() + ")");
+        Cursor cursor;
+        try {
+            cursor = mDatabaseManager.getCursor(builder, null, new String[]{group}, GET_SORT_ORDER);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get logs: ", e);
+            return;
+        }
+        File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
+        ContentValues values;
+        while ((values = mDatabaseManager.nextValues(cursor)) != null) {
+            Long dbIdentifier = values.getAsLong(PRIMARY_KEY);
+            if (dbIdentifier == null) {
+                continue;
+            }
+            try {
+                outLogs.add(readLog(values, largePayloadGroupDirectory, dbIdentifier));
+            } catch (JSONException e) {
+                AppCenterLog.error(LOG_TAG, "Cannot deserialize a log in the database", e);
+            }
+        }
+        try {
+            cursor.close();
+        } catch (RuntimeException ignore) {
+        }
+    }
+
+    /**
+     * Deserialize a log from a database record and its large payload file if any.
+     *
+     * @param values                     The database record.
+     * @param largePayloadGroupDirectory The large payload directory of the group.
+     * @param dbIdentifier               The database identifier.
+     * @return The log.
+     * @throws JSONException if the log cannot be read.
+     */
+    private Log readLog(ContentValues values, File largePayloadGroupDirectory, long dbIdentifier) throws JSONException {
+
+        /* Deserialize JSON to Log. */
+        String logPayload;
+        String databasePayload = values.getAsString(COLUMN_LOG);
+        if (databasePayload == null) {
+            File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
+            AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
+            logPayload = FileManager.read(file);
+            if (logPayload == null) {
+                throw new JSONException("Log payload is null and not stored as a file.");
+            }
+        } else {
+            logPayload = databasePayload;
+        }
+        String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
+        Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
+
+        /* Restore target token. */
+        String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
+        if (targetToken != null) {
+            CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
+            log.addTransmissionTarget(data.getDecryptedData());
+        }
+        return log;
+    }
+
+    /**
+     * Get the size of a stored log payload, for metrics.
+     *
+     * @param values                     database row.
+     * @param largePayloadGroupDirectory directory of large payloads of the log group.
+     * @param dbIdentifier               database identifier.
+     * @return size in bytes.
+     */
+    private long getPayloadSize(ContentValues values, File largePayloadGroupDirectory, long dbIdentifier) {
+        String databasePayload = values.getAsString(COLUMN_LOG);
+        if (databasePayload == null) {
+            return getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier).length();
+        }
+        return databasePayload.getBytes(StandardCharsets.UTF_8).length;
+    }
+
     @Override
-    public void clearPendingLogState() {
+    public synchronized void clearPendingLogState() {
         mPendingDbIdentifiers.clear();
         mPendingDbIdentifiersGroups.clear();
+        mPendingLogSizes.clear();
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         mDatabaseManager.close();
     }
 
     /**
      * Delete the oldest logs that do not fit max storage size.
      */
-    public void deleteLogsThatNotFitMaxSize() {
+    public synchronized void deleteLogsThatNotFitMaxSize() {
         int normalPriority = Flags.getPersistenceFlag(Flags.NORMAL, false);
-        while (getStoredDataSize() >= mDatabaseManager.getMaxSize()) {
-            if (deleteTheOldestLog(normalPriority) == OPERATION_FAILED_FLAG) {
+        long maxSize = mDatabaseManager.getMaxSize();
+        long allocatedSize = mDatabaseManager.getAllocatedSize();
+        while (getStoredDataSize(allocatedSize) >= maxSize) {
+            if (evictLog(null, normalPriority) == OPERATION_FAILED_FLAG) {
                 break;
             }
         }
     }
 
-    private long getStoredDataSize() {
-        return mDatabaseManager.getCurrentSize() + mLargePayloadsSize;
+    /**
+     * Get the size of stored logs, including large payload files.
+     * Deleting logs only frees pages, so the allocated size read before deleting logs can be used.
+     *
+     * @param allocatedSize size of all database pages.
+     * @return size in bytes.
+     */
+    private long getStoredDataSize(long allocatedSize) {
+        return allocatedSize - mDatabaseManager.getFreeSize() + mLargePayloadsSize;
     }
 
     /**
@@ -645,20 +979,335 @@ public class DatabasePersistence extends Persistence {
         }
         long deletedId = deletedRow.getAsLong(PRIMARY_KEY);
         String group = deletedRow.getAsString(COLUMN_GROUP);
-        File file = getLargePayloadFile(getLargePayloadGroupDirectory(group), deletedId);
+        ChannelMetrics.recordEvictedLog(group);
+        deleteLargePayloadFile(group, deletedId);
+        mPendingLogSizes.remove(deletedId);
+        mGroupSizes = null;
+        return deletedId;
+    }
+
+    /**
+     * Delete the large payload file of a log if it exists.
+     *
+     * @param group group of the log.
+     * @param id    database identifier of the log.
+     * @return size of the deleted file, 0 if there was none.
+     */
+    private long deleteLargePayloadFile(String group, long id) {
+        File file = getLargePayloadFile(getLargePayloadGroupDirectory(group), id);
         if (!file.exists()) {
-            return deletedId;
+            return 0;
         }
         long fileSize = file.length();
         if (file.delete()) {
             mLargePayloadsSize -= fileSize;
-            AppCenterLog.verbose(LOG_TAG, "Large payload file with id " + deletedId + " has been deleted. " + fileSize + " KB of memory has been freed.");
+            AppCenterLog.verbose(LOG_TAG, "Large payload file with id " + id + " has been deleted. " + fileSize + " KB of memory has been freed.");
+            return fileSize;
+        }
+        AppCenterLog.warn(LOG_TAG, "Cannot delete large payload file with id " + id);
+        return 0;
+    }
+
+    @Override
+    public synchronized void setStorageQuota(@NonNull String group, @Nullable StorageQuota quota) {
+        if (quota == null) {
+            mStorageQuotas.remove(group);
+        } else {
+            mStorageQuotas.put(group, quota);
+        }
+
+        /* The time to live applied to the stored logs is saved as it can change between launches. */
+        long timeToLive = quota == null ? 0 : quota.getTimeToLive();
+        String timeToLiveKey = PREFERENCE_KEY_TIME_TO_LIVE_PREFIX + group;
+        long previousTimeToLive = SharedPreferencesManager.getLong(timeToLiveKey, 0);
+        if (timeToLive != previousTimeToLive) {
+            updateExpiration(group, previousTimeToLive, timeToLive);
+            if (timeToLive > 0) {
+                SharedPreferencesManager.putLong(timeToLiveKey, timeToLive);
+            } else {
+                SharedPreferencesManager.remove(timeToLiveKey);
+            }
+        }
+    }
+
+    /**
+     * Recompute the expiration of all the stored logs of a group after its time to live changed.
+     * Logs that have an expiration keep their creation time, logs stored without one expire after the time to live from now.
+     *
+     * @param group              group of the logs.
+     * @param previousTimeToLive time to live in milliseconds the logs were stored with, 0 if they do not expire.
+     * @param timeToLive         new time to live in milliseconds, 0 if the logs no longer expire.
+     */
+    private void updateExpiration(@NonNull String group, long previousTimeToLive, long timeToLive) {
+        String[] selectionArgs = new String[]{group};
+        ContentValues values = new ContentValues();
+        int updatedCount;
+        if (timeToLive == 0) {
+            values.putNull(COLUMN_EXPIRES_AT);
+            updatedCount = mDatabaseManager.update(values, COLUMN_GROUP + " = ? AND " + COLUMN_EXPIRES_AT + " IS NOT NULL", selectionArgs);
         } else {
-            AppCenterLog.warn(LOG_TAG, "Cannot delete large payload file with id " + deletedId);
+            updatedCount = 0;
+            if (previousTimeToLive > 0) {
+                updatedCount += mDatabaseManager.addToColumn(COLUMN_EXPIRES_AT, timeToLive - previousTimeToLive, COLUMN_GROUP + " = ? AND " + COLUMN_EXPIRES_AT + " IS NOT NULL", selectionArgs);
+            }
+            values.put(COLUMN_EXPIRES_AT, System.currentTimeMillis() + timeToLive);
+            updatedCount += mDatabaseManager.update(values, COLUMN_GROUP + " = ? AND " + COLUMN_EXPIRES_AT + " IS NULL", selectionArgs);
+        }
+        AppCenterLog.debug(LOG_TAG, "Updated expiration of " + updatedCount + " logs of " + group + ".");
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<String, Integer> deleteExpiredLogs() {
+        long now = System.currentTimeMillis();
+
+        /* Logs being sent are deleted when the batch completes. */
+        StringBuilder selection = new StringBuilder(COLUMN_EXPIRES_AT + " <= ?");
+        if (!mPendingDbIdentifiers.isEmpty()) {
+            selection.append(" AND ").append(PRIMARY_KEY).append(" NOT IN (");
+            for (Iterator<Long> iterator = mPendingDbIdentifiers.iterator(); iterator.hasNext(); ) {
+                selection.append(iterator.next());
+                if (iterator.hasNext()) {
+                    selection.append(",");
+                }
+            }
+            selection.append(")");
+        }
+        String[] selectionArgs = new String[]{String.valueOf(now)};
+        Map<String, Integer> expiredCounts = mDatabaseManager.getRowCountByColumn(COLUMN_GROUP, selection.toString(), selectionArgs);
+        if (expiredCounts == null || expiredCounts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        /* Delete large payload files, then all expired records with a single range delete on the index. */
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(selection + " AND " + COLUMN_LOG + " IS NULL");
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{PRIMARY_KEY, COLUMN_GROUP}, selectionArgs, null);
+            try {
+                while (cursor.moveToNext()) {
+                    deleteLargePayloadFile(cursor.getString(1), cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get expired large payloads.", e);
+        }
+        int deletedCount = mDatabaseManager.deleteWhere(selection.toString(), selectionArgs);
+        mGroupSizes = null;
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " expired logs.");
+        if (deletedCount == 0) {
+            return Collections.emptyMap();
+        }
+        return expiredCounts;
+    }
+
+    @Override
+    public synchronized boolean reclaimStorage() {
+        long freePageCount = mDatabaseManager.reclaimFreePages(RECLAIMED_PAGES_PER_STEP);
+        if (freePageCount == OPERATION_FAILED_FLAG) {
+            return false;
+        }
+        AppCenterLog.verbose(LOG_TAG, "Database has " + freePageCount + " free pages left after reclaiming storage.");
+        return freePageCount > 0;
+    }
+
+    /**
+     * Get the expiration time of a log, following the time to live of its group.
+     *
+     * @param log   log to store.
+     * @param group group of the log.
+     * @return time in milliseconds since epoch after which the log is deleted, null if it does not expire.
+     */
+    @Nullable
+    private Long getExpiresAt(@NonNull Log log, @NonNull String group) {
+        StorageQuota quota = mStorageQuotas.get(group);
+        if (quota == null || quota.getTimeToLive() == 0) {
+            return null;
+        }
+        Date timestamp = log.getTimestamp();
+        long createdAt = timestamp == null ? System.currentTimeMillis() : timestamp.getTime();
+        return createdAt + quota.getTimeToLive();
+    }
+
+    /**
+     * Delete a log to make room for another one. Without quotas, the oldest log with the lowest priority is deleted.
+     * Otherwise the log is deleted from the group using the most storage beyond its reserved size,
+     * following the eviction policy of that group, then from the group of the new log.
+     * If no such log can be deleted, the oldest log with the lowest priority is deleted.
+     * A reserved size is limited to {@link #MAX_RESERVED_SHARE} of the storage size.
+     *
+     * @param group    group of the log to store, null when enforcing the storage size.
+     * @param priority Value of maximum priority of record to delete.
+     * @return Id of deleted record.
+     */
+    private long evictLog(@Nullable String group, int priority) {
+        if (mStorageQuotas.isEmpty()) {
+            return deleteTheOldestLog(priority);
+        }
+        Map<String, Long> groupSizes = getGroupSizes();
+        if (groupSizes == null) {
+            return deleteTheOldestLog(priority);
+        }
+        long maxReservedSize = (long) (MAX_RESERVED_SHARE * mDatabaseManager.getMaxSize());
+        final Map<String, Long> excessSizes = new HashMap<>();
+        for (Map.Entry<String, Long> entry : groupSizes.entrySet()) {
+            StorageQuota quota = mStorageQuotas.get(entry.getKey());
+            long reservedSize = quota == null ? 0 : Math.min(quota.getReservedSize(), maxReservedSize);
+            long excessSize = entry.getValue() - reservedSize;
+            if (excessSize > 0) {
+                excessSizes.put(entry.getKey(), excessSize);
+            }
+        }
+        List<String> groups = new ArrayList<>(excessSizes.keySet());
+        Collections.sort(groups, new Comparator<String>() {
+
+            @Override
+            public int compare(String group1, String group2) {
+                return Long.compare(excessSizes.get(group2), excessSizes.get(group1));
+            }
+        });
+
+        /* A group can always make room for its own logs. */
+        if (group != null && !groups.contains(group)) {
+            groups.add(group);
+        }
+        for (String evictedGroup : groups) {
+            StorageQuota quota = mStorageQuotas.get(evictedGroup);
+            long deletedId = deleteLogOfGroup(evictedGroup, quota == null ? EvictionPolicy.OLDEST_FIRST : quota.getEvictionPolicy(), priority);
+            if (deletedId != OPERATION_FAILED_FLAG) {
+                return deletedId;
+            }
+        }
+        AppCenterLog.debug(LOG_TAG, "No log can be deleted without using the storage reserved for a group, deleting the oldest log.");
+        return deleteTheOldestLog(priority);
+    }
+
+    /**
+     * Make room in the quota of the group before storing a log.
+     *
+     * @param serializedLog log to store.
+     * @param group         group of the log.
+     * @throws PersistenceException if the group exceeds its quota and logs cannot or must not be deleted.
+     */
+    private void applyStorageQuota(@NonNull SerializedLog serializedLog, @NonNull String group) throws PersistenceException {
+        StorageQuota quota = mStorageQuotas.get(group);
+        if (quota == null || quota.getMaxShare() >= 1) {
+            return;
+        }
+        long maxGroupSize = (long) (quota.getMaxShare() * serializedLog.mMaxSize);
+        while (getGroupSize(group) + serializedLog.mPayloadSize > maxGroupSize) {
+            if (quota.getEvictionPolicy() == EvictionPolicy.DROP_NEWEST) {
+                ChannelMetrics.recordQuotaRejectedLog(group);
+                throw new PersistenceException("Storage quota of " + group + " is exceeded, the log is not stored.");
+            }
+            if (deleteLogOfGroup(group, quota.getEvictionPolicy(), serializedLog.mPriority) == OPERATION_FAILED_FLAG) {
+                ChannelMetrics.recordQuotaRejectedLog(group);
+                throw new PersistenceException("Storage quota of " + group + " is exceeded and no log can be deleted to store a new one.");
+            }
+        }
+    }
+
+    /**
+     * Delete a log of a group following an eviction policy.
+     *
+     * @param group          group of logs.
+     * @param evictionPolicy logs deleted first.
+     * @param priority       Value of maximum priority of record to delete.
+     * @return Id of deleted record.
+     */
+    private long deleteLogOfGroup(@NonNull String group, @EvictionPolicy int evictionPolicy, int priority) {
+        String sortOrder;
+        switch (evictionPolicy) {
+            case EvictionPolicy.LARGEST_FIRST:
+
+                /* Large payloads stored in files are the largest ones. */
+                sortOrder = COLUMN_PRIORITY + ", " + COLUMN_LOG + " IS NOT NULL, " + PAYLOAD_SIZE_EXPRESSION + " DESC, " + PRIMARY_KEY;
+                break;
+
+            case EvictionPolicy.DROP_NEWEST:
+                sortOrder = COLUMN_PRIORITY + ", " + PRIMARY_KEY + " DESC";
+                break;
+
+            default:
+                sortOrder = COLUMN_PRIORITY + ", " + PRIMARY_KEY;
         }
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(COLUMN_GROUP + " = ?");
+        builder.appendWhere(" AND ");
+        builder.appendWhere(COLUMN_PRIORITY + " <= ?");
+        long deletedId;
+        long deletedSize;
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{PRIMARY_KEY, PAYLOAD_SIZE_EXPRESSION}, new String[]{group, String.valueOf(priority)}, sortOrder);
+            try {
+                if (!cursor.moveToNext()) {
+                    return OPERATION_FAILED_FLAG;
+                }
+                deletedId = cursor.getLong(0);
+                deletedSize = cursor.getLong(1);
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get a log to delete for " + group, e);
+            return OPERATION_FAILED_FLAG;
+        }
+        mDatabaseManager.delete(deletedId);
+        deletedSize += deleteLargePayloadFile(group, deletedId);
+        ChannelMetrics.recordEvictedLog(group);
+        mPendingLogSizes.remove(deletedId);
+        addGroupSize(group, -deletedSize);
+        AppCenterLog.debug(LOG_TAG, "Deleted log id=" + deletedId + " of " + group + " following its storage quota.");
         return deletedId;
     }
 
+    /**
+     * Get the payload size of the logs of each group, including large payload files.
+     *
+     * @return size by group, null if it cannot be computed.
+     */
+    @Nullable
+    private Map<String, Long> getGroupSizes() {
+        if (mGroupSizes == null) {
+            Map<String, Long> groupSizes = mDatabaseManager.getSumByColumn(COLUMN_GROUP, PAYLOAD_SIZE_EXPRESSION);
+            if (groupSizes == null) {
+                return null;
+            }
+            File[] groupDirectories = mLargePayloadDirectory.listFiles();
+            if (groupDirectories != null) {
+                for (File groupDirectory : groupDirectories) {
+                    File[] files = groupDirectory.listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    long size = 0;
+                    for (File file : files) {
+                        size += file.length();
+                    }
+                    Long groupSize = groupSizes.get(groupDirectory.getName());
+                    groupSizes.put(groupDirectory.getName(), size + (groupSize == null ? 0 : groupSize));
+                }
+            }
+            mGroupSizes = groupSizes;
+        }
+        return mGroupSizes;
+    }
+
+    private long getGroupSize(@NonNull String group) {
+        Map<String, Long> groupSizes = getGroupSizes();
+        Long groupSize = groupSizes == null ? null : groupSizes.get(group);
+        return groupSize == null ? 0 : groupSize;
+    }
+
+    private void addGroupSize(@NonNull String group, long size) {
+        if (mGroupSizes != null) {
+            Long groupSize = mGroupSizes.get(group);
+            mGroupSizes.put(group, size + (groupSize == null ? 0 : groupSize));
+        }
+    }
+
     private long checkLargePayloadFilesAndCollectTheirSize() {
         FilenameFilter filter = new FilenameFilter() {
             @Override
@@ -718,4 +1367,47 @@ public class DatabasePersistence extends Persistence {
         }
         return result;
     }
+
+    /**
+     * Log serialized and checked before being stored.
+     */
+    private static class SerializedLog {
+
+        /**
+         * Log serialized as JSON.
+         */
+        final String mPayload;
+
+        /**
+         * Size of the payload in bytes.
+         */
+        final int mPayloadSize;
+
+        /**
+         * Maximum size of the database when the log was serialized.
+         */
+        final long mMaxSize;
+
+        /**
+         * Persistence priority.
+         */
+        final int mPriority;
+
+        /**
+         * Values to insert in the database, without the payload if it's stored in a separate file.
+         */
+        final ContentValues mContentValues;
+
+        SerializedLog(String payload, int payloadSize, long maxSize, int priority, ContentValues contentValues) {
+            mPayload = payload;
+            mPayloadSize = payloadSize;
+            mMaxSize = maxSize;
+            mPriority = priority;
+            mContentValues = contentValues;
+        }
+
+        boolean isLargePayload() {
+            return mPayloadSize >= PAYLOAD_MAX_SIZE;
+        }
+    }
 }
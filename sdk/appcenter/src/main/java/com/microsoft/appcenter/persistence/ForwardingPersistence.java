@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.TransactionTooLargeException;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Persistence used in a secondary process of the application: logs are forwarded to the main process,
+ * which stores and sends them. Logs are kept in memory, in order, while the main process cannot receive them.
+ * Nothing is stored in this process, so the channel never reads logs back to send them from here.
+ */
+public class ForwardingPersistence extends Persistence {
+
+    /**
+     * Suffix appended to the application identifier to get the authority of the provider receiving logs.
+     */
+    public static final String AUTHORITY_SUFFIX = ".appcenter.logs";
+
+    /**
+     * Group name column.
+     */
+    public static final String COLUMN_GROUP = "group";
+
+    /**
+     * Persistence flags column.
+     */
+    public static final String COLUMN_FLAGS = "flags";
+
+    /**
+     * Log type column.
+     */
+    public static final String COLUMN_DATA_TYPE = "type";
+
+    /**
+     * Log JSON column.
+     */
+    public static final String COLUMN_LOG = "log";
+
+    /**
+     * Target token column, for One Collector logs only.
+     */
+    public static final String COLUMN_TARGET_TOKEN = "target_token";
+
+    /**
+     * Maximum number of logs kept while the main process cannot receive them.
+     */
+    @VisibleForTesting
+    static final int MAX_QUEUED_LOGS = 300;
+
+    /**
+     * Maximum number of JSON characters forwarded in a single call. Strings are parcelled as UTF-16,
+     * so this is about 128 KB, well under the 1 MB Binder transaction buffer shared by the process.
+     * A larger log is forwarded alone.
+     */
+    @VisibleForTesting
+    static final int MAX_FORWARDED_LENGTH = 64 * 1024;
+
+    /**
+     * Maximum number of JSON characters of a single log, about 512 KB once parcelled.
+     */
+    @VisibleForTesting
+    static final int MAX_LOG_LENGTH = 256 * 1024;
+
+    /**
+     * Content resolver to reach the main process.
+     */
+    private final ContentResolver mContentResolver;
+
+    /**
+     * URI of the provider receiving logs in the main process.
+     */
+    private final Uri mUri;
+
+    /**
+     * Logs not forwarded yet, in enqueue order.
+     */
+    private final Deque<ForwardedLog> mQueue = new ArrayDeque<>();
+
+    /**
+     * Initializes a persistence forwarding logs to the main process.
+     *
+     * @param context application context.
+     */
+    public ForwardingPersistence(@NonNull Context context) {
+        mContentResolver = context.getContentResolver();
+        mUri = getUri(context);
+    }
+
+    /**
+     * Get the URI of the provider receiving logs in the main process.
+     *
+     * @param context any context.
+     * @return provider URI.
+     */
+    public static Uri getUri(@NonNull Context context) {
+        return Uri.parse(ContentResolver.SCHEME_CONTENT + "://" + context.getPackageName() + AUTHORITY_SUFFIX);
+    }
+
+    @Override
+    public synchronized long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        queueLog(serializeLog(log, group, flags));
+        forwardQueuedLogs();
+        return 0;
+    }
+
+    @NonNull
+    @Override
+    public synchronized PersistenceException[] putLogs(@NonNull List<Log> logs, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) {
+        PersistenceException[] errors = new PersistenceException[logs.size()];
+        for (int i = 0; i < logs.size(); i++) {
+            try {
+                queueLog(serializeLog(logs.get(i), group, flags));
+            } catch (PersistenceException e) {
+                errors[i] = e;
+            }
+        }
+        forwardQueuedLogs();
+        return errors;
+    }
+
+    @NonNull
+    private ForwardedLog serializeLog(@NonNull Log log, @NonNull String group, int flags) throws PersistenceException {
+        String payload;
+        try {
+            payload = getLogSerializer().serializeLog(log);
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string.", e);
+        }
+        if (payload.length() > MAX_LOG_LENGTH) {
+            throw new PersistenceException("Log is too large (" + payload.length() + " characters) to forward to the main process.");
+        }
+        String targetToken = log instanceof CommonSchemaLog ? log.getTransmissionTargetTokens().iterator().next() : null;
+        return new ForwardedLog(group, flags, log.getType(), payload, targetToken);
+    }
+
+    private void queueLog(@NonNull ForwardedLog forwardedLog) throws PersistenceException {
+        if (mQueue.size() >= MAX_QUEUED_LOGS) {
+            forwardQueuedLogs();
+            if (mQueue.size() >= MAX_QUEUED_LOGS) {
+                throw new PersistenceException("Main process cannot receive logs and " + MAX_QUEUED_LOGS + " logs are already waiting.");
+            }
+        }
+        mQueue.add(forwardedLog);
+    }
+
+    /**
+     * Forward queued logs in order, stop at the first failure and keep remaining logs for the next attempt.
+     * A log that is too large for a Binder transaction on its own is dropped, so that it does not block the queue.
+     */
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    private void forwardQueuedLogs() {
+        if (mQueue.isEmpty()) {
+            return;
+        }
+
+        /* Use a client rather than the resolver, which would hide Binder errors behind a 0 count. */
+        ContentProviderClient client;
+        try {
+            client = mContentResolver.acquireUnstableContentProviderClient(mUri);
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(LOG_TAG, "Failed to reach the main process, will retry with next log.", e);
+            return;
+        }
+        if (client == null) {
+            AppCenterLog.warn(LOG_TAG, "Main process cannot receive logs, will retry with next log.");
+            return;
+        }
+        try {
+            boolean oneByOne = false;
+            while (!mQueue.isEmpty()) {
+                List<ContentValues> chunk = new ArrayList<>();
+                int length = 0;
+                for (ForwardedLog forwardedLog : mQueue) {
+                    if (!chunk.isEmpty() && (oneByOne || length + forwardedLog.mPayload.length() > MAX_FORWARDED_LENGTH)) {
+                        break;
+                    }
+                    chunk.add(forwardedLog.toContentValues());
+                    length += forwardedLog.mPayload.length();
+                }
+                int forwardedCount;
+                try {
+                    forwardedCount = client.bulkInsert(mUri, chunk.toArray(new ContentValues[0]));
+                } catch (TransactionTooLargeException e) {
+                    if (chunk.size() > 1) {
+                        oneByOne = true;
+                    } else {
+                        mQueue.poll();
+                        AppCenterLog.error(LOG_TAG, "Log is too large (" + length + " characters) to forward to the main process, it is discarded.", e);
+                    }
+                    continue;
+                } catch (RemoteException | RuntimeException e) {
+                    AppCenterLog.warn(LOG_TAG, "Failed to forward logs to the main process, will retry with next log.", e);
+                    return;
+                }
+                if (forwardedCount != chunk.size()) {
+                    AppCenterLog.warn(LOG_TAG, "Main process is not ready to receive logs, will retry with next log.");
+                    return;
+                }
+                for (int i = 0; i < forwardedCount; i++) {
+                    mQueue.poll();
+                }
+                AppCenterLog.debug(LOG_TAG, "Forwarded " + forwardedCount + " log(s) to the main process.");
+            }
+        } finally {
+
+            /* close() requires API level 24. */
+            client.release();
+        }
+    }
+
+    @Override
+    public void deleteLogs(@NonNull String group, @NonNull String batchId) {
+    }
+
+    @Override
+    public synchronized void deleteLogs(String group) {
+        Iterator<ForwardedLog> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mGroup.equals(group)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public int countLogs(@NonNull String group) {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Integer> countLogsByGroup() {
+        return new HashMap<>();
+    }
+
+    @Nullable
+    @Override
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public long[] getLogIds(@NonNull String group, @NonNull String batchId) {
+        return new long[0];
+    }
+
+    @Override
+    public void getLogs(@NonNull String group, @NonNull long[] logIds, @NonNull List<Log> outLogs) {
+    }
+
+    @Override
+    public void clearPendingLogState() {
+    }
+
+    /**
+     * Storage size is managed by the main process.
+     */
+    @Override
+    public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
+        return true;
+    }
+
+    /**
+     * Try to forward logs still queued, as the queue does not survive the process.
+     */
+    @Override
+    public synchronized void flush() {
+        forwardQueuedLogs();
+    }
+
+    /**
+     * Try to forward logs still queued.
+     */
+    @Override
+    public synchronized void close() {
+        forwardQueuedLogs();
+    }
+
+    @VisibleForTesting
+    synchronized int getQueuedLogCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Serialized log waiting to be forwarded.
+     */
+    private static class ForwardedLog {
+
+        private final String mGroup;
+
+        private final int mFlags;
+
+        private final String mType;
+
+        private final String mPayload;
+
+        private final String mTargetToken;
+
+        ForwardedLog(String group, int flags, String type, String payload, String targetToken) {
+            mGroup = group;
+            mFlags = flags;
+            mType = type;
+            mPayload = payload;
+            mTargetToken = targetToken;
+        }
+
+        ContentValues toContentValues() {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_GROUP, mGroup);
+            values.put(COLUMN_FLAGS, mFlags);
+            values.put(COLUMN_DATA_TYPE, mType);
+            values.put(COLUMN_LOG, mPayload);
+            if (mTargetToken != null) {
+                values.put(COLUMN_TARGET_TOKEN, mTargetToken);
+            }
+            return values;
+        }
+    }
+}
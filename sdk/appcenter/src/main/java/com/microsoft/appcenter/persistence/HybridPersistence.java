@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.os.Handler;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.ApplicationLifecycleListener;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Persistence keeping logs in memory, bounded per group, while the application is in foreground.
+ * Logs are written to the database only when memory is full (sending does not keep up or network is down),
+ * when the application goes to background, or if they are {@link Flags#CRITICAL}.
+ * Logs stored in the database are sent first, then logs are served from memory without any disk access.
+ * Identifiers of logs kept in memory are negative so they never collide with database identifiers.
+ * Methods are synchronized as the channel can write logs on a separate thread.
+ */
+public class HybridPersistence extends Persistence implements ApplicationLifecycleListener.ApplicationLifecycleCallbacks {
+
+    /**
+     * Maximum number of logs of a group waiting in memory before they are moved to the database.
+     */
+    @VisibleForTesting
+    static final int MAX_MEMORY_LOGS_PER_GROUP = 100;
+
+    /**
+     * Maximum total size, in JSON characters, of the logs kept in memory.
+     * Logs waiting in memory are moved to the database when it is exceeded.
+     */
+    @VisibleForTesting
+    static final int MAX_MEMORY_SIZE = 512 * 1024;
+
+    /**
+     * Orders logs as they were enqueued.
+     */
+    private static final Comparator<MemoryLog> SEQUENCE_ORDER = new Comparator<MemoryLog>() {
+
+        @Override
+        public int compare(MemoryLog log1, MemoryLog log2) {
+            return Long.compare(log1.mSequence, log2.mSequence);
+        }
+    };
+
+    /**
+     * Database used for logs that must survive the process.
+     */
+    private final Persistence mDatabase;
+
+    /**
+     * Handler of the thread writing logs, so that lifecycle events are applied in order with writes.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Logs in memory not being sent, by group, in enqueue order.
+     */
+    private final Map<String, List<MemoryLog>> mAvailableLogs = new HashMap<>();
+
+    /**
+     * Batches of logs in memory being sent, by batch identifier.
+     */
+    private final Map<String, MemoryBatch> mPendingBatches = new HashMap<>();
+
+    /**
+     * Groups known to have no log available in the database, so that reading from memory does not query it.
+     */
+    private final Set<String> mEmptyDatabaseGroups = new HashSet<>();
+
+    /**
+     * Total size of the logs in memory, in JSON characters.
+     */
+    private int mMemorySize;
+
+    /**
+     * Last sequence number given to a log in memory.
+     */
+    private long mSequence;
+
+    /**
+     * Whether new logs are written directly to the database, while the application is in background.
+     */
+    private boolean mWriteToDatabase;
+
+    /**
+     * Initializes a persistence keeping logs in memory in front of a database.
+     *
+     * @param database database persistence.
+     * @param handler  handler of the thread writing logs.
+     */
+    public HybridPersistence(@NonNull Persistence database, @NonNull Handler handler) {
+        mDatabase = database;
+        mHandler = handler;
+    }
+
+    @Override
+    public void setLogSerializer(@NonNull LogSerializer logSerializer) {
+        super.setLogSerializer(logSerializer);
+        mDatabase.setLogSerializer(logSerializer);
+    }
+
+    @Override
+    public synchronized long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        if (mWriteToDatabase || Flags.getPersistenceFlag(flags, false) == Flags.CRITICAL) {
+            mEmptyDatabaseGroups.remove(group);
+            return mDatabase.putLog(log, group, flags);
+        }
+        MemoryLog memoryLog = createMemoryLog(log);
+        if (memoryLog.mSize > MAX_MEMORY_SIZE) {
+            mEmptyDatabaseGroups.remove(group);
+            return mDatabase.putLog(log, group, flags);
+        }
+        List<MemoryLog> logs = mAvailableLogs.get(group);
+        if (logs == null) {
+            logs = new ArrayList<>();
+            mAvailableLogs.put(group, logs);
+        }
+        logs.add(memoryLog);
+        mMemorySize += memoryLog.mSize;
+
+        /* Sending does not keep up with enqueued logs: keep memory bounded. */
+        if (logs.size() > MAX_MEMORY_LOGS_PER_GROUP) {
+            moveToDatabase(group);
+        }
+        if (mMemorySize > MAX_MEMORY_SIZE) {
+            moveAllToDatabase();
+        }
+        return memoryLog.getId();
+    }
+
+    @NonNull
+    @Override
+    public synchronized PersistenceException[] putLogs(@NonNull List<Log> logs, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) {
+        if (mWriteToDatabase || Flags.getPersistenceFlag(flags, false) == Flags.CRITICAL) {
+            mEmptyDatabaseGroups.remove(group);
+            return mDatabase.putLogs(logs, group, flags);
+        }
+        return super.putLogs(logs, group, flags);
+    }
+
+    @NonNull
+    private MemoryLog createMemoryLog(@NonNull Log log) throws PersistenceException {
+
+        /* Serialize now so that invalid logs are rejected when enqueued as with the database. */
+        String payload;
+        try {
+            payload = getLogSerializer().serializeLog(log);
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string.", e);
+        }
+        String targetKey = null;
+        if (log instanceof CommonSchemaLog) {
+            targetKey = PartAUtils.getTargetKey(log.getTransmissionTargetTokens().iterator().next());
+        }
+        return new MemoryLog(++mSequence, log, targetKey, payload.length());
+    }
+
+    /**
+     * Move the logs of a group waiting in memory to the database. Logs being sent stay in memory.
+     *
+     * @param group group of logs.
+     */
+    private void moveToDatabase(@NonNull String group) {
+        List<MemoryLog> memoryLogs = mAvailableLogs.remove(group);
+        if (memoryLogs == null || memoryLogs.isEmpty()) {
+            return;
+        }
+        List<Log> logs = new ArrayList<>(memoryLogs.size());
+        for (MemoryLog memoryLog : memoryLogs) {
+            logs.add(memoryLog.mLog);
+            mMemorySize -= memoryLog.mSize;
+        }
+        PersistenceException[] errors = mDatabase.putLogs(logs, group, Flags.NORMAL);
+        for (PersistenceException error : errors) {
+            if (error != null) {
+                AppCenterLog.error(LOG_TAG, "Failed to move a log from memory to the database.", error);
+            }
+        }
+        mEmptyDatabaseGroups.remove(group);
+        AppCenterLog.debug(LOG_TAG, "Moved " + logs.size() + " logs of " + group + " from memory to the database.");
+    }
+
+    private void moveAllToDatabase() {
+        for (String group : new ArrayList<>(mAvailableLogs.keySet())) {
+            moveToDatabase(group);
+        }
+    }
+
+    @Override
+    public synchronized void deleteLogs(@NonNull String group, @NonNull String batchId) {
+        MemoryBatch batch = mPendingBatches.remove(batchId);
+        if (batch == null) {
+            mDatabase.deleteLogs(group, batchId);
+            return;
+        }
+        for (MemoryLog memoryLog : batch.mLogs) {
+            mMemorySize -= memoryLog.mSize;
+        }
+    }
+
+    @Override
+    public synchronized void deleteLogs(String group) {
+        List<MemoryLog> memoryLogs = mAvailableLogs.remove(group);
+        if (memoryLogs != null) {
+            for (MemoryLog memoryLog : memoryLogs) {
+                mMemorySize -= memoryLog.mSize;
+            }
+        }
+        for (Iterator<MemoryBatch> iterator = mPendingBatches.values().iterator(); iterator.hasNext(); ) {
+            MemoryBatch batch = iterator.next();
+            if (batch.mGroup.equals(group)) {
+                iterator.remove();
+                for (MemoryLog memoryLog : batch.mLogs) {
+                    mMemorySize -= memoryLog.mSize;
+                }
+            }
+        }
+        mDatabase.deleteLogs(group);
+        mEmptyDatabaseGroups.add(group);
+    }
+
+    @Override
+    public synchronized int countLogs(@NonNull String group) {
+        return countMemoryLogs().get(group) + mDatabase.countLogs(group);
+    }
+
+    @Nullable
+    @Override
+    public synchronized Map<String, Integer> countLogsByGroup() {
+        Map<String, Integer> counts = mDatabase.countLogsByGroup();
+        if (counts == null) {
+            return null;
+        }
+        MemoryCounts memoryCounts = countMemoryLogs();
+        for (Map.Entry<String, Integer> entry : memoryCounts.mCounts.entrySet()) {
+            Integer count = counts.get(entry.getKey());
+            counts.put(entry.getKey(), entry.getValue() + (count == null ? 0 : count));
+        }
+        return counts;
+    }
+
+    private MemoryCounts countMemoryLogs() {
+        MemoryCounts counts = new MemoryCounts();
+        for (Map.Entry<String, List<MemoryLog>> entry : mAvailableLogs.entrySet()) {
+            counts.add(entry.getKey(), entry.getValue().size());
+        }
+        for (MemoryBatch batch : mPendingBatches.values()) {
+            counts.add(batch.mGroup, batch.mLogs.size());
+        }
+        return counts;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+
+        /* Logs stored in the database are older or critical: send them first. */
+        if (!mEmptyDatabaseGroups.contains(group)) {
+            String batchId = mDatabase.getLogs(group, pausedTargetKeys, limit, outLogs);
+            if (batchId != null) {
+                return batchId;
+            }
+
+            /* Logs of paused targets may still be in the database. */
+            if (pausedTargetKeys.isEmpty()) {
+                mEmptyDatabaseGroups.add(group);
+            }
+        }
+        List<MemoryLog> memoryLogs = mAvailableLogs.get(group);
+        if (memoryLogs == null) {
+            return null;
+        }
+        List<MemoryLog> batchLogs = new ArrayList<>();
+        for (Iterator<MemoryLog> iterator = memoryLogs.iterator(); iterator.hasNext() && batchLogs.size() < limit; ) {
+            MemoryLog memoryLog = iterator.next();
+            if (memoryLog.mTargetKey == null || !pausedTargetKeys.contains(memoryLog.mTargetKey)) {
+                iterator.remove();
+                batchLogs.add(memoryLog);
+                outLogs.add(memoryLog.mLog);
+            }
+        }
+        if (memoryLogs.isEmpty()) {
+            mAvailableLogs.remove(group);
+        }
+        if (batchLogs.isEmpty()) {
+            return null;
+        }
+        String batchId = UUID.randomUUID().toString();
+        mPendingBatches.put(batchId, new MemoryBatch(group, batchLogs));
+        AppCenterLog.debug(LOG_TAG, "Returning " + batchLogs.size() + " logs of " + group + " from memory with " + batchId);
+        return batchId;
+    }
+
+    @NonNull
+    @Override
+    public synchronized long[] getLogIds(@NonNull String group, @NonNull String batchId) {
+        MemoryBatch batch = mPendingBatches.get(batchId);
+        if (batch == null) {
+            return mDatabase.getLogIds(group, batchId);
+        }
+        long[] logIds = new long[batch.mLogs.size()];
+        for (int i = 0; i < logIds.length; i++) {
+            logIds[i] = batch.mLogs.get(i).getId();
+        }
+        return logIds;
+    }
+
+    @Override
+    public synchronized void getLogs(@NonNull String group, @NonNull long[] logIds, @NonNull List<Log> outLogs) {
+        Map<Long, Log> memoryLogs = new HashMap<>();
+        for (MemoryBatch batch : mPendingBatches.values()) {
+            if (batch.mGroup.equals(group)) {
+                for (MemoryLog memoryLog : batch.mLogs) {
+                    memoryLogs.put(memoryLog.getId(), memoryLog.mLog);
+                }
+            }
+        }
+        List<Long> databaseIds = new ArrayList<>();
+        for (long logId : logIds) {
+            if (logId < 0) {
+                Log log = memoryLogs.get(logId);
+                if (log != null) {
+                    outLogs.add(log);
+                }
+            } else {
+                databaseIds.add(logId);
+            }
+        }
+        if (!databaseIds.isEmpty()) {
+            long[] ids = new long[databaseIds.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = databaseIds.get(i);
+            }
+            mDatabase.getLogs(group, ids, outLogs);
+        }
+    }
+
+    @Override
+    public synchronized void clearPendingLogState() {
+        for (MemoryBatch batch : mPendingBatches.values()) {
+            List<MemoryLog> memoryLogs = mAvailableLogs.get(batch.mGroup);
+            if (memoryLogs == null) {
+                memoryLogs = new ArrayList<>();
+                mAvailableLogs.put(batch.mGroup, memoryLogs);
+            }
+            memoryLogs.addAll(batch.mLogs);
+        }
+        mPendingBatches.clear();
+        for (List<MemoryLog> memoryLogs : mAvailableLogs.values()) {
+            Collections.sort(memoryLogs, SEQUENCE_ORDER);
+        }
+        mEmptyDatabaseGroups.clear();
+        mDatabase.clearPendingLogState();
+        if (mWriteToDatabase) {
+            moveAllToDatabase();
+        }
+    }
+
+    @Override
+    public synchronized boolean setMaxStorageSize(long maxStorageSizeInBytes) {
+        return mDatabase.setMaxStorageSize(maxStorageSizeInBytes);
+    }
+
+    @Override
+    public synchronized void performDeferredChecks() {
+        mDatabase.performDeferredChecks();
+    }
+
+    @Override
+    public synchronized void setStorageQuota(@NonNull String group, @Nullable StorageQuota quota) {
+        mDatabase.setStorageQuota(group, quota);
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<String, Integer> deleteExpiredLogs() {
+        return mDatabase.deleteExpiredLogs();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The database synchronizes itself, logs kept in memory stay available while it is vacuumed.
+     */
+    @Override
+    public boolean reclaimStorage() {
+        return mDatabase.reclaimStorage();
+    }
+
+    /**
+     * Keep logs in memory again, logs already in the database stay there.
+     */
+    @Override
+    public void onApplicationEnterForeground() {
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                setWriteToDatabase(false);
+            }
+        });
+    }
+
+    /**
+     * The process can be killed at any time in background: move logs waiting in memory to the database
+     * and write new logs there directly.
+     */
+    @Override
+    public void onApplicationEnterBackground() {
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                setWriteToDatabase(true);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    synchronized void setWriteToDatabase(boolean writeToDatabase) {
+        mWriteToDatabase = writeToDatabase;
+        if (writeToDatabase) {
+            moveAllToDatabase();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        moveAllToDatabase();
+    }
+
+    /**
+     * Move logs waiting in memory to the database before closing it.
+     */
+    @Override
+    public synchronized void close() {
+        moveAllToDatabase();
+        try {
+            mDatabase.close();
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to close the database.", e);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getMemoryLogCount() {
+        int count = 0;
+        for (int groupCount : countMemoryLogs().mCounts.values()) {
+            count += groupCount;
+        }
+        return count;
+    }
+
+    @VisibleForTesting
+    synchronized int getMemorySize() {
+        return mMemorySize;
+    }
+
+    /**
+     * Log kept in memory.
+     */
+    private static class MemoryLog {
+
+        private final long mSequence;
+
+        private final Log mLog;
+
+        private final String mTargetKey;
+
+        private final int mSize;
+
+        MemoryLog(long sequence, Log log, String targetKey, int size) {
+            mSequence = sequence;
+            mLog = log;
+            mTargetKey = targetKey;
+            mSize = size;
+        }
+
+        long getId() {
+            return -mSequence;
+        }
+    }
+
+    /**
+     * Logs in memory returned together by {@link #getLogs(String, Collection, int, List)}.
+     */
+    private static class MemoryBatch {
+
+        private final String mGroup;
+
+        private final List<MemoryLog> mLogs;
+
+        MemoryBatch(String group, List<MemoryLog> logs) {
+            mGroup = group;
+            mLogs = logs;
+        }
+    }
+
+    /**
+     * Number of logs in memory by group.
+     */
+    private static class MemoryCounts {
+
+        private final Map<String, Integer> mCounts = new HashMap<>();
+
+        void add(String group, int count) {
+            mCounts.put(group, get(group) + count);
+        }
+
+        int get(String group) {
+            Integer count = mCounts.get(group);
+            return count == null ? 0 : count;
+        }
+    }
+}
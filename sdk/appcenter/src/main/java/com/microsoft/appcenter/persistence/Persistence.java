@@ -10,13 +10,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class for Persistence service.
@@ -40,6 +43,30 @@ public abstract class Persistence implements Closeable {
     public abstract long putLog(@NonNull Log log, @NonNull String group,
                                 @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException;
 
+    /**
+     * Writes logs to the storage with the given {@code group}.
+     * Implementations can store the logs together, the default one stores them one by one.
+     *
+     * @param logs  The logs to be placed in the storage.
+     * @param group The group of the storage for the logs.
+     * @param flags The persistence flags.
+     * @return An array of the same size as {@code logs} containing, at the index of each log, {@code null}
+     * if it was stored or the exception describing why it could not be stored.
+     */
+    @NonNull
+    public PersistenceException[] putLogs(@NonNull List<Log> logs, @NonNull String group,
+                                          @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) {
+        PersistenceException[] errors = new PersistenceException[logs.size()];
+        for (int i = 0; i < logs.size(); i++) {
+            try {
+                putLog(logs.get(i), group, flags);
+            } catch (PersistenceException e) {
+                errors[i] = e;
+            }
+        }
+        return errors;
+    }
+
     /**
      * Deletes a log with the give ID from the {@code group}.
      *
@@ -63,6 +90,14 @@ public abstract class Persistence implements Closeable {
      */
     public abstract int countLogs(@NonNull String group);
 
+    /**
+     * Gets the number of logs of every group with a single query.
+     *
+     * @return The number of logs by group, groups without logs are not included. {@code null} if the query failed.
+     */
+    @Nullable
+    public abstract Map<String, Integer> countLogsByGroup();
+
     /**
      * Gets an array of logs for the given {@code group}.
      *
@@ -75,6 +110,25 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs);
 
+    /**
+     * Gets the storage identifiers of the logs returned by {@link #getLogs(String, Collection, int, List)}.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     * @return The identifiers of the logs, empty if the ID is unknown.
+     */
+    @NonNull
+    public abstract long[] getLogIds(@NonNull String group, @NonNull String batchId);
+
+    /**
+     * Gets logs again from their storage identifiers. Logs that no longer exist are skipped.
+     *
+     * @param group   The group of the storage for logs.
+     * @param logIds  The identifiers returned by {@link #getLogIds(String, String)}.
+     * @param outLogs A list to receive {@link Log} objects.
+     */
+    public abstract void getLogs(@NonNull String group, @NonNull long[] logIds, @NonNull List<Log> outLogs);
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, Collection, int, List)}}.
      */
@@ -109,6 +163,48 @@ public abstract class Persistence implements Closeable {
      */
     public abstract boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Performs storage checks that were deferred to make startup faster. Does nothing if none were deferred.
+     */
+    public void performDeferredChecks() {
+    }
+
+    /**
+     * Sets the storage quota of a group, used when logs are deleted to make room for other logs.
+     * Does nothing if the storage size is not limited.
+     *
+     * @param group The group of the storage for logs.
+     * @param quota The quota, null to remove it.
+     */
+    public void setStorageQuota(@NonNull String group, @Nullable StorageQuota quota) {
+    }
+
+    /**
+     * Deletes the logs that expired following the time to live of their group, except logs being sent.
+     *
+     * @return The number of deleted logs by group.
+     */
+    @NonNull
+    public Map<String, Integer> deleteExpiredLogs() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns part of the storage freed by deleted logs to the file system.
+     *
+     * @return true if more storage can be reclaimed by calling this method again.
+     */
+    public boolean reclaimStorage() {
+        return false;
+    }
+
+    /**
+     * Makes sure logs kept outside of the storage, such as in memory, are stored.
+     * Called when the process is about to terminate. Does nothing if all logs are already stored.
+     */
+    public void flush() {
+    }
+
     /**
      * Thrown when {@link Persistence} cannot write a log to the storage.
      */
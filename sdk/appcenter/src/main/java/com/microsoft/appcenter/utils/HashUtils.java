@@ -56,11 +56,11 @@ public class HashUtils {
     /**
      * Encode a byte array to a string (hexadecimal) representation.
      *
-     * @param bytes the bytes to encodeHex.
-     * @return the hexadecimal representation.
+     * @param bytes the bytes to encode, such as a digest.
+     * @return the hexadecimal representation, in lower case.
      */
     @NonNull
-    private static String encodeHex(@NonNull byte[] bytes) {
+    public static String encodeHex(@NonNull byte[] bytes) {
         char[] output = new char[bytes.length * 2];
         for (int j = 0; j < bytes.length; j++) {
             int v = bytes[j] & 0xFF;
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Identify the application process the SDK is running in.
+ */
+public class ProcessHelper {
+
+    /**
+     * Get the name of the current process.
+     *
+     * @param context any context.
+     * @return process name or null if it cannot be found.
+     */
+    @Nullable
+    public static String getProcessName(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return Application.getProcessName();
+        }
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+            if (runningAppProcesses != null) {
+                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
+                    if (info.pid == Process.myPid()) {
+                        return info.processName;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether the current process is the main one, the process where application components run by default.
+     *
+     * @param context any context.
+     * @return true if main process or if the process name cannot be found, false otherwise.
+     */
+    public static boolean isMainProcess(@NonNull Context context) {
+        String processName = getProcessName(context);
+        return processName == null || processName.equals(context.getApplicationInfo().processName);
+    }
+}
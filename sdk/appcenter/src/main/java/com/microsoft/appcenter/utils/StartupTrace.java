@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Records the duration of the SDK startup phases, optionally as {@link Trace} sections.
+ * Sections are nested per thread and must be ended on the thread that began them.
+ */
+public class StartupTrace {
+
+    /**
+     * Maximum number of phases kept, later phases are not recorded.
+     */
+    @VisibleForTesting
+    static final int MAX_PHASES = 100;
+
+    /**
+     * Prefix of system trace section names.
+     */
+    @VisibleForTesting
+    static final String SECTION_PREFIX = "AppCenter.";
+
+    /**
+     * System trace section names cannot be longer than this.
+     */
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    /**
+     * Recorded phases, in the order they ended.
+     */
+    private static final List<Phase> sPhases = new ArrayList<>();
+
+    /**
+     * Sections not ended yet on the current thread.
+     */
+    private static final ThreadLocal<Deque<Phase>> sOpenSections = new ThreadLocal<>();
+
+    /**
+     * Whether to emit system trace sections.
+     */
+    private static volatile boolean sSystemTraceEnabled;
+
+    /**
+     * Enable or disable emitting phases as system trace sections.
+     *
+     * @param enabled true to call {@link Trace#beginSection(String)} and {@link Trace#endSection()} for each phase.
+     */
+    public static void setSystemTraceEnabled(boolean enabled) {
+        sSystemTraceEnabled = enabled;
+    }
+
+    /**
+     * Begin a phase on the current thread.
+     *
+     * @param name phase name.
+     */
+    public static void beginSection(@NonNull String name) {
+        Deque<Phase> openSections = sOpenSections.get();
+        if (openSections == null) {
+            openSections = new ArrayDeque<>();
+            sOpenSections.set(openSections);
+        }
+        Phase phase = new Phase(name, Thread.currentThread().getName(), openSections.size(), SystemClock.elapsedRealtimeNanos());
+        phase.mSystemTrace = sSystemTraceEnabled;
+        if (phase.mSystemTrace) {
+            String sectionName = SECTION_PREFIX + name;
+            Trace.beginSection(sectionName.length() > MAX_SECTION_NAME_LENGTH ? sectionName.substring(0, MAX_SECTION_NAME_LENGTH) : sectionName);
+        }
+        openSections.push(phase);
+    }
+
+    /**
+     * End the last phase begun on the current thread.
+     */
+    public static void endSection() {
+        Deque<Phase> openSections = sOpenSections.get();
+        Phase phase = openSections != null ? openSections.poll() : null;
+        if (phase == null) {
+            AppCenterLog.warn(AppCenterLog.LOG_TAG, "Startup trace section ended without being started.");
+            return;
+        }
+        phase.mDurationNanos = SystemClock.elapsedRealtimeNanos() - phase.mStartNanos;
+        if (phase.mSystemTrace) {
+            Trace.endSection();
+        }
+        synchronized (sPhases) {
+            if (sPhases.size() < MAX_PHASES) {
+                sPhases.add(phase);
+            }
+        }
+    }
+
+    /**
+     * Get the recorded phases.
+     *
+     * @return a copy of the phases ordered by start time, a parent phase before its children.
+     */
+    @NonNull
+    public static List<Phase> getPhases() {
+        List<Phase> phases;
+        synchronized (sPhases) {
+            phases = new ArrayList<>(sPhases);
+        }
+        Collections.sort(phases, new Comparator<Phase>() {
+
+            @Override
+            public int compare(Phase phase1, Phase phase2) {
+                if (phase1.mStartNanos != phase2.mStartNanos) {
+                    return phase1.mStartNanos < phase2.mStartNanos ? -1 : 1;
+                }
+                return phase1.mDepth - phase2.mDepth;
+            }
+        });
+        return phases;
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        synchronized (sPhases) {
+            sPhases.clear();
+        }
+        sOpenSections.remove();
+        sSystemTraceEnabled = false;
+    }
+
+    /**
+     * Timing of a startup phase.
+     */
+    public static class Phase {
+
+        private final String mName;
+
+        private final String mThreadName;
+
+        private final int mDepth;
+
+        private final long mStartNanos;
+
+        private long mDurationNanos;
+
+        /**
+         * Whether a system trace section was begun for this phase.
+         */
+        private boolean mSystemTrace;
+
+        Phase(String name, String threadName, int depth, long startNanos) {
+            mName = name;
+            mThreadName = threadName;
+            mDepth = depth;
+            mStartNanos = startNanos;
+        }
+
+        /**
+         * Get the phase name.
+         *
+         * @return phase name.
+         */
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Get the name of the thread that ran the phase.
+         *
+         * @return thread name.
+         */
+        @NonNull
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        /**
+         * Get the number of phases this one is nested in, on the same thread.
+         *
+         * @return 0 for a top level phase.
+         */
+        public int getDepth() {
+            return mDepth;
+        }
+
+        /**
+         * Get the start time.
+         *
+         * @return start time in nanoseconds, in the {@link SystemClock#elapsedRealtimeNanos()} time base.
+         */
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        /**
+         * Get the duration.
+         *
+         * @return duration in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "name='" + mName + '\'' +
+                    ", threadName='" + mThreadName + '\'' +
+                    ", depth=" + mDepth +
+                    ", startNanos=" + mStartNanos +
+                    ", durationNanos=" + mDurationNanos +
+                    '}';
+        }
+    }
+}
@@ -15,6 +15,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
@@ -26,6 +27,8 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import java.io.Closeable;
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -48,6 +51,16 @@ public class DatabaseManager implements Closeable {
      */
     public static final long OPERATION_FAILED_FLAG = -1;
 
+    /**
+     * Value of the auto_vacuum pragma when free pages are kept until an incremental vacuum.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * SQL command to enable incremental vacuum. A database without auto vacuum keeps it until a full vacuum.
+     */
+    private static final String ENABLE_INCREMENTAL_VACUUM_SQL = "PRAGMA auto_vacuum = INCREMENTAL";
+
     /**
      * Application context instance.
      */
@@ -78,6 +91,11 @@ public class DatabaseManager implements Closeable {
      */
     private SQLiteOpenHelper mSQLiteOpenHelper;
 
+    /**
+     * Page size of the database in bytes, 0 until read. It does not change once the database is created.
+     */
+    private volatile long mPageSize;
+
     /**
      * Initializes the table in the database.
      *
@@ -97,6 +115,11 @@ public class DatabaseManager implements Closeable {
         mListener = listener;
         mSQLiteOpenHelper = new SQLiteOpenHelper(context, database, null, version) {
 
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                db.execSQL(ENABLE_INCREMENTAL_VACUUM_SQL);
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL(sqlCreateCommand);
@@ -202,6 +225,44 @@ public class DatabaseManager implements Closeable {
         return id;
     }
 
+    /**
+     * Begins a transaction, the following operations are committed together when ending it.
+     *
+     * @return true if the transaction began, false otherwise.
+     */
+    public boolean beginTransaction() {
+        try {
+            getDatabase().beginTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to begin a transaction on database %s.", mDatabase), e);
+            return false;
+        }
+    }
+
+    /**
+     * Ends the current transaction.
+     *
+     * @param successful true to commit the changes, false to roll them back.
+     * @return true if the changes were committed, false otherwise.
+     */
+    public boolean endTransaction(boolean successful) {
+        try {
+            SQLiteDatabase database = getDatabase();
+            try {
+                if (successful) {
+                    database.setTransactionSuccessful();
+                }
+            } finally {
+                database.endTransaction();
+            }
+            return successful;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to end the transaction on database %s.", mDatabase), e);
+            return false;
+        }
+    }
+
     /**
      * Deletes the entry by the identifier from the database.
      *
@@ -268,6 +329,65 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Deletes the entries that match a where clause.
+     *
+     * @param whereClause The where clause, with ? for arguments.
+     * @param whereArgs   The arguments of the where clause.
+     * @return the number of rows affected.
+     */
+    public int deleteWhere(@NonNull String whereClause, @Nullable String[] whereArgs) {
+        try {
+            return getDatabase().delete(mDefaultTable, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete values that match condition=\"%s\" and values=\"%s\" from database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Updates the entries that match a where clause.
+     *
+     * @param values      The values to set.
+     * @param whereClause The where clause, with ? for arguments.
+     * @param whereArgs   The arguments of the where clause.
+     * @return the number of rows affected.
+     */
+    public int update(@NonNull ContentValues values, @NonNull String whereClause, @Nullable String[] whereArgs) {
+        try {
+            return getDatabase().update(mDefaultTable, values, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to update values that match condition=\"%s\" and values=\"%s\" in database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Adds a value to a numeric column of the entries that match a where clause, null values are left unchanged.
+     *
+     * @param column      The column to update.
+     * @param delta       The value to add.
+     * @param whereClause The where clause, with ? for arguments.
+     * @param whereArgs   The arguments of the where clause.
+     * @return the number of rows affected.
+     */
+    public int addToColumn(@NonNull String column, long delta, @NonNull String whereClause, @Nullable String[] whereArgs) {
+        try {
+            SQLiteStatement statement = getDatabase().compileStatement("UPDATE `" + mDefaultTable + "` SET `" + column + "` = `" + column + "` + " + delta + " WHERE " + whereClause);
+            try {
+                if (whereArgs != null) {
+                    statement.bindAllArgsAsStrings(whereArgs);
+                }
+                return statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to add %s to %s of values that match condition=\"%s\" and values=\"%s\" in database %s.", delta, column, whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
     /**
      * Clears the table in the database.
      */
@@ -293,6 +413,73 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Gets the count of records in the table for each value of a column, with a single query.
+     *
+     * @param column The column to group records by.
+     * @return The number of records by column value, values without records are not included,
+     * or <code>null</code> if operation failed.
+     */
+    @Nullable
+    public Map<String, Integer> getRowCountByColumn(@NonNull String column) {
+        return getRowCountByColumn(column, null, null);
+    }
+
+    /**
+     * Gets the count of records matching a where clause for each value of a column, with a single query.
+     *
+     * @param column      The column to group records by.
+     * @param whereClause The optional where clause, with ? for arguments.
+     * @param whereArgs   The arguments of the where clause.
+     * @return The number of records by column value, values without records are not included,
+     * or <code>null</code> if operation failed.
+     */
+    @Nullable
+    public Map<String, Integer> getRowCountByColumn(@NonNull String column, @Nullable String whereClause, @Nullable String[] whereArgs) {
+        try {
+            Cursor cursor = getDatabase().query(mDefaultTable, new String[]{column, "COUNT(*)"}, whereClause, whereArgs, column, null, null);
+            try {
+                Map<String, Integer> counts = new HashMap<>();
+                while (cursor.moveToNext()) {
+                    counts.put(cursor.getString(0), cursor.getInt(1));
+                }
+                return counts;
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get row count of database by " + column + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the sum of an expression over the records of the table for each value of a column, with a single query.
+     *
+     * @param column     The column to group records by.
+     * @param expression The SQL expression to sum.
+     * @return The sum by column value, values without records are not included,
+     * or <code>null</code> if operation failed.
+     */
+    @Nullable
+    public Map<String, Long> getSumByColumn(@NonNull String column, @NonNull String expression) {
+        try {
+            Cursor cursor = getDatabase().query(mDefaultTable, new String[]{column, "SUM(" + expression + ")"}, null, null, column, null, null);
+            try {
+                Map<String, Long> sums = new HashMap<>();
+                while (cursor.moveToNext()) {
+                    sums.put(cursor.getString(0), cursor.getLong(1));
+                }
+                return sums;
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get sum of " + expression + " by " + column + ".", e);
+            return null;
+        }
+    }
+
     /**
      * Gets the count of records in the table.
      *
@@ -356,6 +543,7 @@ public class DatabaseManager implements Closeable {
             AppCenterLog.warn(LOG_TAG, "Failed to open database. Trying to delete database (may be corrupted).", e);
 
             /* First error, try to delete database (may be corrupted). */
+            mPageSize = 0;
             if (mContext.deleteDatabase(mDatabase)) {
                 AppCenterLog.info(LOG_TAG, "The database was successfully deleted.");
             } else {
@@ -390,7 +578,7 @@ public class DatabaseManager implements Closeable {
             long newMaxSize = db.setMaximumSize(maxStorageSizeInBytes);
 
             /* SQLite always use the next multiple of page size as maximum size. */
-            long pageSize = db.getPageSize();
+            long pageSize = getPageSize(db);
             long expectedMultipleMaxSize = maxStorageSizeInBytes / pageSize;
             if (maxStorageSizeInBytes % pageSize != 0) {
                 expectedMultipleMaxSize++;
@@ -429,14 +617,93 @@ public class DatabaseManager implements Closeable {
     }
 
     /**
-     * Gets the current size of the database file.
-     * Disclaimer: The returned file size may not change immediately after performing SQL request.
+     * Gets the current size of the database, counting only pages in use.
+     * The database file can be larger as free pages are kept until {@link #reclaimFreePages(int)}.
      *
      * @return The current size of database in bytes.
      */
     public long getCurrentSize() {
-        File dbFile = mContext.getDatabasePath(mDatabase);
-        return dbFile.length();
+        return getAllocatedSize() - getFreeSize();
+    }
+
+    /**
+     * Gets the size of all the pages of the database, including free pages.
+     * Deleting records does not change it, only adding records and {@link #reclaimFreePages(int)} do.
+     *
+     * @return The allocated size of database in bytes.
+     */
+    public long getAllocatedSize() {
+        try {
+            SQLiteDatabase db = getDatabase();
+            return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null) * getPageSize(db);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Could not get pages of the database, using file size.", e);
+            File dbFile = mContext.getDatabasePath(mDatabase);
+            return dbFile.length();
+        }
+    }
+
+    /**
+     * Gets the size of the free pages of the database, left by deleted records until {@link #reclaimFreePages(int)}.
+     *
+     * @return The size of free pages in bytes.
+     */
+    public long getFreeSize() {
+        try {
+            SQLiteDatabase db = getDatabase();
+            return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) * getPageSize(db);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Could not get free pages of the database.", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the page size of the database, read only once.
+     *
+     * @param db The database.
+     * @return The page size in bytes.
+     */
+    private long getPageSize(SQLiteDatabase db) {
+        if (mPageSize == 0) {
+            mPageSize = db.getPageSize();
+        }
+        return mPageSize;
+    }
+
+    /**
+     * Returns free pages to the file system so that the database file shrinks after records are deleted.
+     * A database created without auto vacuum is converted by a full vacuum instead.
+     *
+     * @param maxPages The maximum number of pages to reclaim.
+     * @return The number of free pages left, or <code>-1</code> if operation failed.
+     */
+    public long reclaimFreePages(@IntRange(from = 1) int maxPages) {
+        try {
+            SQLiteDatabase db = getDatabase();
+
+            /* Other auto vacuum modes are switched when the database is opened, but not the lack of auto vacuum. */
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+                AppCenterLog.info(LOG_TAG, String.format("Enabling incremental vacuum on database %s.", mDatabase));
+                db.execSQL(ENABLE_INCREMENTAL_VACUUM_SQL);
+                db.execSQL("VACUUM");
+            } else {
+                Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+                try {
+
+                    /* The pragma only runs when the cursor is read. */
+                    //noinspection StatementWithEmptyBody
+                    while (cursor.moveToNext()) {
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to reclaim free pages of database %s.", mDatabase), e);
+            return OPERATION_FAILED_FLAG;
+        }
     }
 
     /**
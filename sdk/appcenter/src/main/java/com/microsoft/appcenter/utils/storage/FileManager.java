@@ -8,6 +8,7 @@ package com.microsoft.appcenter.utils.storage;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.text.TextUtils;
+import android.util.Base64;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -20,16 +21,30 @@ import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * File manager for internal/external storage access
  */
 public class FileManager {
 
+    /**
+     * Size of file chunks encoded to base64 when streaming, must be a multiple of 3.
+     */
+    private static final int BASE64_CHUNK_SIZE = 3 * 1024;
+
+    /**
+     * Buffer size used when compressing files.
+     */
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+
     /**
      * Application context instance.
      */
@@ -116,6 +131,78 @@ public class FileManager {
         return null;
     }
 
+    /**
+     * Stream the contents of a file encoded as base64 without line breaks.
+     * Only a small buffer is held in memory regardless of the file size.
+     *
+     * @param file The file to read from.
+     * @param out  The stream to write base64 characters into, it's not closed by this method.
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeBase64(@NonNull File file, @NonNull OutputStream out) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+
+            /* Encode chunks aligned on 3 bytes so that concatenated chunks are valid base64 without inner padding. */
+            byte[] buffer = new byte[BASE64_CHUNK_SIZE];
+            int length;
+            while ((length = readFully(in, buffer)) > 0) {
+                out.write(Base64.encode(buffer, 0, length, Base64.NO_WRAP));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Compress a file with gzip into another file.
+     * Only a small buffer is held in memory regardless of the file size.
+     *
+     * @param source      The file to compress.
+     * @param destination The compressed file to create, overwritten if it exists.
+     * @throws IOException If an I/O error occurs, the destination file is deleted in that case.
+     */
+    public static void gzip(@NonNull File source, @NonNull File destination) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(destination), GZIP_BUFFER_SIZE);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+
+            //noinspection ResultOfMethodCallIgnored
+            destination.delete();
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read from a stream until the buffer is full or end of stream is reached.
+     *
+     * @return number of bytes read, 0 at end of stream.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
     /**
      * Write contents to a file.
      *
@@ -21,6 +21,7 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
 import android.app.Application;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.os.Bundle;
@@ -37,7 +38,9 @@ import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
 import com.microsoft.appcenter.utils.InstrumentationRegistryHelper;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
+import com.microsoft.appcenter.utils.ProcessHelper;
 import com.microsoft.appcenter.utils.ShutdownHelper;
+import com.microsoft.appcenter.utils.StartupTrace;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.FileManager;
@@ -68,9 +71,11 @@ import java.util.Map;
         InstrumentationRegistryHelper.class,
         JSONUtils.class,
         NetworkStateHelper.class,
+        ProcessHelper.class,
         SharedPreferencesManager.class,
         ShutdownHelper.class,
         StartServiceLog.class,
+        StartupTrace.class,
         Thread.class,
         UncaughtExceptionHandler.class
 })
@@ -100,6 +105,9 @@ public class AbstractAppCenterTest {
     @Mock
     Application mApplication;
 
+    @Mock
+    PackageManager mPackageManager;
+
     ApplicationInfo mApplicationInfo;
 
     static void addArgumentToRegistry(String value) {
@@ -132,6 +140,7 @@ public class AbstractAppCenterTest {
         mockStatic(ApplicationContextUtils.class);
         when(ApplicationContextUtils.getApplicationContext(mApplication)).thenReturn(mContext);
         when(ApplicationContextUtils.isDeviceProtectedStorage(mContext)).thenReturn(false);
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
 
         /* Mock static classes. */
         mockStatic(Constants.class);
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import android.content.Context;
+import android.os.Handler;
+
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.HybridPersistence;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.ApplicationLifecycleListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+public class AppCenterInMemoryStorageTest extends AbstractAppCenterTest {
+
+    private DatabasePersistence mDatabasePersistence;
+
+    private HybridPersistence mHybridPersistence;
+
+    private ApplicationLifecycleListener mApplicationLifecycleListener;
+
+    @Before
+    public void setUpInMemoryStorage() throws Exception {
+        mDatabasePersistence = mock(DatabasePersistence.class);
+        whenNew(DatabasePersistence.class).withAnyArguments().thenReturn(mDatabasePersistence);
+        mHybridPersistence = mock(HybridPersistence.class);
+        whenNew(HybridPersistence.class).withAnyArguments().thenReturn(mHybridPersistence);
+        mApplicationLifecycleListener = mock(ApplicationLifecycleListener.class);
+        whenNew(ApplicationLifecycleListener.class).withAnyArguments().thenReturn(mApplicationLifecycleListener);
+    }
+
+    @Test
+    public void keepLogsInMemory() throws Exception {
+        AppCenter.setInMemoryStorageEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(DatabasePersistence.class).withArguments(mContext, true);
+        verifyNew(HybridPersistence.class).withArguments(eq(mDatabasePersistence), any(Handler.class));
+        verify(mHybridPersistence).setLogSerializer(any(LogSerializer.class));
+        verify(mApplicationLifecycleListener).registerApplicationLifecycleCallbacks(mHybridPersistence);
+        verifyNew(DefaultChannel.class).withArguments(eq(mContext), eq(DUMMY_APP_SECRET), eq(mHybridPersistence), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), any(Handler.class));
+    }
+
+    @Test
+    public void storeLogsByDefault() throws Exception {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(HybridPersistence.class, never()).withArguments(any(DatabasePersistence.class), any(Handler.class));
+        verifyNew(DatabasePersistence.class, never()).withArguments(any(Context.class), anyBoolean());
+    }
+
+    @Test
+    public void enableAfterStartIgnored() throws Exception {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.setInMemoryStorageEnabled(true);
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(AppCenter.LOG_TAG, "In-memory storage can only be changed before starting the SDK.");
+        verifyNew(HybridPersistence.class, never()).withArguments(any(DatabasePersistence.class), any(Handler.class));
+    }
+}
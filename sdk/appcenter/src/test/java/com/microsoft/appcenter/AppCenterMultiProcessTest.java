@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.persistence.ForwardingPersistence;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.ProcessHelper;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+public class AppCenterMultiProcessTest extends AbstractAppCenterTest {
+
+    private ForwardingPersistence mForwardingPersistence;
+
+    @Before
+    public void setUpMultiProcess() throws Exception {
+        mockStatic(ProcessHelper.class);
+        when(ProcessHelper.isMainProcess(any(Context.class))).thenReturn(true);
+        mForwardingPersistence = mock(ForwardingPersistence.class);
+        whenNew(ForwardingPersistence.class).withAnyArguments().thenReturn(mForwardingPersistence);
+        when(mChannel.acceptsForwardedLogs(anyString())).thenReturn(true);
+    }
+
+    private static ContentValues mockLogValues(String groupName, Integer flags, String payload) {
+        ContentValues values = mock(ContentValues.class);
+        when(values.getAsString(ForwardingPersistence.COLUMN_GROUP)).thenReturn(groupName);
+        when(values.getAsInteger(ForwardingPersistence.COLUMN_FLAGS)).thenReturn(flags);
+        when(values.getAsString(ForwardingPersistence.COLUMN_DATA_TYPE)).thenReturn("mock");
+        when(values.getAsString(ForwardingPersistence.COLUMN_LOG)).thenReturn(payload);
+        return values;
+    }
+
+    @Test
+    public void secondaryProcessForwardsLogs() throws Exception {
+        when(ProcessHelper.isMainProcess(any(Context.class))).thenReturn(false);
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(ForwardingPersistence.class).withArguments(mContext);
+        verify(mForwardingPersistence).setLogSerializer(any(LogSerializer.class));
+        verifyNew(DefaultChannel.class).withArguments(eq(mContext), eq(DUMMY_APP_SECRET), eq(mForwardingPersistence), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), isNull(Handler.class));
+
+        /* No thread is started to write logs to the database. */
+        verifyNew(HandlerThread.class, never()).withArguments("AppCenter.Persistence");
+    }
+
+    @Test
+    public void mainProcessStoresLogs() throws Exception {
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(ForwardingPersistence.class, never()).withArguments(any(Context.class));
+        verifyNew(DefaultChannel.class).withArguments(eq(mContext), eq(DUMMY_APP_SECRET), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), any(Handler.class));
+    }
+
+    @Test
+    public void forwardingProviderEnabledInMultiProcessMode() {
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mPackageManager).setComponentEnabledSetting(any(ComponentName.class), eq(PackageManager.COMPONENT_ENABLED_STATE_ENABLED), eq(PackageManager.DONT_KILL_APP));
+    }
+
+    @Test
+    public void forwardingProviderAlreadyEnabled() {
+        when(mPackageManager.getComponentEnabledSetting(any(ComponentName.class))).thenReturn(PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mPackageManager, never()).setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void forwardingProviderDisabledWithoutMultiProcessMode() {
+
+        /* Nothing to do if provider was never enabled. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mPackageManager, never()).setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+
+        /* Reset to manifest state if it was enabled by a previous launch. */
+        AppCenter.unsetInstance();
+        when(mPackageManager.getComponentEnabledSetting(any(ComponentName.class))).thenReturn(PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mPackageManager).setComponentEnabledSetting(any(ComponentName.class), eq(PackageManager.COMPONENT_ENABLED_STATE_DEFAULT), eq(PackageManager.DONT_KILL_APP));
+    }
+
+    @Test
+    public void forwardingProviderStateFailure() {
+        doThrow(new SecurityException("mock")).when(mPackageManager).setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(SecurityException.class));
+        assertTrue(AppCenter.isConfigured());
+    }
+
+    @Test
+    public void secondaryProcessStoresLogsByDefault() throws Exception {
+        when(ProcessHelper.isMainProcess(any(Context.class))).thenReturn(false);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(ForwardingPersistence.class, never()).withArguments(any(Context.class));
+
+        /* Main process refuses logs. */
+        assertEquals(0, new LogForwardingProvider().bulkInsert(mock(Uri.class), new ContentValues[]{mockLogValues("group", 1, "{}")}));
+        verify(mChannel, never()).enqueueForwarded(anyList(), anyString(), anyInt());
+    }
+
+    @Test
+    public void forwardedLogsRefusedForGroupNotAccepted() {
+        when(mChannel.acceptsForwardedLogs("group2")).thenReturn(false);
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+
+        /* All logs are refused so that the other process keeps them. */
+        ContentValues[] values = {mockLogValues("group1", 1, "{}"), mockLogValues("group2", 1, "{}")};
+        assertEquals(0, new LogForwardingProvider().bulkInsert(mock(Uri.class), values));
+        verify(mChannel, never()).enqueueForwarded(anyList(), anyString(), anyInt());
+    }
+
+    @Test
+    public void enableAfterStartIgnored() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.setMultiProcessEnabled(true);
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(AppCenter.LOG_TAG, "Multi-process mode can only be changed before starting the SDK.");
+        assertEquals(0, new LogForwardingProvider().bulkInsert(mock(Uri.class), new ContentValues[]{mockLogValues("group", 1, "{}")}));
+    }
+
+    @Test
+    public void forwardedLogsRefusedBeforeStart() {
+        AppCenter.setMultiProcessEnabled(true);
+        LogForwardingProvider provider = new LogForwardingProvider();
+        Uri uri = mock(Uri.class);
+        assertEquals(0, provider.bulkInsert(uri, new ContentValues[]{mockLogValues("group", 1, "{}")}));
+        assertNull(provider.insert(uri, mockLogValues("group", 1, "{}")));
+    }
+
+    @Test
+    public void forwardedLogsAreEnqueued() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        whenNew(DefaultLogSerializer.class).withAnyArguments().thenReturn(logSerializer);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log log3 = mock(Log.class);
+        when(logSerializer.deserializeLog("1", "mock")).thenReturn(log1);
+        when(logSerializer.deserializeLog("2", "mock")).thenReturn(log2);
+        when(logSerializer.deserializeLog("3", "mock")).thenReturn(log3);
+        when(logSerializer.deserializeLog("bad", "mock")).thenThrow(new JSONException("mock"));
+        AppCenter.setMultiProcessEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+
+        /* Consecutive logs of the same group and flags are enqueued together, invalid ones are skipped. */
+        ContentValues targetLogValues = mockLogValues("group2", 1, "3");
+        when(targetLogValues.getAsString(ForwardingPersistence.COLUMN_TARGET_TOKEN)).thenReturn("token");
+        ContentValues[] values = {
+                mockLogValues("group1", 1, "1"),
+                mockLogValues("group1", null, "1"),
+                mockLogValues("group1", 1, "bad"),
+                mockLogValues("group1", 1, "2"),
+                targetLogValues
+        };
+        LogForwardingProvider provider = new LogForwardingProvider();
+        assertEquals(values.length, provider.bulkInsert(mock(Uri.class), values));
+        verify(mChannel).enqueueForwarded(Arrays.asList(log1, log2), "group1", 1);
+        verify(mChannel).enqueueForwarded(Collections.singletonList(log3), "group2", 1);
+        verify(log3).addTransmissionTarget("token");
+
+        /* Single insert. */
+        Uri uri = mock(Uri.class);
+        assertSame(uri, provider.insert(uri, mockLogValues("group1", 2, "1")));
+        verify(mChannel).enqueueForwarded(Collections.singletonList(log1), "group1", 2);
+        assertNull(provider.insert(uri, null));
+
+        /* Provider does not support other operations. */
+        assertNull(provider.query(uri, null, null, null, null));
+        assertNull(provider.getType(uri));
+        assertEquals(0, provider.update(uri, null, null, null));
+        assertEquals(0, provider.delete(uri, null, null));
+    }
+}
@@ -12,6 +12,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -106,4 +107,24 @@ public class AppCenterStorageTest extends AbstractAppCenterTest {
         /* And result returned to developer. */
         assertTrue(future.get());
     }
+
+    @Test
+    public void storageQuotaBeforeStart() {
+        StorageQuota quota = StorageQuota.maxShare(0.5);
+        AppCenter.setStorageQuota("group", quota);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel, atLeastOnce()).setStorageQuota("group", quota);
+    }
+
+    @Test
+    public void storageQuotaAfterStart() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        StorageQuota quota = StorageQuota.reservedSize(1024);
+        AppCenter.setStorageQuota("group", quota);
+        verify(mChannel).setStorageQuota("group", quota);
+
+        /* Removing the quota is applied as well. */
+        AppCenter.setStorageQuota("group", null);
+        verify(mChannel).setStorageQuota("group", null);
+    }
 }
@@ -18,6 +18,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -34,6 +35,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.doThrow;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
@@ -41,6 +44,7 @@ import android.app.Activity;
 import android.content.Context;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.ChannelMetrics;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import com.microsoft.appcenter.ingestion.models.WrapperSdk;
@@ -49,6 +53,8 @@ import com.microsoft.appcenter.utils.ApplicationLifecycleListener;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.PrefStorageConstants;
 import com.microsoft.appcenter.utils.ShutdownHelper;
+import com.microsoft.appcenter.utils.StartupTrace;
+import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Assert;
@@ -873,6 +879,70 @@ public class AppCenterTest extends AbstractAppCenterTest {
         DeviceInfoHelper.setCountryCode(eq(expectedCountryCode));
     }
 
+    @Test
+    public void startupTrace() {
+        mockStatic(StartupTrace.class);
+        List<StartupTrace.Phase> phases = new ArrayList<>();
+        when(StartupTrace.getPhases()).thenReturn(phases);
+        AppCenter.setStartupSystemTraceEnabled(true);
+        verifyStatic(StartupTrace.class);
+        StartupTrace.setSystemTraceEnabled(true);
+
+        /* Check phases are recorded on both threads. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("configureInstance");
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("finishConfiguration");
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("startServices");
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("startService " + DummyService.class.getSimpleName());
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("onStarted " + DummyService.getInstance().getServiceName());
+        assertSame(phases, AppCenter.getStartupTrace());
+    }
+
+    @Test
+    public void startupTraceSectionsEndWhenConfigurationFails() {
+        mockStatic(StartupTrace.class);
+        RuntimeException exception = new RuntimeException();
+        doThrow(exception).when(FileManager.class);
+        FileManager.initialize(mContext);
+        try {
+            AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(exception, e);
+        }
+
+        /* The failed section and the enclosing one are ended, the next sections are not started. */
+        verifyStatic(StartupTrace.class);
+        StartupTrace.beginSection("FileManager.initialize");
+        verifyStatic(StartupTrace.class, never());
+        StartupTrace.beginSection("SharedPreferencesManager.initialize");
+        verifyStatic(StartupTrace.class, times(3));
+        StartupTrace.endSection();
+    }
+
+    @Test
+    public void channelMetrics() {
+        try {
+            AppCenter.setChannelMetricsEnabled(true);
+            assertTrue(ChannelMetrics.isEnabled());
+            assertTrue(AppCenter.getChannelMetrics().getGroups().isEmpty());
+            AppCenter.setChannelMetricsEnabled(false);
+            assertFalse(ChannelMetrics.isEnabled());
+
+            /* Listener enables collection. */
+            AppCenter.setChannelMetricsListener(mock(ChannelMetrics.Listener.class));
+            assertTrue(ChannelMetrics.isEnabled());
+        } finally {
+            AppCenter.setChannelMetricsListener(null);
+        }
+        assertFalse(ChannelMetrics.isEnabled());
+    }
+
     @Test
     public void setDataResidencyRegion() {
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class StorageQuotaTest {
+
+    @Test
+    public void maxShare() {
+        StorageQuota quota = StorageQuota.maxShare(0.25);
+        assertEquals(0.25, quota.getMaxShare(), 0);
+        assertEquals(0, quota.getReservedSize());
+        assertEquals(EvictionPolicy.OLDEST_FIRST, quota.getEvictionPolicy());
+    }
+
+    @Test
+    public void reservedSize() {
+        StorageQuota quota = StorageQuota.reservedSize(1024);
+        assertEquals(1, quota.getMaxShare(), 0);
+        assertEquals(1024, quota.getReservedSize());
+        assertEquals(EvictionPolicy.OLDEST_FIRST, quota.getEvictionPolicy());
+    }
+
+    @Test
+    public void timeToLive() {
+        StorageQuota quota = StorageQuota.timeToLive(1000);
+        assertEquals(1000, quota.getTimeToLive());
+        assertEquals(1, quota.getMaxShare(), 0);
+        assertEquals(0, quota.getReservedSize());
+        assertEquals(0, StorageQuota.reservedSize(1).getTimeToLive());
+        assertEquals(1000, quota.withMaxShare(0.5).withReservedSize(1).withEvictionPolicy(EvictionPolicy.DROP_NEWEST).getTimeToLive());
+    }
+
+    @Test
+    public void copies() {
+        StorageQuota quota = StorageQuota.maxShare(0.5);
+        StorageQuota copy = quota.withReservedSize(100).withEvictionPolicy(EvictionPolicy.LARGEST_FIRST).withMaxShare(1);
+        assertNotSame(quota, copy);
+        assertEquals(0.5, quota.getMaxShare(), 0);
+        assertEquals(0, quota.getReservedSize());
+        assertEquals(EvictionPolicy.OLDEST_FIRST, quota.getEvictionPolicy());
+        assertEquals(1, copy.getMaxShare(), 0);
+        assertEquals(100, copy.getReservedSize());
+        assertEquals(EvictionPolicy.LARGEST_FIRST, copy.getEvictionPolicy());
+        assertEquals(EvictionPolicy.DROP_NEWEST, copy.withEvictionPolicy(EvictionPolicy.DROP_NEWEST).getEvictionPolicy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroShare() {
+        StorageQuota.maxShare(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shareTooLarge() {
+        StorageQuota.maxShare(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shareNotANumber() {
+        StorageQuota.maxShare(Double.NaN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeReservedSize() {
+        StorageQuota.reservedSize(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEvictionPolicy() {
+        //noinspection WrongConstant
+        StorageQuota.reservedSize(0).withEvictionPolicy(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroTimeToLive() {
+        StorageQuota.timeToLive(0);
+    }
+}
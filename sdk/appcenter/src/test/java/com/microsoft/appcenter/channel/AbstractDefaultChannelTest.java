@@ -7,11 +7,13 @@ package com.microsoft.appcenter.channel;
 
 import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
@@ -28,9 +30,14 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
@@ -44,7 +51,8 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
         HandlerUtils.class,
         IdHelper.class,
         SharedPreferencesManager.class,
-        System.class
+        System.class,
+        SystemClock.class
 })
 public class AbstractDefaultChannelTest {
 
@@ -60,9 +68,43 @@ public class AbstractDefaultChannelTest {
     @Rule
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
+    /**
+     * Size of the batches returned by {@link #getGetLogsAnswer(int)}, by batch identifier.
+     */
+    private static final Map<String, Integer> sBatchSizes = new ConcurrentHashMap<>();
+
     @Mock
     protected Handler mAppCenterHandler;
 
+    /**
+     * Mock persistence returning storage identifiers for the batches of {@link #getGetLogsAnswer(int)}
+     * and reading mock logs again from these identifiers.
+     */
+    static Persistence mockPersistence() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.getLogIds(anyString(), anyString())).then(new Answer<long[]>() {
+
+            @Override
+            public long[] answer(InvocationOnMock invocation) {
+                Integer size = sBatchSizes.get(invocation.<String>getArgument(1));
+                return new long[size != null ? size : 0];
+            }
+        });
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                long[] logIds = invocation.getArgument(1);
+                List<Log> logs = invocation.getArgument(2);
+                for (int i = 0; i < logIds.length; i++) {
+                    logs.add(mock(Log.class));
+                }
+                return null;
+            }
+        }).when(persistence).getLogs(anyString(), any(long[].class), anyList());
+        return persistence;
+    }
+
     static Answer<String> getGetLogsAnswer() {
         return getGetLogsAnswer(-1);
     }
@@ -81,7 +123,12 @@ public class AbstractDefaultChannelTest {
                         logs.add(mock(Log.class));
                     }
                 }
-                return length > 0 ? UUID.randomUUID().toString() : null;
+                if (length <= 0) {
+                    return null;
+                }
+                String batchId = UUID.randomUUID().toString();
+                sBatchSizes.put(batchId, length);
+                return batchId;
             }
         };
     }
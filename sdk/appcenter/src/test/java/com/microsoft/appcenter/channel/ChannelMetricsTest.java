@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({AppCenterLog.class, SystemClock.class})
+public class ChannelMetricsTest {
+
+    private static final String GROUP = "group";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        ChannelMetrics.reset();
+        mockStatic(AppCenterLog.class);
+        mockStatic(SystemClock.class);
+    }
+
+    @After
+    public void tearDown() {
+        ChannelMetrics.reset();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(ChannelMetrics.isEnabled());
+        ChannelMetrics.recordEnqueue(GROUP);
+        ChannelMetrics.recordPersistedLog(GROUP, 100);
+        ChannelMetrics.recordEvictedLog(GROUP);
+        ChannelMetrics.recordQuotaRejectedLog(GROUP);
+        ChannelMetrics.recordBatch(GROUP, 1, 100);
+        ChannelMetrics.recordHttpRetry();
+        ChannelMetrics.Snapshot snapshot = ChannelMetrics.getSnapshot();
+        assertTrue(snapshot.getGroups().isEmpty());
+        assertEquals(0, snapshot.getHttpRetryCount());
+        assertEquals(0, snapshot.getElapsedMillis());
+    }
+
+    @Test
+    public void countersAndElapsedTime() {
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L, 3000L);
+        ChannelMetrics.setEnabled(true);
+        assertTrue(ChannelMetrics.isEnabled());
+        for (int i = 0; i < 4; i++) {
+            ChannelMetrics.recordEnqueue(GROUP);
+        }
+        ChannelMetrics.recordPersistedLog(GROUP, 100);
+        ChannelMetrics.recordPersistedLog(GROUP, 50);
+        ChannelMetrics.recordEvictedLog(GROUP);
+        ChannelMetrics.recordQuotaRejectedLog(GROUP);
+        ChannelMetrics.recordPendingLogCount(GROUP, 3);
+        ChannelMetrics.recordHttpCall(GROUP, 120, 200);
+        ChannelMetrics.recordHttpCall(GROUP, 80, 429);
+        ChannelMetrics.recordHttpCall(GROUP, 80, 0);
+        ChannelMetrics.recordHttpCall(GROUP, 80, 999);
+        ChannelMetrics.recordHttpRetry();
+        ChannelMetrics.recordEnqueue("other");
+        ChannelMetrics.Snapshot snapshot = ChannelMetrics.getSnapshot();
+        assertEquals(2000, snapshot.getElapsedMillis());
+        assertEquals(1, snapshot.getHttpRetryCount());
+        assertEquals(2, snapshot.getGroups().size());
+        ChannelMetrics.GroupMetrics metrics = snapshot.getGroups().get(GROUP);
+        assertEquals(4, metrics.getEnqueuedLogCount());
+        assertEquals(2.0, metrics.getEnqueueRate(), 0);
+        assertEquals(2, metrics.getPersistedLogCount());
+        assertEquals(150, metrics.getPersistedBytes());
+        assertEquals(1, metrics.getEvictedLogCount());
+        assertEquals(1, metrics.getQuotaRejectedLogCount());
+        assertEquals(3, metrics.getPendingLogCount());
+        assertArrayEquals(new long[]{2, 0, 1, 0, 1, 0}, metrics.getHttpStatusClassCounts());
+        assertEquals(4, metrics.getHttpLatency().getCount());
+
+        /* Snapshot is not updated by later records. */
+        ChannelMetrics.recordEnqueue(GROUP);
+        assertEquals(4, metrics.getEnqueuedLogCount());
+
+        /* Disabling then enabling again starts over. */
+        ChannelMetrics.setEnabled(false);
+        assertFalse(ChannelMetrics.isEnabled());
+        ChannelMetrics.setEnabled(true);
+        assertTrue(ChannelMetrics.getSnapshot().getGroups().isEmpty());
+        assertEquals(0, ChannelMetrics.getSnapshot().getHttpRetryCount());
+    }
+
+    @Test
+    public void histogram() {
+        ChannelMetrics.setEnabled(true);
+        assertNull(ChannelMetrics.getSnapshot().getGroups().get(GROUP));
+        ChannelMetrics.recordBatch(GROUP, 1, 0);
+        ChannelMetrics.recordBatch(GROUP, 3, 0);
+        ChannelMetrics.recordBatch(GROUP, 50, 0);
+        ChannelMetrics.recordBatch(GROUP, 50, 20000000);
+        ChannelMetrics.Histogram batchSizes = ChannelMetrics.getSnapshot().getGroups().get(GROUP).getBatchSizes();
+        assertEquals(4, batchSizes.getCount());
+        assertEquals(104, batchSizes.getSum());
+        assertEquals(50, batchSizes.getMax());
+        assertEquals(26.0, batchSizes.getMean(), 0);
+        long[] bucketCounts = batchSizes.getBucketCounts();
+        assertEquals(ChannelMetrics.BUCKET_UPPER_BOUNDS.length + 1, bucketCounts.length);
+        assertEquals(1, bucketCounts[0]);
+        assertEquals(1, bucketCounts[2]);
+        assertEquals(2, bucketCounts[5]);
+        assertEquals(1, batchSizes.getPercentile(25));
+        assertEquals(5, batchSizes.getPercentile(50));
+        assertEquals(50, batchSizes.getPercentile(99));
+        assertEquals(1, batchSizes.getPercentile(0));
+
+        /* Values above last bound are counted in last bucket and capped by max. */
+        ChannelMetrics.Histogram batchBytes = ChannelMetrics.getSnapshot().getGroups().get(GROUP).getBatchBytes();
+        assertEquals(1, batchBytes.getBucketCounts()[ChannelMetrics.BUCKET_UPPER_BOUNDS.length]);
+        assertEquals(20000000, batchBytes.getPercentile(100));
+        assertArrayEquals(ChannelMetrics.BUCKET_UPPER_BOUNDS, ChannelMetrics.Histogram.getBucketUpperBounds());
+
+        /* Empty histogram. */
+        ChannelMetrics.Histogram putLogLatency = ChannelMetrics.getSnapshot().getGroups().get(GROUP).getPutLogLatency();
+        assertEquals(0, putLogLatency.getCount());
+        assertEquals(0, putLogLatency.getMean(), 0);
+        assertEquals(0, putLogLatency.getPercentile(50));
+    }
+
+    @Test
+    public void listener() {
+        ChannelMetrics.Listener listener = mock(ChannelMetrics.Listener.class);
+
+        /* No listener. */
+        ChannelMetrics.notifyListener();
+
+        /* Listener enables collection while set. */
+        ChannelMetrics.setListener(listener);
+        assertTrue(ChannelMetrics.isEnabled());
+        ChannelMetrics.notifyListener();
+        verify(listener).onChannelMetrics(any(ChannelMetrics.Snapshot.class));
+        ChannelMetrics.setListener(null);
+        assertFalse(ChannelMetrics.isEnabled());
+
+        /* Listener failure is logged. */
+        RuntimeException exception = new RuntimeException();
+        doThrow(exception).when(listener).onChannelMetrics(any(ChannelMetrics.Snapshot.class));
+        ChannelMetrics.setListener(listener);
+        ChannelMetrics.notifyListener();
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(anyString(), anyString(), eq(exception));
+    }
+}
@@ -45,7 +45,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
          */
 
         /* Given a mock channel. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, ingestion, mAppCenterHandler);
@@ -76,7 +76,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
     public void useAlternateIngestion() throws IOException {
 
         /* Set up channel with an alternate ingestion. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         when(defaultIngestion.isEnabled()).thenReturn(true);
         Ingestion alternateIngestion = mock(Ingestion.class);
@@ -113,7 +113,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         when(defaultIngestion.isEnabled()).thenReturn(true);
         Ingestion alternateIngestion = mock(Ingestion.class);
@@ -163,7 +163,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         when(defaultIngestion.isEnabled()).thenReturn(true);
         Ingestion alternateIngestion = mock(Ingestion.class);
@@ -193,7 +193,7 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         /* Set up channel without app secret. */
         String appCenterGroup = "test_group1";
         String oneCollectorGroup = "test_group2";
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion defaultIngestion = mock(Ingestion.class);
         when(defaultIngestion.isEnabled()).thenReturn(true);
         Ingestion alternateIngestion = mock(Ingestion.class);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+public class DefaultChannelMetricsTest extends AbstractDefaultChannelTest {
+
+    @After
+    public void tearDown() {
+        ChannelMetrics.reset();
+    }
+
+    /**
+     * Make every clock read 10 units later than the previous one.
+     */
+    private static void mockClock() {
+        mockStatic(SystemClock.class);
+        Answer<Long> ticking = new Answer<Long>() {
+
+            private long mTime = 1000;
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return mTime += 10;
+            }
+        };
+        when(SystemClock.elapsedRealtime()).then(ticking);
+        when(SystemClock.elapsedRealtimeNanos()).then(ticking);
+    }
+
+    private DefaultChannel createChannel(Exception sendError) {
+        Persistence persistence = mockPersistence();
+        when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer());
+        AppCenterIngestion ingestion = mock(AppCenterIngestion.class);
+        when(ingestion.isEnabled()).thenReturn(true);
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(sendError));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        return channel;
+    }
+
+    private static ChannelMetrics.GroupMetrics captureMetrics(ChannelMetrics.Listener listener) {
+        ArgumentCaptor<ChannelMetrics.Snapshot> snapshot = ArgumentCaptor.forClass(ChannelMetrics.Snapshot.class);
+        verify(listener).onChannelMetrics(snapshot.capture());
+        ChannelMetrics.GroupMetrics metrics = snapshot.getValue().getGroups().get(TEST_GROUP);
+        assertEquals(TEST_GROUP, metrics.getGroupName());
+        return metrics;
+    }
+
+    @Test
+    public void notCollectedByDefault() {
+        mockClock();
+        DefaultChannel channel = createChannel(null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Clock is not even read. */
+        assertTrue(ChannelMetrics.getSnapshot().getGroups().isEmpty());
+        assertEquals(0, ChannelMetrics.getSnapshot().getElapsedMillis());
+        verifyStatic(SystemClock.class, never());
+        SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Test
+    public void batchSent() {
+        mockClock();
+        ChannelMetrics.Listener listener = mock(ChannelMetrics.Listener.class);
+        ChannelMetrics.setListener(listener);
+        DefaultChannel channel = createChannel(null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Check metrics sent to listener once the batch is sent. */
+        ChannelMetrics.GroupMetrics metrics = captureMetrics(listener);
+        assertEquals(2, metrics.getEnqueuedLogCount());
+        assertTrue(metrics.getEnqueueRate() > 0);
+        assertEquals(0, metrics.getPendingLogCount());
+        assertEquals(2, metrics.getPutLogLatency().getCount());
+        assertEquals(1, metrics.getHttpLatency().getCount());
+        assertEquals(1, metrics.getHttpStatusClassCounts()[2]);
+    }
+
+    @Test
+    public void batchFailedWithHttpError() {
+        mockClock();
+        ChannelMetrics.Listener listener = mock(ChannelMetrics.Listener.class);
+        ChannelMetrics.setListener(listener);
+        DefaultChannel channel = createChannel(new HttpException(new HttpResponse(503)));
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ChannelMetrics.GroupMetrics metrics = captureMetrics(listener);
+        assertEquals(1, metrics.getHttpStatusClassCounts()[5]);
+
+        /* Recoverable error: logs are pending again. */
+        assertEquals(2, metrics.getPendingLogCount());
+    }
+
+    @Test
+    public void batchFailedWithoutResponse() {
+        mockClock();
+        ChannelMetrics.setEnabled(true);
+        ChannelMetrics.Listener listener = mock(ChannelMetrics.Listener.class);
+        ChannelMetrics.setListener(listener);
+        DefaultChannel channel = createChannel(new IOException());
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ChannelMetrics.GroupMetrics metrics = captureMetrics(listener);
+        assertEquals(1, metrics.getHttpStatusClassCounts()[0]);
+
+        /* Removing listener keeps collecting as enabled explicitly. */
+        ChannelMetrics.setListener(null);
+        assertTrue(ChannelMetrics.isEnabled());
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(3, ChannelMetrics.getSnapshot().getGroups().get(TEST_GROUP).getEnqueuedLogCount());
+        verify(listener, times(1)).onChannelMetrics(any(ChannelMetrics.Snapshot.class));
+    }
+}
@@ -14,6 +14,7 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.persistence.Persistence;
 
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.util.UUID;
 
@@ -27,6 +28,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -40,7 +42,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
     @Test
     public void setLogUrl() {
         Ingestion ingestion = mock(Ingestion.class);
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), ingestion, mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), ingestion, mAppCenterHandler);
         String logUrl = "http://mockUrl";
         channel.setLogUrl(logUrl);
         verify(ingestion).setLogUrl(logUrl);
@@ -48,7 +50,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void logCallbacks() {
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
         Channel.Listener listener = spy(new AbstractChannelListener());
         channel.addListener(listener);
@@ -75,7 +77,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void clear() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
@@ -91,7 +93,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void shutdown() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
@@ -106,14 +108,18 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
         channel.shutdown();
         verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
-        verify(mockPersistence).clearPendingLogState();
+
+        /* Logs kept in memory are stored after the pending batch is cancelled. */
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).clearPendingLogState();
+        inOrder.verify(mockPersistence).flush();
     }
 
     @Test
     public void filter() throws Persistence.PersistenceException {
 
         /* Given a mock channel. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
@@ -181,7 +187,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
     @Test
     public void groupCallbacks() {
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Ingestion ingestion = mock(Ingestion.class);
         Channel.Listener listener = spy(new AbstractChannelListener());
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -205,7 +211,7 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
     public void checkSetStorageSizeForwarding() {
 
         /* The real Android test for checking size is in DatabaseManagerAndroidTest. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.setMaxStorageSize(anyLong())).thenReturn(true).thenReturn(false);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
 
@@ -47,7 +47,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void pauseResumeGroup() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList()))
@@ -98,7 +98,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void pauseGroupTwice() {
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         assertFalse(channel.getGroupState(TEST_GROUP).mPaused);
 
@@ -114,7 +114,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
     @Test
     public void resumeGroupWhileNotPaused() {
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         DefaultChannel.GroupState groupState = channel.getGroupState(TEST_GROUP);
         verify(channel).checkPendingLogs(groupState);
@@ -132,7 +132,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseResumeTargetToken() throws Persistence.PersistenceException {
 
         /* Mock database and ingestion. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         OneCollectorIngestion ingestion = mock(OneCollectorIngestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
 
@@ -200,7 +200,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseGroupPauseTargetResumeGroupResumeTarget() throws Persistence.PersistenceException {
 
         /* Mock database and ingestion. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         OneCollectorIngestion ingestion = mock(OneCollectorIngestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         AppCenterIngestion appCenterIngestion = mock(AppCenterIngestion.class);
@@ -245,7 +245,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
     public void pauseResumeGroupWhenDisabled() {
 
         /* Create a channel with a log group. */
-        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler));
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(AppCenterIngestion.class), mAppCenterHandler));
         Channel.Listener listener = mock(Channel.Listener.class);
         channel.addListener(listener);
 
@@ -272,7 +272,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -317,7 +317,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+import android.os.Handler;
+
+import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelPersistenceLaneTest extends AbstractDefaultChannelTest {
+
+    /**
+     * Runnables posted to the persistence lane and not run yet.
+     */
+    private final List<Runnable> mQueuedWrites = new ArrayList<>();
+
+    private ExecutorService mExecutor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            assertTrue(mExecutor.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Mock a persistence lane that queues runnables until {@link #runQueuedWrites()}.
+     */
+    private Handler mockQueuingHandler() {
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                mQueuedWrites.add(invocation.<Runnable>getArgument(0));
+                return true;
+            }
+        });
+        return handler;
+    }
+
+    /**
+     * Mock a persistence lane running runnables in order on a background thread.
+     */
+    private Handler mockThreadHandler() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                mExecutor.execute(invocation.<Runnable>getArgument(0));
+                return true;
+            }
+        });
+        return handler;
+    }
+
+    private void runQueuedWrites() {
+        List<Runnable> runnables = new ArrayList<>(mQueuedWrites);
+        mQueuedWrites.clear();
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+    }
+
+    private static Answer<Long> getSlowPutLogAnswer() {
+        return new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(100);
+                return 1L;
+            }
+        };
+    }
+
+    @Test
+    public void logsAreWrittenOnPersistenceLane() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        when(persistence.putLogs(anyList(), anyString(), anyInt())).thenReturn(new Persistence.PersistenceException[2]);
+        Ingestion ingestion = mock(Ingestion.class);
+        when(ingestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log log3 = mock(Log.class);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(Arrays.asList(log2, log3), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Nothing is written or counted until the lane runs. */
+        verify(persistence, never()).putLog(any(Log.class), anyString(), anyInt());
+        verify(persistence, never()).putLogs(anyList(), anyString(), anyInt());
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Writes run in enqueue order then logs are counted on the App Center thread. */
+        runQueuedWrites();
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).putLog(log1, TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(persistence).putLogs(Arrays.asList(log2, log3), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void persistenceFailureOnPersistenceLane() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", new IOException("mock"));
+        doThrow(exception).when(persistence).putLog(any(Log.class), anyString(), anyInt());
+        Channel.GroupListener groupListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, groupListener);
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(groupListener, never()).onFailure(any(Log.class), any(Exception.class));
+        runQueuedWrites();
+        verify(groupListener).onFailure(log, exception);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void logsOfRemovedGroupAreNotCounted() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        DefaultChannel.GroupState groupState = channel.getGroupState(TEST_GROUP);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.removeGroup(TEST_GROUP);
+
+        /* Log is still written. */
+        runQueuedWrites();
+        verify(persistence).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        assertEquals(0, groupState.mPendingLogCount);
+    }
+
+    @Test
+    public void clearIsQueuedAfterWrites() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.clear(TEST_GROUP);
+
+        /* Nothing is deleted before the queued write. */
+        verify(persistence, never()).deleteLogs(anyString());
+        runQueuedWrites();
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        inOrder.verify(persistence).deleteLogs(TEST_GROUP);
+
+        /* The deleted log is not counted. */
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Logs enqueued after clearing are written after the delete and counted. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        runQueuedWrites();
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void disableIsQueuedAfterWrites() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        Channel.GroupListener groupListener = mock(Channel.GroupListener.class);
+        final Log storedLog = mock(Log.class);
+        when(persistence.getLogs(eq(TEST_GROUP), anyList(), anyInt(), anyList())).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                invocation.<List<Log>>getArgument(3).add(storedLog);
+                return "batch";
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, groupListener);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.setEnabled(false);
+        verify(persistence, never()).deleteLogs(anyString());
+        runQueuedWrites();
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        inOrder.verify(persistence).deleteLogs(TEST_GROUP);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Listener is called back for deleted logs. */
+        verify(groupListener).onBeforeSending(storedLog);
+        verify(groupListener).onFailure(eq(storedLog), any(CancellationException.class));
+    }
+
+    @Test
+    public void shutdownFlushesAfterQueuedWrites() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        when(persistence.putLog(any(Log.class), anyString(), anyInt())).then(getSlowPutLogAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockThreadHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.shutdown();
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        inOrder.verify(persistence).flush();
+    }
+
+    @Test
+    public void storageMaintenanceRunsOnPersistenceLane() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        when(persistence.deleteExpiredLogs()).thenReturn(Collections.singletonMap(TEST_GROUP, 1));
+        when(persistence.reclaimStorage()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler, mockQueuingHandler());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        runQueuedWrites();
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Expired logs are deleted and storage reclaimed on the lane, then the next step is scheduled. */
+        channel.performStorageMaintenance();
+        verify(persistence, never()).deleteExpiredLogs();
+        verify(persistence, never()).reclaimStorage();
+        runQueuedWrites();
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).deleteExpiredLogs();
+        inOrder.verify(persistence).reclaimStorage();
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.RECLAIM_STORAGE_STEP_DELAY));
+
+        /* Expired logs of a group cleared in the meantime are not subtracted again. */
+        channel.performStorageMaintenance();
+        channel.clear(TEST_GROUP);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        runQueuedWrites();
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+}
@@ -44,7 +44,7 @@ public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest
         /* Set up mocking. */
         final Semaphore beforeCallSemaphore = new Semaphore(0);
         final Semaphore afterCallSemaphore = new Semaphore(0);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(1);
         when(mockPersistence.getLogs(anyString(), anyCollection(), eq(1), anyList())).then(getGetLogsAnswer(1));
         when(mockPersistence.getLogs(anyString(), anyCollection(), eq(CLEAR_BATCH_SIZE), anyList())).then(getGetLogsAnswer(0));
@@ -92,7 +92,7 @@ public class DefaultChannelRaceConditionTest extends AbstractDefaultChannelTest
         /* Set up mocking. */
         final Semaphore beforeCallSemaphore = new Semaphore(0);
         final Semaphore afterCallSemaphore = new Semaphore(0);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(1);
         when(mockPersistence.getLogs(anyString(), anyCollection(), eq(1), anyList())).then(getGetLogsAnswer(1));
         when(mockPersistence.getLogs(anyString(), anyCollection(), eq(CLEAR_BATCH_SIZE), anyList())).then(getGetLogsAnswer(0));
@@ -9,6 +9,7 @@ import static com.microsoft.appcenter.Flags.NORMAL;
 import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyCollection;
@@ -17,6 +18,7 @@ import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -28,6 +30,8 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+
 import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.http.HttpException;
@@ -38,6 +42,7 @@ import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.ReloadableLogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -50,8 +55,11 @@ import org.mockito.stubbing.Answer;
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -63,7 +71,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invalidGroup() throws Persistence.PersistenceException {
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Channel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
 
         /* Enqueue a log before group is registered = failure. */
@@ -80,7 +88,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void analyticsSuccess() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
@@ -172,7 +180,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void lessLogsThanExpected() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList()))
@@ -207,7 +215,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void maxRequests() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
 
@@ -272,7 +280,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void maxRequestsInitial() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockPersistence.countLogs(anyString())).thenReturn(100);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer());
@@ -324,7 +332,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void analyticsRecoverable() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList()))
@@ -401,7 +409,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void analyticsFatal() throws Exception {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList()))
                 .then(getGetLogsAnswer(50))
@@ -482,7 +490,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void errorLogSuccess() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion mockIngestion = mock(Ingestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer());
@@ -518,9 +526,81 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
     }
 
+    @Test
+    public void batchListenerWithoutLogCallbacks() {
+        Persistence mockPersistence = mockPersistence();
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.BatchListener mockListener = mock(Channel.BatchListener.class);
+        when(mockPersistence.countLogs(anyString())).thenReturn(3);
+        when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(3));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Batch is notified once and logs are not read again. */
+        verify(mockListener, times(3)).onBeforeSending(any(Log.class));
+        verify(mockListener).onBatchSuccess(3, 0);
+        verify(mockListener, never()).onSuccess(any(Log.class));
+        verify(mockPersistence, never()).getLogs(anyString(), any(long[].class), anyList());
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+        assertTrue(channel.getGroupState(TEST_GROUP).mSendingBatches.isEmpty());
+    }
+
+    @Test
+    public void batchListenerWithLogCallbacks() {
+        Persistence mockPersistence = mockPersistence();
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.BatchListener mockListener = mock(Channel.BatchListener.class);
+        when(mockListener.requiresLogCallbacks()).thenReturn(true);
+        when(mockPersistence.countLogs(anyString())).thenReturn(3);
+        when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(3));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new HttpException(new HttpResponse(403))));
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Logs are read again for callbacks before being deleted. */
+        verify(mockListener).onBatchFailure(eq(3), eq(0), any(HttpException.class));
+        verify(mockListener, times(3)).onFailure(any(Log.class), any(HttpException.class));
+        verify(mockListener, never()).onBatchSuccess(anyInt(), anyInt());
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), any(long[].class), anyList());
+        verify(mockPersistence).deleteLogs(TEST_GROUP);
+        assertFalse(channel.isEnabled());
+    }
+
+    @Test
+    public void batchListenerWithLogsDeletedWhileSending() {
+        Persistence mockPersistence = mockPersistence();
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.BatchListener mockListener = mock(Channel.BatchListener.class);
+        when(mockListener.requiresLogCallbacks()).thenReturn(true);
+        when(mockPersistence.countLogs(anyString())).thenReturn(3);
+        when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(3));
+
+        /* Only one log of the batch is left in storage. */
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                invocation.<List<Log>>getArgument(2).add(mock(Log.class));
+                return null;
+            }
+        }).when(mockPersistence).getLogs(anyString(), any(long[].class), anyList());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Missing logs are reported with the batch. */
+        verify(mockListener).onBatchSuccess(3, 2);
+        verify(mockListener).onSuccess(any(Log.class));
+    }
+
     @Test
     public void errorLogRecoverable() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Ingestion mockIngestion = mock(Ingestion.class);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -576,7 +656,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void errorLogDiscarded() {
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
-        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(Ingestion.class), mAppCenterHandler);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence(), mock(Ingestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
         channel.setEnabled(false);
         channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
@@ -586,7 +666,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void suspendWithFailureCallback() {
         Ingestion mockIngestion = mock(Ingestion.class);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
         when(mockPersistence.countLogs(anyString())).thenReturn(30);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(10));
@@ -621,7 +701,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void suspendWithoutFailureCallback() {
         Ingestion mockIngestion = mock(Ingestion.class);
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(anyString())).thenReturn(3);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(1));
         when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
@@ -651,7 +731,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void enqueuePersistenceFailure() throws Persistence.PersistenceException {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
         /* Simulate Persistence failing. */
@@ -679,6 +759,96 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockListener, times(10)).onFailure(any(Log.class), any(Persistence.PersistenceException.class));
     }
 
+    private static Answer<Persistence.PersistenceException[]> getPutLogsAnswer(final Integer failingIndex) {
+        return new Answer<Persistence.PersistenceException[]>() {
+
+            @Override
+            public Persistence.PersistenceException[] answer(InvocationOnMock invocation) {
+                List<?> logs = invocation.getArgument(0);
+                Persistence.PersistenceException[] errors = new Persistence.PersistenceException[logs.size()];
+                if (failingIndex != null) {
+                    errors[failingIndex] = new Persistence.PersistenceException("mock", new IOException("mock"));
+                }
+                return errors;
+            }
+        };
+    }
+
+    @Test
+    public void enqueueCollection() throws Persistence.PersistenceException {
+        Persistence persistence = mockPersistence();
+        when(persistence.putLogs(anyList(), anyString(), anyInt())).thenAnswer(getPutLogsAnswer(null));
+        final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(TEST_GROUP_TWO, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Simulate a listener converting a log to another group while preparing it. */
+        final Log convertedLog = mock(Log.class);
+        final Log sourceLog = mock(Log.class);
+        channel.addListener(new AbstractChannelListener() {
+
+            @Override
+            public void onPreparedLog(@NonNull Log log, @NonNull String groupName, int flags) {
+                if (log == sourceLog) {
+                    channel.enqueue(convertedLog, TEST_GROUP_TWO, flags);
+                }
+            }
+        });
+
+        /* Enqueue logs together. */
+        Log firstLog = mock(Log.class);
+        Log lastLog = mock(Log.class);
+        channel.enqueue(Arrays.asList(firstLog, sourceLog, lastLog), TEST_GROUP, Flags.CRITICAL);
+
+        /* Verify logs are persisted together by group. */
+        verify(persistence).putLogs(Arrays.asList(firstLog, sourceLog, lastLog), TEST_GROUP, Flags.CRITICAL);
+        verify(persistence).putLogs(Collections.singletonList(convertedLog), TEST_GROUP_TWO, Flags.CRITICAL);
+        verify(persistence, never()).putLog(any(Log.class), anyString(), anyInt());
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(1, channel.getGroupState(TEST_GROUP_TWO).mPendingLogCount);
+        verify(mAppCenterHandler, times(2)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+
+        /* Logs enqueued one by one afterwards are not batched. */
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP, Flags.NORMAL);
+        verify(persistence).putLog(log, TEST_GROUP, Flags.NORMAL);
+        assertEquals(4, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void enqueueCollectionPersistenceFailure() {
+        Persistence persistence = mockPersistence();
+        when(persistence.putLogs(anyList(), anyString(), anyInt())).thenAnswer(getPutLogsAnswer(1));
+        Channel.GroupListener listener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, listener);
+
+        /* Enqueue logs, the second one fails to be persisted. */
+        Log failingLog = mock(Log.class);
+        channel.enqueue(Arrays.asList(mock(Log.class), failingLog, mock(Log.class)), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(listener).onBeforeSending(failingLog);
+        verify(listener).onFailure(eq(failingLog), any(Persistence.PersistenceException.class));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+    }
+
+    @Test
+    public void enqueueCollectionAllFiltered() {
+        Persistence persistence = mockPersistence();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addListener(new AbstractChannelListener() {
+
+            @Override
+            public boolean shouldFilter(@NonNull Log log) {
+                return true;
+            }
+        });
+        channel.enqueue(Arrays.asList(mock(Log.class), mock(Log.class)), TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence, never()).putLogs(anyList(), anyString(), anyInt());
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
     @Test
     public void setEnabled() throws IOException {
 
@@ -686,7 +856,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(1));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         Channel.Listener listener = spy(new AbstractChannelListener());
@@ -718,7 +888,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     public void disableBeforeCheckingPendingLogs() {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         final DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(1));
         when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).thenAnswer(new Answer<Void>() {
@@ -745,7 +915,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(3);
         when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(3));
 
@@ -767,7 +937,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(103);
         when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(3));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -787,7 +957,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(3);
         when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(3));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
@@ -808,7 +978,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Setup mocking to make device properties generation fail. */
         when(DeviceInfoHelper.getDeviceInfo(any(Context.class)))
                 .thenThrow(new DeviceInfoHelper.DeviceInfoException("mock"));
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
         Channel.Listener listener = mock(Channel.Listener.class);
@@ -831,7 +1001,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         Ingestion ingestion = mock(Ingestion.class);
         when(ingestion.isEnabled()).thenReturn(true);
         doThrow(new IOException()).when(ingestion).close();
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         when(persistence.countLogs(anyString())).thenReturn(2);
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
@@ -845,7 +1015,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendFatal() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
@@ -876,7 +1046,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendFatalNoListener() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
@@ -908,7 +1078,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
     @Test
     public void invokeCallbacksAfterSuspendRecoverable() {
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
         Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
@@ -943,7 +1113,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Other tests use default flags, test explicit flags here. */
 
         /* Setup persistence, channel and a listener. */
-        Persistence persistence = mock(Persistence.class);
+        Persistence persistence = mockPersistence();
         Channel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
         Channel.Listener listener = mock(Channel.Listener.class);
@@ -974,7 +1144,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -995,7 +1165,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(0);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -1020,7 +1190,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -1047,7 +1217,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
         when(mockIngestion.isEnabled()).thenReturn(true);
@@ -1074,7 +1244,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(5));
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
@@ -1101,7 +1271,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTimer);
 
         /* Mock persistence. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList()))
                 .then(getGetLogsAnswer())
                 .then(getGetLogsAnswer(50))
@@ -1164,7 +1334,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(System.currentTimeMillis()).thenReturn(now);
 
         /* Create channel and group. */
-        Persistence mockPersistence = mock(Persistence.class);
+        Persistence mockPersistence = mockPersistence();
         when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
         when(mockPersistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(1));
         AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
@@ -1198,7 +1368,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
     @Test
     public void testConcurrentIterableDataStructureUpdatesSuccess() {
         try {
-            Persistence mockPersistence = mock(Persistence.class);
+            Persistence mockPersistence = mockPersistence();
             AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
             Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
 
@@ -1222,4 +1392,172 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
             fail("This code should not have thrown an Exception " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void startupModeCountsLogsOnce() {
+        Persistence persistence = mockPersistence();
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put(TEST_GROUP, 2);
+        counts.put(TEST_GROUP_THREE, 5);
+        when(persistence.countLogsByGroup()).thenReturn(counts);
+        when(persistence.countLogs(anyString())).thenReturn(7);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.enableStartupMode();
+
+        /* Groups added during startup share a single query. */
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(TEST_GROUP_TWO, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(TEST_GROUP_TWO).mPendingLogCount);
+        verify(persistence).countLogsByGroup();
+        verify(persistence, never()).countLogs(anyString());
+
+        /* A group added again is counted individually. */
+        channel.removeGroup(TEST_GROUP);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertEquals(7, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(persistence).countLogs(TEST_GROUP);
+
+        /* Deferred checks run at the end of startup, then groups are counted individually. */
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(runnable.capture(), eq(DefaultChannel.STARTUP_DURATION));
+        verify(persistence, never()).performDeferredChecks();
+        runnable.getValue().run();
+        verify(persistence).performDeferredChecks();
+        verify(persistence).deleteExpiredLogs();
+        channel.addGroup(TEST_GROUP_THREE, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertEquals(7, channel.getGroupState(TEST_GROUP_THREE).mPendingLogCount);
+        verify(persistence).countLogsByGroup();
+    }
+
+    @Test
+    public void startupModeCountFailure() {
+        Persistence persistence = mockPersistence();
+        when(persistence.countLogsByGroup()).thenReturn(null);
+        when(persistence.countLogs(anyString())).thenReturn(3);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.enableStartupMode();
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(TEST_GROUP_TWO, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(3, channel.getGroupState(TEST_GROUP_TWO).mPendingLogCount);
+        verify(persistence).countLogsByGroup();
+    }
+
+    @Test
+    public void batchLogsAreReadAgainByIdentifiersOnRetry() {
+        Persistence persistence = mockPersistence();
+        when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(2));
+        Ingestion ingestion = mock(Ingestion.class);
+        when(ingestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<LogContainer> logContainer = ArgumentCaptor.forClass(LogContainer.class);
+        verify(ingestion).sendAsync(anyString(), any(UUID.class), logContainer.capture(), any(ServiceCallback.class));
+
+        /* The batch read to send it is used first, then logs are read again once released. */
+        ReloadableLogContainer container = (ReloadableLogContainer) logContainer.getValue();
+        assertEquals(2, container.getLogs().size());
+        verify(persistence, never()).getLogs(anyString(), any(long[].class), anyList());
+        container.releaseLogs();
+        assertEquals(2, container.getLogs().size());
+        verify(persistence).getLogs(eq(TEST_GROUP), any(long[].class), anyList());
+    }
+
+    @Test
+    public void enqueueForwardedLogs() {
+        Persistence persistence = mockPersistence();
+        when(persistence.putLogs(anyList(), anyString(), anyInt())).thenReturn(new Persistence.PersistenceException[2]);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addListener(listener);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        List<Log> logs = Arrays.asList(mock(Log.class), mock(Log.class));
+
+        /* Logs are stored as is. */
+        assertTrue(channel.acceptsForwardedLogs(TEST_GROUP));
+        channel.enqueueForwarded(logs, TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence).putLogs(logs, TEST_GROUP, Flags.DEFAULTS);
+        verify(listener, never()).onPreparingLog(any(Log.class), anyString());
+        verify(listener, never()).shouldFilter(any(Log.class));
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Unknown group. */
+        assertFalse(channel.acceptsForwardedLogs(TEST_GROUP_TWO));
+        channel.enqueueForwarded(logs, TEST_GROUP_TWO, Flags.DEFAULTS);
+        verify(persistence, never()).putLogs(anyList(), eq(TEST_GROUP_TWO), anyInt());
+
+        /* Disabled. */
+        channel.setEnabled(false);
+        assertFalse(channel.acceptsForwardedLogs(TEST_GROUP));
+        channel.enqueueForwarded(logs, TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence).putLogs(anyList(), anyString(), anyInt());
+    }
+
+    @Test
+    public void enqueueForwardedLogsWithoutAppSecret() {
+        Persistence persistence = mockPersistence();
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertFalse(channel.acceptsForwardedLogs(TEST_GROUP));
+        channel.enqueueForwarded(Collections.singletonList(mock(Log.class)), TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence, never()).putLogs(anyList(), anyString(), anyInt());
+    }
+
+    @Test
+    public void deleteExpiredLogsWhenIdle() {
+        Persistence persistence = mockPersistence();
+        when(persistence.countLogs(anyString())).thenReturn(5);
+        when(persistence.deleteExpiredLogs()).thenReturn(Collections.singletonMap(TEST_GROUP, 3));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.performStorageMaintenance();
+
+        /* Expired logs are not pending anymore and next check is scheduled. */
+        verify(persistence).deleteExpiredLogs();
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.STORAGE_MAINTENANCE_INTERVAL));
+
+        /* Nothing is deleted while disabled. */
+        channel.setEnabled(false);
+        channel.performStorageMaintenance();
+        verify(persistence).deleteExpiredLogs();
+        verify(mAppCenterHandler, times(2)).postDelayed(any(Runnable.class), eq(DefaultChannel.STORAGE_MAINTENANCE_INTERVAL));
+    }
+
+    @Test
+    public void doNotDeleteExpiredLogsWhileSending() {
+        Persistence persistence = mockPersistence();
+        Ingestion ingestion = mock(Ingestion.class);
+        when(persistence.countLogs(anyString())).thenReturn(3);
+        when(persistence.getLogs(anyString(), anyCollection(), anyInt(), anyList())).then(getGetLogsAnswer(3));
+        when(ingestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertFalse(channel.getGroupState(TEST_GROUP).mSendingBatches.isEmpty());
+
+        /* Check again later. */
+        channel.performStorageMaintenance();
+        verify(persistence, never()).deleteExpiredLogs();
+        verify(persistence, never()).reclaimStorage();
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.STORAGE_MAINTENANCE_INTERVAL));
+    }
+
+    @Test
+    public void reclaimStorageBySteps() {
+        Persistence persistence = mockPersistence();
+        when(persistence.reclaimStorage()).thenReturn(true, false);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.setEnabled(false);
+
+        /* Storage is reclaimed even if disabled, sooner while free storage is left. */
+        channel.performStorageMaintenance();
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.RECLAIM_STORAGE_STEP_DELAY));
+        channel.performStorageMaintenance();
+        verify(persistence, times(2)).reclaimStorage();
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.STORAGE_MAINTENANCE_INTERVAL));
+        verify(persistence, never()).deleteExpiredLogs();
+    }
+}
@@ -74,6 +74,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -1052,6 +1053,119 @@ public class DefaultHttpClientTest {
         AppCenterLog.verbose(anyString(), contains(payload));
     }
 
+    @Test
+    public void sendStreamingBody() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Configure API client with a template that streams the body. */
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("placeholder");
+        when(callTemplate.isStreamingRequestBody()).thenReturn(true);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream outputStream = invocation.getArgument(1);
+                outputStream.write("streamed".getBytes(StandardCharsets.UTF_8));
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(eq("placeholder"), any(OutputStream.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient(false);
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.emptyMap()));
+        verify(urlConnection).setChunkedStreamingMode(0);
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        verify(urlConnection, never()).setRequestProperty(eq("Content-Encoding"), anyString());
+        httpClient.close();
+
+        /* Verify streamed payload was sent instead of the built one. */
+        assertEquals("streamed", buffer.toString("UTF-8"));
+    }
+
+    @Test
+    public void sendStreamingBodyAlwaysGzip() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Short payload would not be compressed if not streamed. */
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{}");
+        when(callTemplate.isStreamingRequestBody()).thenReturn(true);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream outputStream = invocation.getArgument(1);
+                outputStream.write("streamed".getBytes(StandardCharsets.UTF_8));
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(eq("{}"), any(OutputStream.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.emptyMap()));
+        verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
+        verify(urlConnection).setChunkedStreamingMode(0);
+        httpClient.close();
+
+        /* Verify payload compressed. */
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64];
+        int length;
+        while ((length = gzipStream.read(chunk)) > 0) {
+            decompressed.write(chunk, 0, length);
+        }
+        assertEquals("streamed", decompressed.toString("UTF-8"));
+    }
+
+    @Test
+    public void sendStreamingTemplateNotStreaming() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Template supports streaming but has nothing to stream. */
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.emptyMap()));
+        verify(urlConnection).setFixedLengthStreamingMode("mockPayload".length());
+        verify(callTemplate, never()).writeRequestBody(anyString(), any(OutputStream.class));
+        httpClient.close();
+        assertEquals("mockPayload", buffer.toString("UTF-8"));
+    }
+
     @Test
     public void sendNoGzipWhenCompressionDisabled() throws Exception {
 
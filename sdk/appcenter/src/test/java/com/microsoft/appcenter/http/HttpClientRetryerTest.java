@@ -8,6 +8,7 @@ package com.microsoft.appcenter.http;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.longThat;
@@ -19,6 +20,8 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import android.os.Handler;
 
+import com.microsoft.appcenter.channel.ChannelMetrics;
+
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
@@ -101,7 +104,13 @@ public class HttpClientRetryerTest {
         Handler handler = mock(Handler.class);
         HttpClient retryer = new HttpClientRetryer(httpClient, handler);
         simulateRetryAfterDelay(handler);
-        retryer.callAsync(null, null, null, null, callback);
+        ChannelMetrics.setEnabled(true);
+        try {
+            retryer.callAsync(null, null, null, null, callback);
+            assertEquals(1, ChannelMetrics.getSnapshot().getHttpRetryCount());
+        } finally {
+            ChannelMetrics.setEnabled(false);
+        }
         verifyDelay(handler, 0);
         verifyNoMoreInteractions(handler);
         verify(callback).onCallSucceeded(eq(new HttpResponse(200, "mockSuccessPayload")));
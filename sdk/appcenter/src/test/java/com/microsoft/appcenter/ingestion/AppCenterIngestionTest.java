@@ -10,13 +10,17 @@ import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.FileBackedLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.ReloadableLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -27,19 +31,27 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static com.microsoft.appcenter.utils.PrefStorageConstants.ALLOWED_NETWORK_REQUEST;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
@@ -47,8 +59,10 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
@@ -58,6 +72,8 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 @PrepareForTest({
         AppCenterIngestion.class,
         AppCenterLog.class,
+        FileManager.class,
+        JSONObject.class,
         SharedPreferencesManager.class
 })
 public class AppCenterIngestionTest {
@@ -113,6 +129,11 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(), eq(serviceCallback));
         assertNotNull(callTemplate.get());
         assertEquals("mockPayload", callTemplate.get().buildRequestBody());
+        assertFalse(((HttpClient.StreamingCallTemplate) callTemplate.get()).isStreamingRequestBody());
+
+        /* Request body is built again for every attempt. */
+        assertEquals("mockPayload", callTemplate.get().buildRequestBody());
+        verify(serializer, times(2)).serializeContainer(container);
 
         /* Verify close. */
         ingestion.close();
@@ -123,6 +144,131 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void reloadableLogsAreReleasedBetweenAttempts() throws Exception {
+        final List<Log> logs = new ArrayList<>();
+        logs.add(mock(Log.class));
+        final AtomicInteger readCount = new AtomicInteger();
+        ReloadableLogContainer container = new ReloadableLogContainer() {
+
+            @Override
+            protected List<Log> readLogs() {
+                readCount.incrementAndGet();
+                return logs;
+            }
+        };
+        container.setLogs(logs);
+        LogSerializer serializer = mock(LogSerializer.class);
+        when(serializer.serializeContainer(any(LogContainer.class))).thenReturn("mockPayload");
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMap(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, serializer);
+        ingestion.sendAsync(UUID.randomUUID().toString(), UUID.randomUUID(), container, mock(ServiceCallback.class));
+
+        /* First attempt uses the logs already read. */
+        assertEquals("mockPayload", callTemplate.get().buildRequestBody());
+        assertEquals(0, readCount.get());
+
+        /* Logs are read again for the next attempt. */
+        assertEquals("mockPayload", callTemplate.get().buildRequestBody());
+        assertEquals(1, readCount.get());
+    }
+
+    @Test
+    public void streamFileBackedLogs() throws Exception {
+
+        /* Build a payload with a regular log and two file-backed logs. */
+        File file1 = mock(File.class);
+        File file2 = mock(File.class);
+        FileBackedLog fileLog1 = mock(FileBackedLog.class);
+        when(fileLog1.getContentFile()).thenReturn(file1);
+        when(fileLog1.getContentPlaceholder()).thenReturn("file1");
+        FileBackedLog fileLog2 = mock(FileBackedLog.class);
+        when(fileLog2.getContentFile()).thenReturn(file2);
+        when(fileLog2.getContentPlaceholder()).thenReturn("file2");
+        FileBackedLog memoryLog = mock(FileBackedLog.class);
+        LogContainer container = new LogContainer();
+        List<Log> logs = new ArrayList<>();
+        logs.add(mock(Log.class));
+        logs.add(fileLog1);
+        logs.add(memoryLog);
+        logs.add(fileLog2);
+        container.setLogs(logs);
+        LogSerializer serializer = mock(LogSerializer.class);
+        final String payload = "{\"logs\":[{},{\"data\":\"file1\"},{\"data\":\"abc\"},{\"data\":\"file2\"}]}";
+        when(serializer.serializeContainer(any(LogContainer.class), anyList())).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                List<Integer> contentOffsets = invocation.getArgument(1);
+                contentOffsets.add(payload.indexOf("\"file1\""));
+                contentOffsets.add(payload.indexOf("\"file2\""));
+                return payload;
+            }
+        });
+
+        /* Mock JSON quoting and file encoding. */
+        mockStatic(JSONObject.class);
+        when(JSONObject.quote(anyString())).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return "\"" + invocation.getArgument(0) + "\"";
+            }
+        });
+        mockStatic(FileManager.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream outputStream = invocation.getArgument(1);
+                outputStream.write((invocation.getArgument(0) == file1 ? "AQID" : "BAUG").getBytes());
+                return null;
+            }
+        }).when(FileManager.class);
+        FileManager.writeBase64(any(File.class), any(OutputStream.class));
+
+        /* Configure mock HTTP. */
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMap(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, serializer);
+        ingestion.sendAsync(UUID.randomUUID().toString(), UUID.randomUUID(), container, mock(ServiceCallback.class));
+
+        /* Verify placeholders replaced in order by file contents. */
+        HttpClient.StreamingCallTemplate streamingCallTemplate = (HttpClient.StreamingCallTemplate) callTemplate.get();
+        assertTrue(streamingCallTemplate.isStreamingRequestBody());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamingCallTemplate.writeRequestBody(streamingCallTemplate.buildRequestBody(), outputStream);
+        assertEquals("{\"logs\":[{},{\"data\":\"AQID\"},{\"data\":\"abc\"},{\"data\":\"BAUG\"}]}", outputStream.toString("UTF-8"));
+
+        /* Files are still streamed on retry. */
+        assertTrue(streamingCallTemplate.isStreamingRequestBody());
+        outputStream = new ByteArrayOutputStream();
+        streamingCallTemplate.writeRequestBody(streamingCallTemplate.buildRequestBody(), outputStream);
+        assertEquals("{\"logs\":[{},{\"data\":\"AQID\"},{\"data\":\"abc\"},{\"data\":\"BAUG\"}]}", outputStream.toString("UTF-8"));
+
+        /* Missing placeholder fails the call. */
+        try {
+            streamingCallTemplate.writeRequestBody("{}", new ByteArrayOutputStream());
+            Assert.fail("Expected IO exception");
+        } catch (IOException ignored) {
+        }
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
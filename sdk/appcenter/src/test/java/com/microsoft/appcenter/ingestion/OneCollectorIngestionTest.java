@@ -62,6 +62,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -175,6 +176,10 @@ public class OneCollectorIngestionTest {
         assertNotNull(callTemplate.getValue());
         assertEquals("mockPayload1\nmockPayload2\n", callTemplate.getValue().buildRequestBody());
 
+        /* Request body is built again for every attempt. */
+        assertEquals("mockPayload1\nmockPayload2\n", callTemplate.getValue().buildRequestBody());
+        verify(serializer, times(2)).serializeLog(log1);
+
         /* Verify close. */
         ingestion.close();
         verify(mHttpClient).close();
@@ -6,12 +6,17 @@
 package com.microsoft.appcenter.persistence;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.utils.storage.DatabaseManager.OPERATION_FAILED_FLAG;
 import static com.microsoft.appcenter.utils.storage.DatabaseManager.PRIMARY_KEY;
 import static com.microsoft.appcenter.persistence.DatabasePersistence.PAYLOAD_MAX_SIZE;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anySet;
@@ -20,6 +25,8 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNotNull;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -37,11 +44,13 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import androidx.annotation.Nullable;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.StorageQuota;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.json.JSONException;
 import org.junit.Rule;
@@ -58,14 +67,17 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 @SuppressWarnings("unused")
 @PrepareForTest({
         AppCenterLog.class,
         DatabaseManager.class,
-        DatabasePersistence.class
+        DatabasePersistence.class,
+        SharedPreferencesManager.class
 })
 @RunWith(PowerMockRunner.class)
 public class DatabasePersistenceTest {
@@ -87,6 +99,7 @@ public class DatabasePersistenceTest {
             @Nullable Integer version,
             @Nullable @SuppressWarnings("SameParameterValue") final ContentValues schema
     ) throws Exception {
+        mockStatic(SharedPreferencesManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mDatabaseManager);
         when(mCursor.moveToNext()).thenReturn(false);
         when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(), any(String[].class), eq(null))).thenReturn(mCursor);
@@ -542,7 +555,8 @@ public class DatabasePersistenceTest {
         when(mCursor.moveToNext()).thenReturn(true).thenReturn(false);
         when(mDatabaseManager.setMaxSize(anyLong())).thenReturn(true);
         when(mDatabaseManager.getMaxSize()).thenReturn(maxSize);
-        when(mDatabaseManager.getCurrentSize()).thenReturn(maxSize + 2).thenReturn(maxSize + 1).thenReturn(maxSize - 1);
+        when(mDatabaseManager.getAllocatedSize()).thenReturn(maxSize + 2);
+        when(mDatabaseManager.getFreeSize()).thenReturn(0L).thenReturn(1L).thenReturn(3L);
         when(mDatabaseManager.deleteTheOldestRecord(anySet(), anyString(), anyInt())).thenReturn(mockContentValues);
         when(mockContentValues.getAsLong(PRIMARY_KEY)).thenReturn(logId).thenReturn(errorLogId);
         when(mockContentValues.getAsString(DatabasePersistence.COLUMN_GROUP)).thenReturn(mockGroup);
@@ -608,7 +622,7 @@ public class DatabasePersistenceTest {
 
         /* Set a mock of database manager. */
         when(mDatabaseManager.getMaxSize()).thenReturn(PAYLOAD_MAX_SIZE + 2L);
-        when(mDatabaseManager.getCurrentSize()).thenReturn(2L);
+        when(mDatabaseManager.getAllocatedSize()).thenReturn(2L);
         when(mDatabaseManager.deleteTheOldestRecord(anySet(), anyString(), anyInt())).thenReturn(mockContentValues).thenReturn(null);
 
         /* Set a mock payload. */
@@ -630,6 +644,222 @@ public class DatabasePersistenceTest {
         persistence.putLog(mock(Log.class), "test-p1", NORMAL);
     }
 
+    @Test
+    public void storageSizeIsReadOncePerWrite() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createDatabasePersistenceInstance();
+        persistence.setLogSerializer(logSerializer);
+        when(mDatabaseManager.getMaxSize()).thenReturn(100L);
+        when(mDatabaseManager.getAllocatedSize()).thenReturn(50L);
+        persistence.putLog(mock(Log.class), "test-p1", NORMAL);
+
+        /* Logs fit, nothing is deleted. */
+        verify(mDatabaseManager).getAllocatedSize();
+        verify(mDatabaseManager).getFreeSize();
+        verify(mDatabaseManager, never()).deleteTheOldestRecord(anySet(), anyString(), anyInt());
+
+        /* Each deleted log frees pages without changing the allocated size. */
+        when(mDatabaseManager.getAllocatedSize()).thenReturn(120L);
+        when(mDatabaseManager.getFreeSize()).thenReturn(0L, 10L, 30L);
+        ContentValues deletedRow = mock(ContentValues.class);
+        when(deletedRow.getAsLong(PRIMARY_KEY)).thenReturn(1L, 2L);
+        when(deletedRow.getAsString(DatabasePersistence.COLUMN_GROUP)).thenReturn("test-p1");
+        when(mDatabaseManager.deleteTheOldestRecord(anySet(), anyString(), anyInt())).thenReturn(deletedRow);
+        whenNew(File.class).withAnyArguments().thenReturn(mock(File.class));
+        persistence.putLog(mock(Log.class), "test-p1", NORMAL);
+        verify(mDatabaseManager, times(2)).getAllocatedSize();
+        verify(mDatabaseManager, times(4)).getFreeSize();
+        verify(mDatabaseManager, times(2)).deleteTheOldestRecord(anySet(), anyString(), anyInt());
+    }
+
+    @Test
+    public void reclaimStorage() throws Exception {
+        DatabasePersistence persistence = createDatabasePersistenceInstance();
+        when(mDatabaseManager.reclaimFreePages(DatabasePersistence.RECLAIMED_PAGES_PER_STEP)).thenReturn(3L, 0L, OPERATION_FAILED_FLAG);
+
+        /* More storage can be reclaimed only while free pages are left. */
+        assertTrue(persistence.reclaimStorage());
+        assertFalse(persistence.reclaimStorage());
+        assertFalse(persistence.reclaimStorage());
+    }
+
+    @Test
+    public void timeToLiveChangeUpdatesStoredLogs() throws Exception {
+        DatabasePersistence persistence = createDatabasePersistenceInstance();
+        String timeToLiveKey = DatabasePersistence.PREFERENCE_KEY_TIME_TO_LIVE_PREFIX + "test-ttl";
+
+        /* Logs stored without expiration get one. */
+        persistence.setStorageQuota("test-ttl", StorageQuota.timeToLive(60000));
+        verify(mDatabaseManager, never()).addToColumn(anyString(), anyLong(), anyString(), any(String[].class));
+        verify(mDatabaseManager).update(any(ContentValues.class), eq(DatabasePersistence.COLUMN_GROUP + " = ? AND " + DatabasePersistence.COLUMN_EXPIRES_AT + " IS NULL"), eq(new String[]{"test-ttl"}));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.putLong(timeToLiveKey, 60000);
+
+        /* Nothing to do when the time to live does not change, e.g. on next launch. */
+        when(SharedPreferencesManager.getLong(timeToLiveKey, 0)).thenReturn(60000L);
+        persistence.setStorageQuota("test-ttl", StorageQuota.maxShare(0.5).withTimeToLive(60000));
+        verify(mDatabaseManager).update(any(ContentValues.class), anyString(), any(String[].class));
+
+        /* Existing expirations follow the new time to live. */
+        persistence.setStorageQuota("test-ttl", StorageQuota.timeToLive(30000));
+        verify(mDatabaseManager).addToColumn(DatabasePersistence.COLUMN_EXPIRES_AT, -30000, DatabasePersistence.COLUMN_GROUP + " = ? AND " + DatabasePersistence.COLUMN_EXPIRES_AT + " IS NOT NULL", new String[]{"test-ttl"});
+        verify(mDatabaseManager, times(2)).update(any(ContentValues.class), eq(DatabasePersistence.COLUMN_GROUP + " = ? AND " + DatabasePersistence.COLUMN_EXPIRES_AT + " IS NULL"), eq(new String[]{"test-ttl"}));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.putLong(timeToLiveKey, 30000);
+
+        /* Removing the time to live clears the expirations. */
+        when(SharedPreferencesManager.getLong(timeToLiveKey, 0)).thenReturn(30000L);
+        persistence.setStorageQuota("test-ttl", null);
+        verify(mDatabaseManager).update(any(ContentValues.class), eq(DatabasePersistence.COLUMN_GROUP + " = ? AND " + DatabasePersistence.COLUMN_EXPIRES_AT + " IS NOT NULL"), eq(new String[]{"test-ttl"}));
+        verifyStatic(SharedPreferencesManager.class);
+        SharedPreferencesManager.remove(timeToLiveKey);
+    }
+
+    @Test
+    public void deletingSentLogsUpdatesGroupSizes() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        when(logSerializer.deserializeLog(anyString(), any())).thenReturn(mock(Log.class));
+        when(mDatabaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        persistence.setStorageQuota("test-p1", StorageQuota.maxShare(0.5));
+        when(mDatabaseManager.getSumByColumn(anyString(), anyString())).thenReturn(new HashMap<>(Collections.singletonMap("test-p1", 508L)));
+        when(mDatabaseManager.put(any(ContentValues.class))).thenReturn(1L, 2L);
+
+        /* Fill the quota of half the 1024 bytes storage. */
+        persistence.putLog(mock(Log.class), "test-p1", NORMAL);
+
+        /* Send the log. */
+        ContentValues contentValues = mock(ContentValues.class);
+        when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(1L);
+        when(contentValues.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("mock");
+        MockCursor mockCursor = new MockCursor(Collections.singletonList(contentValues));
+        mockCursor.mockBuildValues(mDatabaseManager);
+        when(mDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(), any(String[].class), anyString())).thenReturn(mockCursor);
+        String batchId = persistence.getLogs("test-p1", Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        assertNotNull(batchId);
+        persistence.deleteLogs("test-p1", batchId);
+
+        /* The deleted log made room in the quota without computing group sizes again. */
+        persistence.putLog(mock(Log.class), "test-p1", NORMAL);
+        verify(mDatabaseManager).getSumByColumn(anyString(), anyString());
+        verify(mDatabaseManager).delete(1L);
+        verify(mDatabaseManager, never()).delete(2L);
+    }
+
+    @Test
+    public void evictOldestLogWhenGroupsAreWithinReservedSize() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        persistence.setStorageQuota("test-reserved", StorageQuota.reservedSize(256));
+        when(mDatabaseManager.getSumByColumn(anyString(), anyString())).thenReturn(new HashMap<>(Collections.singletonMap("test-reserved", 100L)));
+        when(mDatabaseManager.put(any(ContentValues.class))).thenThrow(new SQLiteFullException()).thenReturn(2L);
+        ContentValues deletedRow = mock(ContentValues.class);
+        when(deletedRow.getAsLong(PRIMARY_KEY)).thenReturn(1L);
+        when(deletedRow.getAsString(DatabasePersistence.COLUMN_GROUP)).thenReturn("test-reserved");
+        when(mDatabaseManager.deleteTheOldestRecord(anySet(), anyString(), anyInt())).thenReturn(deletedRow);
+
+        /* No group exceeds its reserved size and the new log group has none to delete: the oldest log is deleted. */
+        assertEquals(2L, persistence.putLog(mock(Log.class), "test-other", NORMAL));
+        verify(mDatabaseManager).deleteTheOldestRecord(anySet(), anyString(), anyInt());
+    }
+
+    private DatabasePersistence createBatchPersistence(LogSerializer logSerializer) throws Exception {
+        DatabasePersistence persistence = createDatabasePersistenceInstance();
+        persistence.setLogSerializer(logSerializer);
+        when(mDatabaseManager.getMaxSize()).thenReturn(1024L);
+        when(mDatabaseManager.beginTransaction()).thenReturn(true);
+        when(mDatabaseManager.endTransaction(anyBoolean())).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return invocation.getArgument(0);
+            }
+        });
+        return persistence;
+    }
+
+    @Test
+    public void putLogsInTransaction() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        when(mDatabaseManager.put(any(ContentValues.class))).thenReturn(1L, 2L);
+
+        /* Persist logs. */
+        PersistenceException[] errors = persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL);
+        assertArrayEquals(new PersistenceException[2], errors);
+        verify(mDatabaseManager).beginTransaction();
+        verify(mDatabaseManager, times(2)).put(any(ContentValues.class));
+        verify(mDatabaseManager).endTransaction(true);
+    }
+
+    @Test
+    public void putLogsReportsErrorsPerLog() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        Log invalidLog = mock(Log.class);
+        Log failingLog = mock(Log.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        when(logSerializer.serializeLog(invalidLog)).thenThrow(new JSONException("JSON exception"));
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        when(mDatabaseManager.put(any(ContentValues.class))).thenReturn(1L, -1L);
+
+        /* Persist logs. */
+        PersistenceException[] errors = persistence.putLogs(Arrays.asList(mock(Log.class), invalidLog, failingLog), "test-p1", NORMAL);
+        assertNull(errors[0]);
+        assertNotNull(errors[1]);
+        assertNotNull(errors[2]);
+        verify(mDatabaseManager, times(2)).put(any(ContentValues.class));
+        verify(mDatabaseManager).endTransaction(true);
+    }
+
+    @Test
+    public void putLogsStoresOneByOneWhenFull() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        when(mDatabaseManager.put(any(ContentValues.class)))
+                .thenReturn(1L)
+                .thenThrow(new SQLiteFullException())
+                .thenReturn(2L, 3L);
+
+        /* Persist logs. */
+        PersistenceException[] errors = persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL);
+        assertArrayEquals(new PersistenceException[2], errors);
+
+        /* The transaction is rolled back and logs are stored without it. */
+        verify(mDatabaseManager).endTransaction(false);
+        verify(mDatabaseManager, times(4)).put(any(ContentValues.class));
+    }
+
+    @Test
+    public void putLogsWithoutTransaction() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        when(mDatabaseManager.beginTransaction()).thenReturn(false);
+        when(mDatabaseManager.put(any(ContentValues.class))).thenReturn(1L, 2L);
+
+        /* Persist logs one by one. */
+        PersistenceException[] errors = persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL);
+        assertArrayEquals(new PersistenceException[2], errors);
+        verify(mDatabaseManager, times(2)).put(any(ContentValues.class));
+        verify(mDatabaseManager, never()).endTransaction(anyBoolean());
+    }
+
+    @Test
+    public void putSingleLogWithoutTransaction() throws Exception {
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        DatabasePersistence persistence = createBatchPersistence(logSerializer);
+        when(mDatabaseManager.put(any(ContentValues.class))).thenReturn(1L);
+        PersistenceException[] errors = persistence.putLogs(Collections.singletonList(mock(Log.class)), "test-p1", NORMAL);
+        assertArrayEquals(new PersistenceException[1], errors);
+        verify(mDatabaseManager, never()).beginTransaction();
+    }
+
     private static class MockCursor extends CursorWrapper {
 
         private final List<ContentValues> mList;
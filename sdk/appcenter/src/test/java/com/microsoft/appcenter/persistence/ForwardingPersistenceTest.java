@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.DeadObjectException;
+import android.os.TransactionTooLargeException;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({AppCenterLog.class, Uri.class})
+public class ForwardingPersistenceTest {
+
+    private static final String GROUP = "group";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private ContentResolver mContentResolver;
+
+    private ContentProviderClient mClient;
+
+    private LogSerializer mLogSerializer;
+
+    private ForwardingPersistence mPersistence;
+
+    /**
+     * Whether the main process accepts logs.
+     */
+    private boolean mAvailable;
+
+    /**
+     * Number of logs received by each call to the main process.
+     */
+    private final List<Integer> mForwardedCounts = new ArrayList<>();
+
+    /**
+     * Number of logs above which a call exceeds the Binder transaction limit.
+     */
+    private int mMaxTransactionCount = Integer.MAX_VALUE;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(AppCenterLog.class);
+        mockStatic(Uri.class);
+        when(Uri.parse("content://com.contoso" + ForwardingPersistence.AUTHORITY_SUFFIX)).thenReturn(mock(Uri.class));
+        mContentResolver = mock(ContentResolver.class);
+        mClient = mock(ContentProviderClient.class);
+        when(mContentResolver.acquireUnstableContentProviderClient(any(Uri.class))).thenReturn(mClient);
+        when(mClient.bulkInsert(any(Uri.class), any(ContentValues[].class))).then(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws TransactionTooLargeException {
+                int count = invocation.<ContentValues[]>getArgument(1).length;
+                mForwardedCounts.add(count);
+                if (count > mMaxTransactionCount) {
+                    throw new TransactionTooLargeException();
+                }
+                return mAvailable ? count : 0;
+            }
+        });
+        Context context = mock(Context.class);
+        when(context.getPackageName()).thenReturn("com.contoso");
+        when(context.getContentResolver()).thenReturn(mContentResolver);
+        mLogSerializer = mock(LogSerializer.class);
+        when(mLogSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        mPersistence = new ForwardingPersistence(context);
+        mPersistence.setLogSerializer(mLogSerializer);
+        mAvailable = true;
+    }
+
+    @Test
+    public void forwardLogs() throws Persistence.PersistenceException {
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(0, mPersistence.getQueuedLogCount());
+        Persistence.PersistenceException[] errors = mPersistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), GROUP, Flags.DEFAULTS);
+        assertNull(errors[0]);
+        assertNull(errors[1]);
+        assertEquals(Arrays.asList(1, 2), mForwardedCounts);
+        assertEquals(0, mPersistence.getQueuedLogCount());
+
+        /* Nothing is read back in this process. */
+        assertEquals(0, mPersistence.countLogs(GROUP));
+        Map<String, Integer> counts = mPersistence.countLogsByGroup();
+        assertNotNull(counts);
+        assertTrue(counts.isEmpty());
+        List<Log> logs = new ArrayList<>();
+        assertNull(mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, logs));
+        assertEquals(0, mPersistence.getLogIds(GROUP, "batch").length);
+        mPersistence.getLogs(GROUP, new long[]{1}, logs);
+        assertTrue(logs.isEmpty());
+        mPersistence.deleteLogs(GROUP, "batch");
+        mPersistence.clearPendingLogState();
+        assertTrue(mPersistence.setMaxStorageSize(1));
+    }
+
+    @Test
+    public void keepLogsWhileMainProcessUnavailable() throws Persistence.PersistenceException {
+        mAvailable = false;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(2, mPersistence.getQueuedLogCount());
+
+        /* Queued logs are forwarded first, with the new one. */
+        mAvailable = true;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(0, mPersistence.getQueuedLogCount());
+        assertEquals(Arrays.asList(1, 2, 3), mForwardedCounts);
+    }
+
+    @Test
+    public void keepLogsOnForwardingFailure() throws Exception {
+        when(mClient.bulkInsert(any(Uri.class), any(ContentValues[].class))).thenThrow(new DeadObjectException());
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(1, mPersistence.getQueuedLogCount());
+        verify(mClient).release();
+
+        /* Provider not found. */
+        when(mContentResolver.acquireUnstableContentProviderClient(any(Uri.class))).thenReturn(null);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(2, mPersistence.getQueuedLogCount());
+
+        /* Provider rejected. */
+        when(mContentResolver.acquireUnstableContentProviderClient(any(Uri.class))).thenThrow(new SecurityException("mock"));
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(3, mPersistence.getQueuedLogCount());
+    }
+
+    @Test
+    public void logsTooLargeForTransactionAreForwardedOneByOneOrDiscarded() throws Persistence.PersistenceException {
+        mAvailable = false;
+        mPersistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class), mock(Log.class)), GROUP, Flags.DEFAULTS);
+        assertEquals(3, mPersistence.getQueuedLogCount());
+        mForwardedCounts.clear();
+
+        /* A chunk too large is split. */
+        mAvailable = true;
+        mMaxTransactionCount = 1;
+        mPersistence.flush();
+        assertEquals(0, mPersistence.getQueuedLogCount());
+        assertEquals(Arrays.asList(3, 1, 1, 1), mForwardedCounts);
+        mForwardedCounts.clear();
+
+        /* A log too large on its own does not block the next ones. */
+        mMaxTransactionCount = 0;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(0, mPersistence.getQueuedLogCount());
+        mMaxTransactionCount = Integer.MAX_VALUE;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(Arrays.asList(1, 1), mForwardedCounts);
+    }
+
+    @Test
+    public void flushForwardsQueuedLogs() throws Persistence.PersistenceException {
+        mAvailable = false;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(1, mPersistence.getQueuedLogCount());
+        mAvailable = true;
+        mPersistence.flush();
+        assertEquals(0, mPersistence.getQueuedLogCount());
+        assertEquals(Arrays.asList(1, 1), mForwardedCounts);
+    }
+
+    @Test
+    public void closeForwardsQueuedLogs() throws Persistence.PersistenceException {
+        mAvailable = false;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mAvailable = true;
+        mPersistence.close();
+        assertEquals(0, mPersistence.getQueuedLogCount());
+    }
+
+    @Test
+    public void queueIsBounded() throws Persistence.PersistenceException {
+        mAvailable = false;
+        for (int i = 0; i < ForwardingPersistence.MAX_QUEUED_LOGS; i++) {
+            mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        }
+        try {
+            mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+            fail("Expected queue to be full");
+        } catch (Persistence.PersistenceException ignored) {
+        }
+        Persistence.PersistenceException[] errors = mPersistence.putLogs(Collections.singletonList(mock(Log.class)), GROUP, Flags.DEFAULTS);
+        assertNotNull(errors[0]);
+        assertEquals(ForwardingPersistence.MAX_QUEUED_LOGS, mPersistence.getQueuedLogCount());
+
+        /* Queue is not full anymore once the main process is available. */
+        mAvailable = true;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(0, mPersistence.getQueuedLogCount());
+    }
+
+    @Test
+    public void deleteQueuedLogsOfGroup() throws Persistence.PersistenceException {
+        mAvailable = false;
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.deleteLogs(GROUP);
+        assertEquals(1, mPersistence.getQueuedLogCount());
+    }
+
+    @Test
+    public void serializationErrors() throws Exception {
+        Log invalidLog = mock(Log.class);
+        when(mLogSerializer.serializeLog(invalidLog)).thenThrow(new JSONException("mock"));
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i <= ForwardingPersistence.MAX_LOG_LENGTH; i++) {
+            payload.append('a');
+        }
+        Log largeLog = mock(Log.class);
+        when(mLogSerializer.serializeLog(largeLog)).thenReturn(payload.toString());
+        Persistence.PersistenceException[] errors = mPersistence.putLogs(Arrays.asList(invalidLog, mock(Log.class), largeLog), GROUP, Flags.DEFAULTS);
+        assertNotNull(errors[0]);
+        assertNull(errors[1]);
+        assertNotNull(errors[2]);
+        assertEquals(Collections.singletonList(1), mForwardedCounts);
+    }
+
+    @Test
+    public void largeLogsAreForwardedInSeveralCalls() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i <= ForwardingPersistence.MAX_FORWARDED_LENGTH / 2; i++) {
+            payload.append('a');
+        }
+        when(mLogSerializer.serializeLog(any(Log.class))).thenReturn(payload.toString());
+        mPersistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class), mock(Log.class)), GROUP, Flags.DEFAULTS);
+        assertEquals(Arrays.asList(1, 1, 1), mForwardedCounts);
+    }
+
+    @Test
+    public void forwardTargetToken() throws Exception {
+        CommonSchemaLog log = mock(CommonSchemaLog.class);
+        when(log.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token"));
+        mPersistence.putLog(log, GROUP + "/one", Flags.DEFAULTS);
+        verify(log).getTransmissionTargetTokens();
+        ArgumentCaptor<ContentValues[]> values = ArgumentCaptor.forClass(ContentValues[].class);
+        verify(mClient, times(1)).bulkInsert(any(Uri.class), values.capture());
+        assertEquals(1, values.getValue().length);
+    }
+}
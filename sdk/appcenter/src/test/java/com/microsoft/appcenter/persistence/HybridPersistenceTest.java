@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.os.Handler;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.StorageQuota;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class HybridPersistenceTest {
+
+    private static final String GROUP = "group";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Persistence mDatabase;
+
+    private LogSerializer mLogSerializer;
+
+    private HybridPersistence mPersistence;
+
+    @Before
+    public void setUp() throws JSONException {
+        mockStatic(AppCenterLog.class);
+        mDatabase = mock(Persistence.class);
+        when(mDatabase.putLogs(anyList(), anyString(), anyInt())).then(new Answer<Persistence.PersistenceException[]>() {
+
+            @Override
+            public Persistence.PersistenceException[] answer(InvocationOnMock invocation) {
+                return new Persistence.PersistenceException[invocation.<List<Log>>getArgument(0).size()];
+            }
+        });
+        when(mDatabase.countLogsByGroup()).thenReturn(new HashMap<String, Integer>());
+        mLogSerializer = mock(LogSerializer.class);
+        when(mLogSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+
+        /* Run lifecycle events synchronously. */
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                invocation.<Runnable>getArgument(0).run();
+                return true;
+            }
+        });
+        mPersistence = new HybridPersistence(mDatabase, handler);
+        mPersistence.setLogSerializer(mLogSerializer);
+    }
+
+    @Test
+    public void setLogSerializerOnDatabase() {
+        verify(mDatabase).setLogSerializer(mLogSerializer);
+    }
+
+    @Test
+    public void sendFromMemory() throws Persistence.PersistenceException {
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        assertEquals(-1, mPersistence.putLog(log1, GROUP, Flags.DEFAULTS));
+        assertEquals(-2, mPersistence.putLog(log2, GROUP, Flags.DEFAULTS));
+        verify(mDatabase, never()).putLog(any(Log.class), anyString(), anyInt());
+        assertEquals(2, mPersistence.countLogs(GROUP));
+        assertEquals(Integer.valueOf(2), mPersistence.countLogsByGroup().get(GROUP));
+
+        /* Database is queried once, then logs are read from memory only. */
+        List<Log> logs = new ArrayList<>();
+        String batchId = mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 1, logs);
+        assertNotNull(batchId);
+        assertEquals(Collections.singletonList(log1), logs);
+        assertArrayEquals(new long[]{-1}, mPersistence.getLogIds(GROUP, batchId));
+        logs.clear();
+        String batchId2 = mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, logs);
+        assertEquals(Collections.singletonList(log2), logs);
+        verify(mDatabase).getLogs(eq(GROUP), anyCollection(), anyInt(), anyList());
+        assertNull(mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, new ArrayList<Log>()));
+
+        /* Logs being sent are counted and can be read again. */
+        assertEquals(2, mPersistence.countLogs(GROUP));
+        logs.clear();
+        mPersistence.getLogs(GROUP, new long[]{-1, -2, -3}, logs);
+        assertEquals(Arrays.asList(log1, log2), logs);
+        verify(mDatabase, never()).getLogs(anyString(), any(long[].class), anyList());
+
+        /* Delete sent logs. */
+        mPersistence.deleteLogs(GROUP, batchId);
+        mPersistence.deleteLogs(GROUP, batchId2);
+        verify(mDatabase, never()).deleteLogs(anyString(), anyString());
+        assertEquals(0, mPersistence.getMemoryLogCount());
+        assertEquals(0, mPersistence.getMemorySize());
+    }
+
+    @Test
+    public void sendFromDatabaseFirst() throws Persistence.PersistenceException {
+        final Log storedLog = mock(Log.class);
+        when(mDatabase.getLogs(eq(GROUP), anyCollection(), anyInt(), anyList())).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                invocation.<List<Log>>getArgument(3).add(storedLog);
+                return "database";
+            }
+        });
+        when(mDatabase.getLogIds(GROUP, "database")).thenReturn(new long[]{1});
+        when(mDatabase.countLogs(GROUP)).thenReturn(1);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(2, mPersistence.countLogs(GROUP));
+        List<Log> logs = new ArrayList<>();
+        assertEquals("database", mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, logs));
+        assertEquals(Collections.singletonList(storedLog), logs);
+        assertArrayEquals(new long[]{1}, mPersistence.getLogIds(GROUP, "database"));
+        mPersistence.getLogs(GROUP, new long[]{1}, logs);
+        verify(mDatabase).getLogs(eq(GROUP), eq(new long[]{1}), anyList());
+        mPersistence.deleteLogs(GROUP, "database");
+        verify(mDatabase).deleteLogs(GROUP, "database");
+        assertEquals(1, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void criticalLogsAreStored() throws Persistence.PersistenceException {
+        Log log = mock(Log.class);
+        when(mDatabase.putLog(log, GROUP, Flags.CRITICAL)).thenReturn(7L);
+        assertEquals(7L, mPersistence.putLog(log, GROUP, Flags.CRITICAL));
+        List<Log> logs = Collections.singletonList(log);
+        mPersistence.putLogs(logs, GROUP, Flags.CRITICAL);
+        verify(mDatabase).putLogs(logs, GROUP, Flags.CRITICAL);
+        assertEquals(0, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void databaseQueriedAgainAfterStoringLogs() throws Persistence.PersistenceException {
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, new ArrayList<Log>());
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, new ArrayList<Log>());
+        verify(mDatabase).getLogs(eq(GROUP), anyCollection(), anyInt(), anyList());
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.CRITICAL);
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, new ArrayList<Log>());
+        verify(mDatabase, times(2)).getLogs(eq(GROUP), anyCollection(), anyInt(), anyList());
+
+        /* Paused targets can have logs in the database. */
+        mPersistence.getLogs(GROUP, Collections.singletonList("paused"), 10, new ArrayList<Log>());
+        mPersistence.getLogs(GROUP, Collections.singletonList("paused"), 10, new ArrayList<Log>());
+        verify(mDatabase, times(4)).getLogs(eq(GROUP), anyCollection(), anyInt(), anyList());
+    }
+
+    @Test
+    public void pausedTargetsStayInMemory() throws Persistence.PersistenceException {
+        CommonSchemaLog pausedLog = mock(CommonSchemaLog.class);
+        when(pausedLog.getTransmissionTargetTokens()).thenReturn(Collections.singleton("paused-secret"));
+        CommonSchemaLog log = mock(CommonSchemaLog.class);
+        when(log.getTransmissionTargetTokens()).thenReturn(Collections.singleton("other-secret"));
+        mPersistence.putLog(pausedLog, GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(log, GROUP, Flags.DEFAULTS);
+        List<Log> logs = new ArrayList<>();
+        assertNotNull(mPersistence.getLogs(GROUP, Collections.singletonList("paused"), 10, logs));
+        assertEquals(Collections.<Log>singletonList(log), logs);
+        assertNull(mPersistence.getLogs(GROUP, Collections.singletonList("paused"), 10, logs));
+        assertEquals(2, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void moveToDatabaseWhenGroupIsFull() throws Persistence.PersistenceException {
+        for (int i = 0; i < HybridPersistence.MAX_MEMORY_LOGS_PER_GROUP; i++) {
+            mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        }
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        verify(mDatabase, never()).putLogs(anyList(), anyString(), anyInt());
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        verify(mDatabase).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        assertEquals(1, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void moveToDatabaseWhenMemoryIsFull() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < HybridPersistence.MAX_MEMORY_SIZE / 2; i++) {
+            payload.append('a');
+        }
+        when(mLogSerializer.serializeLog(any(Log.class))).thenReturn(payload.toString());
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        assertEquals(2, mPersistence.getMemoryLogCount());
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        verify(mDatabase).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        verify(mDatabase).putLogs(anyList(), eq("other"), eq(Flags.NORMAL));
+        assertEquals(0, mPersistence.getMemoryLogCount());
+        assertEquals(0, mPersistence.getMemorySize());
+
+        /* Logs larger than memory are stored directly. */
+        payload.append(payload.toString()).append('a');
+        Log largeLog = mock(Log.class);
+        when(mLogSerializer.serializeLog(largeLog)).thenReturn(payload.toString());
+        mPersistence.putLog(largeLog, GROUP, Flags.DEFAULTS);
+        verify(mDatabase).putLog(largeLog, GROUP, Flags.DEFAULTS);
+    }
+
+    @Test
+    public void moveToDatabaseFailure() throws Persistence.PersistenceException {
+        when(mDatabase.putLogs(anyList(), anyString(), anyInt())).thenReturn(new Persistence.PersistenceException[]{new Persistence.PersistenceException("mock", new IOException("mock"))});
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.setWriteToDatabase(true);
+        assertEquals(0, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void storeInBackground() throws Persistence.PersistenceException {
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+
+        /* Logs being sent stay in memory. */
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, new ArrayList<Log>());
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.onApplicationEnterBackground();
+        verify(mDatabase).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        assertEquals(1, mPersistence.getMemoryLogCount());
+        Log log = mock(Log.class);
+        mPersistence.putLog(log, GROUP, Flags.DEFAULTS);
+        verify(mDatabase).putLog(log, GROUP, Flags.DEFAULTS);
+        List<Log> logs = Collections.singletonList(mock(Log.class));
+        mPersistence.putLogs(logs, GROUP, Flags.DEFAULTS);
+        verify(mDatabase).putLogs(logs, GROUP, Flags.DEFAULTS);
+
+        /* Logs that failed to be sent are stored. */
+        mPersistence.clearPendingLogState();
+        verify(mDatabase, times(3)).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        assertEquals(0, mPersistence.getMemoryLogCount());
+
+        /* Back to memory in foreground. */
+        mPersistence.onApplicationEnterForeground();
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        assertEquals(1, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void clearPendingLogStateKeepsOrder() throws Persistence.PersistenceException {
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log log3 = mock(Log.class);
+        mPersistence.putLog(log1, GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(log2, GROUP, Flags.DEFAULTS);
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        mPersistence.putLog(log3, GROUP, Flags.DEFAULTS);
+        mPersistence.clearPendingLogState();
+        verify(mDatabase).clearPendingLogState();
+
+        /* Database is queried again as its logs are not pending anymore. */
+        List<Log> logs = new ArrayList<>();
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 10, logs);
+        assertEquals(Arrays.asList(log1, log2, log3), logs);
+        verify(mDatabase, times(2)).getLogs(eq(GROUP), anyCollection(), anyInt(), anyList());
+    }
+
+    @Test
+    public void deleteGroup() throws Persistence.PersistenceException {
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        mPersistence.getLogs(GROUP, Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        mPersistence.getLogs("other", Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        mPersistence.deleteLogs(GROUP);
+        verify(mDatabase).deleteLogs(GROUP);
+        assertEquals(0, mPersistence.countLogs(GROUP));
+        assertEquals(1, mPersistence.getMemoryLogCount());
+        assertEquals(2, mPersistence.getMemorySize());
+    }
+
+    @Test
+    public void countLogsByGroup() throws Persistence.PersistenceException {
+        Map<String, Integer> databaseCounts = new HashMap<>();
+        databaseCounts.put(GROUP, 3);
+        databaseCounts.put("stored", 1);
+        when(mDatabase.countLogsByGroup()).thenReturn(databaseCounts);
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.putLog(mock(Log.class), "other", Flags.DEFAULTS);
+        mPersistence.getLogs("other", Collections.<String>emptyList(), 1, new ArrayList<Log>());
+        Map<String, Integer> counts = mPersistence.countLogsByGroup();
+        assertNotNull(counts);
+        assertEquals(Integer.valueOf(4), counts.get(GROUP));
+        assertEquals(Integer.valueOf(1), counts.get("other"));
+        assertEquals(Integer.valueOf(1), counts.get("stored"));
+
+        /* Query failure is reported. */
+        when(mDatabase.countLogsByGroup()).thenReturn(null);
+        assertNull(mPersistence.countLogsByGroup());
+    }
+
+    @Test
+    public void serializationError() throws Exception {
+        Log log = mock(Log.class);
+        when(mLogSerializer.serializeLog(log)).thenThrow(new JSONException("mock"));
+        try {
+            mPersistence.putLog(log, GROUP, Flags.DEFAULTS);
+            fail("Expected serialization error");
+        } catch (Persistence.PersistenceException ignored) {
+        }
+        Persistence.PersistenceException[] errors = mPersistence.putLogs(Arrays.asList(log, mock(Log.class)), GROUP, Flags.DEFAULTS);
+        assertNotNull(errors[0]);
+        assertNull(errors[1]);
+        assertEquals(1, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void delegateStorageSettings() {
+        when(mDatabase.setMaxStorageSize(anyLong())).thenReturn(true);
+        assertTrue(mPersistence.setMaxStorageSize(1024));
+        mPersistence.performDeferredChecks();
+        verify(mDatabase).performDeferredChecks();
+        StorageQuota quota = StorageQuota.timeToLive(1000);
+        mPersistence.setStorageQuota(GROUP, quota);
+        verify(mDatabase).setStorageQuota(GROUP, quota);
+        when(mDatabase.deleteExpiredLogs()).thenReturn(Collections.singletonMap(GROUP, 2));
+        assertEquals(Collections.singletonMap(GROUP, 2), mPersistence.deleteExpiredLogs());
+        when(mDatabase.reclaimStorage()).thenReturn(true);
+        assertTrue(mPersistence.reclaimStorage());
+    }
+
+    @Test
+    public void flushStoresMemoryLogs() throws Exception {
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.flush();
+        verify(mDatabase).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        verify(mDatabase, never()).close();
+        assertEquals(0, mPersistence.getMemoryLogCount());
+    }
+
+    @Test
+    public void closeStoresMemoryLogs() throws Exception {
+        mPersistence.putLog(mock(Log.class), GROUP, Flags.DEFAULTS);
+        mPersistence.close();
+        verify(mDatabase).putLogs(anyList(), eq(GROUP), eq(Flags.NORMAL));
+        verify(mDatabase).close();
+        assertEquals(0, mPersistence.getMemoryLogCount());
+
+        /* Close failure is only logged. */
+        doThrow(new IOException("mock")).when(mDatabase).close();
+        mPersistence.close();
+    }
+}
@@ -37,6 +37,12 @@ public class HashUtilsTest {
         assertEquals("7efd873c874fbf92d6c3eccc2f24f7eaa349d9d7b512d81ff3f1b44e896362fb", HashUtils.sha256("This hash function rocks!"));
     }
 
+    @Test
+    public void encodeHex() {
+        assertEquals("", HashUtils.encodeHex(new byte[0]));
+        assertEquals("00017f80ff", HashUtils.encodeHex(new byte[]{0, 1, 127, -128, -1}));
+    }
+
     @Test(expected = RuntimeException.class)
     @PrepareForTest(HashUtils.class)
     public void algorithmNotFound() throws NoSuchAlgorithmException {
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Process;
+
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({Application.class, Process.class})
+public class ProcessHelperTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+    }
+
+    @SuppressWarnings("InstantiationOfUtilityClass")
+    @Test
+    public void init() {
+        new ProcessHelper();
+    }
+
+    private static Context mockContext(ActivityManager activityManager) {
+        Context context = mock(Context.class);
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.processName = "com.contoso";
+        when(context.getApplicationInfo()).thenReturn(applicationInfo);
+        when(context.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(activityManager);
+        return context;
+    }
+
+    @Test
+    public void processNameFromApplication() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.P);
+        mockStatic(Application.class);
+        when(Application.getProcessName()).thenReturn("com.contoso:remote");
+        Context context = mockContext(null);
+        assertEquals("com.contoso:remote", ProcessHelper.getProcessName(context));
+        assertFalse(ProcessHelper.isMainProcess(context));
+        when(Application.getProcessName()).thenReturn("com.contoso");
+        assertTrue(ProcessHelper.isMainProcess(context));
+    }
+
+    @Test
+    public void processNameFromActivityManager() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.O);
+        mockStatic(Process.class);
+        when(Process.myPid()).thenReturn(42);
+        ActivityManager.RunningAppProcessInfo otherProcess = new ActivityManager.RunningAppProcessInfo();
+        otherProcess.pid = 1;
+        otherProcess.processName = "com.contoso";
+        ActivityManager.RunningAppProcessInfo currentProcess = new ActivityManager.RunningAppProcessInfo();
+        currentProcess.pid = 42;
+        currentProcess.processName = "com.contoso:sync";
+        ActivityManager activityManager = mock(ActivityManager.class);
+        when(activityManager.getRunningAppProcesses()).thenReturn(Arrays.asList(otherProcess, currentProcess));
+        Context context = mockContext(activityManager);
+        assertEquals("com.contoso:sync", ProcessHelper.getProcessName(context));
+        assertFalse(ProcessHelper.isMainProcess(context));
+
+        /* Current process not listed. */
+        when(activityManager.getRunningAppProcesses()).thenReturn(Collections.singletonList(otherProcess));
+        assertNull(ProcessHelper.getProcessName(context));
+        assertTrue(ProcessHelper.isMainProcess(context));
+
+        /* No list. */
+        when(activityManager.getRunningAppProcesses()).thenReturn(null);
+        assertNull(ProcessHelper.getProcessName(context));
+    }
+
+    @Test
+    public void processNameWithoutActivityManager() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.O);
+        Context context = mockContext(null);
+        assertNull(ProcessHelper.getProcessName(context));
+        assertTrue(ProcessHelper.isMainProcess(context));
+    }
+}
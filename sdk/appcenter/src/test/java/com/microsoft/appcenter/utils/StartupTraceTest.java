@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({SystemClock.class, Trace.class, AppCenterLog.class})
+public class StartupTraceTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        StartupTrace.reset();
+        mockStatic(SystemClock.class);
+        mockStatic(Trace.class);
+        mockStatic(AppCenterLog.class);
+    }
+
+    @After
+    public void tearDown() {
+        StartupTrace.reset();
+    }
+
+    @Test
+    public void nestedSections() {
+        when(SystemClock.elapsedRealtimeNanos()).thenReturn(100L, 150L, 180L, 400L);
+        StartupTrace.beginSection("outer");
+        StartupTrace.beginSection("inner");
+        StartupTrace.endSection();
+        StartupTrace.endSection();
+
+        /* Parent is listed first even if it ended last. */
+        List<StartupTrace.Phase> phases = StartupTrace.getPhases();
+        assertEquals(2, phases.size());
+        StartupTrace.Phase outer = phases.get(0);
+        assertEquals("outer", outer.getName());
+        assertEquals(Thread.currentThread().getName(), outer.getThreadName());
+        assertEquals(0, outer.getDepth());
+        assertEquals(100L, outer.getStartNanos());
+        assertEquals(300L, outer.getDurationNanos());
+        StartupTrace.Phase inner = phases.get(1);
+        assertEquals("inner", inner.getName());
+        assertEquals(1, inner.getDepth());
+        assertEquals(150L, inner.getStartNanos());
+        assertEquals(30L, inner.getDurationNanos());
+        assertNotNull(inner.toString());
+
+        /* No system trace by default. */
+        verifyStatic(Trace.class, never());
+        Trace.beginSection(anyString());
+        verifyStatic(Trace.class, never());
+        Trace.endSection();
+    }
+
+    @Test
+    public void sectionsOnSeveralThreads() throws InterruptedException {
+        when(SystemClock.elapsedRealtimeNanos()).thenReturn(10L, 20L, 30L, 40L);
+        StartupTrace.beginSection("caller");
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                threadName.set(getName());
+                StartupTrace.beginSection("worker");
+                StartupTrace.endSection();
+            }
+        };
+        thread.start();
+        thread.join();
+        StartupTrace.endSection();
+
+        /* Worker section is not nested in caller one. */
+        List<StartupTrace.Phase> phases = StartupTrace.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("caller", phases.get(0).getName());
+        assertEquals(0, phases.get(0).getDepth());
+        assertEquals("worker", phases.get(1).getName());
+        assertEquals(threadName.get(), phases.get(1).getThreadName());
+        assertEquals(0, phases.get(1).getDepth());
+    }
+
+    @Test
+    public void systemTrace() {
+        StartupTrace.setSystemTraceEnabled(true);
+        StartupTrace.beginSection("phase");
+
+        /* Disabling while a section is open still ends the system section. */
+        StartupTrace.setSystemTraceEnabled(false);
+        StartupTrace.endSection();
+        verifyStatic(Trace.class);
+        Trace.beginSection(StartupTrace.SECTION_PREFIX + "phase");
+        verifyStatic(Trace.class);
+        Trace.endSection();
+
+        /* Long names are truncated. */
+        StartupTrace.setSystemTraceEnabled(true);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            name.append('a');
+        }
+        StartupTrace.beginSection(name.toString());
+        StartupTrace.endSection();
+        verifyStatic(Trace.class);
+        Trace.beginSection((StartupTrace.SECTION_PREFIX + name).substring(0, 127));
+        verifyStatic(Trace.class, times(2));
+        Trace.endSection();
+    }
+
+    @Test
+    public void endWithoutBegin() {
+        StartupTrace.endSection();
+        assertTrue(StartupTrace.getPhases().isEmpty());
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.warn(anyString(), anyString());
+    }
+
+    @Test
+    public void phasesAreBounded() {
+        for (int i = 0; i < StartupTrace.MAX_PHASES + 10; i++) {
+            StartupTrace.beginSection("phase" + i);
+            StartupTrace.endSection();
+        }
+        List<StartupTrace.Phase> phases = StartupTrace.getPhases();
+        assertEquals(StartupTrace.MAX_PHASES, phases.size());
+        assertEquals("phase0", phases.get(0).getName());
+
+        /* Returned list is a copy. */
+        phases.clear();
+        assertEquals(StartupTrace.MAX_PHASES, StartupTrace.getPhases().size());
+    }
+}
@@ -8,12 +8,15 @@ package com.microsoft.appcenter.utils.storage;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -66,6 +69,41 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void beginTransactionFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertFalse(databaseManagerMock.beginTransaction());
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void endTransactionFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertFalse(databaseManagerMock.endTransaction(true));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void transaction() {
+        DatabaseManager databaseManager = spy(new DatabaseManager(null, "database", "table", 1, null, null, null));
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(databaseManager.getDatabase()).thenReturn(database);
+        assertTrue(databaseManager.beginTransaction());
+        verify(database).beginTransaction();
+
+        /* Commit. */
+        assertTrue(databaseManager.endTransaction(true));
+        verify(database).setTransactionSuccessful();
+        verify(database).endTransaction();
+
+        /* Rollback. */
+        assertFalse(databaseManager.endTransaction(false));
+        verify(database).setTransactionSuccessful();
+        verify(database, times(2)).endTransaction();
+    }
+
     @Test
     public void deleteFailed() {
         DatabaseManager databaseManagerMock = getDatabaseManagerMock();
@@ -74,6 +112,30 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void deleteWhereFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(0, databaseManagerMock.deleteWhere("a <= ?", new String[]{"1"}));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void updateFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(0, databaseManagerMock.update(mock(ContentValues.class), "a IS NULL", null));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void addToColumnFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(0, databaseManagerMock.addToColumn("a", 1, "a IS NOT NULL", null));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
     @Test
     public void clearFailed() {
         DatabaseManager databaseManagerMock = getDatabaseManagerMock();
@@ -101,6 +163,22 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void rowCountByColumnFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertNull(databaseManagerMock.getRowCountByColumn("group"));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
+    @Test
+    public void reclaimFreePagesFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(-1, databaseManagerMock.reclaimFreePages(1));
+        verifyStatic(AppCenterLog.class);
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
     @Test
     public void setMaxSizeFailed() {
         DatabaseManager databaseManagerMock = getDatabaseManagerMock();
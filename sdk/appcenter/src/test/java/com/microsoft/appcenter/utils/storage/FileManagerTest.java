@@ -5,12 +5,16 @@
 
 package com.microsoft.appcenter.utils.storage;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -22,6 +26,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 import android.text.TextUtils;
+import android.util.Base64;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 
@@ -29,23 +34,29 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.internal.stubbing.answers.ThrowsException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 @SuppressWarnings("unused")
-@PrepareForTest({FileManager.class, AppCenterLog.class, TextUtils.class})
+@PrepareForTest({FileManager.class, AppCenterLog.class, TextUtils.class, Base64.class})
 public class FileManagerTest {
 
     @Rule
@@ -101,6 +112,94 @@ public class FileManagerTest {
         verify(reader).close();
     }
 
+    @Test
+    public void writeBase64() throws Exception {
+
+        /* Use JVM encoder for the chunks. */
+        mockStatic(Base64.class);
+        when(Base64.encode(any(byte[].class), anyInt(), anyInt(), eq(Base64.NO_WRAP))).thenAnswer(new Answer<byte[]>() {
+
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                byte[] input = invocation.getArgument(0);
+                int offset = invocation.getArgument(1);
+                int length = invocation.getArgument(2);
+                byte[] chunk = new byte[length];
+                System.arraycopy(input, offset, chunk, 0, length);
+                return java.util.Base64.getEncoder().encode(chunk);
+            }
+        });
+
+        /* Use a size spanning several chunks and not aligned on 3 bytes. */
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = mTemporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(data);
+        outputStream.close();
+        ByteArrayOutputStream base64 = new ByteArrayOutputStream();
+        FileManager.writeBase64(file, base64);
+        assertEquals(java.util.Base64.getEncoder().encodeToString(data), base64.toString("US-ASCII"));
+
+        /* Empty file. */
+        base64.reset();
+        FileManager.writeBase64(mTemporaryFolder.newFile(), base64);
+        assertEquals(0, base64.size());
+    }
+
+    @Test
+    public void gzip() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 10);
+        }
+        File source = mTemporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(source);
+        outputStream.write(data);
+        outputStream.close();
+        File destination = new File(mTemporaryFolder.getRoot(), "compressed.gz");
+        FileManager.gzip(source, destination);
+        assertTrue(destination.length() < source.length());
+
+        /* Verify round trip. */
+        InputStream inputStream = new GZIPInputStream(new FileInputStream(destination));
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+            uncompressed.write(buffer, 0, length);
+        }
+        inputStream.close();
+        assertArrayEquals(data, uncompressed.toByteArray());
+    }
+
+    @Test
+    public void gzipError() throws Exception {
+
+        /* Missing source. */
+        File destination = new File(mTemporaryFolder.getRoot(), "compressed.gz");
+        try {
+            FileManager.gzip(new File(mTemporaryFolder.getRoot(), "missing"), destination);
+            fail();
+        } catch (FileNotFoundException ignored) {
+        }
+        assertFalse(destination.exists());
+
+        /* Failure to write. */
+        FileOutputStream outputStream = mock(FileOutputStream.class);
+        doThrow(new IOException()).when(outputStream).write(any(byte[].class), anyInt(), anyInt());
+        whenNew(FileOutputStream.class).withArguments(destination).thenReturn(outputStream);
+        assertTrue(destination.createNewFile());
+        try {
+            FileManager.gzip(mTemporaryFolder.newFile(), destination);
+            fail();
+        } catch (IOException ignored) {
+        }
+        assertFalse(destination.exists());
+    }
+
     @Test(expected = IOException.class)
     public void writeError() throws Exception {
         mockStatic(TextUtils.class);